@@ -19,10 +19,23 @@ import com.milaboratory.core.Range;
 import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.Sequence;
 
+import java.util.Arrays;
+
 public final class Aligner {
     private Aligner() {
     }
 
+    /**
+     * Number of dynamic programming matrix cells ({@code (seq1.size() + 1) * (seq2.size() + 1)}), above which global
+     * and local alignments are performed by linear-memory algorithms (see {@link LinearSpaceAligner}). Results are
+     * identical to the results of the full-matrix algorithms.
+     */
+    public static final long LINEAR_SPACE_THRESHOLD = 1 << 22;
+
+    private static boolean useLinearSpace(Sequence<?> seq1, Sequence<?> seq2) {
+        return (long) (seq1.size() + 1) * (seq2.size() + 1) > LINEAR_SPACE_THRESHOLD;
+    }
+
     public static <S extends Sequence<S>> int alignOnlySubstitutions0(S seq1, S seq2, int seq1From, int seq1Length,
                                                                       int seq2From, int seq2Length,
                                                                       AlignmentScoring<S> scoring,
@@ -90,10 +103,24 @@ public final class Aligner {
      */
     public static <S extends Sequence<S>> Alignment<S> alignGlobal(AlignmentScoring<S> alignmentScoring,
                                                                    S seq1, S seq2) {
+        return alignGlobal(alignmentScoring, seq1, seq2, null);
+    }
+
+    /**
+     * Performs global alignment using matrices from the workspace
+     *
+     * @param alignmentScoring scoring system
+     * @param seq1             first sequence
+     * @param seq2             second sequence
+     * @param workspace        workspace to take matrices from, or {@code null} to allocate new matrices
+     * @return array of mutations
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobal(AlignmentScoring<S> alignmentScoring,
+                                                                   S seq1, S seq2, AlignmentWorkspace workspace) {
         if (alignmentScoring instanceof AffineGapAlignmentScoring)
-            return alignGlobalAffine((AffineGapAlignmentScoring<S>) alignmentScoring, seq1, seq2);
+            return alignGlobalAffine((AffineGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, workspace);
         if (alignmentScoring instanceof LinearGapAlignmentScoring)
-            return alignGlobalLinear((LinearGapAlignmentScoring<S>) alignmentScoring, seq1, seq2);
+            return alignGlobalLinear((LinearGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, workspace);
         throw new RuntimeException("Unknown scoring type.");
     }
 
@@ -107,13 +134,31 @@ public final class Aligner {
      */
     public static <S extends Sequence<S>> Alignment<S> alignGlobalLinear(LinearGapAlignmentScoring scoring,
                                                                          S seq1, S seq2) {
+        return alignGlobalLinear(scoring, seq1, seq2, null);
+    }
+
+    /**
+     * Performs global alignment using Linear scoring system (penalty exists only for gap)
+     *
+     * @param scoring   linear scoring system
+     * @param seq1      first sequence
+     * @param seq2      second sequence
+     * @param workspace workspace to take matrix from, or {@code null} to allocate new matrix
+     * @return array of mutations
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobalLinear(LinearGapAlignmentScoring scoring,
+                                                                         S seq1, S seq2,
+                                                                         AlignmentWorkspace workspace) {
         if (seq1.getAlphabet() != seq2.getAlphabet() ||
                 seq1.getAlphabet() != scoring.getAlphabet())
             throw new IllegalArgumentException("Different alphabets.");
 
+        if (useLinearSpace(seq1, seq2))
+            return LinearSpaceAligner.alignGlobalLinear((LinearGapAlignmentScoring<S>) scoring, seq1, seq2);
+
         int size1 = seq1.size() + 1,
                 size2 = seq2.size() + 1;
-        int[] matrix = new int[size1 * (seq2.size() + 1)];
+        int[] matrix = allocate(workspace == null ? null : workspace.main, size1 * size2);
 
         for (int i = 0; i < size2; ++i)
             matrix[i] = scoring.getGapPenalty() * i;
@@ -171,10 +216,19 @@ public final class Aligner {
         final int nRows, nColumns;
         final int[] data;
 
-        Matrix(int nRows, int nColumns) {
+        Matrix(CachedIntArray cache, int nRows, int nColumns) {
             this.nRows = nRows;
             this.nColumns = nColumns;
-            this.data = new int[nRows * nColumns];
+            this.data = allocate(cache, nRows * nColumns);
+        }
+
+        /**
+         * Sets first row and first column to zero
+         */
+        void clearBorders() {
+            Arrays.fill(data, 0, nColumns, 0);
+            for (int row = 1; row < nRows; ++row)
+                data[row * nColumns] = 0;
         }
 
         int get(int row, int col) {
@@ -186,6 +240,10 @@ public final class Aligner {
         }
     }
 
+    private static int[] allocate(CachedIntArray cache, int size) {
+        return cache == null ? new int[size] : cache.get(size);
+    }
+
     private static int max(int a, int b) {
         return Math.max(a, b);
     }
@@ -209,18 +267,37 @@ public final class Aligner {
      */
     public static <S extends Sequence<S>> Alignment<S> alignGlobalAffine(AffineGapAlignmentScoring<S> scoring,
                                                                          S seq1, S seq2) {
+        return alignGlobalAffine(scoring, seq1, seq2, null);
+    }
+
+    /**
+     * Performs global alignment using affine gap scoring system (different penalties exist for gap opening and gap
+     * extension)
+     *
+     * @param scoring   affine gap scoring system
+     * @param seq1      first sequence
+     * @param seq2      second sequence
+     * @param workspace workspace to take matrices from, or {@code null} to allocate new matrices
+     * @return array of mutations
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                         S seq1, S seq2,
+                                                                         AlignmentWorkspace workspace) {
         if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
             throw new IllegalArgumentException("Different alphabets.");
 
+        if (useLinearSpace(seq1, seq2) && LinearSpaceAligner.isApplicableForGlobal(scoring))
+            return LinearSpaceAligner.alignGlobalAffine(scoring, seq1, seq2);
+
         int
                 length1 = seq1.size(),
                 length2 = seq2.size(),
                 size1 = length1 + 1,
                 size2 = length2 + 1;
         Matrix
-                gapIn1 = new Matrix(size1, size2),
-                gapIn2 = new Matrix(size1, size2),
-                matrix = new Matrix(size1, size2);
+                gapIn1 = new Matrix(workspace == null ? null : workspace.gapIn1, size1, size2),
+                gapIn2 = new Matrix(workspace == null ? null : workspace.gapIn2, size1, size2),
+                matrix = new Matrix(workspace == null ? null : workspace.main, size1, size2);
 
         int
                 gapExtensionPenalty = scoring.getGapExtensionPenalty(),
@@ -330,10 +407,24 @@ public final class Aligner {
      */
     public static <S extends Sequence<S>> Alignment<S> alignLocal(AlignmentScoring<S> alignmentScoring,
                                                                   S seq1, S seq2) {
+        return alignLocal(alignmentScoring, seq1, seq2, null);
+    }
+
+    /**
+     * Performs local alignment using matrices from the workspace
+     *
+     * @param alignmentScoring scoring system
+     * @param seq1             first sequence
+     * @param seq2             second sequence
+     * @param workspace        workspace to take matrices from, or {@code null} to allocate new matrices
+     * @return result of alignment with information about alignment positions in both sequences and array of mutations
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignLocal(AlignmentScoring<S> alignmentScoring,
+                                                                  S seq1, S seq2, AlignmentWorkspace workspace) {
         if (alignmentScoring instanceof AffineGapAlignmentScoring)
-            return alignLocalAffine((AffineGapAlignmentScoring<S>) alignmentScoring, seq1, seq2);
+            return alignLocalAffine((AffineGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, workspace);
         if (alignmentScoring instanceof LinearGapAlignmentScoring)
-            return alignLocalLinear((LinearGapAlignmentScoring<S>) alignmentScoring, seq1, seq2);
+            return alignLocalLinear((LinearGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, workspace);
         throw new RuntimeException("Unknown scoring type.");
     }
 
@@ -346,12 +437,35 @@ public final class Aligner {
      */
     public static <S extends Sequence<S>> Alignment<S> alignLocalLinear(LinearGapAlignmentScoring<S> scoring,
                                                                         S seq1, S seq2) {
+        return alignLocalLinear(scoring, seq1, seq2, null);
+    }
+
+    /**
+     * Performs local alignment using Linear scoring system (penalty exists only for gap)
+     *
+     * @param seq1      first sequence
+     * @param seq2      second sequence
+     * @param workspace workspace to take matrix from, or {@code null} to allocate new matrix
+     * @return result of alignment with information about alignment positions in both sequences and array of mutations
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignLocalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                        S seq1, S seq2,
+                                                                        AlignmentWorkspace workspace) {
         if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
             throw new IllegalArgumentException("Different alphabets.");
 
+        if (useLinearSpace(seq1, seq2))
+            return LinearSpaceAligner.alignLocalLinear(scoring, seq1, seq2);
+
         int size1 = seq1.size() + 1,
                 size2 = seq2.size() + 1;
-        int[] matrix = new int[size1 * (seq2.size() + 1)];
+        int[] matrix = allocate(workspace == null ? null : workspace.main, size1 * size2);
+        if (workspace != null) {
+            // Reused matrix may contain values from previous alignments
+            Arrays.fill(matrix, 0, size2, 0);
+            for (int i = 1; i < size1; ++i)
+                matrix[i * size2] = 0;
+        }
 
         int i1, i2,
                 match, delete, insert;
@@ -436,18 +550,43 @@ public final class Aligner {
      */
     public static <S extends Sequence<S>> Alignment<S> alignLocalAffine(AffineGapAlignmentScoring<S> scoring,
                                                                         S seq1, S seq2) {
+        return alignLocalAffine(scoring, seq1, seq2, null);
+    }
+
+    /**
+     * Performs local alignment using affine gap scoring system (different penalties exist for gap opening and gap
+     * extension)
+     *
+     * @param scoring   scoring system
+     * @param seq1      first sequence
+     * @param seq2      second sequence
+     * @param workspace workspace to take matrices from, or {@code null} to allocate new matrices
+     * @return result of alignment with information about alignment positions in both sequences and array of mutations
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                        S seq1, S seq2,
+                                                                        AlignmentWorkspace workspace) {
         if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
             throw new IllegalArgumentException("Different alphabets.");
 
+        if (useLinearSpace(seq1, seq2))
+            return LinearSpaceAligner.alignLocalAffine(scoring, seq1, seq2);
+
         int
                 length1 = seq1.size(),
                 length2 = seq2.size(),
                 size1 = length1 + 1,
                 size2 = length2 + 1;
         Matrix
-                gapIn1 = new Matrix(size1, size2),
-                gapIn2 = new Matrix(size1, size2),
-                matrix = new Matrix(size1, size2);
+                gapIn1 = new Matrix(workspace == null ? null : workspace.gapIn1, size1, size2),
+                gapIn2 = new Matrix(workspace == null ? null : workspace.gapIn2, size1, size2),
+                matrix = new Matrix(workspace == null ? null : workspace.main, size1, size2);
+        if (workspace != null) {
+            // Reused matrices may contain values from previous alignments
+            gapIn1.clearBorders();
+            gapIn2.clearBorders();
+            matrix.clearBorders();
+        }
 
         int
                 gapExtensionPenalty = scoring.getGapExtensionPenalty(),
@@ -549,4 +688,297 @@ public final class Aligner {
         return new Alignment<>(seq1, mutations.createAndDestroy(),
                 new Range(seq1begin, seq1end), new Range(seq2begin, seq2end), max);
     }
+
+    /**
+     * Row buffers used by score-only methods called without explicitly provided cache
+     */
+    private static final ThreadLocal<CachedIntArray> scoreOnlyCache = new ThreadLocal<CachedIntArray>() {
+        @Override
+        protected CachedIntArray initialValue() {
+            return new CachedIntArray();
+        }
+    };
+
+    /**
+     * Calculates score of global alignment without building the alignment itself. Returned value is equal to the
+     * score of alignment returned by {@link #alignGlobal(AlignmentScoring, Sequence, Sequence)}, global alignment
+     * always ends at the ends of both sequences.
+     *
+     * <p>Only a single row of each dynamic programming matrix is stored, row buffers are reused between calls
+     * performed from the same thread.</p>
+     *
+     * @param alignmentScoring scoring system
+     * @param seq1             first sequence
+     * @param seq2             second sequence
+     * @return score of global alignment
+     */
+    public static <S extends Sequence<S>> int scoreGlobal(AlignmentScoring<S> alignmentScoring, S seq1, S seq2) {
+        return scoreGlobal(alignmentScoring, seq1, seq2, scoreOnlyCache.get());
+    }
+
+    /**
+     * Calculates score of global alignment without building the alignment itself. Returned value is equal to the
+     * score of alignment returned by {@link #alignGlobal(AlignmentScoring, Sequence, Sequence)}.
+     *
+     * @param alignmentScoring scoring system
+     * @param seq1             first sequence
+     * @param seq2             second sequence
+     * @param cache            cached array to store matrix rows in
+     * @return score of global alignment
+     */
+    public static <S extends Sequence<S>> int scoreGlobal(AlignmentScoring<S> alignmentScoring, S seq1, S seq2,
+                                                          CachedIntArray cache) {
+        if (alignmentScoring instanceof AffineGapAlignmentScoring)
+            return scoreGlobalAffine((AffineGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, cache);
+        if (alignmentScoring instanceof LinearGapAlignmentScoring)
+            return scoreGlobalLinear((LinearGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, cache);
+        throw new RuntimeException("Unknown scoring type.");
+    }
+
+    /**
+     * Score-only version of {@link #alignGlobalLinear(LinearGapAlignmentScoring, Sequence, Sequence)}.
+     *
+     * @param scoring linear scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @param cache   cached array to store matrix row in
+     * @return score of global alignment
+     */
+    public static <S extends Sequence<S>> int scoreGlobalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                S seq1, S seq2, CachedIntArray cache) {
+        if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+
+        int length1 = seq1.size(),
+                length2 = seq2.size(),
+                gapPenalty = scoring.getGapPenalty();
+
+        // row[j] holds value of (i1 + 1, j) matrix cell for j <= i2 and of (i1, j) cell for j > i2
+        int[] row = cache.get(length2 + 1);
+        for (int i = 0; i <= length2; ++i)
+            row[i] = gapPenalty * i;
+
+        int i1, i2, diagonal, match, delete, insert;
+        byte c1;
+        for (i1 = 0; i1 < length1; ++i1) {
+            diagonal = row[0];
+            row[0] = gapPenalty * (i1 + 1);
+            c1 = seq1.codeAt(i1);
+            for (i2 = 0; i2 < length2; ++i2) {
+                match = diagonal + scoring.getScore(c1, seq2.codeAt(i2));
+                delete = (diagonal = row[i2 + 1]) + gapPenalty;
+                insert = row[i2] + gapPenalty;
+                row[i2 + 1] = Math.max(match, Math.max(delete, insert));
+            }
+        }
+
+        return row[length2];
+    }
+
+    /**
+     * Score-only version of {@link #alignGlobalAffine(AffineGapAlignmentScoring, Sequence, Sequence)}.
+     *
+     * @param scoring affine gap scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @param cache   cached array to store matrix rows in
+     * @return score of global alignment
+     */
+    public static <S extends Sequence<S>> int scoreGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                S seq1, S seq2, CachedIntArray cache) {
+        if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+
+        int length1 = seq1.size(),
+                length2 = seq2.size(),
+                size2 = length2 + 1,
+                gapExtensionPenalty = scoring.getGapExtensionPenalty(),
+                gapOpenPenalty = scoring.getGapOpenPenalty() - gapExtensionPenalty;
+
+        // First size2 elements hold a row of the main matrix, the rest hold a row of gapIn2 matrix
+        int[] rows = cache.get(2 * size2);
+        rows[0] = 0;
+        for (int j = 1; j < size2; ++j) {
+            rows[j] = gapOpenPenalty + j * gapExtensionPenalty;
+            rows[size2 + j] = MIN_VALUE;
+        }
+
+        int i, j, diagonal, gapIn1, gapIn2, score;
+        byte c1;
+        for (i = 1; i <= length1; ++i) {
+            diagonal = rows[0];
+            rows[0] = gapOpenPenalty + i * gapExtensionPenalty;
+            gapIn1 = MIN_VALUE;
+            c1 = seq1.codeAt(i - 1);
+            for (j = 1; j <= length2; ++j) {
+                gapIn1 = max(
+                        rows[j - 1] + gapOpenPenalty + gapExtensionPenalty,
+                        gapIn1 + gapExtensionPenalty);
+                rows[size2 + j] = gapIn2 = max(
+                        rows[j] + gapOpenPenalty + gapExtensionPenalty,
+                        rows[size2 + j] + gapExtensionPenalty);
+                score = max(diagonal + scoring.getScore(c1, seq2.codeAt(j - 1)), gapIn2, gapIn1);
+                diagonal = rows[j];
+                rows[j] = score;
+            }
+        }
+
+        return rows[length2];
+    }
+
+    /**
+     * Calculates score and end positions of local alignment without building the alignment itself. Returned values
+     * are equal to the score and the (inclusive) end positions of the alignment returned by {@link
+     * #alignLocal(AlignmentScoring, Sequence, Sequence)}.
+     *
+     * <p>Only a single row of each dynamic programming matrix is stored, row buffers are reused between calls
+     * performed from the same thread.</p>
+     *
+     * @param alignmentScoring scoring system
+     * @param seq1             first sequence
+     * @param seq2             second sequence
+     * @return score and positions of the last aligned letters in both sequences, or {@code null} if there is no
+     * local alignment with positive score
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult scoreLocal(AlignmentScoring<S> alignmentScoring,
+                                                                           S seq1, S seq2) {
+        return scoreLocal(alignmentScoring, seq1, seq2, scoreOnlyCache.get());
+    }
+
+    /**
+     * Calculates score and end positions of local alignment without building the alignment itself. Returned values
+     * are equal to the score and the (inclusive) end positions of the alignment returned by {@link
+     * #alignLocal(AlignmentScoring, Sequence, Sequence)}.
+     *
+     * @param alignmentScoring scoring system
+     * @param seq1             first sequence
+     * @param seq2             second sequence
+     * @param cache            cached array to store matrix rows in
+     * @return score and positions of the last aligned letters in both sequences, or {@code null} if there is no
+     * local alignment with positive score
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult scoreLocal(AlignmentScoring<S> alignmentScoring,
+                                                                           S seq1, S seq2, CachedIntArray cache) {
+        if (alignmentScoring instanceof AffineGapAlignmentScoring)
+            return scoreLocalAffine((AffineGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, cache);
+        if (alignmentScoring instanceof LinearGapAlignmentScoring)
+            return scoreLocalLinear((LinearGapAlignmentScoring<S>) alignmentScoring, seq1, seq2, cache);
+        throw new RuntimeException("Unknown scoring type.");
+    }
+
+    /**
+     * Score-only version of {@link #alignLocalLinear(LinearGapAlignmentScoring, Sequence, Sequence)}.
+     *
+     * @param scoring linear scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @param cache   cached array to store matrix row in
+     * @return score and positions of the last aligned letters in both sequences, or {@code null} if there is no
+     * local alignment with positive score
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult scoreLocalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                                 S seq1, S seq2, CachedIntArray cache) {
+        if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+
+        int length1 = seq1.size(),
+                length2 = seq2.size(),
+                gapPenalty = scoring.getGapPenalty();
+
+        int[] row = cache.get(length2 + 1);
+        for (int i = 0; i <= length2; ++i)
+            row[i] = 0;
+
+        int max = -1;
+        int i1End = 0;
+        int i2End = 0;
+
+        int i1, i2, diagonal, match, delete, insert, score;
+        byte c1;
+        for (i1 = 0; i1 < length1; ++i1) {
+            diagonal = 0;
+            c1 = seq1.codeAt(i1);
+            for (i2 = 0; i2 < length2; ++i2) {
+                match = diagonal + scoring.getScore(c1, seq2.codeAt(i2));
+                delete = (diagonal = row[i2 + 1]) + gapPenalty;
+                insert = row[i2] + gapPenalty;
+                row[i2 + 1] = score = Math.max(0, Math.max(match, Math.max(delete, insert)));
+
+                if (score > max && score > 0) {
+                    i1End = i1;
+                    i2End = i2;
+                    max = score;
+                }
+            }
+        }
+
+        //it's not possible to find any local alignment
+        if (max == -1)
+            return null;
+
+        return new BandedSemiLocalResult(i1End, i2End, max);
+    }
+
+    /**
+     * Score-only version of {@link #alignLocalAffine(AffineGapAlignmentScoring, Sequence, Sequence)}.
+     *
+     * @param scoring affine gap scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @param cache   cached array to store matrix rows in
+     * @return score and positions of the last aligned letters in both sequences, or {@code null} if there is no
+     * local alignment with positive score
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult scoreLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                                 S seq1, S seq2, CachedIntArray cache) {
+        if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+
+        int length1 = seq1.size(),
+                length2 = seq2.size(),
+                size2 = length2 + 1,
+                gapExtensionPenalty = scoring.getGapExtensionPenalty(),
+                gapOpenPenalty = scoring.getGapOpenPenalty() - gapExtensionPenalty;
+
+        // First size2 elements hold a row of the main matrix, the rest hold a row of gapIn2 matrix
+        int[] rows = cache.get(2 * size2);
+        for (int j = 0; j < size2; ++j) {
+            rows[j] = 0;
+            rows[size2 + j] = MIN_VALUE;
+        }
+
+        int max = -1;
+        int seq1end = 0;
+        int seq2end = 0;
+
+        int i, j, diagonal, gapIn1, gapIn2, score;
+        byte c1;
+        for (i = 1; i <= length1; ++i) {
+            diagonal = 0;
+            gapIn1 = MIN_VALUE;
+            c1 = seq1.codeAt(i - 1);
+            for (j = 1; j <= length2; ++j) {
+                gapIn1 = max(
+                        rows[j - 1] + gapOpenPenalty + gapExtensionPenalty,
+                        gapIn1 + gapExtensionPenalty);
+                rows[size2 + j] = gapIn2 = max(
+                        rows[j] + gapOpenPenalty + gapExtensionPenalty,
+                        rows[size2 + j] + gapExtensionPenalty);
+                score = max(0, diagonal + scoring.getScore(c1, seq2.codeAt(j - 1)), gapIn2, gapIn1);
+                diagonal = rows[j];
+                rows[j] = score;
+
+                if (score > max && score != 0) {
+                    seq1end = i;
+                    seq2end = j;
+                    max = score;
+                }
+            }
+        }
+
+        if (max == -1)
+            return null;
+
+        return new BandedSemiLocalResult(seq1end - 1, seq2end - 1, max);
+    }
 }
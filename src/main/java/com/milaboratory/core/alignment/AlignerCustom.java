@@ -514,7 +514,15 @@ public class AlignerCustom {
     }
 
     public static final class LinearMatrixCache implements MatrixCache {
-        final CachedIntArray cache = new CachedIntArray();
+        final CachedIntArray cache;
+
+        public LinearMatrixCache() {
+            this(new CachedIntArray());
+        }
+
+        LinearMatrixCache(CachedIntArray cache) {
+            this.cache = cache;
+        }
 
         Matrix getMatrix(int height, int width) {
             return new Matrix(cache.get(height * width), height, width);
@@ -522,11 +530,19 @@ public class AlignerCustom {
     }
 
     public static final class AffineMatrixCache implements MatrixCache {
-        private final CachedIntArray mainCache = new CachedIntArray(),
-                gapIn1Cache = new CachedIntArray(),
-                gapIn2Cache = new CachedIntArray();
+        private final CachedIntArray mainCache, gapIn1Cache, gapIn2Cache;
         Matrix main, gapIn1, gapIn2;
 
+        public AffineMatrixCache() {
+            this(new CachedIntArray(), new CachedIntArray(), new CachedIntArray());
+        }
+
+        AffineMatrixCache(CachedIntArray mainCache, CachedIntArray gapIn1Cache, CachedIntArray gapIn2Cache) {
+            this.mainCache = mainCache;
+            this.gapIn1Cache = gapIn1Cache;
+            this.gapIn2Cache = gapIn2Cache;
+        }
+
         void initMatrices(int height, int width) {
             this.main = new Matrix(mainCache.get(height * width), height, width);
             this.gapIn1 = new Matrix(gapIn1Cache.get(height * width), height, width);
@@ -15,90 +15,57 @@
  */
 package com.milaboratory.core.alignment;
 
-import java.util.Arrays;
+import java.util.ArrayDeque;
 
 /**
  * AlignmentCache - class which is providing cached array for {@link com.milaboratory.core.alignment.BandedLinearAligner}.
  *
  * <p>This cache helps to avoid creating new alignment array every time banded alignment is performed.</p>
+ *
+ * @deprecated use {@link AlignmentWorkspace}; this class is kept for compatibility and delegates to the pool of
+ * {@link AlignmentWorkspace} instances of the current thread
  */
+@Deprecated
 public final class AlignmentCache {
     private AlignmentCache() {
     }
 
-    static {
-        if (System.getProperty("enableAlignmentCache") != null)
-            enable();
-    }
-
-    /**
-     * CachedArray Provider
-     */
-    private static final ThreadLocal<CachedArrayProvider> local = new ThreadLocal<CachedArrayProvider>() {
-        @Override
-        protected CachedArrayProvider initialValue() {
-            return new CachedArrayProvider();
-        }
-    };
-    /**
-     * Flag which is indicating whether AlignemntCache is on or off
-     */
-    private static boolean enabled = false;
     /**
-     * Maximum number of CachedArrays in AlignemtnCache
+     * Workspaces acquired by {@link #get()} and not yet released
      */
-    private static int limit = 20;
+    private static final ThreadLocal<ArrayDeque<AlignmentWorkspace>> acquired =
+            new ThreadLocal<ArrayDeque<AlignmentWorkspace>>() {
+                @Override
+                protected ArrayDeque<AlignmentWorkspace> initialValue() {
+                    return new ArrayDeque<>();
+                }
+            };
 
     /**
-     * Enables CachedArray system
+     * Does nothing, pooling of arrays is always on (see {@link AlignmentWorkspace})
      */
     public static void enable() {
-        enabled = true;
     }
 
     /**
-     * Returns available CachedIntArray if AlignemntCache is on or creates new CachedIntArray otherwise
+     * Acquires workspace from the pool of the current thread and returns its array. Each call must be followed by a
+     * call to {@link #release()} in the same thread.
      *
      * @return CachedIntArray
      */
     public static CachedIntArray get() {
-        if (enabled)
-            return local.get().get();
-        else
-            return new CachedIntArray();
+        AlignmentWorkspace workspace = AlignmentWorkspace.acquire();
+        acquired.get().addLast(workspace);
+        return workspace.getArray();
     }
 
     /**
-     * Release CacheIntArray
+     * Returns the workspace acquired by the last {@link #get()} call to the pool
      */
     public static void release() {
-        if (enabled)
-            local.get().release();
-    }
-
-    private static final class CachedArrayProvider {
-        int pointer = 0;
-        CachedIntArray[] arrays = new CachedIntArray[3];
-
-        public CachedIntArray get() {
-            if (arrays.length == pointer) {
-                if (limit < pointer)
-                    throw new RuntimeException("Too many caches.");
-                arrays = Arrays.copyOf(arrays, pointer + 2);
-            }
-
-            CachedIntArray cia;
-            if ((cia = arrays[pointer]) == null)
-                cia = arrays[pointer] = new CachedIntArray();
-
-            ++pointer;
-
-            return cia;
-        }
-
-        public void release() {
-            if (--pointer < 0)
-                throw new IllegalStateException("All caches already released.");
-        }
+        AlignmentWorkspace workspace = acquired.get().pollLast();
+        if (workspace == null)
+            throw new IllegalStateException("All caches already released.");
+        workspace.close();
     }
 }
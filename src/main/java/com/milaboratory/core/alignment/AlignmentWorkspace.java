@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Working memory (dynamic programming matrices) for alignment algorithms, shared by {@link BandedLinearAligner},
+ * {@link BandedAffineAligner}, {@link AlignerCustom} and {@link Aligner}.
+ *
+ * <p>Workspaces are pooled per thread: {@link #acquire()} takes a workspace from the pool of the current thread (or
+ * creates a new one) and {@link #close()} returns it back, so typical usage is:</p>
+ *
+ * <pre>
+ * try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+ *     BandedAffineAligner.align0(scoring, seq1, seq2, ..., workspace.getBandedAffineCache());
+ * }
+ * </pre>
+ *
+ * <p>Acquisitions may be nested (each nested acquisition gets its own workspace). Memory retained by the pool is
+ * bounded: each thread keeps at most {@link #getMaxPooledWorkspaces()} free workspaces, and arrays larger than
+ * {@link #getMaxRetainedArraySize()} are dropped when workspace is returned to the pool.</p>
+ *
+ * <p>Global counters of acquisitions served without array allocation ({@link #getReuseCount()}) and acquisitions
+ * that required allocation of at least one array ({@link #getReallocationCount()}) are maintained to help tuning.</p>
+ *
+ * <p>Workspace itself is not thread-safe, and must be closed in the same thread it was acquired in.</p>
+ */
+public final class AlignmentWorkspace implements AutoCloseable {
+    /**
+     * Default maximal size (in ints) of a single array retained by pooled workspace (4 MiB)
+     */
+    public static final int DEFAULT_MAX_RETAINED_ARRAY_SIZE = 1 << 20;
+    /**
+     * Default maximal number of free workspaces kept per thread
+     */
+    public static final int DEFAULT_MAX_POOLED_WORKSPACES = 4;
+
+    private static volatile int maxRetainedArraySize =
+            Integer.getInteger("milib.alignmentWorkspace.maxArraySize", DEFAULT_MAX_RETAINED_ARRAY_SIZE);
+    private static volatile int maxPooledWorkspaces =
+            Integer.getInteger("milib.alignmentWorkspace.maxPooled", DEFAULT_MAX_POOLED_WORKSPACES);
+
+    private static final LongAdder reuseCount = new LongAdder(), reallocationCount = new LongAdder();
+
+    private static final ThreadLocal<ArrayDeque<AlignmentWorkspace>> pool =
+            new ThreadLocal<ArrayDeque<AlignmentWorkspace>>() {
+                @Override
+                protected ArrayDeque<AlignmentWorkspace> initialValue() {
+                    return new ArrayDeque<>();
+                }
+            };
+
+    final CachedIntArray main = new CachedIntArray(),
+            gapIn1 = new CachedIntArray(),
+            gapIn2 = new CachedIntArray();
+    private BandedAffineAligner.MatrixCache bandedAffineCache;
+    private AlignerCustom.LinearMatrixCache linearMatrixCache;
+    private AlignerCustom.AffineMatrixCache affineMatrixCache;
+    /**
+     * Total size of arrays at the moment of acquisition, -1 if workspace is not acquired
+     */
+    private long acquiredCapacity = -1;
+
+    private AlignmentWorkspace() {
+    }
+
+    /**
+     * Takes workspace from the pool of the current thread, or creates new one if the pool is empty.
+     *
+     * @return workspace, which must be closed after use
+     */
+    public static AlignmentWorkspace acquire() {
+        AlignmentWorkspace workspace = pool.get().pollLast();
+        if (workspace == null)
+            workspace = new AlignmentWorkspace();
+        workspace.acquiredCapacity = workspace.capacity();
+        return workspace;
+    }
+
+    /**
+     * Returns workspace to the pool of the current thread.
+     */
+    @Override
+    public void close() {
+        if (acquiredCapacity == -1)
+            throw new IllegalStateException("Workspace is already released.");
+        if (capacity() > acquiredCapacity)
+            reallocationCount.increment();
+        else
+            reuseCount.increment();
+        acquiredCapacity = -1;
+
+        int maxSize = maxRetainedArraySize;
+        main.trim(maxSize);
+        gapIn1.trim(maxSize);
+        gapIn2.trim(maxSize);
+
+        ArrayDeque<AlignmentWorkspace> threadPool = pool.get();
+        if (threadPool.size() < maxPooledWorkspaces)
+            threadPool.addLast(this);
+    }
+
+    private long capacity() {
+        return (long) main.capacity() + gapIn1.capacity() + gapIn2.capacity();
+    }
+
+    /**
+     * Returns array for algorithms with a single dynamic programming matrix (e.g. {@link BandedLinearAligner})
+     */
+    public CachedIntArray getArray() {
+        return main;
+    }
+
+    /**
+     * Returns matrix cache for {@link BandedAffineAligner}
+     */
+    public BandedAffineAligner.MatrixCache getBandedAffineCache() {
+        if (bandedAffineCache == null)
+            bandedAffineCache = new BandedAffineAligner.MatrixCache(main, gapIn1, gapIn2);
+        return bandedAffineCache;
+    }
+
+    /**
+     * Returns matrix cache for linear scoring algorithms of {@link AlignerCustom}
+     */
+    public AlignerCustom.LinearMatrixCache getLinearMatrixCache() {
+        if (linearMatrixCache == null)
+            linearMatrixCache = new AlignerCustom.LinearMatrixCache(main);
+        return linearMatrixCache;
+    }
+
+    /**
+     * Returns matrix cache for affine scoring algorithms of {@link AlignerCustom}
+     */
+    public AlignerCustom.AffineMatrixCache getAffineMatrixCache() {
+        if (affineMatrixCache == null)
+            affineMatrixCache = new AlignerCustom.AffineMatrixCache(main, gapIn1, gapIn2);
+        return affineMatrixCache;
+    }
+
+    /**
+     * Returns number of acquisitions served without allocation of new arrays
+     */
+    public static long getReuseCount() {
+        return reuseCount.sum();
+    }
+
+    /**
+     * Returns number of acquisitions that required allocation of at least one new array
+     */
+    public static long getReallocationCount() {
+        return reallocationCount.sum();
+    }
+
+    /**
+     * Resets reuse and reallocation counters
+     */
+    public static void resetCounters() {
+        reuseCount.reset();
+        reallocationCount.reset();
+    }
+
+    /**
+     * Returns maximal size (in ints) of a single array retained by pooled workspace. Can be set with
+     * "milib.alignmentWorkspace.maxArraySize" system property.
+     */
+    public static int getMaxRetainedArraySize() {
+        return maxRetainedArraySize;
+    }
+
+    /**
+     * Sets maximal size (in ints) of a single array retained by pooled workspace
+     */
+    public static void setMaxRetainedArraySize(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException();
+        maxRetainedArraySize = maxSize;
+    }
+
+    /**
+     * Returns maximal number of free workspaces kept per thread. Can be set with "milib.alignmentWorkspace.maxPooled"
+     * system property.
+     */
+    public static int getMaxPooledWorkspaces() {
+        return maxPooledWorkspaces;
+    }
+
+    /**
+     * Sets maximal number of free workspaces kept per thread, zero turns off pooling
+     */
+    public static void setMaxPooledWorkspaces(int maxPooled) {
+        if (maxPooled < 0)
+            throw new IllegalArgumentException();
+        maxPooledWorkspaces = maxPooled;
+    }
+}
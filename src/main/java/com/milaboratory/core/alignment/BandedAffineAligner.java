@@ -310,6 +310,143 @@ public class BandedAffineAligner {
         return new BandedSemiLocalResult(offset1 + length1 - 1 - maxI, offset2 + length2 - 1 - maxJ, maxScore);
     }
 
+    /**
+     * Score-only version of {@link #semiLocalRight0(AffineGapAlignmentScoring, NucleotideSequence,
+     * NucleotideSequence, int, int, int, int, int, MutationsBuilder, MatrixCache)}. Only a single row of main and
+     * gap matrices is kept, so no memory is allocated except the result object. Returned score and positions are the
+     * same as returned by the full version.
+     *
+     * @param scoring scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @param offset1 offset in first sequence
+     * @param length1 length of first sequence's part to be aligned
+     * @param offset2 offset in second sequence
+     * @param length2 length of second sequence's part to be aligned
+     * @param width   width of banded alignment matrix. In other terms max allowed number of indels
+     * @param cache   matrix cache
+     * @return object which contains positions at which alignment terminated (inclusive) and score
+     */
+    public static BandedSemiLocalResult scoreSemiLocalRight0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                             final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                             final int offset1, int length1, final int offset2, int length2,
+                                                             final int width, final MatrixCache cache) {
+        if (length1 == 0 || length2 == 0)
+            return new BandedSemiLocalResult(offset1 - 1, offset2 - 1, 0);
+
+        int minLength = Math.min(length1, length2) + width;
+        length1 = Math.min(length1, minLength);
+        length2 = Math.min(length2, minLength);
+
+        return scoreSemiLocal0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, false, cache);
+    }
+
+    /**
+     * Score-only version of {@link #semiLocalLeft0(AffineGapAlignmentScoring, NucleotideSequence,
+     * NucleotideSequence, int, int, int, int, int, MutationsBuilder, MatrixCache)}. Only a single row of main and gap
+     * matrices is kept, so no memory is allocated except the result object. Returned score and positions are the same
+     * as returned by the full version.
+     *
+     * @param scoring scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @param offset1 offset in first sequence
+     * @param length1 length of first sequence's part to be aligned
+     * @param offset2 offset in second sequence
+     * @param length2 length of second sequence's part to be aligned
+     * @param width   width of banded alignment matrix. In other terms max allowed number of indels
+     * @param cache   matrix cache
+     * @return object which contains positions at which alignment terminated (inclusive) and score
+     */
+    public static BandedSemiLocalResult scoreSemiLocalLeft0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                            final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                            int offset1, int length1, int offset2, int length2,
+                                                            final int width, final MatrixCache cache) {
+        if (length1 == 0 || length2 == 0)
+            return new BandedSemiLocalResult(offset1 + length1, offset2 + length2, 0);
+
+        offset1 += length1;
+        offset2 += length2;
+
+        int minLength = Math.min(length1, length2) + width;
+        length1 = Math.min(length1, minLength);
+        length2 = Math.min(length2, minLength);
+
+        offset1 -= length1;
+        offset2 -= length2;
+
+        return scoreSemiLocal0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, true, cache);
+    }
+
+    private static BandedSemiLocalResult scoreSemiLocal0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                         final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                         final int offset1, final int length1,
+                                                         final int offset2, final int length2,
+                                                         final int width, final boolean reversed,
+                                                         final MatrixCache cache) {
+        int size1 = length1 + 1,
+                size2 = length2 + 1;
+
+        final int rowFactor = BandedMatrix.rowFactor(size1, size2, width),
+                columnDelta = BandedMatrix.columnDelta(size1, size2, width);
+        final int gapOpenPenalty = scoring.getGapOpenPenalty();
+        final int gapExtensionPenalty = scoring.getGapExtensionPenalty();
+
+        // main[j] and gapIn2[j] hold values of (i, j) cells for the row being computed and values of (i - 1, j)
+        // cells for the rest of the row, gapIn1 value is only needed for the previous cell of the current row
+        final int[] main = cache.mainCache.get(size2);
+        final int[] gapIn2 = cache.gapIn2Cache.get(size2);
+
+        int i, j;
+        for (i = rowFactor - columnDelta; i > 0; --i) {
+            main[i] = gapOpenPenalty + gapExtensionPenalty * (i - 1);
+            gapIn2[i] = BandedMatrix.DEFAULT_VALUE;
+        }
+        main[0] = 0;
+
+        int match, gapIn1, gap2, diagonal, from, to, score;
+        byte c1;
+
+        int maxI = -1, maxJ = -1, maxScore = 0;
+
+        for (i = 0; i < length1; ++i) {
+            from = Math.max(0, i - columnDelta);
+            to = Math.min(i + rowFactor - columnDelta + 1, length2);
+            // Cell (i, to) is outside of the band
+            if (to - i > rowFactor - columnDelta) {
+                main[to] = BandedMatrix.DEFAULT_VALUE;
+                gapIn2[to] = BandedMatrix.DEFAULT_VALUE;
+            }
+            diagonal = main[from];
+            // Cell (i + 1, from) is either first column cell or lies outside of the band
+            main[from] = from == 0 && i + 1 <= columnDelta
+                    ? gapOpenPenalty + gapExtensionPenalty * i
+                    : BandedMatrix.DEFAULT_VALUE;
+            gapIn1 = BandedMatrix.DEFAULT_VALUE;
+            c1 = reversed ? seq1.codeAt(offset1 + length1 - 1 - i) : seq1.codeAt(offset1 + i);
+            for (j = from; j < to; ++j) {
+                match = diagonal + scoring.getScore(c1,
+                        reversed ? seq2.codeAt(offset2 + length2 - 1 - j) : seq2.codeAt(offset2 + j));
+
+                gapIn1 = Math.max(main[j] + gapOpenPenalty, gapIn1 + gapExtensionPenalty);
+                gap2 = Math.max((diagonal = main[j + 1]) + gapOpenPenalty, gapIn2[j + 1] + gapExtensionPenalty);
+
+                gapIn2[j + 1] = gap2;
+                main[j + 1] = score = Math.max(match, Math.max(gapIn1, gap2));
+
+                if (score > maxScore) {
+                    maxScore = score;
+                    maxI = i;
+                    maxJ = j;
+                }
+            }
+        }
+
+        return reversed
+                ? new BandedSemiLocalResult(offset1 + length1 - 1 - maxI, offset2 + length2 - 1 - maxJ, maxScore)
+                : new BandedSemiLocalResult(offset1 + maxI, offset2 + maxJ, maxScore);
+    }
+
     public static BandedSemiLocalResult semiGlobalRight0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
                                                          final NucleotideSequence seq1, final NucleotideSequence seq2,
                                                          final int offset1, final int length1, final int addedNucleotides1,
@@ -516,10 +653,13 @@ public class BandedAffineAligner {
                                                       final int offset2, final int length2,
                                                       final int width) {
         MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
-        int score = align0(scoring, seq1, seq2,
-                offset1, length1,
-                offset2, length2,
-                width, mutations, new MatrixCache());
+        int score;
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            score = align0(scoring, seq1, seq2,
+                    offset1, length1,
+                    offset2, length2,
+                    width, mutations, workspace.getBandedAffineCache());
+        }
         return new Alignment<>(seq1, mutations.createAndDestroy(),
                 new Range(offset1, offset1 + length1),
                 new Range(offset2, offset2 + length2), score);
@@ -536,8 +676,11 @@ public class BandedAffineAligner {
                                                                final int offset1, final int length1, final int offset2, final int length2,
                                                                final int width) {
         MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
-        BandedSemiLocalResult res = semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
-                mutations, new MatrixCache());
+        BandedSemiLocalResult res;
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            res = semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                    mutations, workspace.getBandedAffineCache());
+        }
         return new Alignment<>(seq1, mutations.createAndDestroy(),
                 new Range(offset1, res.sequence1Stop + 1),
                 new Range(offset2, res.sequence2Stop + 1), res.score);
@@ -554,8 +697,11 @@ public class BandedAffineAligner {
                                                               final int offset1, final int length1, final int offset2, final int length2,
                                                               final int width) {
         MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
-        BandedSemiLocalResult res = semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
-                mutations, new MatrixCache());
+        BandedSemiLocalResult res;
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            res = semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                    mutations, workspace.getBandedAffineCache());
+        }
         return new Alignment<>(seq1, mutations.createAndDestroy(),
                 new Range(res.sequence1Stop, offset1 + length1),
                 new Range(res.sequence2Stop, offset2 + length2), res.score);
@@ -573,10 +719,13 @@ public class BandedAffineAligner {
                                                                 final int offset2, final int length2, final int addedNucleotides2,
                                                                 final int width) {
         MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
-        BandedSemiLocalResult res = semiGlobalRight0(scoring, seq1, seq2,
-                offset1, length1, addedNucleotides1,
-                offset2, length2, addedNucleotides2,
-                width, mutations, new MatrixCache());
+        BandedSemiLocalResult res;
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            res = semiGlobalRight0(scoring, seq1, seq2,
+                    offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2,
+                    width, mutations, workspace.getBandedAffineCache());
+        }
         return new Alignment<>(seq1, mutations.createAndDestroy(),
                 new Range(offset1, res.sequence1Stop + 1),
                 new Range(offset2, res.sequence2Stop + 1), res.score);
@@ -588,23 +737,48 @@ public class BandedAffineAligner {
                                                                final int offset2, final int length2, final int addedNucleotides2,
                                                                final int width) {
         MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
-        BandedSemiLocalResult res = semiGlobalLeft0(scoring, seq1, seq2,
-                offset1, length1, addedNucleotides1,
-                offset2, length2, addedNucleotides2,
-                width, mutations, new MatrixCache());
+        BandedSemiLocalResult res;
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            res = semiGlobalLeft0(scoring, seq1, seq2,
+                    offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2,
+                    width, mutations, workspace.getBandedAffineCache());
+        }
         return new Alignment<>(seq1, mutations.createAndDestroy(),
                 new Range(res.sequence1Stop, offset1 + length1),
                 new Range(res.sequence2Stop, offset2 + length2), res.score);
     }
 
+    public static BandedSemiLocalResult scoreSemiLocalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                            final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                            final int offset1, final int length1, final int offset2, final int length2,
+                                                            final int width) {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            return scoreSemiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, workspace.getBandedAffineCache());
+        }
+    }
+
+    public static BandedSemiLocalResult scoreSemiLocalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                           final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                           final int offset1, final int length1, final int offset2, final int length2,
+                                                           final int width) {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            return scoreSemiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, workspace.getBandedAffineCache());
+        }
+    }
+
     public static final class MatrixCache {
         private final CachedIntArray mainCache, gapIn1Cache, gapIn2Cache;
         private BandedMatrix main, gapIn1, gapIn2;
 
         public MatrixCache() {
-            this.mainCache = new CachedIntArray();
-            this.gapIn1Cache = new CachedIntArray();
-            this.gapIn2Cache = new CachedIntArray();
+            this(new CachedIntArray(), new CachedIntArray(), new CachedIntArray());
+        }
+
+        MatrixCache(CachedIntArray mainCache, CachedIntArray gapIn1Cache, CachedIntArray gapIn2Cache) {
+            this.mainCache = mainCache;
+            this.gapIn1Cache = gapIn1Cache;
+            this.gapIn2Cache = gapIn2Cache;
         }
 
         private void prepareMatrices(int size1, int size2, int width,
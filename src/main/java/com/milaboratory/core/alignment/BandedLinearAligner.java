@@ -529,6 +529,122 @@ public final class BandedLinearAligner {
         return new BandedSemiLocalResult(offset1 + length1 - iStop, offset2 + length2 - jStop, max);
     }
 
+    /**
+     * Score-only version of {@link #alignSemiLocalLeft0(LinearGapAlignmentScoring, NucleotideSequence,
+     * NucleotideSequence, int, int, int, int, int, int, MutationsBuilder, CachedIntArray)}.
+     * <p/>
+     * <p>Scoring matrix is not stored, only a single row of the band is kept in {@code cachedArray}, so no memory is
+     * allocated except the result object. Returned score and positions are the same as returned by the full
+     * version.</p>
+     *
+     * @param scoring     scoring system
+     * @param seq1        first sequence
+     * @param seq2        second sequence
+     * @param offset1     offset in first sequence
+     * @param length1     length of first sequence's part to be aligned
+     * @param offset2     offset in second sequence
+     * @param length2     length of second sequence's part to be aligned
+     * @param width       width of banded alignment matrix. In other terms max allowed number of indels
+     * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
+     * @param cachedArray cached (created once) array to keep a row of alignment scoring matrix
+     * @return object which contains positions at which alignment terminated and score
+     */
+    public static BandedSemiLocalResult scoreSemiLocalLeft0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+                                                            int offset1, int length1, int offset2, int length2,
+                                                            int width, int stopPenalty, CachedIntArray cachedArray) {
+        return scoreSemiLocal0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, stopPenalty,
+                false, cachedArray);
+    }
+
+    /**
+     * Score-only version of {@link #alignSemiLocalRight0(LinearGapAlignmentScoring, NucleotideSequence,
+     * NucleotideSequence, int, int, int, int, int, int, MutationsBuilder, CachedIntArray)}.
+     * <p/>
+     * <p>Scoring matrix is not stored, only a single row of the band is kept in {@code cachedArray}, so no memory is
+     * allocated except the result object. Returned score and positions are the same as returned by the full
+     * version.</p>
+     *
+     * @param scoring     scoring system
+     * @param seq1        first sequence
+     * @param seq2        second sequence
+     * @param offset1     offset in first sequence
+     * @param length1     length of first sequence's part to be aligned
+     * @param offset2     offset in second sequence
+     * @param length2     length of second sequence's part to be aligned
+     * @param width       width of banded alignment matrix. In other terms max allowed number of indels
+     * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
+     * @param cachedArray cached (created once) array to keep a row of alignment scoring matrix
+     * @return object which contains positions at which alignment terminated and score
+     */
+    public static BandedSemiLocalResult scoreSemiLocalRight0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+                                                             int offset1, int length1, int offset2, int length2,
+                                                             int width, int stopPenalty, CachedIntArray cachedArray) {
+        return scoreSemiLocal0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, stopPenalty,
+                true, cachedArray);
+    }
+
+    private static BandedSemiLocalResult scoreSemiLocal0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+                                                         int offset1, int length1, int offset2, int length2,
+                                                         int width, int stopPenalty, boolean reversed,
+                                                         CachedIntArray cachedArray) {
+        if (offset1 < 0 || length1 < 0 || offset2 < 0 || length2 < 0)
+            throw new IllegalArgumentException();
+
+        int size1 = length1 + 1,
+                size2 = length2 + 1;
+
+        int matchReward = scoring.getScore((byte) 0, (byte) 0);
+        int gapPenalty = scoring.getGapPenalty();
+
+        int rowFactor = BandedMatrix.rowFactor(size1, size2, width),
+                columnDelta = BandedMatrix.columnDelta(size1, size2, width);
+
+        // row[j] holds matrix value (i, j) for the row being computed and (i - 1, j) for the rest of the row
+        int[] row = cachedArray.get(size2);
+
+        int i, j;
+        for (i = rowFactor - columnDelta; i > 0; --i)
+            row[i] = gapPenalty * i;
+        row[0] = 0;
+
+        int match, delete, insert, diagonal, from, to;
+        int max = 0;
+        int iStop = 0, jStop = 0;
+        int rowMax;
+
+        for (i = 0; i < length1; ++i) {
+            from = Math.max(0, i - columnDelta);
+            to = Math.min(i + rowFactor - columnDelta + 1, length2);
+            // Cell (i, to) is outside of the band
+            if (to - i > rowFactor - columnDelta)
+                row[to] = BandedMatrix.DEFAULT_VALUE;
+            diagonal = row[from];
+            // Cell (i + 1, from) is either first column cell or lies outside of the band
+            row[from] = from == 0 && i + 1 <= columnDelta ? gapPenalty * (i + 1) : BandedMatrix.DEFAULT_VALUE;
+            rowMax = Integer.MIN_VALUE;
+            byte c1 = reversed ? seq1.codeAt(offset1 + length1 - 1 - i) : seq1.codeAt(offset1 + i);
+            for (j = from; j < to; ++j) {
+                match = diagonal + scoring.getScore(c1,
+                        reversed ? seq2.codeAt(offset2 + length2 - 1 - j) : seq2.codeAt(offset2 + j));
+                delete = (diagonal = row[j + 1]) + gapPenalty;
+                insert = row[j] + gapPenalty;
+                row[j + 1] = match = Math.max(match, Math.max(delete, insert));
+                if (max < match) {
+                    iStop = i + 1;
+                    jStop = j + 1;
+                    max = match;
+                }
+                rowMax = Math.max(rowMax, match);
+            }
+            if (rowMax - i * matchReward < stopPenalty)
+                break;
+        }
+
+        return reversed
+                ? new BandedSemiLocalResult(offset1 + length1 - iStop, offset2 + length2 - jStop, max)
+                : new BandedSemiLocalResult(offset1 + iStop - 1, offset2 + jStop - 1, max);
+    }
+
 
     /**
      * Classical Banded Alignment
@@ -563,14 +679,12 @@ public final class BandedLinearAligner {
      */
     public static Alignment<NucleotideSequence> align(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
                                                       int offset1, int length1, int offset2, int length2, int width) {
-        try {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
             MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
             float score = align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
-                    mutations, AlignmentCache.get());
+                    mutations, workspace.getArray());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
                     new Range(offset1, offset1 + length1), new Range(offset2, offset2 + length2), score);
-        } finally {
-            AlignmentCache.release();
         }
     }
 
@@ -596,16 +710,14 @@ public final class BandedLinearAligner {
     public static Alignment<NucleotideSequence> alignLeftAdded(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
                                                                int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
                                                                int width) {
-        try {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
             MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
             BandedSemiLocalResult result = alignLeftAdded0(scoring, seq1, seq2,
                     offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2,
-                    width, mutations, AlignmentCache.get());
+                    width, mutations, workspace.getArray());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
                     new Range(result.sequence1Stop, offset1 + length1), new Range(result.sequence2Stop, offset2 + length2),
                     result.score);
-        } finally {
-            AlignmentCache.release();
         }
     }
 
@@ -629,16 +741,14 @@ public final class BandedLinearAligner {
     public static Alignment<NucleotideSequence> alignRightAdded(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
                                                                 int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
                                                                 int width) {
-        try {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
             MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
             BandedSemiLocalResult result = alignRightAdded0(scoring, seq1, seq2,
                     offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2,
-                    width, mutations, AlignmentCache.get());
+                    width, mutations, workspace.getArray());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
                     new Range(offset1, result.sequence1Stop + 1), new Range(offset2, result.sequence2Stop + 1),
                     result.score);
-        } finally {
-            AlignmentCache.release();
         }
     }
 
@@ -665,18 +775,16 @@ public final class BandedLinearAligner {
     public static Alignment<NucleotideSequence> alignSemiLocalLeft(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
                                                                    int offset1, int length1, int offset2, int length2,
                                                                    int width, int stopPenalty) {
-        try {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
             int minLength = Math.min(length1, length2) + width + 1;
             length1 = Math.min(length1, minLength);
             length2 = Math.min(length2, minLength);
             MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
             BandedSemiLocalResult result = alignSemiLocalLeft0(scoring, seq1, seq2,
-                    offset1, length1, offset2, length2, width, stopPenalty, mutations, AlignmentCache.get());
+                    offset1, length1, offset2, length2, width, stopPenalty, mutations, workspace.getArray());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
                     new Range(offset1, result.sequence1Stop + 1), new Range(offset2, result.sequence2Stop + 1),
                     result.score);
-        } finally {
-            AlignmentCache.release();
         }
     }
 
@@ -722,7 +830,7 @@ public final class BandedLinearAligner {
     public static Alignment<NucleotideSequence> alignSemiLocalRight(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
                                                                     int offset1, int length1, int offset2, int length2,
                                                                     int width, int stopPenalty) {
-        try {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
             int minLength = Math.min(length1, length2) + width + 1;
             int l1 = Math.min(length1, minLength);
             int l2 = Math.min(length2, minLength);
@@ -733,12 +841,10 @@ public final class BandedLinearAligner {
             MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
             BandedSemiLocalResult result = alignSemiLocalRight0(scoring, seq1, seq2,
                     offset1, length1, offset2, length2, width,
-                    stopPenalty, mutations, AlignmentCache.get());
+                    stopPenalty, mutations, workspace.getArray());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
                     new Range(result.sequence1Stop, offset1 + length1), new Range(result.sequence2Stop, offset2 + length2),
                     result.score);
-        } finally {
-            AlignmentCache.release();
         }
     }
 
@@ -760,4 +866,59 @@ public final class BandedLinearAligner {
                                                                     int width, int stopPenalty) {
         return alignSemiLocalRight(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width, stopPenalty);
     }
+
+    /**
+     * Returns score and end positions of the alignment produced by {@link #alignSemiLocalLeft(LinearGapAlignmentScoring,
+     * NucleotideSequence, NucleotideSequence, int, int, int, int, int, int)}, without calculating mutations.
+     *
+     * @param scoring     scoring system
+     * @param seq1        first sequence
+     * @param seq2        second sequence
+     * @param offset1     offset in first sequence
+     * @param length1     length of first sequence's part to be aligned
+     * @param offset2     offset in second sequence
+     * @param length2     length of second sequence's part to be aligned
+     * @param width       width of banded alignment matrix. In other terms max allowed number of indels
+     * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
+     * @return object which contains positions at which alignment terminated (inclusive) and score
+     */
+    public static BandedSemiLocalResult scoreSemiLocalLeft(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+                                                           int offset1, int length1, int offset2, int length2,
+                                                           int width, int stopPenalty) {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            int minLength = Math.min(length1, length2) + width + 1;
+            length1 = Math.min(length1, minLength);
+            length2 = Math.min(length2, minLength);
+            return scoreSemiLocalLeft0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, stopPenalty, workspace.getArray());
+        }
+    }
+
+    /**
+     * Returns score and start positions of the alignment produced by {@link #alignSemiLocalRight(LinearGapAlignmentScoring,
+     * NucleotideSequence, NucleotideSequence, int, int, int, int, int, int)}, without calculating mutations.
+     *
+     * @param scoring     scoring system
+     * @param seq1        first sequence
+     * @param seq2        second sequence
+     * @param offset1     offset in first sequence
+     * @param length1     length of first sequence's part to be aligned
+     * @param offset2     offset in second sequence
+     * @param length2     length of second sequence's part to be aligned
+     * @param width       width of banded alignment matrix. In other terms max allowed number of indels
+     * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
+     * @return object which contains positions at which alignment terminated (inclusive) and score
+     */
+    public static BandedSemiLocalResult scoreSemiLocalRight(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+                                                            int offset1, int length1, int offset2, int length2,
+                                                            int width, int stopPenalty) {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            int minLength = Math.min(length1, length2) + width + 1;
+            int l1 = Math.min(length1, minLength);
+            int l2 = Math.min(length2, minLength);
+            return scoreSemiLocalRight0(scoring, seq1, seq2,
+                    offset1 + length1 - l1, l1, offset2 + length2 - l2, l2, width,
+                    stopPenalty, workspace.getArray());
+        }
+    }
 }
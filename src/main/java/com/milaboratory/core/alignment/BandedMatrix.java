@@ -41,13 +41,32 @@ public final class BandedMatrix implements java.io.Serializable {
     private final int columnDelta;
 
     public BandedMatrix(CachedIntArray cachedArray, int size1, int size2, int width) {
+        this.rowFactor = rowFactor(size1, size2, width);
+        this.columnDelta = columnDelta(size1, size2, width);
+        this.matrix = cachedArray.get((size1 - 1) * rowFactor + columnDelta + size2);
+    }
+
+    /**
+     * Returns row length of the banded matrix with given parameters (see {@link #getRowFactor()})
+     */
+    static int rowFactor(int size1, int size2, int width) {
+        return 2 * clipWidth(size1, size2, width) + Math.abs(size2 - size1);
+    }
+
+    /**
+     * Returns negative offset of the first row of the banded matrix with given parameters (see {@link
+     * #getColumnDelta()})
+     */
+    static int columnDelta(int size1, int size2, int width) {
+        return -Math.min(0, size2 - size1) + clipWidth(size1, size2, width);
+    }
+
+    private static int clipWidth(int size1, int size2, int width) {
         if (width >= size1)
             width = size1 - 1;
         if (width >= size2)
             width = size2 - 1;
-        this.rowFactor = 2 * width + Math.abs(size2 - size1);
-        this.columnDelta = -Math.min(0, size2 - size1) + width;
-        this.matrix = cachedArray.get((size1 - 1) * rowFactor + columnDelta + size2);
+        return width;
     }
 
     public int getRowFactor() {
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NucleotideSequence;
+
+/**
+ * Bit-parallel (Myers / Hyyrö) calculation of unit-cost edit distance (Levenshtein distance) between nucleotide
+ * sequences.
+ *
+ * <p>Dynamic programming matrix is calculated column by column (one column per letter of the first sequence), each
+ * column is encoded by vertical deltas between adjacent cells, packed into one {@code long} per 64 letters of the
+ * second sequence (pattern). So for sequences shorter than 65 letters (e.g. CDR3s) a whole column is calculated by a
+ * dozen of bitwise operations. Longer patterns are split into 64-letter blocks, calculated one after another with
+ * horizontal delta carried between them.</p>
+ *
+ * <p>Two modes are supported:</p>
+ * <ul>
+ * <li><b>global</b> - both sequences are aligned entirely</li>
+ * <li><b>semi-global</b> - second sequence is aligned entirely to any subsequence of the first sequence (i.e. search
+ * of the second sequence inside the first one), in this mode only blocks that may contain cells with values not
+ * exceeding the threshold are calculated (Ukkonen cut-off)</li>
+ * </ul>
+ *
+ * <p>All methods take maximal allowed distance, calculation stops as soon as it becomes clear that distance exceeds
+ * the threshold. Letters are compared by their codes, so wildcards match only the same wildcards. Alignments are
+ * only built on request (see {@code align*} methods), they are calculated by {@link BandedLinearAligner} in a band
+ * of the width equal to the already known distance, and have score equal to minus edit distance.</p>
+ *
+ * <p>For many first sequences aligned against the same second sequence use {@link #createPattern(NucleotideSequence)}
+ * to avoid repeated preprocessing.</p>
+ */
+public final class BitParallelAligner {
+    private BitParallelAligner() {
+    }
+
+    private static final int ALPHABET_SIZE = NucleotideSequence.ALPHABET.size();
+
+    /**
+     * Unit-cost scoring used to build alignments: zero for match, minus one for mismatch (including wildcards) and gap
+     */
+    public static final LinearGapAlignmentScoring<NucleotideSequence> UNIT_COST_SCORING = createUnitCostScoring();
+
+    private static LinearGapAlignmentScoring<NucleotideSequence> createUnitCostScoring() {
+        int[] matrix = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+        for (int i = 0; i < ALPHABET_SIZE; ++i)
+            for (int j = 0; j < ALPHABET_SIZE; ++j)
+                matrix[i * ALPHABET_SIZE + j] = i == j ? 0 : -1;
+        return new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, matrix, -1);
+    }
+
+    /**
+     * Calculates edit distance between two sequences.
+     *
+     * @param seq1        first sequence
+     * @param seq2        second sequence
+     * @param maxDistance maximal allowed distance
+     * @return edit distance, or -1 if it is greater than {@code maxDistance}
+     */
+    public static int distanceGlobal(NucleotideSequence seq1, NucleotideSequence seq2, int maxDistance) {
+        return createPattern(seq2).distanceGlobal(seq1, maxDistance);
+    }
+
+    /**
+     * Calculates minimal edit distance between second sequence and subsequences of the first sequence.
+     *
+     * @param seq1        first sequence (text)
+     * @param seq2        second sequence (pattern)
+     * @param maxDistance maximal allowed distance
+     * @return edit distance, or -1 if it is greater than {@code maxDistance}
+     */
+    public static int distanceSemiGlobal(NucleotideSequence seq1, NucleotideSequence seq2, int maxDistance) {
+        return createPattern(seq2).distanceSemiGlobal(seq1, maxDistance);
+    }
+
+    /**
+     * Builds global alignment with minimal number of edits.
+     *
+     * @param seq1        first sequence
+     * @param seq2        second sequence
+     * @param maxDistance maximal allowed distance
+     * @return alignment, or {@code null} if edit distance is greater than {@code maxDistance}
+     */
+    public static Alignment<NucleotideSequence> alignGlobal(NucleotideSequence seq1, NucleotideSequence seq2,
+                                                            int maxDistance) {
+        return createPattern(seq2).alignGlobal(seq1, maxDistance);
+    }
+
+    /**
+     * Builds alignment of the whole second sequence with a subsequence of the first sequence, having minimal number
+     * of edits. If there are several such subsequences, the one with the leftmost end is selected.
+     *
+     * @param seq1        first sequence (text)
+     * @param seq2        second sequence (pattern)
+     * @param maxDistance maximal allowed distance
+     * @return alignment, or {@code null} if edit distance is greater than {@code maxDistance}
+     */
+    public static Alignment<NucleotideSequence> alignSemiGlobal(NucleotideSequence seq1, NucleotideSequence seq2,
+                                                                int maxDistance) {
+        return createPattern(seq2).alignSemiGlobal(seq1, maxDistance);
+    }
+
+    /**
+     * Preprocesses second sequence (pattern)
+     *
+     * @param seq2 second sequence
+     * @return pattern
+     */
+    public static Pattern createPattern(NucleotideSequence seq2) {
+        return new Pattern(seq2, false);
+    }
+
+    /**
+     * Second sequence with precomputed match bit-masks for each letter of the alphabet, together with working
+     * buffers.
+     *
+     * <p>This class is not thread-safe, each thread should use its own pattern.</p>
+     */
+    public static final class Pattern {
+        /**
+         * Pattern sequence
+         */
+        final NucleotideSequence sequence;
+        /**
+         * Whether letters of the sequence are taken in reversed order
+         */
+        final boolean reversed;
+        /**
+         * Pattern size and number of 64-letter blocks
+         */
+        final int size, blocks;
+        /**
+         * Bit i of {@code peq[code * blocks + b]} is set if letter {@code 64 * b + i} of the pattern has the code
+         */
+        final long[] peq;
+        /**
+         * Bit corresponding to the last letter of the pattern in the last block
+         */
+        final long lastBit;
+        /**
+         * Working buffers for multi-block calculation: positive and negative vertical deltas and values of the bottom
+         * cells of the blocks
+         */
+        final long[] pv, mv;
+        final int[] score;
+        /**
+         * Pattern with reversed letter order, created on first semi-global alignment
+         */
+        Pattern reversedPattern;
+
+        Pattern(NucleotideSequence sequence, boolean reversed) {
+            this.sequence = sequence;
+            this.reversed = reversed;
+            this.size = sequence.size();
+            this.blocks = Math.max(1, (size + 63) >>> 6);
+            this.peq = new long[ALPHABET_SIZE * blocks];
+            for (int i = 0; i < size; ++i) {
+                int code = sequence.codeAt(reversed ? size - 1 - i : i);
+                peq[code * blocks + (i >>> 6)] |= 1L << i;
+            }
+            this.lastBit = size == 0 ? 0 : 1L << (size - 1);
+            this.pv = new long[blocks];
+            this.mv = new long[blocks];
+            this.score = new int[blocks];
+        }
+
+        /**
+         * Returns pattern sequence
+         */
+        public NucleotideSequence getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Calculates edit distance between the sequence and the pattern.
+         *
+         * @param seq1        first sequence
+         * @param maxDistance maximal allowed distance
+         * @return edit distance, or -1 if it is greater than {@code maxDistance}
+         */
+        public int distanceGlobal(NucleotideSequence seq1, int maxDistance) {
+            checkDistance(maxDistance);
+            int n = seq1.size();
+            if (Math.abs(n - size) > maxDistance)
+                return -1;
+            if (size == 0)
+                return n;
+            return blocks == 1
+                    ? globalSingleWord(seq1, n, maxDistance)
+                    : globalMultiWord(seq1, n, maxDistance);
+        }
+
+        /**
+         * Calculates minimal edit distance between the pattern and subsequences of the sequence.
+         *
+         * @param seq1        first sequence (text)
+         * @param maxDistance maximal allowed distance
+         * @return edit distance, or -1 if it is greater than {@code maxDistance}
+         */
+        public int distanceSemiGlobal(NucleotideSequence seq1, int maxDistance) {
+            checkDistance(maxDistance);
+            long result = semiGlobal(seq1, 0, seq1.size(), maxDistance);
+            return result == -1 ? -1 : (int) (result >>> 32);
+        }
+
+        /**
+         * Builds global alignment with minimal number of edits.
+         *
+         * @param seq1        first sequence
+         * @param maxDistance maximal allowed distance
+         * @return alignment, or {@code null} if edit distance is greater than {@code maxDistance}
+         */
+        public Alignment<NucleotideSequence> alignGlobal(NucleotideSequence seq1, int maxDistance) {
+            int distance = distanceGlobal(seq1, maxDistance);
+            if (distance == -1)
+                return null;
+            return BandedLinearAligner.align(UNIT_COST_SCORING, seq1, sequence, distance);
+        }
+
+        /**
+         * Builds alignment of the whole pattern with a subsequence of the sequence, having minimal number of edits. If
+         * there are several such subsequences, the one with the leftmost end is selected.
+         *
+         * @param seq1        first sequence (text)
+         * @param maxDistance maximal allowed distance
+         * @return alignment, or {@code null} if edit distance is greater than {@code maxDistance}
+         */
+        public Alignment<NucleotideSequence> alignSemiGlobal(NucleotideSequence seq1, int maxDistance) {
+            checkDistance(maxDistance);
+            if (reversed)
+                throw new IllegalStateException();
+            if (size == 0)
+                return new Alignment<>(seq1, Mutations.EMPTY_NUCLEOTIDE_MUTATIONS, new Range(0, 0), new Range(0, 0), 0);
+            long result = semiGlobal(seq1, 0, seq1.size(), maxDistance);
+            if (result == -1)
+                return null;
+            int distance = (int) (result >>> 32), to = (int) result;
+
+            // Start of the aligned subsequence is found by the same search of the reversed pattern in the reversed
+            // text ending at the found position; any end found at the same distance is suitable
+            if (reversedPattern == null)
+                reversedPattern = new Pattern(sequence, true);
+            long reverseResult = reversedPattern.semiGlobal(seq1, 0, to, distance);
+            assert reverseResult != -1 && (int) (reverseResult >>> 32) == distance;
+            int from = to - (int) reverseResult;
+
+            return BandedLinearAligner.align(UNIT_COST_SCORING, seq1, sequence,
+                    from, to - from, 0, size, distance);
+        }
+
+        private int globalSingleWord(NucleotideSequence seq1, int n, int maxDistance) {
+            final long[] peq = this.peq;
+            final long lastBit = this.lastBit;
+            long pv = -1L, mv = 0L, eq, xv, xh, ph, mh;
+            int score = size;
+            for (int j = 0; j < n; ++j) {
+                eq = peq[seq1.codeAt(j)];
+                xv = eq | mv;
+                xh = (((eq & pv) + pv) ^ pv) | eq;
+                ph = mv | ~(xh | pv);
+                mh = pv & xh;
+                if ((ph & lastBit) != 0)
+                    ++score;
+                else if ((mh & lastBit) != 0)
+                    --score;
+                // Top row of the matrix is 0, 1, 2, ..., so horizontal delta in the top row is +1
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+                // Value in the last cell can't decrease by more than one per column
+                if (score - (n - j - 1) > maxDistance)
+                    return -1;
+            }
+            return score;
+        }
+
+        private int globalMultiWord(NucleotideSequence seq1, int n, int maxDistance) {
+            final int last = blocks - 1;
+            for (int b = 0; b <= last; ++b) {
+                pv[b] = -1L;
+                mv[b] = 0L;
+                score[b] = Math.min(size, (b + 1) << 6);
+            }
+            for (int j = 0; j < n; ++j) {
+                int offset = seq1.codeAt(j) * blocks, hout = 1;
+                for (int b = 0; b <= last; ++b) {
+                    hout = advanceBlock(b, peq[offset + b], hout);
+                    score[b] += hout;
+                }
+                if (score[last] - (n - j - 1) > maxDistance)
+                    return -1;
+            }
+            return score[last];
+        }
+
+        /**
+         * Searches the pattern in the {@code [from, to)} range of the sequence (for reversed pattern the range is
+         * scanned from right to left).
+         *
+         * @return {@code (distance << 32) | end}, where end is the number of letters of the range scanned up to the end
+         * of the aligned subsequence (i.e. the pattern is aligned to {@code [?, from + end)} or, for reversed pattern,
+         * to {@code [to - end, ?)}), or -1 if distance is greater than {@code maxDistance}
+         */
+        long semiGlobal(NucleotideSequence seq1, int from, int to, int maxDistance) {
+            if (size == 0)
+                return 0L;
+            if (from == to)
+                return size <= maxDistance ? ((long) size) << 32 : -1;
+            if (blocks == 1)
+                return semiGlobalSingleWord(seq1, from, to, maxDistance);
+            return semiGlobalMultiWord(seq1, from, to, maxDistance);
+        }
+
+        private long semiGlobalSingleWord(NucleotideSequence seq1, int from, int to, int maxDistance) {
+            final long[] peq = this.peq;
+            final long lastBit = this.lastBit;
+            final int n = to - from;
+            long pv = -1L, mv = 0L, eq, xv, xh, ph, mh;
+            int score = size, best = Integer.MAX_VALUE, bestEnd = -1;
+            for (int j = 0; j < n; ++j) {
+                eq = peq[seq1.codeAt(reversed ? to - 1 - j : from + j)];
+                xv = eq | mv;
+                xh = (((eq & pv) + pv) ^ pv) | eq;
+                ph = mv | ~(xh | pv);
+                mh = pv & xh;
+                if ((ph & lastBit) != 0)
+                    ++score;
+                else if ((mh & lastBit) != 0)
+                    --score;
+                // Top row of the matrix is all zeros, so horizontal delta in the top row is 0
+                ph <<= 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+                if (score < best && score <= maxDistance) {
+                    best = score;
+                    bestEnd = j + 1;
+                    if (score == 0)
+                        break;
+                }
+            }
+            if (best == Integer.MAX_VALUE)
+                return -1;
+            return ((long) best) << 32 | bestEnd;
+        }
+
+        private long semiGlobalMultiWord(NucleotideSequence seq1, int from, int to, int maxDistance) {
+            final int n = to - from, last = blocks - 1;
+            // Blocks below lastBlock contain only cells with values greater than maxDistance
+            int lastBlock = maxDistance >= size ? last : Math.min(last, maxDistance >>> 6);
+            for (int b = 0; b <= lastBlock; ++b) {
+                pv[b] = -1L;
+                mv[b] = 0L;
+                score[b] = blockEnd(b);
+            }
+            int best = Integer.MAX_VALUE, bestEnd = -1;
+            for (int j = 0; j < n; ++j) {
+                int offset = seq1.codeAt(reversed ? to - 1 - j : from + j) * blocks, hout = 0;
+                for (int b = 0; b <= lastBlock; ++b) {
+                    hout = advanceBlock(b, peq[offset + b], hout);
+                    score[b] += hout;
+                }
+
+                // Value of the bottom cell of the last block in the previous column can't be less than maxDistance
+                // (as the block below contains only greater values), so the first cell of the next block may
+                // only reach the threshold by match or via the decreased bottom cell
+                if (lastBlock < last && score[lastBlock] - hout <= maxDistance
+                        && ((peq[offset + lastBlock + 1] & 1L) != 0 || hout < 0)) {
+                    ++lastBlock;
+                    // Cells of the new block in the previous column are initialized by upper bounds of their
+                    // values, which are anyway greater than maxDistance
+                    pv[lastBlock] = -1L;
+                    mv[lastBlock] = 0L;
+                    score[lastBlock] = score[lastBlock - 1] - hout + blockEnd(lastBlock) - blockEnd(lastBlock - 1);
+                    hout = advanceBlock(lastBlock, peq[offset + lastBlock], hout);
+                    score[lastBlock] += hout;
+                }
+
+                // Dropping blocks with all values greater than maxDistance (the first block is always calculated)
+                while (lastBlock > 0 && score[lastBlock] - (blockEnd(lastBlock) - blockEnd(lastBlock - 1)) >= maxDistance)
+                    --lastBlock;
+
+                if (lastBlock == last && score[last] < best && score[last] <= maxDistance) {
+                    best = score[last];
+                    bestEnd = j + 1;
+                    if (best == 0)
+                        break;
+                }
+            }
+            if (best == Integer.MAX_VALUE)
+                return -1;
+            return ((long) best) << 32 | bestEnd;
+        }
+
+        /**
+         * Number of pattern letters in blocks {@code 0..b}
+         */
+        private int blockEnd(int b) {
+            return Math.min(size, (b + 1) << 6);
+        }
+
+        /**
+         * Calculates next column of the block.
+         *
+         * @param b   block index
+         * @param eq  match mask of the block for the current letter of the first sequence
+         * @param hin horizontal delta of the cell above the block (-1, 0 or +1)
+         * @return horizontal delta of the bottom cell of the block
+         */
+        private int advanceBlock(int b, long eq, int hin) {
+            long pv = this.pv[b], mv = this.mv[b];
+            long highBit = b == blocks - 1 ? lastBit : Long.MIN_VALUE;
+            long xv = eq | mv;
+            if (hin < 0)
+                eq |= 1L;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            int hout = (ph & highBit) != 0 ? 1 : (mh & highBit) != 0 ? -1 : 0;
+            ph <<= 1;
+            mh <<= 1;
+            if (hin < 0)
+                mh |= 1L;
+            else if (hin > 0)
+                ph |= 1L;
+            this.pv[b] = mh | ~(xv | ph);
+            this.mv[b] = ph & xv;
+            return hout;
+        }
+
+        private static void checkDistance(int maxDistance) {
+            if (maxDistance < 0)
+                throw new IllegalArgumentException("Negative maxDistance.");
+        }
+    }
+}
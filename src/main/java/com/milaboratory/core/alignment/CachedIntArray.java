@@ -34,4 +34,19 @@ public final class CachedIntArray implements java.io.Serializable {
 
         return array;
     }
+
+    /**
+     * Returns size of currently allocated array (zero if no array is allocated yet)
+     */
+    int capacity() {
+        return array == null ? 0 : array.length;
+    }
+
+    /**
+     * Drops allocated array if its size exceeds {@code maxSize}
+     */
+    void trim(int maxSize) {
+        if (array != null && array.length > maxSize)
+            array = null;
+    }
 }
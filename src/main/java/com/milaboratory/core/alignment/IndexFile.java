@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary file with prebuilt kMer indices (see {@link SeedIndex}) and accompanying data (parameters, reference
+ * sequences, payloads, etc.).
+ *
+ * <p>File layout:</p>
+ * <pre>
+ *     magic (8 bytes) | version (int) | header size (int) | number of indices (int) | header (PrimitivIO) | padding
+ *     index 1 | index 2 | ...
+ * </pre>
+ *
+ * <p>Each index is stored as {@code recordSize (int) | numberOfKMers (int) | number of ints in records (int) |
+ * reserved (int) | offsets (int[numberOfKMers + 1]) | records (int[]) | padding}. All numbers are little-endian and
+ * all indices are aligned to 8 bytes, so that records can be memory-mapped directly. Indices loaded by {@link
+ * Reader} keep their records in read-only mapped memory, so several processes loading the same file share the same
+ * physical memory and loading time does not depend on the size of the index.</p>
+ */
+public final class IndexFile {
+    private static final byte[] MAGIC = "MiLIndex".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Current version of the file format
+     */
+    public static final int VERSION = 1;
+    private static final int PREAMBLE_SIZE = MAGIC.length + 3 * 4;
+    private static final int INDEX_HEADER_SIZE = 4 * 4;
+
+    private IndexFile() {
+    }
+
+    private static long align8(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Writes index file. Header data should be written to {@link #getHeader()} and indices should be added with
+     * {@link #addIndex(SeedIndex)}, whole file is written on {@link #close()}.
+     */
+    public static final class Writer implements AutoCloseable {
+        final File file;
+        final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        final PrimitivO header = new PrimitivO(headerBytes);
+        final List<SeedIndex> indices = new ArrayList<>();
+        boolean closed = false;
+
+        /**
+         * @param file target file
+         * @param type type of the stored object, checked on read
+         */
+        public Writer(File file, String type) {
+            this.file = file;
+            header.writeUTF(type);
+        }
+
+        /**
+         * Output for header data
+         */
+        public PrimitivO getHeader() {
+            return header;
+        }
+
+        /**
+         * Adds index to be written to the file
+         */
+        public void addIndex(SeedIndex index) {
+            indices.add(index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            header.close();
+            byte[] headerData = headerBytes.toByteArray();
+
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                preamble.put(MAGIC).putInt(VERSION).putInt(headerData.length).putInt(indices.size());
+                preamble.flip();
+                writeFully(channel, preamble);
+                writeFully(channel, ByteBuffer.wrap(headerData));
+                pad(channel, buffer);
+
+                for (SeedIndex index : indices) {
+                    int[] offsets = index.offsets();
+                    int numberOfInts = offsets[offsets.length - 1];
+                    buffer.clear();
+                    buffer.putInt(index.getRecordSize()).putInt(index.getNumberOfKMers())
+                            .putInt(numberOfInts).putInt(0);
+                    for (int offset : offsets)
+                        buffer = putInt(channel, buffer, offset);
+                    for (int i = 0; i < numberOfInts; ++i)
+                        buffer = putInt(channel, buffer, index.get(i));
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                    pad(channel, buffer);
+                }
+            }
+        }
+
+        private static ByteBuffer putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+            return buffer.putInt(value);
+        }
+
+        private static void pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+            long position = channel.position();
+            buffer.clear();
+            buffer.put(new byte[(int) (align8(position) - position)]);
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads index file written by {@link Writer}. Indices must be read in the same order they were written.
+     */
+    public static final class Reader implements AutoCloseable {
+        final FileChannel channel;
+        final PrimitivI header;
+        final int numberOfIndices;
+        int indicesRead = 0;
+        long position;
+
+        /**
+         * @param file index file
+         * @param type expected type of the stored object
+         * @throws IOException if file can't be read or has wrong format, version or type
+         */
+        public Reader(File file, String type) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                ByteBuffer preamble = map(0, PREAMBLE_SIZE);
+                byte[] magic = new byte[MAGIC.length];
+                preamble.get(magic);
+                if (!Arrays.equals(magic, MAGIC))
+                    throw new IOException("Not an index file: " + file);
+                int version = preamble.getInt();
+                if (version != VERSION)
+                    throw new IOException("Unsupported index file version " + version + " (expected " + VERSION
+                            + "): " + file);
+                int headerSize = preamble.getInt();
+                this.numberOfIndices = preamble.getInt();
+
+                byte[] headerData = new byte[headerSize];
+                map(PREAMBLE_SIZE, headerSize).get(headerData);
+                this.header = new PrimitivI(new ByteArrayInputStream(headerData));
+                String actualType = header.readUTF();
+                if (!type.equals(actualType))
+                    throw new IOException("Wrong index file type " + actualType + " (expected " + type + "): " + file);
+                this.position = align8(PREAMBLE_SIZE + headerSize);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private ByteBuffer map(long position, long size) throws IOException {
+            if (position + size > channel.size())
+                throw new IOException("Truncated index file.");
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Input for header data
+         */
+        public PrimitivI getHeader() {
+            return header;
+        }
+
+        /**
+         * Returns number of indices stored in the file
+         */
+        public int getNumberOfIndices() {
+            return numberOfIndices;
+        }
+
+        /**
+         * Returns next index, records of the index are memory-mapped
+         */
+        public SeedIndex nextIndex() throws IOException {
+            if (indicesRead == numberOfIndices)
+                throw new IOException("No more indices in the file.");
+            ++indicesRead;
+
+            ByteBuffer indexHeader = map(position, INDEX_HEADER_SIZE);
+            int recordSize = indexHeader.getInt(),
+                    numberOfKMers = indexHeader.getInt(),
+                    numberOfInts = indexHeader.getInt();
+            position += INDEX_HEADER_SIZE;
+
+            int[] offsets = new int[numberOfKMers + 1];
+            map(position, 4L * offsets.length).asIntBuffer().get(offsets);
+            position += 4L * offsets.length;
+            if (offsets[numberOfKMers] != numberOfInts)
+                throw new IOException("Corrupted index file.");
+
+            IntBuffer records = map(position, 4L * numberOfInts).asIntBuffer();
+            position = align8(position + 4L * numberOfInts);
+            return SeedIndex.mapped(recordSize, offsets, records);
+        }
+
+        /**
+         * Closes the file, mapped memory stays valid until all indices read from this file are garbage collected.
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.Sequence;
+
+import static com.milaboratory.core.alignment.Aligner.MIN_VALUE;
+
+/**
+ * Linear-memory implementations of global and local alignment algorithms from {@link Aligner} (Hirschberg
+ * divide-and-conquer algorithm for linear gap scoring, and Myers-Miller for affine gap scoring).
+ *
+ * <p>Results are identical to the results of corresponding full-matrix algorithms, including the choice between
+ * equally scored alignments. To achieve that, problem is divided not by the classical "middle row maximum", but by the
+ * exact node where the path, that would be found by the full-matrix traceback, crosses the middle row. For each node
+ * of the lower half of the matrix, forward pass propagates the middle row node that the traceback started from this
+ * node would reach first (traceback decisions depend only on the forward values of the node and its predecessors).
+ * Sub-problems are then solved recursively with the same scoring (sub-problem traceback makes the same decisions as
+ * the full traceback along the path), and sub-problems smaller than {@code baseCells} cells are solved with the
+ * full-matrix algorithm.</p>
+ *
+ * <p>Memory footprint is {@code O(seq2.size() + baseCells)}, running time is approximately two times larger than for
+ * full-matrix algorithms.</p>
+ */
+final class LinearSpaceAligner {
+    private LinearSpaceAligner() {
+    }
+
+    /**
+     * Sub-problems with not more than this number of matrix cells are solved using full-matrix algorithm
+     */
+    static final int DEFAULT_BASE_CELLS = 1 << 16;
+
+    // Traceback steps and states
+    static final int DIAG = 0, DELETION = 1, INSERTION = 2;
+    static final int MATCH = 0, GAP_IN_1 = 1, GAP_IN_2 = 2;
+
+    /**
+     * Encodes matrix node for the propagation in forward pass
+     */
+    private static long node(int row, int col, int kind) {
+        return ((long) row) << 32 | (col << 2) | kind;
+    }
+
+    private static int nodeRow(long node) {
+        return (int) (node >>> 32);
+    }
+
+    private static int nodeCol(long node) {
+        return ((int) node) >>> 2;
+    }
+
+    private static int nodeKind(long node) {
+        return ((int) node) & 3;
+    }
+
+    /**
+     * Returns {@literal true} if global affine alignment can be performed in linear space (gap opening penalty is not
+     * less than gap extension penalty, so gap can't be split into several gaps to increase the score).
+     */
+    static boolean isApplicableForGlobal(AffineGapAlignmentScoring<?> scoring) {
+        return scoring.getGapOpenPenalty() <= scoring.getGapExtensionPenalty();
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignGlobalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                  S seq1, S seq2) {
+        return alignGlobalLinear(scoring, seq1, seq2, DEFAULT_BASE_CELLS);
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignGlobalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                  S seq1, S seq2, int baseCells) {
+        Linear<S> aligner = new Linear<>(scoring, seq1, seq2, baseCells);
+        int score = aligner.solve(0, 0, seq1.size(), seq2.size());
+        return new Alignment<>(seq1, aligner.builder.createAndDestroy(),
+                new Range(0, seq1.size()), new Range(0, seq2.size()), score);
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignLocalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                 S seq1, S seq2) {
+        return alignLocalLinear(scoring, seq1, seq2, DEFAULT_BASE_CELLS);
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignLocalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                 S seq1, S seq2, int baseCells) {
+        Linear<S> aligner = new Linear<>(scoring, seq1, seq2, baseCells);
+        return aligner.alignLocal();
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                  S seq1, S seq2) {
+        return alignGlobalAffine(scoring, seq1, seq2, DEFAULT_BASE_CELLS);
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                  S seq1, S seq2, int baseCells) {
+        if (!isApplicableForGlobal(scoring))
+            throw new IllegalArgumentException("Gap open penalty is greater than gap extension penalty.");
+        Affine<S> aligner = new Affine<>(scoring, seq1, seq2, baseCells);
+        int score = aligner.solve(0, 0, MATCH, seq1.size(), seq2.size(), MATCH);
+        return new Alignment<>(seq1, aligner.builder.createAndDestroy(),
+                new Range(0, seq1.size()), new Range(0, seq2.size()), score);
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                 S seq1, S seq2) {
+        return alignLocalAffine(scoring, seq1, seq2, DEFAULT_BASE_CELLS);
+    }
+
+    static <S extends Sequence<S>> Alignment<S> alignLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                 S seq1, S seq2, int baseCells) {
+        Affine<S> aligner = new Affine<>(scoring, seq1, seq2, baseCells);
+        return aligner.alignLocal();
+    }
+
+    /**
+     * Linear gap scoring. Matrix nodes are cells, traceback preference: substitution, deletion, insertion (see {@link
+     * Aligner#alignGlobalLinear(LinearGapAlignmentScoring, Sequence, Sequence)}).
+     */
+    private static final class Linear<S extends Sequence<S>> {
+        final S seq1, seq2;
+        final LinearGapAlignmentScoring<S> scoring;
+        final int gap;
+        final int baseCells;
+        final MutationsBuilder<S> builder;
+        // Rolling rows (reused by all sub-problems)
+        int[] prev, cur;
+        int[] crossPrev, crossCur;
+        // Matrix for sub-problems solved directly
+        int[] matrix;
+
+        Linear(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2, int baseCells) {
+            this.seq1 = seq1;
+            this.seq2 = seq2;
+            this.scoring = scoring;
+            this.gap = scoring.getGapPenalty();
+            this.baseCells = baseCells;
+            this.builder = new MutationsBuilder<>(seq1.getAlphabet(), true);
+            int width = seq2.size() + 1;
+            this.prev = new int[width];
+            this.cur = new int[width];
+            this.crossPrev = new int[width];
+            this.crossCur = new int[width];
+            this.matrix = new int[0];
+        }
+
+        int score(int row, int col) {
+            return scoring.getScore(seq1.codeAt(row - 1), seq2.codeAt(col - 1));
+        }
+
+        /**
+         * Aligns seq1[r0, r1) with seq2[c0, c1) globally, appends mutations to the builder and returns score.
+         */
+        int solve(int r0, int c0, int r1, int c1) {
+            if (r1 - r0 < 2 || (long) (r1 - r0 + 1) * (c1 - c0 + 1) <= baseCells)
+                return solveDirectly(r0, c0, r1, c1);
+
+            int mid = (r0 + r1) >>> 1, w = c1 - c0;
+            int[] prev = this.prev, cur = this.cur, crossPrev = this.crossPrev, crossCur = this.crossCur, t;
+
+            for (int b = 0; b <= w; ++b)
+                prev[b] = gap * b;
+
+            for (int a = r0 + 1; a <= r1; ++a) {
+                cur[0] = gap * (a - r0);
+                if (a > mid)
+                    crossCur[0] = crossPrev[0];
+                for (int b = 1; b <= w; ++b) {
+                    int match = prev[b - 1] + score(a, c0 + b),
+                            delete = prev[b] + gap,
+                            insert = cur[b - 1] + gap,
+                            v = Math.max(match, Math.max(delete, insert));
+                    cur[b] = v;
+                    if (a > mid)
+                        crossCur[b] = v == match
+                                ? crossPrev[b - 1]
+                                : v == delete ? crossPrev[b] : crossCur[b - 1];
+                }
+                if (a == mid)
+                    for (int b = 0; b <= w; ++b)
+                        crossCur[b] = b;
+                t = prev;
+                prev = cur;
+                cur = t;
+                t = crossPrev;
+                crossPrev = crossCur;
+                crossCur = t;
+            }
+
+            int score = prev[w], c = c0 + crossPrev[w];
+            // Builder is reversed, so the lower part goes first
+            solve(mid, c, r1, c1);
+            solve(r0, c0, mid, c);
+            return score;
+        }
+
+        int solveDirectly(int r0, int c0, int r1, int c1) {
+            int h = r1 - r0 + 1, w = c1 - c0 + 1;
+            if (matrix.length < h * w)
+                matrix = new int[Math.max(h * w, baseCells)];
+            int[] matrix = this.matrix;
+
+            for (int b = 0; b < w; ++b)
+                matrix[b] = gap * b;
+            for (int a = 1; a < h; ++a) {
+                matrix[a * w] = gap * a;
+                for (int b = 1; b < w; ++b)
+                    matrix[a * w + b] = Math.max(matrix[(a - 1) * w + b - 1] + score(r0 + a, c0 + b),
+                            Math.max(matrix[(a - 1) * w + b] + gap, matrix[a * w + b - 1] + gap));
+            }
+
+            int a = h - 1, b = w - 1;
+            while (a > 0 || b > 0) {
+                int v = matrix[a * w + b];
+                if (a > 0 && b > 0 && v == matrix[(a - 1) * w + b - 1] + score(r0 + a, c0 + b)) {
+                    byte c1_ = seq1.codeAt(r0 + a - 1), c2_ = seq2.codeAt(c0 + b - 1);
+                    if (c1_ != c2_)
+                        builder.appendSubstitution(r0 + a - 1, c1_, c2_);
+                    --a;
+                    --b;
+                } else if (a > 0 && v == matrix[(a - 1) * w + b] + gap) {
+                    builder.appendDeletion(r0 + a - 1, seq1.codeAt(r0 + a - 1));
+                    --a;
+                } else if (b > 0 && v == matrix[a * w + b - 1] + gap) {
+                    builder.appendInsertion(r0 + a, seq2.codeAt(c0 + b - 1));
+                    --b;
+                } else
+                    throw new RuntimeException();
+            }
+            return matrix[(h - 1) * w + w - 1];
+        }
+
+        /**
+         * Local alignment. Forward pass finds the end of the alignment and propagates the node where traceback
+         * started from the node would stop, the rest is a global alignment problem.
+         */
+        Alignment<S> alignLocal() {
+            int width = seq2.size() + 1;
+            int[] prev = this.prev, cur = this.cur, t;
+            long[] stopPrev = new long[width], stopCur = new long[width], tl;
+            int max = -1, endRow = 0, endCol = 0;
+            long endStop = -1;
+
+            for (int a = 1; a <= seq1.size(); ++a) {
+                for (int b = 1; b < width; ++b) {
+                    int match = prev[b - 1] + score(a, b),
+                            delete = prev[b] + gap,
+                            insert = cur[b - 1] + gap,
+                            v = Math.max(0, Math.max(match, Math.max(delete, insert)));
+                    cur[b] = v;
+                    long stop;
+                    if (v == match)
+                        stop = prev[b - 1] == 0 ? node(a, b, DIAG) : stopPrev[b - 1];
+                    else if (v == delete)
+                        stop = prev[b] == 0 ? node(a, b, DELETION) : stopPrev[b];
+                    else if (v == insert)
+                        stop = cur[b - 1] == 0 ? node(a, b, INSERTION) : stopCur[b - 1];
+                    else
+                        stop = -1;
+                    stopCur[b] = stop;
+
+                    if (v > max && v > 0) {
+                        max = v;
+                        endRow = a;
+                        endCol = b;
+                        endStop = stop;
+                    }
+                }
+                t = prev;
+                prev = cur;
+                cur = t;
+                tl = stopPrev;
+                stopPrev = stopCur;
+                stopCur = tl;
+            }
+
+            // It's not possible to find any local alignment
+            if (max == -1)
+                return null;
+
+            int row = nodeRow(endStop), col = nodeCol(endStop);
+            switch (nodeKind(endStop)) {
+                case DIAG:
+                    solve(row - 1, col - 1, endRow, endCol);
+                    break;
+                case DELETION:
+                    solve(row - 1, col, endRow, endCol);
+                    break;
+                default:
+                    solve(row, col - 1, endRow, endCol);
+            }
+
+            return new Alignment<>(seq1, builder.createAndDestroy(),
+                    new Range(row - 1, endRow), new Range(col - 1, endCol), max);
+        }
+    }
+
+    /**
+     * Affine gap scoring. Matrix nodes are (cell, state) pairs, traceback preference: gap in seq1 (insertion), gap in
+     * seq2 (deletion), substitution (see {@link Aligner#alignGlobalAffine(AffineGapAlignmentScoring, Sequence,
+     * Sequence)}).
+     */
+    private static final class Affine<S extends Sequence<S>> {
+        final S seq1, seq2;
+        final AffineGapAlignmentScoring<S> scoring;
+        final int gapExtensionPenalty, gapOpenPenalty;
+        final int baseCells;
+        final MutationsBuilder<S> builder;
+        // Rolling rows (reused by all sub-problems)
+        int[] prevM, prevG1, prevG2, curM, curG1, curG2;
+        int[] crossPrevM, crossPrevG1, crossPrevG2, crossCurM, crossCurG1, crossCurG2;
+        // Matrices for sub-problems solved directly
+        int[] matrix, gapIn1, gapIn2;
+
+        Affine(AffineGapAlignmentScoring<S> scoring, S seq1, S seq2, int baseCells) {
+            this.seq1 = seq1;
+            this.seq2 = seq2;
+            this.scoring = scoring;
+            this.gapExtensionPenalty = scoring.getGapExtensionPenalty();
+            this.gapOpenPenalty = scoring.getGapOpenPenalty() - gapExtensionPenalty;
+            this.baseCells = baseCells;
+            this.builder = new MutationsBuilder<>(seq1.getAlphabet(), true);
+            int width = seq2.size() + 1;
+            this.prevM = new int[width];
+            this.prevG1 = new int[width];
+            this.prevG2 = new int[width];
+            this.curM = new int[width];
+            this.curG1 = new int[width];
+            this.curG2 = new int[width];
+            this.matrix = this.gapIn1 = this.gapIn2 = new int[0];
+        }
+
+        int score(int row, int col) {
+            return scoring.getScore(seq1.codeAt(row - 1), seq2.codeAt(col - 1));
+        }
+
+        private static int max(int a, int b, int c) {
+            return Math.max(Math.max(a, b), c);
+        }
+
+        private static int pack(int col, int state) {
+            return col << 2 | state;
+        }
+
+        /**
+         * Aligns seq1[r0, r1) with seq2[c0, c1) globally, path starts at the node of (r0, c0) cell in state {@code
+         * s0} and ends at the node of (r1, c1) cell in state {@code s1}. Appends mutations to the builder and returns
+         * score.
+         */
+        int solve(int r0, int c0, int s0, int r1, int c1, int s1) {
+            if (r1 - r0 < 2 || (long) (r1 - r0 + 1) * (c1 - c0 + 1) <= baseCells)
+                return solveDirectly(r0, c0, s0, r1, c1, s1);
+
+            if (crossPrevM == null) {
+                int width = seq2.size() + 1;
+                crossPrevM = new int[width];
+                crossPrevG1 = new int[width];
+                crossPrevG2 = new int[width];
+                crossCurM = new int[width];
+                crossCurG1 = new int[width];
+                crossCurG2 = new int[width];
+            }
+
+            int mid = (r0 + r1) >>> 1, w = c1 - c0;
+            int[] pM = prevM, pG1 = prevG1, pG2 = prevG2, cM = curM, cG1 = curG1, cG2 = curG2,
+                    xpM = crossPrevM, xpG1 = crossPrevG1, xpG2 = crossPrevG2,
+                    xcM = crossCurM, xcG1 = crossCurG1, xcG2 = crossCurG2, t;
+            int ext = gapExtensionPenalty, open = gapOpenPenalty + gapExtensionPenalty;
+
+            initFirstRow(pM, pG1, pG2, s0, w);
+
+            for (int a = r0 + 1; a <= r1; ++a) {
+                boolean propagate = a > mid;
+                cG1[0] = MIN_VALUE;
+                cG2[0] = Math.max(pM[0] + open, pG2[0] + ext);
+                cM[0] = cG2[0];
+                if (propagate) {
+                    xcG1[0] = -1;
+                    xcG2[0] = cG2[0] == pG2[0] + ext ? xpG2[0] : xpM[0];
+                    xcM[0] = xcG2[0];
+                }
+                for (int b = 1; b <= w; ++b) {
+                    int g1 = Math.max(cM[b - 1] + open, cG1[b - 1] + ext),
+                            g2 = Math.max(pM[b] + open, pG2[b] + ext),
+                            match = pM[b - 1] + score(a, c0 + b),
+                            m = max(match, g2, g1);
+                    cG1[b] = g1;
+                    cG2[b] = g2;
+                    cM[b] = m;
+                    if (propagate) {
+                        xcG1[b] = g1 == cG1[b - 1] + ext ? xcG1[b - 1] : xcM[b - 1];
+                        xcG2[b] = g2 == pG2[b] + ext ? xpG2[b] : xpM[b];
+                        xcM[b] = m == g1 ? xcG1[b] : m == g2 ? xcG2[b] : xpM[b - 1];
+                    }
+                }
+                if (a == mid)
+                    for (int b = 0; b <= w; ++b) {
+                        xcM[b] = pack(b, MATCH);
+                        xcG1[b] = pack(b, GAP_IN_1);
+                        xcG2[b] = pack(b, GAP_IN_2);
+                    }
+                t = pM;
+                pM = cM;
+                cM = t;
+                t = pG1;
+                pG1 = cG1;
+                cG1 = t;
+                t = pG2;
+                pG2 = cG2;
+                cG2 = t;
+                t = xpM;
+                xpM = xcM;
+                xcM = t;
+                t = xpG1;
+                xpG1 = xcG1;
+                xcG1 = t;
+                t = xpG2;
+                xpG2 = xcG2;
+                xcG2 = t;
+            }
+
+            int score, cross;
+            switch (s1) {
+                case MATCH:
+                    score = pM[w];
+                    cross = xpM[w];
+                    break;
+                case GAP_IN_1:
+                    score = pG1[w];
+                    cross = xpG1[w];
+                    break;
+                default:
+                    score = pG2[w];
+                    cross = xpG2[w];
+            }
+            int c = c0 + (cross >>> 2), s = cross & 3;
+
+            // Builder is reversed, so the lower part goes first
+            solve(mid, c, s, r1, c1, s1);
+            solve(r0, c0, s0, mid, c, s);
+            return score;
+        }
+
+        /**
+         * Initializes first row of the sub-problem with the path starting at the first cell in state {@code s0}
+         */
+        void initFirstRow(int[] m, int[] g1, int[] g2, int s0, int w) {
+            m[0] = 0;
+            g1[0] = s0 == GAP_IN_1 ? 0 : MIN_VALUE;
+            g2[0] = s0 == GAP_IN_2 ? 0 : MIN_VALUE;
+            for (int b = 1; b <= w; ++b) {
+                g1[b] = Math.max(m[b - 1] + gapOpenPenalty + gapExtensionPenalty, g1[b - 1] + gapExtensionPenalty);
+                g2[b] = MIN_VALUE;
+                m[b] = g1[b];
+            }
+        }
+
+        int solveDirectly(int r0, int c0, int s0, int r1, int c1, int s1) {
+            int h = r1 - r0 + 1, w = c1 - c0 + 1;
+            if (matrix.length < h * w) {
+                int size = Math.max(h * w, baseCells);
+                matrix = new int[size];
+                gapIn1 = new int[size];
+                gapIn2 = new int[size];
+            }
+            int[] matrix = this.matrix, gapIn1 = this.gapIn1, gapIn2 = this.gapIn2;
+            int ext = gapExtensionPenalty, open = gapOpenPenalty + gapExtensionPenalty;
+
+            initFirstRow(matrix, gapIn1, gapIn2, s0, w - 1);
+            for (int a = 1; a < h; ++a) {
+                int row = a * w, prow = row - w;
+                gapIn1[row] = MIN_VALUE;
+                gapIn2[row] = Math.max(matrix[prow] + open, gapIn2[prow] + ext);
+                matrix[row] = gapIn2[row];
+                for (int b = 1; b < w; ++b) {
+                    gapIn1[row + b] = Math.max(matrix[row + b - 1] + open, gapIn1[row + b - 1] + ext);
+                    gapIn2[row + b] = Math.max(matrix[prow + b] + open, gapIn2[prow + b] + ext);
+                    matrix[row + b] = max(matrix[prow + b - 1] + score(r0 + a, c0 + b),
+                            gapIn2[row + b], gapIn1[row + b]);
+                }
+            }
+
+            int a = h - 1, b = w - 1;
+            boolean inGap1 = s1 == GAP_IN_1, inGap2 = s1 == GAP_IN_2;
+            int end = a * w + b;
+            int score = inGap1 ? gapIn1[end] : inGap2 ? gapIn2[end] : matrix[end];
+            int result = score;
+            while (a > 0 || b > 0) {
+                int i = a * w + b;
+                if (!inGap2 && (inGap1 || (b > 0 && score == gapIn1[i]))) {
+                    inGap1 = false;
+                    if (score == gapIn1[i - 1] + ext) {
+                        inGap1 = true;
+                        score = gapIn1[i - 1];
+                    } else
+                        score = matrix[i - 1];
+                    builder.appendInsertion(r0 + a, seq2.codeAt(c0 + b - 1));
+                    --b;
+                } else if (inGap2 || (a > 0 && score == gapIn2[i])) {
+                    inGap2 = false;
+                    if (score == gapIn2[i - w] + ext) {
+                        inGap2 = true;
+                        score = gapIn2[i - w];
+                    } else
+                        score = matrix[i - w];
+                    builder.appendDeletion(r0 + a - 1, seq1.codeAt(r0 + a - 1));
+                    --a;
+                } else if (a > 0 && b > 0 && score == matrix[i - w - 1] + score(r0 + a, c0 + b)) {
+                    score = matrix[i - w - 1];
+                    byte c1_ = seq1.codeAt(r0 + a - 1), c2_ = seq2.codeAt(c0 + b - 1);
+                    if (c1_ != c2_)
+                        builder.appendSubstitution(r0 + a - 1, c1_, c2_);
+                    --a;
+                    --b;
+                } else
+                    throw new RuntimeException();
+            }
+            return result;
+        }
+
+        /**
+         * Local alignment. Forward pass finds the end of the alignment and propagates the node where traceback
+         * started from the node would stop, the rest is a global alignment problem.
+         */
+        Alignment<S> alignLocal() {
+            int width = seq2.size() + 1;
+            int[] pM = prevM, pG1 = prevG1, pG2 = prevG2, cM = curM, cG1 = curG1, cG2 = curG2, t;
+            long[] spM = new long[width], spG1 = new long[width], spG2 = new long[width],
+                    scM = new long[width], scG1 = new long[width], scG2 = new long[width], tl;
+            int ext = gapExtensionPenalty, open = gapOpenPenalty + gapExtensionPenalty;
+
+            // First row (as in the full-matrix algorithm, gapIn1 is not initialized there)
+            for (int b = 1; b < width; ++b)
+                pG2[b] = MIN_VALUE;
+
+            int max = -1, endRow = 0, endCol = 0;
+            long endStop = -1;
+            for (int a = 1; a <= seq1.size(); ++a) {
+                cM[0] = 0;
+                cG1[0] = MIN_VALUE;
+                cG2[0] = 0;
+                for (int b = 1; b < width; ++b) {
+                    int g1 = Math.max(cM[b - 1] + open, cG1[b - 1] + ext),
+                            g2 = Math.max(pM[b] + open, pG2[b] + ext),
+                            match = pM[b - 1] + score(a, b),
+                            m = Math.max(0, max(match, g2, g1));
+                    cG1[b] = g1;
+                    cG2[b] = g2;
+                    cM[b] = m;
+
+                    // Traceback from gap nodes
+                    boolean g1Continues = g1 == cG1[b - 1] + ext,
+                            g2Continues = g2 == pG2[b] + ext;
+                    boolean g1Stops = (g1Continues ? cG1[b - 1] : cM[b - 1]) == 0,
+                            g2Stops = (g2Continues ? pG2[b] : pM[b]) == 0;
+                    scG1[b] = g1Stops ? node(a, b, 1 + GAP_IN_1) : g1Continues ? scG1[b - 1] : scM[b - 1];
+                    scG2[b] = g2Stops ? node(a, b, 1 + GAP_IN_2) : g2Continues ? spG2[b] : spM[b];
+
+                    // Traceback from match node
+                    long stop;
+                    if (m == g1)
+                        stop = g1Stops ? node(a, b, 1 + MATCH) : scG1[b];
+                    else if (m == g2)
+                        stop = g2Stops ? node(a, b, 1 + MATCH) : scG2[b];
+                    else if (m == match)
+                        stop = pM[b - 1] == 0 ? node(a, b, 0) : spM[b - 1];
+                    else
+                        stop = -1;
+                    scM[b] = stop;
+
+                    if (m > max && m != 0) {
+                        max = m;
+                        endRow = a;
+                        endCol = b;
+                        endStop = stop;
+                    }
+                }
+                t = pM;
+                pM = cM;
+                cM = t;
+                t = pG1;
+                pG1 = cG1;
+                cG1 = t;
+                t = pG2;
+                pG2 = cG2;
+                cG2 = t;
+                tl = spM;
+                spM = scM;
+                scM = tl;
+                tl = spG1;
+                spG1 = scG1;
+                scG1 = tl;
+                tl = spG2;
+                spG2 = scG2;
+                scG2 = tl;
+            }
+
+            if (max == -1)
+                return null;
+
+            int row = nodeRow(endStop), col = nodeCol(endStop), kind = nodeKind(endStop);
+            if (kind == 0)
+                // Traceback stopped after substitution
+                solve(row - 1, col - 1, MATCH, endRow, endCol, MATCH);
+            else
+                // Traceback stopped before gap
+                solve(row, col, kind - 1, endRow, endCol, MATCH);
+
+            return new Alignment<>(seq1, builder.createAndDestroy(),
+                    new Range(row - 1, endRow), new Range(col - 1, endCol), max);
+        }
+    }
+}
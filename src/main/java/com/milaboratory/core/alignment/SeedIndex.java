@@ -0,0 +1,310 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.util.IntArrayList;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Immutable index of kMer records in compressed sparse row (CSR) format, used by kMer mappers.
+ *
+ * <p>Records of all kMers are stored in a single flat array ordered by kMer, records of kMer {@code k} occupy
+ * positions from {@code offsets[k]} (inclusive) to {@code offsets[k + 1]} (exclusive). Each record occupies {@link
+ * #getRecordSize()} consecutive ints (records of size 2 are 64-bit records, stored as high and low words).</p>
+ *
+ * <p>Records array can be placed off-heap (in direct memory), so that large indices do not load garbage collector.
+ * Instances of this class are thread-safe and can be shared between several mappers.</p>
+ */
+public final class SeedIndex implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Whether records are placed off-heap by default. Can be set with "milib.seedIndex.offHeap" system property.
+     */
+    private static volatile boolean defaultOffHeap = Boolean.getBoolean("milib.seedIndex.offHeap");
+
+    /**
+     * Number of ints in each record
+     */
+    private final int recordSize;
+    /**
+     * offsets[kMer] = position of the first record of the kMer, length = number of kMers + 1
+     */
+    private final int[] offsets;
+    /**
+     * Records (on-heap storage), null if records are placed off-heap
+     */
+    private transient int[] records;
+    /**
+     * Records (off-heap storage), null if records are placed on-heap
+     */
+    private transient IntBuffer directRecords;
+
+    private SeedIndex(int recordSize, int[] offsets, int[] records, IntBuffer directRecords) {
+        this.recordSize = recordSize;
+        this.offsets = offsets;
+        this.records = records;
+        this.directRecords = directRecords;
+    }
+
+    /**
+     * Creates index from per-kMer arrays of int records.
+     *
+     * @param numberOfKMers number of kMers
+     * @param records       records[kMer] = records of the kMer (the array itself may be null, if there are no records
+     *                      for any kMer, or individual elements may be null, if there are no records for the kMer)
+     * @param lengths       lengths[kMer] = number of records of the kMer in records[kMer] array (may be null, if all
+     *                      arrays are completely filled)
+     * @param offHeap       whether to place records off-heap
+     * @return index
+     */
+    public static SeedIndex create(int numberOfKMers, int[][] records, int[] lengths, boolean offHeap) {
+        int[] offsets = createOffsets(numberOfKMers, records == null ? null :
+                kMer -> records[kMer] == null ? 0 : lengths == null ? records[kMer].length : lengths[kMer], 1);
+        Storage storage = new Storage(offsets[numberOfKMers], offHeap);
+        if (records != null)
+            for (int kMer = 0; kMer < numberOfKMers; ++kMer)
+                if (records[kMer] != null)
+                    storage.put(offsets[kMer], records[kMer], offsets[kMer + 1] - offsets[kMer]);
+        return storage.toIndex(1, offsets);
+    }
+
+    /**
+     * Creates index from per-kMer arrays of long records. Each record is stored as two ints: high and low words, so
+     * records of each kMer are stored in the same order as in the original arrays.
+     *
+     * @param numberOfKMers number of kMers
+     * @param records       records[kMer] = records of the kMer (the array itself may be null, if there are no records
+     *                      for any kMer, or individual elements may be null, if there are no records for the kMer)
+     * @param lengths       lengths[kMer] = number of records of the kMer in records[kMer] array (may be null, if all
+     *                      arrays are completely filled)
+     * @param offHeap       whether to place records off-heap
+     * @return index
+     */
+    public static SeedIndex createWide(int numberOfKMers, long[][] records, int[] lengths, boolean offHeap) {
+        int[] offsets = createOffsets(numberOfKMers, records == null ? null :
+                kMer -> records[kMer] == null ? 0 : lengths == null ? records[kMer].length : lengths[kMer], 2);
+        Storage storage = new Storage(offsets[numberOfKMers], offHeap);
+        if (records != null)
+            for (int kMer = 0; kMer < numberOfKMers; ++kMer)
+                if (records[kMer] != null)
+                    for (int i = offsets[kMer], j = 0; i < offsets[kMer + 1]; i += 2, ++j) {
+                        storage.put(i, (int) (records[kMer][j] >>> 32));
+                        storage.put(i + 1, (int) records[kMer][j]);
+                    }
+        return storage.toIndex(2, offsets);
+    }
+
+    /**
+     * Creates index over records placed in (memory-mapped) buffer
+     */
+    static SeedIndex mapped(int recordSize, int[] offsets, IntBuffer records) {
+        return new SeedIndex(recordSize, offsets, null, records);
+    }
+
+    /**
+     * Offsets array (not copied)
+     */
+    int[] offsets() {
+        return offsets;
+    }
+
+    private static int[] createOffsets(int numberOfKMers, ArrayLengths lengths, int recordSize) {
+        int[] offsets = new int[numberOfKMers + 1];
+        if (lengths == null)
+            return offsets;
+        long position = 0;
+        for (int kMer = 0; kMer < numberOfKMers; ++kMer) {
+            offsets[kMer] = (int) position;
+            position += (long) lengths.length(kMer) * recordSize;
+            if (position > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many records.");
+        }
+        offsets[numberOfKMers] = (int) position;
+        return offsets;
+    }
+
+    private interface ArrayLengths {
+        int length(int kMer);
+    }
+
+    /**
+     * Returns whether records are placed off-heap by default
+     */
+    public static boolean isOffHeapByDefault() {
+        return defaultOffHeap;
+    }
+
+    /**
+     * Sets whether records are placed off-heap by default
+     */
+    public static void setOffHeapByDefault(boolean offHeap) {
+        defaultOffHeap = offHeap;
+    }
+
+    /**
+     * Returns number of ints in each record
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Returns number of kMers in this index
+     */
+    public int getNumberOfKMers() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns total number of records in this index
+     */
+    public int getNumberOfRecords() {
+        return offsets[offsets.length - 1] / recordSize;
+    }
+
+    /**
+     * Returns whether records are placed off-heap
+     */
+    public boolean isOffHeap() {
+        return directRecords != null;
+    }
+
+    /**
+     * Returns number of records for the kMer
+     */
+    public int size(int kMer) {
+        return (offsets[kMer + 1] - offsets[kMer]) / recordSize;
+    }
+
+    /**
+     * Returns position of the first record for the kMer
+     */
+    public int begin(int kMer) {
+        return offsets[kMer];
+    }
+
+    /**
+     * Returns position next to the last record for the kMer
+     */
+    public int end(int kMer) {
+        return offsets[kMer + 1];
+    }
+
+    /**
+     * Returns int at specified position of the records array
+     */
+    public int get(int position) {
+        return records != null ? records[position] : directRecords.get(position);
+    }
+
+    /**
+     * Returns 64-bit record at specified position of the records array (applicable only if record size is 2)
+     */
+    public long getWide(int position) {
+        if (records != null)
+            return ((long) records[position]) << 32 | (records[position + 1] & 0xFFFFFFFFL);
+        else
+            return ((long) directRecords.get(position)) << 32 | (directRecords.get(position + 1) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Appends all records of the kMer to the list (applicable only if record size is 1)
+     */
+    public void addRecords(int kMer, IntArrayList target) {
+        int from = offsets[kMer], to = offsets[kMer + 1];
+        if (records != null)
+            target.add(records, from, to - from);
+        else {
+            target.ensureCapacity(target.size() + to - from);
+            for (int i = from; i < to; ++i)
+                target.add(directRecords.get(i));
+        }
+    }
+
+    /**
+     * Returns a copy of records of the kMer (for 64-bit records ints are returned in the storage order)
+     */
+    public int[] getRecords(int kMer) {
+        int from = offsets[kMer], to = offsets[kMer + 1];
+        int[] result = new int[to - from];
+        for (int i = from; i < to; ++i)
+            result[i - from] = get(i);
+        return result;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(isOffHeap());
+        int size = offsets[offsets.length - 1];
+        for (int i = 0; i < size; ++i)
+            out.writeInt(get(i));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        Storage storage = new Storage(offsets[offsets.length - 1], in.readBoolean());
+        for (int i = 0; i < storage.size; ++i)
+            storage.put(i, in.readInt());
+        this.records = storage.records;
+        this.directRecords = storage.directRecords;
+    }
+
+    private static final class Storage {
+        final int size;
+        final int[] records;
+        final IntBuffer directRecords;
+
+        Storage(int size, boolean offHeap) {
+            this.size = size;
+            if (offHeap) {
+                if (size > Integer.MAX_VALUE / 4)
+                    throw new IllegalArgumentException("Too many records.");
+                this.records = null;
+                this.directRecords = ByteBuffer.allocateDirect(size * 4)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            } else {
+                this.records = new int[size];
+                this.directRecords = null;
+            }
+        }
+
+        void put(int position, int value) {
+            if (records != null)
+                records[position] = value;
+            else
+                directRecords.put(position, value);
+        }
+
+        void put(int position, int[] values, int length) {
+            if (records != null)
+                System.arraycopy(values, 0, records, position, length);
+            else
+                for (int i = 0; i < length; ++i)
+                    directRecords.put(position + i, values[i]);
+        }
+
+        SeedIndex toIndex(int recordSize, int[] offsets) {
+            return new SeedIndex(recordSize, offsets, records, directRecords);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.Sequence;
+
+/**
+ * Striped (Farrar) implementation of the local (Smith-Waterman) alignment score calculation, for both linear and
+ * affine gap scoring systems.
+ *
+ * <p>Query sequence (second sequence in terms of {@link Aligner}) is split into interleaved segments, which are
+ * processed simultaneously as unsigned lanes packed into a single {@code long} (SIMD within a register). Substitution
+ * scores are precomputed for each letter of the alphabet (query profile, see {@link Profile}), so the inner loop has
+ * no per-cell substitution matrix lookups. Calculation is first performed with eight 8-bit lanes, if the score
+ * overflows it is repeated with four 16-bit lanes, and if it still overflows (or scores can't be represented in
+ * lanes) the scalar code is used ({@link Aligner#scoreLocal(AlignmentScoring, Sequence, Sequence,
+ * CachedIntArray)}).</p>
+ *
+ * <p>Returned score and end positions are the same as returned by {@link Aligner#alignLocal(AlignmentScoring,
+ * Sequence, Sequence)}.</p>
+ */
+public final class StripedAligner {
+    private StripedAligner() {
+    }
+
+    /**
+     * Calculates score and end positions of local alignment of two sequences. For multiple alignments against the
+     * same second sequence use {@link #createProfile(AlignmentScoring, Sequence)}.
+     *
+     * @param scoring scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @return score and positions of the last aligned letters in both sequences, or {@code null} if there is no
+     * local alignment with positive score
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult scoreLocal(AlignmentScoring<S> scoring,
+                                                                           S seq1, S seq2) {
+        return createProfile(scoring, seq2).scoreLocal(seq1);
+    }
+
+    /**
+     * Precomputes query profile for a second sequence
+     *
+     * @param scoring scoring system
+     * @param seq2    second sequence (query)
+     * @return query profile
+     */
+    public static <S extends Sequence<S>> Profile<S> createProfile(AlignmentScoring<S> scoring, S seq2) {
+        if (seq2.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+        if (scoring instanceof AffineGapAlignmentScoring) {
+            AffineGapAlignmentScoring<S> affine = (AffineGapAlignmentScoring<S>) scoring;
+            return new Profile<>(scoring, seq2, -affine.getGapOpenPenalty(), -affine.getGapExtensionPenalty());
+        }
+        if (scoring instanceof LinearGapAlignmentScoring) {
+            int gap = -((LinearGapAlignmentScoring<S>) scoring).getGapPenalty();
+            return new Profile<>(scoring, seq2, gap, gap);
+        }
+        throw new RuntimeException("Unknown scoring type.");
+    }
+
+    /**
+     * Query profile, i.e. query sequence with precomputed striped substitution scores, together with working
+     * buffers. Profile can be used to align any number of first sequences (references) against the same query.
+     *
+     * <p>This class is not thread-safe, each thread should use its own profile.</p>
+     */
+    public static final class Profile<S extends Sequence<S>> {
+        final AlignmentScoring<S> scoring;
+        final S query;
+        final int gapOpen, gapExtension;
+        /**
+         * Value added to all substitution scores to make them non-negative
+         */
+        final int bias;
+        /**
+         * Striped engines with 8-bit and 16-bit lanes ({@code null} if scores can't be represented with such lanes)
+         */
+        final Striped striped8, striped16;
+        /**
+         * Working buffers (H values of current and previous columns, E values)
+         */
+        long[] hStore, hLoad, e;
+        /**
+         * Scalar fallback buffer
+         */
+        CachedIntArray cache;
+        /**
+         * Result of the last striped calculation
+         */
+        BandedSemiLocalResult result;
+
+        Profile(AlignmentScoring<S> scoring, S query, int gapOpen, int gapExtension) {
+            this.scoring = scoring;
+            this.query = query;
+            this.gapOpen = gapOpen;
+            this.gapExtension = gapExtension;
+
+            int alphabetSize = scoring.getAlphabet().size();
+            int minScore = 0, maxScore = 0;
+            for (byte from = 0; from < alphabetSize; ++from)
+                for (byte to = 0; to < alphabetSize; ++to) {
+                    minScore = Math.min(minScore, scoring.getScore(from, to));
+                    maxScore = Math.max(maxScore, scoring.getScore(from, to));
+                }
+            this.bias = -minScore;
+
+            int maxValue = Math.max(maxScore + bias, Math.max(gapOpen, gapExtension));
+            boolean applicable = query.size() > 0 && gapOpen > 0 && gapExtension > 0;
+            this.striped8 = applicable && maxValue <= maxLaneValue(8) ? new Striped(8) : null;
+            this.striped16 = applicable && maxValue <= maxLaneValue(16) ? new Striped(16) : null;
+            if (striped16 != null) {
+                int size = striped16.segmentLength;
+                this.hStore = new long[size];
+                this.hLoad = new long[size];
+                this.e = new long[size];
+            }
+        }
+
+        /**
+         * Returns query sequence
+         */
+        public S getQuery() {
+            return query;
+        }
+
+        /**
+         * Calculates score and end positions of local alignment of the {@code seq1} against query sequence.
+         *
+         * @param seq1 first sequence
+         * @return score and positions of the last aligned letters in both sequences, or {@code null} if there is no
+         * local alignment with positive score
+         */
+        public BandedSemiLocalResult scoreLocal(S seq1) {
+            if (seq1.getAlphabet() != scoring.getAlphabet())
+                throw new IllegalArgumentException("Different alphabets.");
+            if (query.size() == 0)
+                return null;
+            if (striped8 != null && striped8.score(seq1))
+                return result;
+            if (striped16 != null && striped16.score(seq1))
+                return result;
+            if (cache == null)
+                cache = new CachedIntArray();
+            return Aligner.scoreLocal(scoring, seq1, query, cache);
+        }
+
+        /**
+         * Striped calculation engine for a specific lane width
+         */
+        final class Striped {
+            final int laneBits, lanes, laneMask;
+            /**
+             * Highest (guard) bit of each lane
+             */
+            final long high;
+            /**
+             * Lowest bit of each lane
+             */
+            final long low;
+            /**
+             * Number of words per column
+             */
+            final int segmentLength;
+            /**
+             * Striped scores, {@code segmentLength} words for each letter of the alphabet
+             */
+            final long[] profile;
+
+            Striped(int laneBits) {
+                this.laneBits = laneBits;
+                this.lanes = 64 / laneBits;
+                this.laneMask = (1 << laneBits) - 1;
+                long low = 0;
+                for (int lane = 0; lane < lanes; ++lane)
+                    low |= 1L << (lane * laneBits);
+                this.low = low;
+                this.high = low << (laneBits - 1);
+                this.segmentLength = (query.size() + lanes - 1) / lanes;
+
+                int alphabetSize = scoring.getAlphabet().size();
+                this.profile = new long[alphabetSize * segmentLength];
+                for (byte letter = 0; letter < alphabetSize; ++letter)
+                    for (int i = 0; i < segmentLength; ++i) {
+                        long word = 0;
+                        for (int lane = 0; lane < lanes; ++lane) {
+                            int position = lane * segmentLength + i;
+                            // Padding positions get the lowest possible score
+                            long value = position < query.size()
+                                    ? scoring.getScore(letter, query.codeAt(position)) + bias
+                                    : 0;
+                            word |= value << (lane * laneBits);
+                        }
+                        profile[letter * segmentLength + i] = word;
+                    }
+            }
+
+            /**
+             * Performs striped calculation, returns false in case of overflow.
+             */
+            boolean score(S seq1) {
+                final int segmentLength = this.segmentLength, laneBits = this.laneBits;
+                final long high = this.high, low = this.low;
+                final long[] profile = this.profile, e = Profile.this.e;
+                long[] hStore = Profile.this.hStore, hLoad = Profile.this.hLoad, tmp;
+                final long vBias = low * bias,
+                        vGapOpen = low * gapOpen,
+                        vGapExtension = low * gapExtension,
+                        vFThreshold = low * Math.max(0, gapOpen - gapExtension),
+                        vFDecrement = low * Math.min(gapOpen, gapExtension);
+
+                for (int i = 0; i < segmentLength; ++i) {
+                    hStore[i] = 0;
+                    e[i] = 0;
+                }
+
+                int best = 0, bestI1 = -1, bestI2 = -1;
+                // vBest holds (best + 1) in each lane, used to detect columns with values greater than best
+                long vBest = low, vAbove;
+                long vH, vF, vE, vSum;
+                int offset, i;
+                for (int i1 = 0; i1 < seq1.size(); ++i1) {
+                    offset = seq1.codeAt(i1) * segmentLength;
+                    vF = 0;
+                    vAbove = 0;
+                    // Diagonal values for the first segment, shifted by one lane
+                    vH = hStore[segmentLength - 1] << laneBits;
+
+                    tmp = hLoad;
+                    hLoad = hStore;
+                    hStore = tmp;
+
+                    for (i = 0; i < segmentLength; ++i) {
+                        vSum = vH + profile[offset + i];
+                        if ((vSum & high) != 0)
+                            return false;
+                        vH = subSaturated(vSum, vBias, high, laneBits);
+                        vE = e[i];
+                        vH = max(vH, vE, high, laneBits);
+                        vH = max(vH, vF, high, laneBits);
+                        vAbove |= (vH | high) - vBest;
+                        hStore[i] = vH;
+
+                        vH = subSaturated(vH, vGapOpen, high, laneBits);
+                        e[i] = max(subSaturated(vE, vGapExtension, high, laneBits), vH, high, laneBits);
+                        vF = max(subSaturated(vF, vGapExtension, high, laneBits), vH, high, laneBits);
+
+                        vH = hLoad[i];
+                    }
+
+                    // Lazy F loop, propagating vertical gaps through segment boundaries. Propagation stops when F
+                    // value neither improves H value of the cell nor exceeds F value already propagated from this
+                    // cell in the main loop (i.e. max(F - gapExtension, H - gapOpen) <= H - gapOpen).
+                    vF = vF << laneBits;
+                    i = 0;
+                    while ((((vF | high) - subSaturated(hStore[i], vFThreshold, high, laneBits) - low) & high) != 0) {
+                        vH = max(hStore[i], vF, high, laneBits);
+                        vAbove |= (vH | high) - vBest;
+                        hStore[i] = vH;
+                        e[i] = max(e[i], subSaturated(vH, vGapOpen, high, laneBits), high, laneBits);
+                        vF = subSaturated(vF, vFDecrement, high, laneBits);
+                        if (++i == segmentLength) {
+                            vF = vF << laneBits;
+                            i = 0;
+                        }
+                    }
+
+                    // vAbove may be set by padding positions, so it is only used as a filter
+                    if ((vAbove & high) != 0) {
+                        for (int lane = 0; lane < lanes; ++lane)
+                            for (i = 0; i < segmentLength; ++i) {
+                                int i2 = lane * segmentLength + i;
+                                if (i2 >= query.size())
+                                    break;
+                                int value = (int) (hStore[i] >>> (lane * laneBits)) & laneMask;
+                                // Positions are iterated in ascending order, so the first cell with the maximal
+                                // value is taken, as in Aligner
+                                if (value > best) {
+                                    best = value;
+                                    bestI1 = i1;
+                                    bestI2 = i2;
+                                }
+                            }
+                        vBest = low * (best + 1);
+                    }
+                }
+
+                Profile.this.hStore = hStore;
+                Profile.this.hLoad = hLoad;
+                result = best == 0 ? null : new BandedSemiLocalResult(bestI1, bestI2, best);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Maximal value which can be stored in a lane of given width (highest bit of each lane is reserved)
+     */
+    static int maxLaneValue(int laneBits) {
+        return (1 << (laneBits - 1)) - 1;
+    }
+
+    /**
+     * Lane-wise {@code max(a - b, 0)}, all lanes of both arguments must be less than {@code 2^(laneBits - 1)}
+     *
+     * @param high highest bits of all lanes
+     */
+    static long subSaturated(long a, long b, long high, int laneBits) {
+        long d = (a | high) - b;
+        long mask = d & high;
+        return d & (mask - (mask >>> (laneBits - 1)));
+    }
+
+    /**
+     * Lane-wise {@code max(a, b)}, all lanes of both arguments must be less than {@code 2^(laneBits - 1)}
+     *
+     * @param high highest bits of all lanes
+     */
+    static long max(long a, long b, long high, int laneBits) {
+        long mask = ((a | high) - b) & high;
+        mask = mask - (mask >>> (laneBits - 1));
+        return b ^ ((a ^ b) & mask);
+    }
+}
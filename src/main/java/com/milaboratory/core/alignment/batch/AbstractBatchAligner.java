@@ -1,10 +1,9 @@
 package com.milaboratory.core.alignment.batch;
 
-import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.Processor;
-import cc.redberry.pipe.blocks.ParallelProcessor;
 import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.BatchUtil;
 
 public abstract class AbstractBatchAligner<S extends Sequence<S>, H extends AlignmentHit<S, ?>>
         implements BatchAligner<S, H>, PipedBatchAligner<S, H> {
@@ -46,11 +45,9 @@ public abstract class AbstractBatchAligner<S extends Sequence<S>, H extends Alig
     }
 
     private <Q> OutputPort<PipedAlignmentResult<H, Q>> wrapPipe(Processor<Q, PipedAlignmentResult<H, Q>> proc, OutputPort<Q> input) {
-        if (threads == 1)
-            return CUtils.wrap(input, proc);
-
         int t = (threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
 
-        return new ParallelProcessor<>(input, proc, t);
+        // Input is transferred to worker threads in batches to reduce synchronization overhead
+        return BatchUtil.processInParallel(input, proc, t, BatchUtil.DEFAULT_BATCH_SIZE);
     }
 }
@@ -17,6 +17,7 @@ package com.milaboratory.core.alignment.batch;
 
 import com.milaboratory.core.alignment.Aligner;
 import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentWorkspace;
 import com.milaboratory.core.sequence.Sequence;
 
 import java.util.ArrayList;
@@ -57,8 +58,10 @@ public class SimpleBatchAligner<S extends Sequence<S>, P> extends AbstractBatchA
 
         // Building all alignments
         ArrayList<AlignmentHit<S, P>> alignments = new ArrayList<>(references.size());
-        for (Record<S, P> record : references)
-            alignments.add(alignSingle(record, sequence));
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            for (Record<S, P> record : references)
+                alignments.add(alignSingle(record, sequence, workspace));
+        }
 
         // Sorting alignments by score
         Collections.sort(alignments, BatchAlignmentUtil.ALIGNMENT_SCORE_HIT_COMPARATOR);
@@ -75,10 +78,10 @@ public class SimpleBatchAligner<S extends Sequence<S>, P> extends AbstractBatchA
         return new AlignmentResultImpl<>(alignments);
     }
 
-    AlignmentHit<S, P> alignSingle(Record<S, P> record, S query) {
+    AlignmentHit<S, P> alignSingle(Record<S, P> record, S query, AlignmentWorkspace workspace) {
         Alignment<S> alignment = parameters.isGlobal() ?
-                Aligner.alignGlobal(parameters.getScoring(), record.sequence, query) :
-                Aligner.alignLocal(parameters.getScoring(), record.sequence, query);
+                Aligner.alignGlobal(parameters.getScoring(), record.sequence, query, workspace) :
+                Aligner.alignLocal(parameters.getScoring(), record.sequence, query, workspace);
         return new AlignmentHitImpl<>(alignment, record.payload);
     }
 
@@ -15,17 +15,22 @@
  */
 package com.milaboratory.core.alignment.kaligner1;
 
-import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.Processor;
-import cc.redberry.pipe.blocks.ParallelProcessor;
 import cc.redberry.primitives.Filter;
+import com.milaboratory.core.alignment.IndexFile;
 import com.milaboratory.core.alignment.batch.*;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.util.BatchUtil;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.GlobalObjectMappers;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -127,6 +132,69 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
         this.threads = threads;
     }
 
+    /**
+     * Type of index file storing KAligner
+     */
+    static final String INDEX_FILE_TYPE = "KAligner";
+
+    /**
+     * Saves aligner with prebuilt index, reference sequences and payloads to a file, that can be loaded by {@link
+     * #load(File, Class)}. Payloads are serialized with PrimitivIO.
+     *
+     * @param file target file
+     * @throws IOException if an I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        try (IndexFile.Writer writer = new IndexFile.Writer(file, INDEX_FILE_TYPE)) {
+            PrimitivO header = writer.getHeader();
+            header.writeUTF(GlobalObjectMappers.toOneLine(parameters));
+            header.writeBoolean(lazyResults);
+            header.writeInt(threads);
+            header.writeInt(sequences.size());
+            for (NucleotideSequence sequence : sequences)
+                header.writeObject(sequence);
+            header.writeInt(payloads.size());
+            TIntObjectIterator<P> it = payloads.iterator();
+            while (it.hasNext()) {
+                it.advance();
+                header.writeInt(it.key());
+                header.writeObject(it.value());
+            }
+            mapper.write(writer);
+        }
+    }
+
+    /**
+     * Loads aligner saved by {@link #save(File)}. Index records are memory-mapped, so loading is fast and index
+     * memory is shared between all processes using the same file.
+     *
+     * @param file         index file
+     * @param payloadClass class of payloads
+     * @return aligner
+     * @throws IOException if an I/O error occurs or file has wrong format
+     */
+    public static <P> KAligner<P> load(File file, Class<P> payloadClass) throws IOException {
+        try (IndexFile.Reader reader = new IndexFile.Reader(file, INDEX_FILE_TYPE)) {
+            PrimitivI header = reader.getHeader();
+            KAlignerParameters parameters = GlobalObjectMappers.ONE_LINE.readValue(header.readUTF(),
+                    KAlignerParameters.class);
+            boolean lazyResults = header.readBoolean();
+            int threads = header.readInt();
+            int count = header.readInt();
+            List<NucleotideSequence> sequences = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i)
+                sequences.add(header.readObject(NucleotideSequence.class));
+            count = header.readInt();
+            TIntObjectHashMap<P> payloads = new TIntObjectHashMap<>(Math.max(count, 10));
+            for (int i = 0; i < count; ++i) {
+                int id = header.readInt();
+                payloads.put(id, header.readObject(payloadClass));
+            }
+            KMapper mapper = KMapper.read(reader);
+            return new KAligner<>(mapper, parameters, sequences, payloads, lazyResults, threads);
+        }
+    }
+
     /**
      * Adds new reference sequence to the base of this aligner and returns index assigned to it.
      *
@@ -169,6 +237,30 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
         return id;
     }
 
+    /**
+     * Adds new reference sequences to the base of this aligner. Result is identical to sequential invocation of
+     * {@link #addReference(NucleotideSequence, Object)}, but kMers are extracted in parallel (see {@link
+     * KMapper#addReferences(List)}).
+     *
+     * @param sequences sequences
+     * @param payloads  payloads for the sequences, or {@literal null}
+     * @return index assigned to the first sequence, subsequent sequences get subsequent indices
+     */
+    public int addReferences(List<NucleotideSequence> sequences, List<P> payloads) {
+        if (payloads != null && payloads.size() != sequences.size())
+            throw new IllegalArgumentException("Different number of sequences and payloads.");
+        for (NucleotideSequence sequence : sequences)
+            if (sequence.containWildcards())
+                throw new IllegalArgumentException("Reference sequences with wildcards not supported.");
+        int firstId = mapper.addReferences(sequences);
+        assert this.sequences.size() == firstId;
+        this.sequences.addAll(sequences);
+        if (payloads != null)
+            for (int i = 0; i < payloads.size(); ++i)
+                this.payloads.put(firstId + i, payloads.get(i));
+        return firstId;
+    }
+
     /**
      * Returns sequence by its id (order number) in a base.
      *
@@ -345,11 +437,9 @@ public class KAligner<P> implements PipedBatchAlignerWithBase<NucleotideSequence
     }
 
     private <Q> OutputPort<KAlignmentResultP<P, Q>> wrapPipe(Processor<Q, KAlignmentResultP<P, Q>> proc, OutputPort<Q> input) {
-        if (threads == 1)
-            return CUtils.wrap(input, proc);
-
         int t = (threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
 
-        return new ParallelProcessor<>(input, proc, t);
+        // Input is transferred to worker threads in batches to reduce synchronization overhead
+        return BatchUtil.processInParallel(input, proc, t, BatchUtil.DEFAULT_BATCH_SIZE);
     }
 }
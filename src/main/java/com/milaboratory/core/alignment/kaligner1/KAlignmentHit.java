@@ -66,9 +66,8 @@ public final class KAlignmentHit<P> implements java.io.Serializable, AlignmentHi
     }
 
     public void calculateAlignment() {
-        final CachedIntArray array = AlignmentCache.get();
-
-        try {
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            final CachedIntArray array = workspace.getArray();
             KMappingHit hit = result.mappingResult.hits.get(index);
             IntArrayList seeds = result.mappingResult.seeds;
             KAligner aligner = result.aligner;
@@ -259,8 +258,6 @@ public final class KAlignmentHit<P> implements java.io.Serializable, AlignmentHi
                 al = AlignmentTrimmer.leftTrimAlignment(al, scoring);
 
             alignment = al;
-        } finally {
-            AlignmentCache.release();
         }
     }
 
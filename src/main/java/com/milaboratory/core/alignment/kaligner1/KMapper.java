@@ -15,15 +15,24 @@
  */
 package com.milaboratory.core.alignment.kaligner1;
 
+import com.milaboratory.core.alignment.IndexFile;
+import com.milaboratory.core.alignment.SeedIndex;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.ExecutorUtil;
 import com.milaboratory.util.IntArrayList;
 import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.Well19937c;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
 
 import static java.lang.Math.*;
 import static java.util.Arrays.copyOf;
@@ -65,13 +74,22 @@ public final class KMapper implements java.io.Serializable {
      */
     private final int kValue;
     /**
-     * Base of records for individual kMers
+     * Base of records for individual kMers (used only for building of index), arrays for individual kMers are
+     * allocated on first use
      */
-    private final int[][] base;
+    private int[][] base;
     /**
-     * Number of records for each individual kMer (used only for building of base)
+     * Number of records for each individual kMer (used only for building of index)
      */
-    private final int[] lengths;
+    private int[] lengths;
+    /**
+     * Index of records for individual kMers, created from base by {@link #ensureBuilt()}
+     */
+    private SeedIndex index;
+    /**
+     * Whether index records should be placed off-heap
+     */
+    private boolean offHeapIndex = SeedIndex.isOffHeapByDefault();
     /**
      * Minimal absolute score value
      */
@@ -151,7 +169,7 @@ public final class KMapper implements java.io.Serializable {
 
         //Initialize base
         int maxNumberOfKmers = 1 << (kValue * 2);
-        base = new int[maxNumberOfKmers][10];
+        base = new int[maxNumberOfKmers][];
         lengths = new int[maxNumberOfKmers];
 
         //Parameters
@@ -182,11 +200,30 @@ public final class KMapper implements java.io.Serializable {
                    int minDistance, int maxDistance,
                    boolean built, int[] refFrom, int[] refLength,
                    int maxReferenceLength, int minReferenceLength, int sequencesInBase, BitArray allFilter) {
+        // Index will be created from the provided base on first use
+        this(bitsForOffset, offsetMask, kValue, base, lengths, null, absoluteMinScore, relativeMinScore,
+                matchScore, mismatchPenalty, offsetShiftPenalty, minAlignmentLength, maxIndels,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, false, refFrom, refLength,
+                maxReferenceLength, minReferenceLength, sequencesInBase, allFilter);
+    }
+
+    private KMapper(int bitsForOffset,
+                    int offsetMask,
+                    int kValue,
+                    int[][] base, int[] lengths, SeedIndex index,
+                    float absoluteMinScore, float relativeMinScore,
+                    float matchScore, float mismatchPenalty, float offsetShiftPenalty,
+                    int minAlignmentLength, int maxIndels,
+                    boolean floatingLeftBound, boolean floatingRightBound,
+                    int minDistance, int maxDistance,
+                    boolean built, int[] refFrom, int[] refLength,
+                    int maxReferenceLength, int minReferenceLength, int sequencesInBase, BitArray allFilter) {
         this.bitsForOffset = bitsForOffset;
         this.offsetMask = offsetMask;
         this.kValue = kValue;
         this.base = base;
         this.lengths = lengths;
+        this.index = index;
         this.absoluteMinScore = absoluteMinScore;
         this.relativeMinScore = relativeMinScore;
         this.matchScore = matchScore;
@@ -225,14 +262,14 @@ public final class KMapper implements java.io.Serializable {
 
     KMapper setFloatingLeftBound(boolean floatingLeftBound) {
         ensureBuilt();
-        return new KMapper(bitsForOffset, offsetMask, kValue, base, lengths, absoluteMinScore, relativeMinScore, matchScore,
+        return new KMapper(bitsForOffset, offsetMask, kValue, null, null, index, absoluteMinScore, relativeMinScore, matchScore,
                 mismatchPenalty, offsetShiftPenalty, minAlignmentLength, maxIndels, floatingLeftBound, floatingRightBound,
                 minDistance, maxDistance, built, refFrom, refLength, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter);
     }
 
     KMapper setFloatingRightBound(boolean floatingRightBound) {
         ensureBuilt();
-        return new KMapper(bitsForOffset, offsetMask, kValue, base, lengths, absoluteMinScore, relativeMinScore, matchScore,
+        return new KMapper(bitsForOffset, offsetMask, kValue, null, null, index, absoluteMinScore, relativeMinScore, matchScore,
                 mismatchPenalty, offsetShiftPenalty, minAlignmentLength, maxIndels, floatingLeftBound, floatingRightBound,
                 minDistance, maxDistance, built, refFrom, refLength, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter);
     }
@@ -288,17 +325,149 @@ public final class KMapper implements java.io.Serializable {
         return maxI;
     }
 
+    /**
+     * Type of index file storing KMapper
+     */
+    static final String INDEX_FILE_TYPE = "KMapper";
+
+    /**
+     * Saves built mapper to a file, that can be loaded by {@link #load(File)}. Mapper is built if it is not yet.
+     *
+     * @param file target file
+     * @throws IOException if an I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        try (IndexFile.Writer writer = new IndexFile.Writer(file, INDEX_FILE_TYPE)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Loads mapper saved by {@link #save(File)}. Index records are memory-mapped, so loading is fast and index memory
+     * is shared between all processes using the same file.
+     *
+     * @param file index file
+     * @return mapper
+     * @throws IOException if an I/O error occurs or file has wrong format
+     */
+    public static KMapper load(File file) throws IOException {
+        try (IndexFile.Reader reader = new IndexFile.Reader(file, INDEX_FILE_TYPE)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Writes parameters to the header and index of this mapper to the index file
+     */
+    void write(IndexFile.Writer writer) {
+        ensureBuilt();
+        PrimitivO header = writer.getHeader();
+        header.writeInt(bitsForOffset);
+        header.writeInt(offsetMask);
+        header.writeInt(kValue);
+        header.writeFloat(absoluteMinScore);
+        header.writeFloat(relativeMinScore);
+        header.writeFloat(matchScore);
+        header.writeFloat(mismatchPenalty);
+        header.writeFloat(offsetShiftPenalty);
+        header.writeInt(minAlignmentLength);
+        header.writeInt(maxIndels);
+        header.writeBoolean(floatingLeftBound);
+        header.writeBoolean(floatingRightBound);
+        header.writeInt(minDistance);
+        header.writeInt(maxDistance);
+        header.writeObject(refFrom);
+        header.writeObject(refLength);
+        header.writeInt(maxReferenceLength);
+        header.writeInt(minReferenceLength);
+        header.writeInt(sequencesInBase);
+        writer.addIndex(index);
+    }
+
+    /**
+     * Reads mapper written by {@link #write(IndexFile.Writer)}
+     */
+    static KMapper read(IndexFile.Reader reader) throws IOException {
+        PrimitivI header = reader.getHeader();
+        int bitsForOffset = header.readInt(),
+                offsetMask = header.readInt(),
+                kValue = header.readInt();
+        float absoluteMinScore = header.readFloat(),
+                relativeMinScore = header.readFloat(),
+                matchScore = header.readFloat(),
+                mismatchPenalty = header.readFloat(),
+                offsetShiftPenalty = header.readFloat();
+        int minAlignmentLength = header.readInt(),
+                maxIndels = header.readInt();
+        boolean floatingLeftBound = header.readBoolean(),
+                floatingRightBound = header.readBoolean();
+        int minDistance = header.readInt(),
+                maxDistance = header.readInt();
+        int[] refFrom = header.readObject(int[].class),
+                refLength = header.readObject(int[].class);
+        int maxReferenceLength = header.readInt(),
+                minReferenceLength = header.readInt(),
+                sequencesInBase = header.readInt();
+        SeedIndex index = reader.nextIndex();
+
+        BitArray allFilter = new BitArray(sequencesInBase);
+        allFilter.setAll();
+        return new KMapper(bitsForOffset, offsetMask, kValue, null, null, index, absoluteMinScore,
+                relativeMinScore, matchScore, mismatchPenalty, offsetShiftPenalty, minAlignmentLength, maxIndels,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, true, refFrom, refLength,
+                maxReferenceLength, minReferenceLength, sequencesInBase, allFilter);
+    }
+
     /**
      * Encodes and adds individual kMer to the base.
      */
     private void addKmer(int kmer, int id, int offset) {
-        if (base[kmer].length == lengths[kmer])
-            base[kmer] = copyOf(base[kmer], base[kmer].length * 3 / 2 + 1);
-
         if ((offset & offsetMask) != offset)
             throw new IllegalArgumentException("Record is too long.");
 
-        base[kmer][lengths[kmer]++] = (id << bitsForOffset) | (offset);
+        addRecord(kmer, (id << bitsForOffset) | (offset));
+    }
+
+    /**
+     * Adds encoded record to the base.
+     */
+    private void addRecord(int kmer, int record) {
+        if (base[kmer] == null)
+            base[kmer] = new int[10];
+        else if (base[kmer].length == lengths[kmer])
+            base[kmer] = copyOf(base[kmer], base[kmer].length * 3 / 2 + 1);
+
+        base[kmer][lengths[kmer]++] = record;
+    }
+
+    /**
+     * Extracts all kMers of the sequence (except homopolymeric ones) and passes them to the consumer.
+     */
+    private void forEachKmer(NucleotideSequence sequence, int offset, int length, int id, KmerConsumer consumer) {
+        int kmer = 0;
+        int kmerMask = 0xFFFFFFFF >>> (32 - kValue * 2);
+        int tMask = 0xFFFFFFFF >>> (34 - kValue * 2);
+
+        int to = length - kValue;
+        for (int j = 0; j < kValue; ++j)
+            kmer = kmer << 2 | sequence.codeAt(j + offset);
+        consumer.accept(kmer, id, offset);
+
+        for (int i = 1; i <= to; ++i) {
+            //Next kMer
+            kmer = kmerMask & (kmer << 2 | sequence.codeAt(offset + i + kValue - 1));
+
+            //Detecting homopolymeric kMers and dropping them
+            if (((kmer ^ (kmer >>> 2)) & tMask) == 0 &&
+                    ((kmer ^ (kmer << 2)) & (tMask << 2)) == 0)
+                continue;
+
+            consumer.accept(kmer, id, i + offset);
+        }
+    }
+
+    private interface KmerConsumer {
+        void accept(int kmer, int id, int offset);
     }
 
     /**
@@ -327,6 +496,10 @@ public final class KMapper implements java.io.Serializable {
         //Resetting built flag
         built = false;
 
+        //Restoring base from the index, if this mapper was already used
+        if (base == null)
+            unpackIndex();
+
         //Next id.
         if (refLength.length == sequencesInBase) {
             refLength = copyOf(refLength, sequencesInBase * 3 / 2 + 1);
@@ -340,28 +513,124 @@ public final class KMapper implements java.io.Serializable {
         maxReferenceLength = max(maxReferenceLength, sequence.size());
         minReferenceLength = Math.min(minReferenceLength, sequence.size());
 
-        int kmer = 0;
-        int kmerMask = 0xFFFFFFFF >>> (32 - kValue * 2);
-        int tMask = 0xFFFFFFFF >>> (34 - kValue * 2);
+        forEachKmer(sequence, offset, length, id, this::addKmer);
 
-        int to = length - kValue;
-        for (int j = 0; j < kValue; ++j)
-            kmer = kmer << 2 | sequence.codeAt(j + offset);
-        addKmer(kmer, id, offset);
+        return id;
+    }
 
-        for (int i = 1; i <= to; ++i) {
-            //Next kMer
-            kmer = kmerMask & (kmer << 2 | sequence.codeAt(offset + i + kValue - 1));
+    /**
+     * Adds reference sequences to the base of this mapper. Result is identical to sequential invocation of {@link
+     * #addReference(NucleotideSequence)} for all sequences, but kMers are extracted and distributed in parallel
+     * using common fork-join pool.
+     *
+     * @param sequences sequences
+     * @return index assigned to the first sequence, subsequent sequences get subsequent indices
+     */
+    public int addReferences(List<NucleotideSequence> sequences) {
+        return addReferences(sequences, ForkJoinPool.commonPool());
+    }
 
-            //Detecting homopolymeric kMers and dropping them
-            if (((kmer ^ (kmer >>> 2)) & tMask) == 0 &&
-                    ((kmer ^ (kmer << 2)) & (tMask << 2)) == 0)
-                continue;
+    /**
+     * Adds reference sequences to the base of this mapper. Result is identical to sequential invocation of {@link
+     * #addReference(NucleotideSequence)} for all sequences, but kMers are extracted and distributed in parallel.
+     *
+     * <p>Sequences are split into chunks, kMers of each chunk are extracted in a separate task and grouped by kMer
+     * ranges. Then records for each kMer range are appended to the base in a separate task, taking chunks in the
+     * original order, so records for each kMer are added in exactly the same order as by sequential addition.</p>
+     *
+     * @param sequences sequences
+     * @param executor  executor to build records in
+     * @return index assigned to the first sequence, subsequent sequences get subsequent indices
+     */
+    public int addReferences(List<NucleotideSequence> sequences, ExecutorService executor) {
+        // Checking all sequences before any modification of the base
+        for (NucleotideSequence sequence : sequences)
+            if (((sequence.size() - kValue) & offsetMask) != sequence.size() - kValue)
+                throw new IllegalArgumentException("Record is too long.");
+
+        //Resetting built flag
+        built = false;
+
+        //Restoring base from the index, if this mapper was already used
+        if (base == null)
+            unpackIndex();
 
-            addKmer(kmer, id, i + offset);
+        int firstId = sequencesInBase;
+        if (refLength.length < sequencesInBase + sequences.size()) {
+            refLength = copyOf(refLength, sequencesInBase + sequences.size());
+            refFrom = copyOf(refFrom, sequencesInBase + sequences.size());
+        }
+        for (NucleotideSequence sequence : sequences) {
+            int id = sequencesInBase++;
+            refFrom[id] = 0;
+            refLength[id] = sequence.size();
+            maxReferenceLength = max(maxReferenceLength, sequence.size());
+            minReferenceLength = Math.min(minReferenceLength, sequence.size());
         }
 
-        return id;
+        // kMer range = kmer >>> rangeShift
+        final int rangeBits = Math.min(6, 2 * kValue), rangeShift = 2 * kValue - rangeBits;
+        final int numberOfChunks = Math.min(sequences.size(), 4 * Runtime.getRuntime().availableProcessors());
+
+        // Extracting kMers
+        List<Callable<KmerChunk>> extractTasks = new ArrayList<>();
+        for (int c = 0; c < numberOfChunks; ++c) {
+            final int from = (int) ((long) sequences.size() * c / numberOfChunks),
+                    to = (int) ((long) sequences.size() * (c + 1) / numberOfChunks);
+            extractTasks.add(() -> {
+                IntArrayList kmers = new IntArrayList(), records = new IntArrayList();
+                for (int i = from; i < to; ++i)
+                    forEachKmer(sequences.get(i), 0, sequences.get(i).size(), firstId + i, (kmer, id, offset) -> {
+                        kmers.add(kmer);
+                        records.add((id << bitsForOffset) | offset);
+                    });
+                return new KmerChunk(kmers, records, rangeBits, rangeShift);
+            });
+        }
+        List<KmerChunk> chunks = ExecutorUtil.invokeAll(executor, extractTasks);
+
+        // Appending records, different kMer ranges are processed independently
+        List<Callable<Void>> appendTasks = new ArrayList<>();
+        for (int r = 0; r < (1 << rangeBits); ++r) {
+            final int range = r;
+            appendTasks.add(() -> {
+                for (KmerChunk chunk : chunks)
+                    for (int i = chunk.rangeStart[range]; i < chunk.rangeStart[range + 1]; ++i)
+                        addRecord(chunk.kmers[i], chunk.records[i]);
+                return null;
+            });
+        }
+        ExecutorUtil.invokeAll(executor, appendTasks);
+
+        return firstId;
+    }
+
+
+    /**
+     * kMers and records extracted from a chunk of sequences, stably grouped by kMer ranges
+     */
+    private static final class KmerChunk {
+        final int[] kmers, records;
+        /**
+         * Records of range r occupy positions from rangeStart[r] to rangeStart[r + 1]
+         */
+        final int[] rangeStart;
+
+        KmerChunk(IntArrayList kmers, IntArrayList records, int rangeBits, int rangeShift) {
+            this.kmers = new int[kmers.size()];
+            this.records = new int[kmers.size()];
+            this.rangeStart = new int[(1 << rangeBits) + 1];
+            for (int i = 0; i < kmers.size(); ++i)
+                ++rangeStart[(kmers.get(i) >>> rangeShift) + 1];
+            for (int r = 0; r < 1 << rangeBits; ++r)
+                rangeStart[r + 1] += rangeStart[r];
+            int[] pointers = Arrays.copyOf(rangeStart, 1 << rangeBits);
+            for (int i = 0; i < kmers.size(); ++i) {
+                int p = pointers[kmers.get(i) >>> rangeShift]++;
+                this.kmers[p] = kmers.get(i);
+                this.records[p] = records.get(i);
+            }
+        }
     }
 
     /**
@@ -372,8 +641,11 @@ public final class KMapper implements java.io.Serializable {
         if (!built)
             synchronized (this) {
                 if (!built) {
-                    for (int i = 0; i < base.length; ++i)
-                        base[i] = copyOf(base[i], lengths[i]);
+                    if (base != null) {
+                        index = SeedIndex.create(base.length, base, lengths, offHeapIndex);
+                        base = null;
+                        lengths = null;
+                    }
                     refLength = copyOf(refLength, sequencesInBase);
                     refFrom = copyOf(refFrom, sequencesInBase);
                     allFilter = new BitArray(sequencesInBase);
@@ -383,6 +655,31 @@ public final class KMapper implements java.io.Serializable {
             }
     }
 
+    /**
+     * Restores base of records from the index (records of the index are copied, so the index can still be used by
+     * other mappers).
+     */
+    private void unpackIndex() {
+        int[][] base = new int[index.getNumberOfKMers()][];
+        int[] lengths = new int[base.length];
+        for (int kmer = 0; kmer < base.length; ++kmer)
+            if ((lengths[kmer] = index.size(kmer)) != 0)
+                base[kmer] = index.getRecords(kmer);
+        this.base = base;
+        this.lengths = lengths;
+        this.index = null;
+    }
+
+    /**
+     * Sets whether records of the index should be placed off-heap (in direct memory), takes effect on the next build
+     * of the index. Default value is determined by {@link SeedIndex#isOffHeapByDefault()}.
+     *
+     * @param offHeapIndex true to place index records off-heap
+     */
+    public void setOffHeapIndex(boolean offHeapIndex) {
+        this.offHeapIndex = offHeapIndex;
+    }
+
     /**
      * Calculates maximal estimate of score for the hit.
      */
@@ -472,17 +769,17 @@ public final class KMapper implements java.io.Serializable {
         IntArrayList[] candidates = new IntArrayList[sequencesInBase];
 
         //Building candidates arrays (seed)
-        int id, offset;
+        final SeedIndex index = this.index;
+        int id, offset, record, end;
         for (int i = 0; i < seeds.length; ++i) {
             kmer = 0;
             for (int j = seedPositions.get(i); j < seedPositions.get(i) + kValue; ++j)
                 kmer = kmer << 2 | sequence.codeAt(j);
 
             seeds[i] = kmer;
-            if (base[kmer].length == 0)
-                continue;
-
-            for (int record : base[kmer]) {
+            end = index.end(kmer);
+            for (int p = index.begin(kmer); p < end; ++p) {
+                record = index.get(p);
                 id = record >>> bitsForOffset;
 
                 // Apply filter
@@ -753,9 +1050,10 @@ public final class KMapper implements java.io.Serializable {
      * Method used internally.
      */
     public SummaryStatistics getRecordSizeSummaryStatistics() {
+        ensureBuilt();
         SummaryStatistics ss = new SummaryStatistics();
-        for (int len : lengths)
-            ss.addValue(len);
+        for (int kmer = 0; kmer < index.getNumberOfKMers(); ++kmer)
+            ss.addValue(index.size(kmer));
         return ss;
     }
 
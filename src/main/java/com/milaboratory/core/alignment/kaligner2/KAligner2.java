@@ -4,18 +4,25 @@ import cc.redberry.primitives.Filter;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
 import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentWorkspace;
 import com.milaboratory.core.alignment.BandedAffineAligner;
 import com.milaboratory.core.alignment.BandedSemiLocalResult;
+import com.milaboratory.core.alignment.IndexFile;
 import com.milaboratory.core.alignment.batch.BatchAlignerWithBaseWithFilter;
 import com.milaboratory.core.alignment.kaligner2.KMapper2.ArrList;
 import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.GlobalObjectMappers;
 import com.milaboratory.util.IntArrayList;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -91,6 +98,80 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         return new KAligner2<>(mapper.setFloatingRightBound(floatingRightBound), parameters, sequences, payloads, stat);
     }
 
+    /**
+     * Type of index file storing KAligner2
+     */
+    static final String INDEX_FILE_TYPE = "KAligner2";
+
+    /**
+     * Saves aligner with prebuilt index, reference sequences and payloads to a file, that can be loaded by {@link
+     * #load(File, Class)}. Payloads are serialized with PrimitivIO.
+     *
+     * @param file target file
+     * @throws IOException if an I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        try (IndexFile.Writer writer = new IndexFile.Writer(file, INDEX_FILE_TYPE)) {
+            PrimitivO header = writer.getHeader();
+            header.writeUTF(GlobalObjectMappers.toOneLine(parameters));
+            header.writeInt(sequences.size());
+            for (NucleotideSequence sequence : sequences)
+                header.writeObject(sequence);
+            header.writeInt(payloads.size());
+            TIntObjectIterator<P> it = payloads.iterator();
+            while (it.hasNext()) {
+                it.advance();
+                header.writeInt(it.key());
+                header.writeObject(it.value());
+            }
+            mapper.write(writer);
+        }
+    }
+
+    /**
+     * Loads aligner saved by {@link #save(File)}. Index records are memory-mapped, so loading is fast and index
+     * memory is shared between all processes using the same file.
+     *
+     * @param file         index file
+     * @param payloadClass class of payloads
+     * @return aligner
+     * @throws IOException if an I/O error occurs or file has wrong format
+     */
+    public static <P> KAligner2<P> load(File file, Class<P> payloadClass) throws IOException {
+        return load(file, payloadClass, null);
+    }
+
+    /**
+     * Loads aligner saved by {@link #save(File)}. Index records are memory-mapped, so loading is fast and index
+     * memory is shared between all processes using the same file.
+     *
+     * @param file         index file
+     * @param payloadClass class of payloads
+     * @param stat         statistics aggregator
+     * @return aligner
+     * @throws IOException if an I/O error occurs or file has wrong format
+     */
+    public static <P> KAligner2<P> load(File file, Class<P> payloadClass, KAligner2Statistics stat)
+            throws IOException {
+        try (IndexFile.Reader reader = new IndexFile.Reader(file, INDEX_FILE_TYPE)) {
+            PrimitivI header = reader.getHeader();
+            KAlignerParameters2 parameters = GlobalObjectMappers.ONE_LINE.readValue(header.readUTF(),
+                    KAlignerParameters2.class);
+            int count = header.readInt();
+            List<NucleotideSequence> sequences = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i)
+                sequences.add(header.readObject(NucleotideSequence.class));
+            count = header.readInt();
+            TIntObjectHashMap<P> payloads = new TIntObjectHashMap<>(Math.max(count, 10));
+            for (int i = 0; i < count; ++i) {
+                int id = header.readInt();
+                payloads.put(id, header.readObject(payloadClass));
+            }
+            KMapper2 mapper = KMapper2.read(reader, stat);
+            return new KAligner2<>(mapper, parameters, sequences, payloads, stat);
+        }
+    }
+
     /**
      * Adds new reference sequence to the base of this mapper and returns index assigned to it.
      *
@@ -106,6 +187,30 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         return id;
     }
 
+    /**
+     * Adds new reference sequences to the base of this aligner. Result is identical to sequential invocation of
+     * {@link #addReference(NucleotideSequence, Object)}, but kMers are extracted in parallel (see {@link
+     * KMapper2#addReferences(List)}).
+     *
+     * @param sequences sequences
+     * @param payloads  payloads for the sequences, or {@literal null}
+     * @return index assigned to the first sequence, subsequent sequences get subsequent indices
+     */
+    public int addReferences(List<NucleotideSequence> sequences, List<P> payloads) {
+        if (payloads != null && payloads.size() != sequences.size())
+            throw new IllegalArgumentException("Different number of sequences and payloads.");
+        for (NucleotideSequence sequence : sequences)
+            if (sequence.containWildcards())
+                throw new IllegalArgumentException("Reference sequences with wildcards not supported.");
+        int firstId = mapper.addReferences(sequences);
+        assert this.sequences.size() == firstId;
+        this.sequences.addAll(sequences);
+        if (payloads != null)
+            for (int i = 0; i < payloads.size(); ++i)
+                this.payloads.put(firstId + i, payloads.get(i));
+        return firstId;
+    }
+
     @Override
     public BitArray createFilter(Filter<P> filter) {
         BitArray ret = new BitArray(sequences.size());
@@ -148,12 +253,54 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         if (stat != null)
             stat.nextQuery();
 
-        final BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            return align(mapper.align(query, from, to, filter), query, from, to, workspace.getBandedAffineCache());
+        }
+    }
+
+    /**
+     * Aligns a batch of queries. Results are identical to the results of sequential {@link
+     * #align(NucleotideSequence)} invocations for the same queries in the same thread, but seeds of all queries are
+     * looked up in the index together (see {@link KMapper2#alignBatch(List)}).
+     *
+     * @param queries queries
+     * @return list of results in the order of queries
+     */
+    public List<KAlignmentResult2<P>> alignBatch(List<NucleotideSequence> queries) {
+        return alignBatch(queries, null);
+    }
+
+    /**
+     * Aligns a batch of queries (see {@link #alignBatch(List)}).
+     *
+     * @param queries queries
+     * @param filter  record filter (align only records with filter[id] == true)
+     * @return list of results in the order of queries
+     */
+    public List<KAlignmentResult2<P>> alignBatch(List<NucleotideSequence> queries, BitArray filter) {
+        long start = System.nanoTime();
+        KMapper2.SeedBatch batch = mapper.lookupSeeds(queries);
+        List<KAlignmentResult2<P>> results = new ArrayList<>(queries.size());
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            for (int i = 0; i < queries.size(); ++i) {
+                if (stat != null)
+                    stat.nextQuery();
+                NucleotideSequence query = queries.get(i);
+                results.add(align(mapper.align(batch, i, filter), query, 0, query.size(),
+                        workspace.getBandedAffineCache()));
+            }
+        }
+        if (stat != null)
+            stat.batchDone(start);
+        return results;
+    }
 
+    private KAlignmentResult2<P> align(final KMappingResult2 mapping,
+                                       final NucleotideSequence query, final int from, final int to,
+                                       final BandedAffineAligner.MatrixCache cache) {
         final AffineGapAlignmentScoring<NucleotideSequence> scoring = parameters.getScoring();
 
         // Saving to local variables for performance
-        final KMappingResult2 mapping = mapper.align(query, from, to, filter);
         final IntArrayList seeds = mapping.seeds;
 
         ArrList<KAlignmentHit2<P>> hits = new ArrList<>();
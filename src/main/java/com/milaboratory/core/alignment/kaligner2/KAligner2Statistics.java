@@ -63,6 +63,12 @@ public final class KAligner2Statistics {
             alignerTime = new AtomicHistogram(0, 10000, 400),
             totalTime = new AtomicHistogram(0, 10000, 400);
 
+    // Batch processing (see KMapper2.alignBatch)
+    public final AtomicLong inputBatches = new AtomicLong();
+    public final AtomicHistogram batchSize = new AtomicHistogram(0, 1000);
+    public final AtomicHistogram batchSeedLookupTime = new AtomicHistogram(0, 100000, 400),
+            batchTotalTime = new AtomicHistogram(0, 100000, 400);
+
 
     public void nextQuery() {
         State state = currentState.get();
@@ -100,6 +106,45 @@ public final class KAligner2Statistics {
             topInitialRecordsCount.add(candidates[top].size());
     }
 
+    /**
+     * Same as {@link #afterCandidatesArrayDone(IntArrayList[])}, but only candidates of the targets listed in {@code
+     * touched} (in ascending order) are taken into account, targets without records are not counted.
+     */
+    public void afterCandidatesArrayDone(IntArrayList[] candidates, IntArrayList touched) {
+        State state = currentState.get();
+
+        state.previousStep = System.nanoTime();
+        seedExtractionTime.add((state.previousStep - state.start) / 1000.0);
+
+        // Collecting statistics and calculating top candidate index
+        int top = -1;
+        for (int t = 0; t < touched.size(); t++) {
+            int i = touched.get(t);
+            allInitialRecordsCount.add(candidates[i].size());
+            if (top == -1 || (candidates[top].size() < candidates[i].size()))
+                top = i;
+        }
+
+        // Saving top in stat
+        state.topByRecordsCount = top;
+
+        // Collecting information on number of records in top record
+        if (top == -1)
+            topInitialRecordsCount.add(0);
+        else
+            topInitialRecordsCount.add(candidates[top].size());
+    }
+
+    public void batchSeedLookupDone(int queries, long start) {
+        inputBatches.incrementAndGet();
+        batchSize.add(queries);
+        batchSeedLookupTime.add((System.nanoTime() - start) / 1000.0);
+    }
+
+    public void batchDone(long start) {
+        batchTotalTime.add((System.nanoTime() - start) / 1000.0);
+    }
+
     public void initialClusters(int id, IntArrayList results) {
         State state = currentState.get();
 
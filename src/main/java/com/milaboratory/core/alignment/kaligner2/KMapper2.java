@@ -16,18 +16,27 @@
 package com.milaboratory.core.alignment.kaligner2;
 
 import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.alignment.IndexFile;
+import com.milaboratory.core.alignment.SeedIndex;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.ExecutorUtil;
 import com.milaboratory.util.IntArrayList;
 import com.milaboratory.util.IntCombinations;
 import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
 
 import static com.milaboratory.core.alignment.kaligner2.KAligner2Statistics.ClusterTrimmingType.*;
 import static com.milaboratory.core.alignment.kaligner2.OffsetPacksAccumulator.*;
@@ -52,22 +61,28 @@ public final class KMapper2 implements java.io.Serializable {
     /*
                                    MSB                         LSB
                                    < --------- 32 bits --------- >
-        Base record format:   int  |.... ID ....|.... OFFSET ....|
-                                                 < bitsForOffset >
+        Base record format:   int  |.... OFFSET ....|.... ID ....|
+                                                     < bitsForIndex >
+
+        Wide base record format (used if there are too many references for the format above):
+                                   < --------- 64 bits --------- >
+                              long |.. OFFSET (32) ..|.. ID (32) ..|
+
+        Both formats are also sorted by offset and then by id.
      */
 
     /**
-     * Number of bits in base record for offset value
+     * Number of bits in base record for index value
      */
     private static final int bitsForIndex = 13;
     /**
-     * Index mask (= 0xFFFFFFFF << (32 - bitsForIndex))
+     * Index mask (= 0xFFFFFFFF >>> (32 - bitsForIndex))
      */
     private static final int indexMask = 0xFFFFFFFF >>> (32 - bitsForIndex);
     /**
-     * Mask to extract offset value (= 0xFFFFFFFF >>> bitsForIndex)
+     * Maximal offset value that can be stored in record (offset is stored as signed value)
      */
-    private static final int offsetMask = 0xFFFFFFFF >>> bitsForIndex;
+    private static final int maxOffset = Integer.MAX_VALUE >> bitsForIndex;
 
     /*           Parameters             */
 
@@ -84,15 +99,35 @@ public final class KMapper2 implements java.io.Serializable {
      */
     private final int kMersPerPosition;
     /**
-     * Base of records for individual kMers
+     * Base of records for individual kMers (used only for building of index), tables for individual hole masks are
+     * allocated on first use
      */
     //base[combinationMask][kMer][seeds]
-    private final int[][][] base;
+    private int[][][] base;
     /**
-     * Number of records for each individual kMer (used only for building of base)
+     * Base of wide records for individual kMers, used instead of {@link #base} if number of references exceeds
+     * limit of the compact record format
+     */
+    //wideBase[combinationMask][kMer][seeds]
+    private long[][][] wideBase;
+    /**
+     * Number of records for each individual kMer (used only for building of index)
      */
     //length[combinationMask][kMer]
-    private final int[][] lengths;
+    private int[][] lengths;
+    /**
+     * Index of records for individual kMers, created from base by {@link #ensureBuilt()}
+     */
+    //index[combinationMask]
+    private SeedIndex[] index;
+    /**
+     * Whether records are stored in the wide format
+     */
+    private boolean wideRecords = false;
+    /**
+     * Whether index records should be placed off-heap
+     */
+    private boolean offHeapIndex = SeedIndex.isOffHeapByDefault();
     /**
      * Minimal absolute score value
      */
@@ -153,7 +188,7 @@ public final class KMapper2 implements java.io.Serializable {
     final ThreadLocal<ThreadLocalCache> memoryCache = new ThreadLocal<ThreadLocalCache>() {
         @Override
         protected ThreadLocalCache initialValue() {
-            return new ThreadLocalCache(sequencesInBase, slotCount, maxClusterIndels, matchScore, mismatchScore, offsetShiftScore, absoluteMinClusterScore);
+            return new ThreadLocalCache(sequencesInBase, kMersPerPosition, slotCount, maxClusterIndels, matchScore, mismatchScore, offsetShiftScore, absoluteMinClusterScore);
         }
     };
     /**
@@ -215,7 +250,7 @@ public final class KMapper2 implements java.io.Serializable {
         this.nValue = nValue;
         this.kValue = kValue;
 
-        // TODO lazy
+        // Tables for individual hole masks are allocated lazily (see addKmer)
         int maxHolesMask = kValue == 0 ? 1 : (((0xFFFFFFFF >>> (32 - kValue)) << (nValue - kValue)) + 1);
         base = new int[maxHolesMask][][];
         lengths = new int[maxHolesMask][];
@@ -226,13 +261,6 @@ public final class KMapper2 implements java.io.Serializable {
 
         this.kMersPerPosition = kMersPerPosition;
 
-        IntCombinations combinations = new IntCombinations(nValue, kValue);
-        for (int[] combination : CUtils.it(combinations)) {
-            int holesMask = getCombinationMask(combination);
-            base[holesMask] = new int[1 << ((nValue - kValue) * 2)][];
-            lengths[holesMask] = new int[1 << ((nValue - kValue) * 2)];
-        }
-
         //Parameters
         this.minDistance = minDistance;
         this.maxDistance = maxDistance;
@@ -252,7 +280,7 @@ public final class KMapper2 implements java.io.Serializable {
     }
 
     private KMapper2(int nValue, int kValue, int kMersPerPosition,
-                     int[][][] base, int[][] lengths,
+                     SeedIndex[] index, boolean wideRecords,
                      int absoluteMinClusterScore, int extraClusterScore,
                      int matchScore, int mismatchScore, int offsetShiftScore,
                      int slotCount, int maxClusterIndels,
@@ -265,8 +293,8 @@ public final class KMapper2 implements java.io.Serializable {
         this.nValue = nValue;
         this.kValue = kValue;
         this.kMersPerPosition = kMersPerPosition;
-        this.base = base;
-        this.lengths = lengths;
+        this.index = index;
+        this.wideRecords = wideRecords;
         this.absoluteMinClusterScore = absoluteMinClusterScore;
         this.extraClusterScore = extraClusterScore;
         this.matchScore = matchScore;
@@ -302,7 +330,7 @@ public final class KMapper2 implements java.io.Serializable {
 
     KMapper2 setFloatingLeftBound(boolean floatingLeftBound) {
         ensureBuilt();
-        return new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
+        return new KMapper2(nValue, kValue, kMersPerPosition, index, wideRecords, absoluteMinClusterScore,
                 extraClusterScore, matchScore, mismatchScore,
                 offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
                 floatingLeftBound, floatingRightBound, minDistance, maxDistance,
@@ -311,7 +339,7 @@ public final class KMapper2 implements java.io.Serializable {
 
     KMapper2 setFloatingRightBound(boolean floatingRightBound) {
         ensureBuilt();
-        return new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
+        return new KMapper2(nValue, kValue, kMersPerPosition, index, wideRecords, absoluteMinClusterScore,
                 extraClusterScore, matchScore, mismatchScore,
                 offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
                 floatingLeftBound, floatingRightBound, minDistance, maxDistance,
@@ -339,24 +367,315 @@ public final class KMapper2 implements java.io.Serializable {
                 parameters.isFloatingLeftBound(), parameters.isFloatingRightBound(), stat);
     }
 
+    /**
+     * Type of index file storing KMapper2
+     */
+    static final String INDEX_FILE_TYPE = "KMapper2";
+
+    /**
+     * Saves built mapper to a file, that can be loaded by {@link #load(File)}. Mapper is built if it is not yet.
+     *
+     * @param file target file
+     * @throws IOException if an I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        try (IndexFile.Writer writer = new IndexFile.Writer(file, INDEX_FILE_TYPE)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Loads mapper saved by {@link #save(File)}. Index records are memory-mapped, so loading is fast and index memory
+     * is shared between all processes using the same file.
+     *
+     * @param file index file
+     * @return mapper
+     * @throws IOException if an I/O error occurs or file has wrong format
+     */
+    public static KMapper2 load(File file) throws IOException {
+        return load(file, null);
+    }
+
+    /**
+     * Loads mapper saved by {@link #save(File)}. Index records are memory-mapped, so loading is fast and index memory
+     * is shared between all processes using the same file.
+     *
+     * @param file index file
+     * @param stat statistics aggregator
+     * @return mapper
+     * @throws IOException if an I/O error occurs or file has wrong format
+     */
+    public static KMapper2 load(File file, KAligner2Statistics stat) throws IOException {
+        try (IndexFile.Reader reader = new IndexFile.Reader(file, INDEX_FILE_TYPE)) {
+            return read(reader, stat);
+        }
+    }
+
+    /**
+     * Writes parameters to the header and indices of this mapper to the index file
+     */
+    void write(IndexFile.Writer writer) {
+        ensureBuilt();
+        PrimitivO header = writer.getHeader();
+        header.writeInt(nValue);
+        header.writeInt(kValue);
+        header.writeInt(kMersPerPosition);
+        header.writeInt(absoluteMinClusterScore);
+        header.writeInt(extraClusterScore);
+        header.writeInt(matchScore);
+        header.writeInt(mismatchScore);
+        header.writeInt(offsetShiftScore);
+        header.writeInt(slotCount);
+        header.writeInt(maxClusterIndels);
+        header.writeInt(maxClusters);
+        header.writeInt(absoluteMinScore);
+        header.writeFloat(relativeMinScore);
+        header.writeBoolean(floatingLeftBound);
+        header.writeBoolean(floatingRightBound);
+        header.writeInt(minDistance);
+        header.writeInt(maxDistance);
+        header.writeInt(maxReferenceLength);
+        header.writeInt(minReferenceLength);
+        header.writeInt(sequencesInBase);
+        header.writeBoolean(wideRecords);
+        header.writeInt(index.length);
+        for (int holesMask = 0; holesMask < index.length; ++holesMask)
+            if (index[holesMask] != null) {
+                header.writeInt(holesMask);
+                writer.addIndex(index[holesMask]);
+            }
+        header.writeInt(-1);
+    }
+
+    /**
+     * Reads mapper written by {@link #write(IndexFile.Writer)}
+     */
+    static KMapper2 read(IndexFile.Reader reader, KAligner2Statistics stat) throws IOException {
+        PrimitivI header = reader.getHeader();
+        int nValue = header.readInt(),
+                kValue = header.readInt(),
+                kMersPerPosition = header.readInt(),
+                absoluteMinClusterScore = header.readInt(),
+                extraClusterScore = header.readInt(),
+                matchScore = header.readInt(),
+                mismatchScore = header.readInt(),
+                offsetShiftScore = header.readInt(),
+                slotCount = header.readInt(),
+                maxClusterIndels = header.readInt(),
+                maxClusters = header.readInt(),
+                absoluteMinScore = header.readInt();
+        float relativeMinScore = header.readFloat();
+        boolean floatingLeftBound = header.readBoolean(),
+                floatingRightBound = header.readBoolean();
+        int minDistance = header.readInt(),
+                maxDistance = header.readInt(),
+                maxReferenceLength = header.readInt(),
+                minReferenceLength = header.readInt(),
+                sequencesInBase = header.readInt();
+        boolean wideRecords = header.readBoolean();
+        SeedIndex[] index = new SeedIndex[header.readInt()];
+        int holesMask;
+        while ((holesMask = header.readInt()) != -1)
+            index[holesMask] = reader.nextIndex();
+
+        BitArray allFilter = new BitArray(sequencesInBase);
+        allFilter.setAll();
+        return new KMapper2(nValue, kValue, kMersPerPosition, index, wideRecords, absoluteMinClusterScore,
+                extraClusterScore, matchScore, mismatchScore,
+                offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance,
+                true, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter, stat);
+    }
+
     /**
      * Encodes and adds individual kMer to the base.
      */
     private void addKmer(int holesMask, int kmer, int id, int offset) {
+        // Offset is also limited by the format of candidate records (see OffsetPacksAccumulator)
+        if (offset > maxOffset)
+            throw new IllegalArgumentException("Record is too long.");
+
+        if (!wideRecords && id > indexMask)
+            convertToWideRecords();
+
+        if (lengths[holesMask] == null)
+            lengths[holesMask] = new int[numberOfKMers()];
+
+        if (wideRecords) {
+            addWideKmer(holesMask, kmer, id, offset);
+            return;
+        }
+
+        if (base[holesMask] == null)
+            base[holesMask] = new int[numberOfKMers()][];
+
         if (base[holesMask][kmer] == null)
             base[holesMask][kmer] = new int[10];
         else if (base[holesMask][kmer].length == lengths[holesMask][kmer])
             base[holesMask][kmer] = copyOf(base[holesMask][kmer], base[holesMask][kmer].length * 3 / 2 + 1);
 
-        if ((offset & offsetMask) != offset)
-            throw new IllegalArgumentException("Record is too long.");
-
         assert lengths[holesMask][kmer] == 0 || index(base[holesMask][kmer][lengths[holesMask][kmer] - 1]) != id
                 || offset(base[holesMask][kmer][lengths[holesMask][kmer] - 1]) < offset;
 
         base[holesMask][kmer][lengths[holesMask][kmer]++] = record(offset, id);
     }
 
+    private void addWideKmer(int holesMask, int kmer, int id, int offset) {
+        if (wideBase[holesMask] == null)
+            wideBase[holesMask] = new long[numberOfKMers()][];
+
+        long[] records = wideBase[holesMask][kmer];
+        if (records == null)
+            records = wideBase[holesMask][kmer] = new long[10];
+        else if (records.length == lengths[holesMask][kmer])
+            records = wideBase[holesMask][kmer] = copyOf(records, records.length * 3 / 2 + 1);
+
+        records[lengths[holesMask][kmer]++] = wideRecord(offset, id);
+    }
+
+    /**
+     * Converts all records added so far to the wide format, all subsequent records will be added in the wide format.
+     */
+    private void convertToWideRecords() {
+        long[][][] wideBase = new long[base.length][][];
+        for (int holesMask = 0; holesMask < base.length; ++holesMask) {
+            if (base[holesMask] == null)
+                continue;
+            wideBase[holesMask] = new long[base[holesMask].length][];
+            for (int kmer = 0; kmer < base[holesMask].length; ++kmer) {
+                int[] records = base[holesMask][kmer];
+                if (records == null)
+                    continue;
+                long[] wideRecords = new long[records.length];
+                for (int i = 0; i < lengths[holesMask][kmer]; ++i)
+                    wideRecords[i] = wideRecord(offset(records[i]), index(records[i]));
+                wideBase[holesMask][kmer] = wideRecords;
+                base[holesMask][kmer] = null;
+            }
+        }
+        this.base = null;
+        this.wideBase = wideBase;
+        this.wideRecords = true;
+    }
+
+    /**
+     * Number of different kMers for each hole mask
+     */
+    private int numberOfKMers() {
+        return 1 << ((nValue - kValue) * 2);
+    }
+
+    /**
+     * Sets whether records of the index should be placed off-heap (in direct memory). Default value is determined by
+     * {@link SeedIndex#isOffHeapByDefault()}. Index is shared by all mappers derived from this one.
+     *
+     * @param offHeapIndex true to place index records off-heap
+     */
+    public void setOffHeapIndex(boolean offHeapIndex) {
+        if (built)
+            throw new IllegalStateException("Already in use.");
+        this.offHeapIndex = offHeapIndex;
+    }
+
+    /**
+     * Switches this mapper to the wide records format regardless of the number and lengths of references (used in
+     * tests and benchmarks).
+     */
+    void forceWideRecords() {
+        if (built)
+            throw new IllegalStateException("Already in use.");
+        if (!wideRecords)
+            convertToWideRecords();
+    }
+
+
+    /**
+     * Adds all kMers of the sequence for a single hole mask.
+     */
+    private void addKmers(int holesMask, NucleotideSequence sequence, int id) {
+        int tMask = 0xFFFFFFFF >>> (34 - nValue * 2);
+        int to = sequence.size() - nValue;
+
+        int kmer = 0;
+        for (int j = 0; j < nValue; ++j)
+            if (((holesMask >> j) & 1) == 0)
+                kmer = (kmer << 2 | sequence.codeAt(j));
+        addKmer(holesMask, kmer, id, 0);
+
+        for (int i = 1; i <= to; ++i) {
+            //Next kMer
+            kmer = 0;
+            for (int j = 0; j < nValue; ++j)
+                if (((holesMask >> j) & 1) == 0)
+                    kmer = (kmer << 2 | sequence.codeAt(i + j));
+
+            //Detecting homopolymeric kMers and dropping them
+            //TODO:::!!!!
+//            if (((kmer ^ (kmer >>> 2)) & tMask) == 0 && ((kmer ^ (kmer << 2)) & (tMask << 2)) == 0)
+//                continue;
+
+            addKmer(holesMask, kmer, id, i);
+        }
+    }
+
+    /**
+     * Adds reference sequences to the base of this mapper. Result is identical to sequential invocation of {@link
+     * #addReference(NucleotideSequence)} for all sequences, but records for different hole masks are built in
+     * parallel using common fork-join pool.
+     *
+     * @param sequences sequences
+     * @return index assigned to the first sequence, subsequent sequences get subsequent indices
+     */
+    public int addReferences(List<NucleotideSequence> sequences) {
+        return addReferences(sequences, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Adds reference sequences to the base of this mapper. Result is identical to sequential invocation of {@link
+     * #addReference(NucleotideSequence)} for all sequences, but records for different hole masks are built in
+     * parallel.
+     *
+     * @param sequences sequences
+     * @param executor  executor to build records in
+     * @return index assigned to the first sequence, subsequent sequences get subsequent indices
+     */
+    public int addReferences(List<NucleotideSequence> sequences, ExecutorService executor) {
+        if (built)
+            throw new IllegalStateException("Already in use.");
+
+        // Checking all sequences before any modification of the base
+        for (NucleotideSequence sequence : sequences)
+            if (sequence.size() - nValue > maxOffset)
+                throw new IllegalArgumentException("Record is too long.");
+
+        int firstId = sequencesInBase;
+        sequencesInBase += sequences.size();
+        for (NucleotideSequence sequence : sequences) {
+            maxReferenceLength = max(maxReferenceLength, sequence.size());
+            minReferenceLength = Math.min(minReferenceLength, sequence.size());
+        }
+
+        // Format switch must happen before concurrent modification of the base
+        if (!wideRecords && sequencesInBase - 1 > indexMask)
+            convertToWideRecords();
+
+        // Tables for different hole masks are independent, within each table records are added in the same order as
+        // in sequential addition
+        List<Callable<Void>> tasks = new ArrayList<>();
+        IntCombinations combinations = new IntCombinations(nValue, kValue);
+        for (int[] combination : CUtils.it(combinations)) {
+            final int holesMask = getCombinationMask(combination);
+            tasks.add(() -> {
+                for (int i = 0; i < sequences.size(); ++i)
+                    addKmers(holesMask, sequences.get(i), firstId + i);
+                return null;
+            });
+        }
+
+        ExecutorUtil.invokeAll(executor, tasks);
+
+        return firstId;
+    }
 
     /**
      * Adds new reference sequence to the base of this mapper and returns index assigned to it.
@@ -368,10 +687,6 @@ public final class KMapper2 implements java.io.Serializable {
         if (built)
             throw new IllegalStateException("Already in use.");
 
-        // Checking parameters
-        if (sequencesInBase >= (1 << bitsForIndex))
-            throw new IllegalArgumentException("Maximum number of records reached.");
-
         //Resetting built flag
         built = false;
 
@@ -381,35 +696,9 @@ public final class KMapper2 implements java.io.Serializable {
         maxReferenceLength = max(maxReferenceLength, sequence.size());
         minReferenceLength = Math.min(minReferenceLength, sequence.size());
 
-        int kmer;
-        int tMask = 0xFFFFFFFF >>> (34 - nValue * 2);
-
-        int to = sequence.size() - nValue;
         IntCombinations combinations = new IntCombinations(nValue, kValue);
-        for (int[] combination : CUtils.it(combinations)) {
-            int holesMask = getCombinationMask(combination);
-
-            kmer = 0;
-            for (int j = 0; j < nValue; ++j)
-                if (((holesMask >> j) & 1) == 0)
-                    kmer = (kmer << 2 | sequence.codeAt(j));
-            addKmer(holesMask, kmer, id, 0);
-
-            for (int i = 1; i <= to; ++i) {
-                //Next kMer
-                kmer = 0;
-                for (int j = 0; j < nValue; ++j)
-                    if (((holesMask >> j) & 1) == 0)
-                        kmer = (kmer << 2 | sequence.codeAt(i + j));
-
-                //Detecting homopolymeric kMers and dropping them
-                //TODO:::!!!!
-//                if (((kmer ^ (kmer >>> 2)) & tMask) == 0 && ((kmer ^ (kmer << 2)) & (tMask << 2)) == 0)
-//                    continue;
-
-                addKmer(holesMask, kmer, id, i);
-            }
-        }
+        for (int[] combination : CUtils.it(combinations))
+            addKmers(getCombinationMask(combination), sequence, id);
 
         return id;
     }
@@ -422,17 +711,36 @@ public final class KMapper2 implements java.io.Serializable {
         if (!built)
             synchronized (this) {
                 if (!built) {
-                    int[] zero = new int[0];
+                    // Packing records into flat index tables, build tables are released as soon as possible
+                    SeedIndex[] index = new SeedIndex[lengths.length];
                     IntCombinations combinations = new IntCombinations(nValue, kValue);
                     for (int[] combination : CUtils.it(combinations)) {
                         int holeMask = getCombinationMask(combination);
-                        for (int kMer = 0; kMer < base[holeMask].length; ++kMer)
-                            if (base[holeMask][kMer] != null) {
-                                base[holeMask][kMer] = copyOf(base[holeMask][kMer], lengths[holeMask][kMer]);
-                                Arrays.sort(base[holeMask][kMer]);
-                            } else
-                                base[holeMask][kMer] = zero;
+                        if (wideRecords) {
+                            long[][] records = wideBase[holeMask];
+                            if (records != null)
+                                for (int kMer = 0; kMer < records.length; ++kMer)
+                                    if (records[kMer] != null)
+                                        Arrays.sort(records[kMer], 0, lengths[holeMask][kMer]);
+                            index[holeMask] = SeedIndex.createWide(numberOfKMers(), records, lengths[holeMask],
+                                    offHeapIndex);
+                            wideBase[holeMask] = null;
+                        } else {
+                            int[][] records = base[holeMask];
+                            if (records != null)
+                                for (int kMer = 0; kMer < records.length; ++kMer)
+                                    if (records[kMer] != null)
+                                        Arrays.sort(records[kMer], 0, lengths[holeMask][kMer]);
+                            index[holeMask] = SeedIndex.create(numberOfKMers(), records, lengths[holeMask],
+                                    offHeapIndex);
+                            base[holeMask] = null;
+                        }
+                        lengths[holeMask] = null;
                     }
+                    this.index = index;
+                    this.base = null;
+                    this.wideBase = null;
+                    this.lengths = null;
 
                     allFilter = new BitArray(sequencesInBase);
                     allFilter.setAll();
@@ -491,118 +799,346 @@ public final class KMapper2 implements java.io.Serializable {
         ThreadLocalCache cache = memoryCache.get();
         cache.reset();
 
-        final ArrList<KMappingHit2> result = new ArrList<>();
+        // Sequence is shorter than k values
+        if (to - from <= nValue)
+            return emptyResult();
+
+        // Positions of first nucleotides of seed k-mers in query sequence
+        final IntArrayList seedPositions = cache.seedPositions;
+        final RandomGenerator random = RandomUtil.getThreadLocalRandom();
+        generateSeedPositions(from, to, random, seedPositions);
+
+        final int[] holesMasks = cache.holesMasks, kMers = cache.kMers;
+        final SeedIndex[] index = this.index;
+        final boolean wideRecords = this.wideRecords;
+
+        // Building list of records for all target sequences
+        // By querying db for each seed kmer from query sequence
+        IntArrayList allRecords = cache.cachedIntArray1;
+        int allWideRecords;
+
+        for (int i = 0; i < seedPositions.size(); ++i) {
+            allRecords.clear();
+            allWideRecords = 0;
+
+            generateSeedKMers(sequence, seedPositions.get(i), random, holesMasks, kMers);
+
+            for (int j = 0; j < kMersPerPosition; ++j)
+                if (!wideRecords)
+                    index[holesMasks[j]].addRecords(kMers[j], allRecords);
+                else
+                    allWideRecords = cache.addWideRecords(allWideRecords, index[holesMasks[j]], kMers[j]);
+
+            // Adding each records for it's corresponding candidate
+            if (!wideRecords)
+                addCandidates(cache, filter, IntArrayList.getArrayReference(allRecords), 0, allRecords.size(),
+                        i, seedPositions);
+            else
+                addCandidates(cache, filter, cache.wideRecords, 0, allWideRecords, i, seedPositions);
+        }
+
+        return calculateHits(cache, seedPositions);
+    }
+
+    /**
+     * Performs an alignment of a batch of queries. Results are identical to the results of sequential {@link
+     * #align(NucleotideSequence)} invocations for the same queries in the same thread.
+     *
+     * <p>Seed kMers of all queries are generated first, then the index is queried for all of them in the order of
+     * hole masks and kMers, so index tables are traversed sequentially once per batch instead of being randomly
+     * accessed for each seed of each query. For large bases this substantially reduces number of cache misses.</p>
+     *
+     * <p>This methods is thread-safe and can be concurrently used by several threads if no new sequences added after
+     * its first invocation.</p>
+     *
+     * @param queries target sequences
+     * @return list of results in the order of queries
+     */
+    public List<KMappingResult2> alignBatch(List<NucleotideSequence> queries) {
+        return alignBatch(queries, null);
+    }
+
+    /**
+     * Performs an alignment of a batch of queries (see {@link #alignBatch(List)}).
+     *
+     * @param queries target sequences
+     * @param filter  record filter (align only records with filter[id] == true)
+     * @return list of results in the order of queries
+     */
+    public List<KMappingResult2> alignBatch(List<NucleotideSequence> queries, BitArray filter) {
+        long start = System.nanoTime();
+        SeedBatch batch = lookupSeeds(queries);
+        List<KMappingResult2> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); ++i)
+            results.add(align(batch, i, filter));
+        if (stat != null)
+            stat.batchDone(start);
+        return results;
+    }
+
+    /**
+     * Generates seeds for all queries of the batch and extracts records for them from the index.
+     */
+    SeedBatch lookupSeeds(List<NucleotideSequence> queries) {
+        ensureBuilt();
+
+        long start = System.nanoTime();
+        final RandomGenerator random = RandomUtil.getThreadLocalRandom();
+        final ThreadLocalCache cache = memoryCache.get();
+        final int[] holesMasks = cache.holesMasks, kMers = cache.kMers;
+        final SeedIndex[] index = this.index;
+
+        // Generating seeds in exactly the same order as by sequential align(...) calls
+        IntArrayList[] seedPositions = new IntArrayList[queries.size()];
+        int[] firstSeed = new int[queries.size() + 1];
+        IntArrayList lookupMasks = new IntArrayList(), lookupKMers = new IntArrayList();
+        int seeds = 0;
+        for (int q = 0; q < queries.size(); ++q) {
+            firstSeed[q] = seeds;
+            NucleotideSequence query = queries.get(q);
+            if (query.size() <= nValue)
+                continue;
+            IntArrayList positions = seedPositions[q] = new IntArrayList();
+            generateSeedPositions(0, query.size(), random, positions);
+            for (int i = 0; i < positions.size(); ++i) {
+                generateSeedKMers(query, positions.get(i), random, holesMasks, kMers);
+                for (int j = 0; j < kMersPerPosition; ++j) {
+                    lookupMasks.add(holesMasks[j]);
+                    lookupKMers.add(kMers[j]);
+                }
+            }
+            seeds += positions.size();
+        }
+        firstSeed[queries.size()] = seeds;
+
+        // Ordering lookups by hole mask (counting sort) and then by kMer; lookup l belongs to seed l / kMersPerPosition
+        int lookups = lookupMasks.size();
+        int[] maskStart = new int[index.length + 1];
+        for (int l = 0; l < lookups; ++l)
+            ++maskStart[lookupMasks.get(l) + 1];
+        for (int m = 0; m < index.length; ++m)
+            maskStart[m + 1] += maskStart[m];
+        int[] pointers = copyOf(maskStart, index.length);
+        long[] order = new long[lookups];
+        for (int l = 0; l < lookups; ++l)
+            order[pointers[lookupMasks.get(l)]++] = ((long) lookupKMers.get(l)) << 32 | l;
+        for (int m = 0; m < index.length; ++m)
+            if (maskStart[m + 1] - maskStart[m] > 1)
+                Arrays.sort(order, maskStart[m], maskStart[m + 1]);
+
+        // Calculating number of records for each seed
+        int[] recordOffsets = new int[seeds + 1];
+        for (int m = 0; m < index.length; ++m)
+            for (int o = maskStart[m]; o < maskStart[m + 1]; ++o)
+                recordOffsets[(int) order[o] / kMersPerPosition + 1] += index[m].size((int) (order[o] >>> 32));
+        for (int i = 0; i < seeds; ++i)
+            recordOffsets[i + 1] += recordOffsets[i];
+
+        // Extracting records
+        pointers = copyOf(recordOffsets, seeds);
+        int[] records = null;
+        long[] wideRecords = null;
+        if (this.wideRecords)
+            wideRecords = new long[recordOffsets[seeds]];
+        else
+            records = new int[recordOffsets[seeds]];
+        for (int m = 0; m < index.length; ++m)
+            for (int o = maskStart[m]; o < maskStart[m + 1]; ++o) {
+                int kMer = (int) (order[o] >>> 32), seed = (int) order[o] / kMersPerPosition;
+                SeedIndex idx = index[m];
+                if (records != null)
+                    for (int p = idx.begin(kMer), end = idx.end(kMer); p < end; ++p)
+                        records[pointers[seed]++] = idx.get(p);
+                else
+                    for (int p = idx.begin(kMer), end = idx.end(kMer); p < end; p += 2)
+                        wideRecords[pointers[seed]++] = idx.getWide(p);
+            }
+
+        if (stat != null)
+            stat.batchSeedLookupDone(queries.size(), start);
+
+        return new SeedBatch(seedPositions, firstSeed, recordOffsets, records, wideRecords);
+    }
+
+    /**
+     * Performs an alignment of a query from the batch with already extracted seed records.
+     *
+     * @param batch  batch
+     * @param query  index of the query in the batch
+     * @param filter record filter (align only records with filter[id] == true)
+     */
+    KMappingResult2 align(SeedBatch batch, int query, BitArray filter) {
+        if (filter == null)
+            filter = allFilter;
+
+        ThreadLocalCache cache = memoryCache.get();
+        cache.reset();
+
+        final IntArrayList seedPositions = batch.seedPositions[query];
 
         // Sequence is shorter than k values
-        if (to - from <= nValue) {
-            KMappingResult2 kMappingResult2 = new KMappingResult2(null, result);
+        if (seedPositions == null)
+            return emptyResult();
 
-            // Collecting statistics
-            if (stat != null)
-                stat.kMappingResults(kMappingResult2);
+        for (int i = 0; i < seedPositions.size(); ++i) {
+            int seed = batch.firstSeed[query] + i;
+            if (batch.records != null)
+                addCandidates(cache, filter, batch.records,
+                        batch.recordOffsets[seed], batch.recordOffsets[seed + 1], i, seedPositions);
+            else
+                addCandidates(cache, filter, batch.wideRecords,
+                        batch.recordOffsets[seed], batch.recordOffsets[seed + 1], i, seedPositions);
+        }
 
-            return kMappingResult2;
+        return calculateHits(cache, seedPositions);
+    }
+
+    /**
+     * Seeds of a batch of queries with the records extracted from the index for them.
+     */
+    static final class SeedBatch {
+        /**
+         * Seed positions for each query ({@literal null} if query is shorter than nValue)
+         */
+        final IntArrayList[] seedPositions;
+        /**
+         * Global index of the first seed of each query
+         */
+        final int[] firstSeed;
+        /**
+         * Records of the seed s occupy [recordOffsets[s], recordOffsets[s + 1]) range of records / wideRecords array
+         */
+        final int[] recordOffsets;
+        final int[] records;
+        final long[] wideRecords;
+
+        SeedBatch(IntArrayList[] seedPositions, int[] firstSeed, int[] recordOffsets,
+                  int[] records, long[] wideRecords) {
+            this.seedPositions = seedPositions;
+            this.firstSeed = firstSeed;
+            this.recordOffsets = recordOffsets;
+            this.records = records;
+            this.wideRecords = wideRecords;
         }
+    }
 
-        // Positions of first nucleotides of seed k-mers in query sequence
-        final IntArrayList seedPositions = cache.seedPositions;
+    private KMappingResult2 emptyResult() {
+        KMappingResult2 kMappingResult2 = new KMappingResult2(null, new ArrList<KMappingHit2>());
+
+        // Collecting statistics
+        if (stat != null)
+            stat.kMappingResults(kMappingResult2);
+
+        return kMappingResult2;
+    }
+
+    /**
+     * Generates random positions of seeds in the [from, to) range of query sequence
+     */
+    private void generateSeedPositions(int from, int to, RandomGenerator random, IntArrayList seedPositions) {
         int seedPosition = from;
 
         // Adding firs possible position
         seedPositions.add(seedPosition);
 
         // Generating random positions of seeds
-        RandomGenerator random = RandomUtil.getThreadLocalRandom();
         while ((seedPosition += random.nextInt(maxDistance + 1 - minDistance) + minDistance) < to - nValue)
             seedPositions.add(seedPosition);
 
         // Adding last possible position to the lis of seed positions
         seedPositions.add(to - nValue);
+    }
 
-        int kmer;
-        final IntArrayList[] candidates = cache.candidates;
-
-        // Building list of records for all target sequences
-        // By querying db for each seed kmer from query sequence
-        int id, positionInTarget;
-        IntArrayList allRecords = cache.cachedIntArray1;
-
+    /**
+     * Generates kMersPerPosition random non-overlapping hole masks for the seed and extracts corresponding kMers
+     */
+    private void generateSeedKMers(NucleotideSequence sequence, int seedPosition, RandomGenerator random,
+                                   int[] holesMasks, int[] kMers) {
         final int allPositionsMask = 0xFFFFFFFF >>> (32 - nValue);
         final int nValue2 = nValue / 2;
-        int holesMask;
-
-        for (int i = 0; i < seedPositions.size(); ++i) {
-            allRecords.clear();
-
-            int notForbidden = allPositionsMask;
-
-            for (int holesMaskIter = 0; holesMaskIter < kMersPerPosition; ++holesMaskIter) {
-                if (nValue2 <= bitCount(notForbidden)) {
-                    holesMask = 0;
-                    while (bitCount(holesMask) != kValue) {
-                        holesMask |= 1 << random.nextInt(nValue);
-                        holesMask &= notForbidden;
-                    }
-                } else {
-                    holesMask = notForbidden;
-                    while (bitCount(holesMask) != kValue)
-                        holesMask &= ~(1 << random.nextInt(nValue));
+        int notForbidden = allPositionsMask, holesMask, kmer;
+
+        for (int holesMaskIter = 0; holesMaskIter < kMersPerPosition; ++holesMaskIter) {
+            if (nValue2 <= bitCount(notForbidden)) {
+                holesMask = 0;
+                while (bitCount(holesMask) != kValue) {
+                    holesMask |= 1 << random.nextInt(nValue);
+                    holesMask &= notForbidden;
                 }
-
-                notForbidden &= ~holesMask;
-
-                kmer = 0;
-                for (int j = 0; j < nValue; ++j)
-                    if (((holesMask >> j) & 1) == 0)
-                        kmer = kmer << 2 | sequence.codeAt(seedPositions.get(i) + j);
-
-                allRecords.addAll(base[holesMask][kmer]);
+            } else {
+                holesMask = notForbidden;
+                while (bitCount(holesMask) != kValue)
+                    holesMask &= ~(1 << random.nextInt(nValue));
             }
 
-            // Adding each records for it's corresponding candidate
-
-            allRecords.sort();
-            for (int i1 = 0; i1 < allRecords.size(); i1++) {
-                int record = allRecords.get(i1);
-                if (i1 > 0 && record == allRecords.get(i1 - 1))
-                    continue;
+            notForbidden &= ~holesMask;
 
-                // Id of target sequence, where the kMer was found
-                id = index(record);
+            kmer = 0;
+            for (int j = 0; j < nValue; ++j)
+                if (((holesMask >> j) & 1) == 0)
+                    kmer = kmer << 2 | sequence.codeAt(seedPosition + j);
 
-                // Apply filter
-                if (!filter.get(id))
-                    continue;
+            holesMasks[holesMaskIter] = holesMask;
+            kMers[holesMaskIter] = kmer;
+        }
+    }
 
-                // Position of the kMer in target sequence
-                positionInTarget = offset(record);
+    /**
+     * Adds records of a single seed (sorted in place, duplicates are skipped) to candidate lists of corresponding
+     * target sequences
+     */
+    private static void addCandidates(final ThreadLocalCache cache, final BitArray filter,
+                                      final int[] records, final int from, final int to,
+                                      final int seedIndex, final IntArrayList seedPositions) {
+        Arrays.sort(records, from, to);
+        for (int i = from; i < to; i++) {
+            int record = records[i];
+            if (i > from && record == records[i - 1])
+                continue;
 
-                // Lazy initialization of candidate lists
-                //if (candidates[id] == null)
-                //    candidates[id] = new IntArrayList();
+            // Id of target sequence, where the kMer was found and position of the kMer in target sequence
+            addCandidate(cache, filter, index(record), offset(record), seedIndex, seedPositions);
+        }
+    }
 
-                // Records for the same target in DB are sorted in descending order by positions
-                assert candidates[id].isEmpty() || index(candidates[id].last()) != i
-                        || offset(candidates[id].last()) < positionInTarget - seedPositions.get(i);
+    /**
+     * Same as {@link #addCandidates(ThreadLocalCache, BitArray, int[], int, int, int, IntArrayList)} for wide records
+     */
+    private static void addCandidates(final ThreadLocalCache cache, final BitArray filter,
+                                      final long[] records, final int from, final int to,
+                                      final int seedIndex, final IntArrayList seedPositions) {
+        Arrays.sort(records, from, to);
+        for (int i = from; i < to; i++) {
+            long record = records[i];
+            if (i > from && record == records[i - 1])
+                continue;
 
-                // Adding restructured record to candidate list
-                candidates[id].add(record(positionInTarget - seedPositions.get(i), i));
-            }
+            addCandidate(cache, filter, wideIndex(record), wideOffset(record), seedIndex, seedPositions);
         }
+    }
+
+    /**
+     * Calculates hits from the candidate lists collected in the cache
+     */
+    private KMappingResult2 calculateHits(final ThreadLocalCache cache, final IntArrayList seedPositions) {
+        final ArrList<KMappingHit2> result = new ArrList<>();
+        final IntArrayList[] candidates = cache.candidates;
+
+        // Only targets having at least one record are processed, in the order of ids
+        final IntArrayList touched = cache.touched;
+        touched.sort();
 
         // If stat object is set write statistics
         if (stat != null)
-            stat.afterCandidatesArrayDone(candidates);
+            stat.afterCandidatesArrayDone(candidates, touched);
 
         // Minimal number of records that can possible give scoring above threshold
         final int possibleMinKmers = (int) Math.ceil(absoluteMinClusterScore / matchScore);
 
         // Calculating hits for each candidate
         // Truncation & Untangling of clusters happens here
-        for (int i = 0; i < candidates.length; i++) {
-            // No records
-            if (candidates[i] == null)
-                continue;
+        for (int t = 0; t < touched.size(); t++) {
+            int i = touched.get(t);
 
             // Early termination of calculations for this candidate
             if (candidates[i].size() - 1 < possibleMinKmers)
@@ -636,6 +1172,29 @@ public final class KMapper2 implements java.io.Serializable {
         return kMappingResult2;
     }
 
+    /**
+     * Adds restructured record to candidate list of the target sequence
+     *
+     * @param id               id of target sequence, where the kMer was found
+     * @param positionInTarget position of the kMer in target sequence
+     * @param seedIndex        index of the seed in query sequence
+     */
+    private static void addCandidate(final ThreadLocalCache cache, final BitArray filter,
+                                     final int id, final int positionInTarget, final int seedIndex,
+                                     final IntArrayList seedPositions) {
+        // Apply filter
+        if (!filter.get(id))
+            return;
+
+        IntArrayList candidate = cache.candidate(id);
+
+        // Records for the same target in DB are sorted in descending order by positions
+        assert candidate.isEmpty() || index(candidate.last()) != seedIndex
+                || offset(candidate.last()) < positionInTarget - seedPositions.get(seedIndex);
+
+        candidate.add(record(positionInTarget - seedPositions.get(seedIndex), seedIndex));
+    }
+
     private static final Comparator<KMappingHit2> SCORE_COMPARATOR = new Comparator<KMappingHit2>() {
         @Override
         public int compare(final KMappingHit2 o1, final KMappingHit2 o2) {
@@ -1196,6 +1755,18 @@ public final class KMapper2 implements java.io.Serializable {
         return (offset << bitsForIndex) | index;
     }
 
+    static int wideIndex(final long record) {
+        return (int) record;
+    }
+
+    static int wideOffset(final long record) {
+        return (int) (record >>> 32);
+    }
+
+    static long wideRecord(final int offset, final int index) {
+        return ((long) offset) << 32 | index;
+    }
+
     static String recordToString(int record, IntArrayList seedPositions) {
         return "O=" + offset(record) + " Q" + seedPositions.get(index(record)) + "->T" + positionInTarget(seedPositions, record);
     }
@@ -1216,10 +1787,12 @@ public final class KMapper2 implements java.io.Serializable {
      * Method used internally.
      */
     public SummaryStatistics getRecordSizeSummaryStatistics() {
+        ensureBuilt();
         SummaryStatistics ss = new SummaryStatistics();
-        for (int[] length : lengths)
-            for (int len : length)
-                ss.addValue(len);
+        for (SeedIndex idx : index)
+            if (idx != null)
+                for (int kMer = 0; kMer < idx.getNumberOfKMers(); ++kMer)
+                    ss.addValue(idx.size(kMer));
         return ss;
     }
 
@@ -1242,33 +1815,79 @@ public final class KMapper2 implements java.io.Serializable {
     private static final class ThreadLocalCache {
         final IntArrayList seedPositions;
         final IntArrayList cachedIntArray1, cachedIntArray2, cachedIntArray3;
+        /**
+         * Candidate records for each target sequence, lists are allocated on first use
+         */
         final IntArrayList[] candidates;
+        /**
+         * Ids of target sequences with non-empty candidate lists, so per-query reset and hits calculation cost
+         * depends on the number of targets hit by the query, not on the size of the base
+         */
+        final IntArrayList touched;
+        /**
+         * Hole masks and kMers of the current seed
+         */
+        final int[] holesMasks, kMers;
         final OffsetPacksAccumulator offsetPacksAccumulator;
+        /**
+         * Buffer for records extracted from the wide base
+         */
+        long[] wideRecords = new long[16];
 
-        public ThreadLocalCache(int sequencesInBase, int slotCount, int maxClusterIndels, int matchScore,
-                                int mismatchScore, int offsetShiftScore, int absoluteMinClusterScore) {
+        public ThreadLocalCache(int sequencesInBase, int kMersPerPosition, int slotCount, int maxClusterIndels,
+                                int matchScore, int mismatchScore, int offsetShiftScore, int absoluteMinClusterScore) {
             this.seedPositions = new IntArrayList();
             this.cachedIntArray1 = new IntArrayList();
             this.cachedIntArray2 = new IntArrayList();
             this.cachedIntArray3 = new IntArrayList();
 
             this.candidates = new IntArrayList[sequencesInBase];
-
-            for (int i = 0; i < sequencesInBase; i++)
-                this.candidates[i] = new IntArrayList();
+            this.touched = new IntArrayList();
+            this.holesMasks = new int[kMersPerPosition];
+            this.kMers = new int[kMersPerPosition];
 
             this.offsetPacksAccumulator = new OffsetPacksAccumulator(
                     slotCount, maxClusterIndels, matchScore,
                     mismatchScore, offsetShiftScore, absoluteMinClusterScore);
         }
 
+        /**
+         * Returns candidate list for the target sequence, marking it as touched
+         */
+        IntArrayList candidate(int id) {
+            IntArrayList candidate = candidates[id];
+            if (candidate == null)
+                candidate = candidates[id] = new IntArrayList();
+            if (candidate.isEmpty())
+                touched.add(id);
+            return candidate;
+        }
+
+        /**
+         * Appends records of the kMer to {@link #wideRecords} buffer
+         *
+         * @param size  number of records in the buffer
+         * @param index index
+         * @param kMer  kMer
+         * @return new number of records in the buffer
+         */
+        int addWideRecords(int size, SeedIndex index, int kMer) {
+            int count = index.size(kMer);
+            if (wideRecords.length < size + count)
+                wideRecords = copyOf(wideRecords, Math.max(wideRecords.length * 2, size + count));
+            for (int p = index.begin(kMer), end = index.end(kMer); p < end; p += 2)
+                wideRecords[size++] = index.getWide(p);
+            return size;
+        }
+
         public void reset() {
             seedPositions.clear();
             cachedIntArray1.clear();
             cachedIntArray2.clear();
             cachedIntArray3.clear();
-            for (IntArrayList candidate : candidates)
-                candidate.clear();
+            for (int i = 0; i < touched.size(); ++i)
+                candidates[touched.get(i)].clear();
+            touched.clear();
         }
     }
 
@@ -21,9 +21,12 @@ import com.milaboratory.core.tree.NeighborhoodIterator;
 import com.milaboratory.core.tree.SequenceTreeMap;
 import com.milaboratory.core.tree.TreeSearchParameters;
 import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.ExecutorUtil;
 import com.milaboratory.util.Factory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import static com.milaboratory.core.tree.SequenceTreeMap.Node;
 
@@ -77,137 +80,107 @@ public final class Clustering<T, S extends Sequence<S>> implements CanReportProg
                 return clusters;
 
             final Comparator<Cluster<T>> clusterComparator = getComparatorOfClusters(strategy, sequenceExtractor);
-            // For performance
-            final int maxDepth = strategy.getMaxClusterDepth();
 
-            final List<T> objects = new ArrayList<>(inputObjects);
-            // Reverse object sorting
-            // Bigger objects will be in the beginning of the list
-            Collections.sort(objects, getComparatorOfObjectsRegardingSequences(strategy, sequenceExtractor));
+            final List<T> objects = sortedObjects();
+            final SequenceTreeMap<S, T[]> tree = buildTree(objects);
 
-            @SuppressWarnings("unchecked")
-            Alphabet<S> alphabet = sequenceExtractor.getSequence(objects.get(0)).getAlphabet();
-
-            final Factory<T[]> arrayFactory = new Factory<T[]>() {
-                @Override
-                public T[] create() {
-                    return (T[]) new Object[1];
-                }
-            };
-
-            // Putting all objects into tree map
-            // Objects with the same sequence placed into arrays (buckets)
-            final SequenceTreeMap<S, T[]> tree = new SequenceTreeMap<>(alphabet);
-            for (T object : objects) {
-                T[] array = tree.createIfAbsent(sequenceExtractor.getSequence(object), arrayFactory);
-                if (array[0] == null)
-                    array[0] = object;
-                else {
-                    array = Arrays.copyOf(array, array.length + 1);
-                    array[array.length - 1] = object;
-                    tree.put(sequenceExtractor.getSequence(object), array);
-                }
-            }
-
-            Node<T[]> current;
-
-            // Used on each iteration to prevent double processing of the same trie node (NeighborhoodIterator may
-            // return the same node several times)
-            // Used as IdentityHashMap ...
-            final HashSet<Node<T[]>> processedNodes = new HashSet<>();
-
-            ArrayList<Cluster<T>> previousLayer = new ArrayList<>(), nextLayer = new ArrayList<>(), tmp;
-
-            T[] temp;
-            boolean inTree;
             // Iterating through objects from biggest to smallest
             for (int i = 0; i < objects.size(); ++i) {
                 this.progress = i;
                 T object = objects.get(i);
 
                 // checking whether object is already clustered
-                if ((temp = tree.get(sequenceExtractor.getSequence(object))) == null)
-                    continue;
-                inTree = false;
-                for (T t : temp)
-                    if (t == object) {
-                        inTree = true;
-                        break;
-                    }
-                if (!inTree)
+                if (!isInTree(tree, object))
                     continue;
                 // <- object is not yet clustered
 
-                // Creating single-object root cluster (no parent)
-                Cluster<T> tempCluster = new Cluster<>(object);
                 // Adding root cluster to the output cluster list
-                clusters.add(tempCluster);
-                previousLayer.clear();
-                previousLayer.add(tempCluster);
-
-                // Trying to add more objects to the cluster
-                // Clustering more objects to objects clustered on the previous layer
-                // First layer is cluster head
-                for (int depth = 0; depth < maxDepth; ++depth) {
-
-                    nextLayer.clear();
-                    for (Cluster<T> previousCluster : previousLayer) {
-
-                        NeighborhoodIterator<S, T[]> iterator = tree
-                                .getNeighborhoodIterator(
-                                        sequenceExtractor.getSequence(previousCluster.head),
-                                        strategy.getSearchParameters(previousCluster),
-                                        strategy.getMutationGuide(previousCluster));
-                        processedNodes.clear();
-
-                        while ((current = iterator.nextNode()) != null) {
-                            if (!processedNodes.add(current))
-                                continue;
-
-                            T[] currentObjects = current.getObject();
-                            T matchedObject = null;
-                            // Will remain true by the end of iteration if this bucket contains no object
-                            boolean allNulls = true;
-                            for (int j = 0; j < currentObjects.length; j++) {
-                                if (currentObjects[j] == null)
-                                    continue;
-                                matchedObject = currentObjects[j];
-
-                                // Checking clusterization criteria:
-                                //   1. previousCluster.head > matchedObject
-                                //   2. strategy.canAddToCluster(previousCluster, matchedObject, iterator)
-                                if (strategy.compare(previousCluster.head, matchedObject) <= 0
-                                        || !strategy.canAddToCluster(previousCluster, matchedObject, iterator)) {
-                                    // Can't cluster this object, it remains in the bucket in the trie
-                                    // So, after iteration this bucket will contain at least one non-null object
-                                    allNulls = false;
-                                    continue;
-                                }
-
-                                // Creating child cluster
-                                nextLayer.add(tempCluster = new Cluster<>(matchedObject, previousCluster));
-                                // Adding new cluster as child to previousCluster
-                                previousCluster.add(tempCluster);
-                                // Removing the object from bucket
-                                currentObjects[j] = null;
-                            }
-                            assert matchedObject != null;
-                            if (allNulls)
-                                // Removing bucket from trie if it contains no objects
-                                tree.remove(sequenceExtractor.getSequence(matchedObject));
-                        }
+                clusters.add(buildCluster(object, tree, clusterComparator, null));
+            }
 
-                        if (previousCluster.children != null)
-                            // Reverse sorting cluster children
-                            Collections.sort(previousCluster.children, clusterComparator);
-                    }
+            // Returning collected clusters
+            return clusters;
+        } finally {
+            // Set finished state on method leave
+            progress = inputObjects.size();
+        }
+    }
+
+    /**
+     * Performs clustering using several threads. Result is identical to the result of {@link #performClustering()}.
+     *
+     * <p>Cluster heads are processed in windows of {@code WINDOW_PER_THREAD * parallelism} consecutive heads.
+     * Clusters for all heads of the window are built concurrently against the same state of the tree (objects claimed
+     * by a cluster are only marked in a cluster-local set, the tree is not modified). Then clusters are committed in
+     * the order of heads: cluster is taken as is only if its head and all objects claimed by it are still not claimed
+     * by previously committed clusters, otherwise it is rebuilt against the current state of the tree, exactly as in
+     * the sequential algorithm. Objects claimed by other clusters but rejected by this one can't change the result,
+     * so committed output always matches the sequential one.</p>
+     *
+     * <p>Strategy is invoked concurrently from several threads, and possibly several times for the same head, so it
+     * must be thread-safe and must not rely on side effects of its invocations.</p>
+     *
+     * @param executor    executor to build clusters in
+     * @param parallelism number of threads to use
+     */
+    public List<Cluster<T>> performClustering(ExecutorService executor, int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException();
+        try {
+            if (inputObjects.isEmpty())
+                return clusters;
+
+            final Comparator<Cluster<T>> clusterComparator = getComparatorOfClusters(strategy, sequenceExtractor);
+
+            final List<T> objects = sortedObjects();
+            final SequenceTreeMap<S, T[]> tree = buildTree(objects);
+
+            final int windowSize = WINDOW_PER_THREAD * parallelism;
+            final List<T> window = new ArrayList<>(windowSize);
+            final List<Callable<SpeculativeCluster<T>>> tasks = new ArrayList<>(windowSize);
+
+            int i = 0;
+            while (i < objects.size()) {
+                this.progress = i;
+
+                // Collecting next window of possible cluster heads
+                window.clear();
+                for (; i < objects.size() && window.size() < windowSize; ++i)
+                    if (isInTree(tree, objects.get(i)))
+                        window.add(objects.get(i));
+
+                // Building clusters concurrently, tree is not modified at this stage
+                tasks.clear();
+                for (final T head : window)
+                    tasks.add(() -> {
+                        Set<T> claimed = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+                        return new SpeculativeCluster<>(buildCluster(head, tree, clusterComparator, claimed), claimed);
+                    });
+                List<SpeculativeCluster<T>> built = ExecutorUtil.invokeAll(executor, tasks);
+
+                // Committing clusters in the order of heads
+                for (int j = 0; j < window.size(); ++j) {
+                    T head = window.get(j);
+
+                    // Head was claimed by one of the previous clusters
+                    if (!isInTree(tree, head))
+                        continue;
+
+                    SpeculativeCluster<T> speculative = built.get(j);
+                    boolean valid = true;
+                    for (T object : speculative.claimed)
+                        if (!isInTree(tree, object)) {
+                            valid = false;
+                            break;
+                        }
 
-                    // Reverse sorting newly collected layer
-                    Collections.sort(nextLayer, clusterComparator);
-                    // Swapping nextLayer <-and-> previousLayer
-                    tmp = nextLayer;
-                    nextLayer = previousLayer;
-                    previousLayer = tmp;
+                    if (valid) {
+                        for (T object : speculative.claimed)
+                            removeFromTree(tree, object);
+                        clusters.add(speculative.cluster);
+                    } else
+                        // Conflict with one of the previous clusters, repeating the search for the actual tree
+                        clusters.add(buildCluster(head, tree, clusterComparator, null));
                 }
             }
 
@@ -219,6 +192,188 @@ public final class Clustering<T, S extends Sequence<S>> implements CanReportProg
         }
     }
 
+    /**
+     * Number of cluster heads processed per thread in each window of parallel clustering
+     */
+    static final int WINDOW_PER_THREAD = 4;
+
+    /**
+     * Input objects, reverse sorted (bigger objects will be in the beginning of the list)
+     */
+    private List<T> sortedObjects() {
+        final List<T> objects = new ArrayList<>(inputObjects);
+        Collections.sort(objects, getComparatorOfObjectsRegardingSequences(strategy, sequenceExtractor));
+        return objects;
+    }
+
+    /**
+     * Putting all objects into tree map. Objects with the same sequence placed into arrays (buckets).
+     */
+    private SequenceTreeMap<S, T[]> buildTree(List<T> objects) {
+        @SuppressWarnings("unchecked")
+        Alphabet<S> alphabet = sequenceExtractor.getSequence(objects.get(0)).getAlphabet();
+
+        final Factory<T[]> arrayFactory = new Factory<T[]>() {
+            @Override
+            public T[] create() {
+                return (T[]) new Object[1];
+            }
+        };
+
+        final SequenceTreeMap<S, T[]> tree = new SequenceTreeMap<>(alphabet);
+        for (T object : objects) {
+            T[] array = tree.createIfAbsent(sequenceExtractor.getSequence(object), arrayFactory);
+            if (array[0] == null)
+                array[0] = object;
+            else {
+                array = Arrays.copyOf(array, array.length + 1);
+                array[array.length - 1] = object;
+                tree.put(sequenceExtractor.getSequence(object), array);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Returns true if object is not yet clustered (is still present in the tree)
+     */
+    private boolean isInTree(SequenceTreeMap<S, T[]> tree, T object) {
+        T[] bucket = tree.get(sequenceExtractor.getSequence(object));
+        if (bucket == null)
+            return false;
+        for (T t : bucket)
+            if (t == object)
+                return true;
+        return false;
+    }
+
+    /**
+     * Removes object from its bucket, and bucket from the tree if it contains no more objects
+     */
+    private void removeFromTree(SequenceTreeMap<S, T[]> tree, T object) {
+        T[] bucket = tree.get(sequenceExtractor.getSequence(object));
+        boolean allNulls = true;
+        for (int j = 0; j < bucket.length; j++) {
+            if (bucket[j] == object)
+                bucket[j] = null;
+            if (bucket[j] != null)
+                allNulls = false;
+        }
+        if (allNulls)
+            tree.remove(sequenceExtractor.getSequence(object));
+    }
+
+    /**
+     * Builds cluster with specified head.
+     *
+     * @param claimed if {@literal null} clustered objects are removed from the tree, otherwise tree is not modified
+     *                and clustered objects are added to this (identity) set
+     */
+    private Cluster<T> buildCluster(T object, SequenceTreeMap<S, T[]> tree,
+                                    Comparator<Cluster<T>> clusterComparator, Set<T> claimed) {
+        // For performance
+        final int maxDepth = strategy.getMaxClusterDepth();
+
+        Node<T[]> current;
+
+        // Used on each iteration to prevent double processing of the same trie node (NeighborhoodIterator may
+        // return the same node several times)
+        // Used as IdentityHashMap ...
+        final HashSet<Node<T[]>> processedNodes = new HashSet<>();
+
+        ArrayList<Cluster<T>> previousLayer = new ArrayList<>(), nextLayer = new ArrayList<>(), tmp;
+
+        // Creating single-object root cluster (no parent)
+        final Cluster<T> rootCluster = new Cluster<>(object);
+        Cluster<T> tempCluster;
+        previousLayer.add(rootCluster);
+
+        // Trying to add more objects to the cluster
+        // Clustering more objects to objects clustered on the previous layer
+        // First layer is cluster head
+        for (int depth = 0; depth < maxDepth; ++depth) {
+
+            nextLayer.clear();
+            for (Cluster<T> previousCluster : previousLayer) {
+
+                NeighborhoodIterator<S, T[]> iterator = tree
+                        .getNeighborhoodIterator(
+                                sequenceExtractor.getSequence(previousCluster.head),
+                                strategy.getSearchParameters(previousCluster),
+                                strategy.getMutationGuide(previousCluster));
+                processedNodes.clear();
+
+                while ((current = iterator.nextNode()) != null) {
+                    if (!processedNodes.add(current))
+                        continue;
+
+                    T[] currentObjects = current.getObject();
+                    T matchedObject = null;
+                    // Will remain true by the end of iteration if this bucket contains no object
+                    boolean allNulls = true;
+                    for (int j = 0; j < currentObjects.length; j++) {
+                        if (currentObjects[j] == null
+                                || (claimed != null && claimed.contains(currentObjects[j])))
+                            continue;
+                        matchedObject = currentObjects[j];
+
+                        // Checking clusterization criteria:
+                        //   1. previousCluster.head > matchedObject
+                        //   2. strategy.canAddToCluster(previousCluster, matchedObject, iterator)
+                        if (strategy.compare(previousCluster.head, matchedObject) <= 0
+                                || !strategy.canAddToCluster(previousCluster, matchedObject, iterator)) {
+                            // Can't cluster this object, it remains in the bucket in the trie
+                            // So, after iteration this bucket will contain at least one non-null object
+                            allNulls = false;
+                            continue;
+                        }
+
+                        // Creating child cluster
+                        nextLayer.add(tempCluster = new Cluster<>(matchedObject, previousCluster));
+                        // Adding new cluster as child to previousCluster
+                        previousCluster.add(tempCluster);
+                        if (claimed == null)
+                            // Removing the object from bucket
+                            currentObjects[j] = null;
+                        else
+                            claimed.add(matchedObject);
+                    }
+                    if (allNulls && claimed == null) {
+                        assert matchedObject != null;
+                        // Removing bucket from trie if it contains no objects
+                        tree.remove(sequenceExtractor.getSequence(matchedObject));
+                    }
+                }
+
+                if (previousCluster.children != null)
+                    // Reverse sorting cluster children
+                    Collections.sort(previousCluster.children, clusterComparator);
+            }
+
+            // Reverse sorting newly collected layer
+            Collections.sort(nextLayer, clusterComparator);
+            // Swapping nextLayer <-and-> previousLayer
+            tmp = nextLayer;
+            nextLayer = previousLayer;
+            previousLayer = tmp;
+        }
+
+        return rootCluster;
+    }
+
+    /**
+     * Cluster built without modification of the tree, and the set of objects claimed by it
+     */
+    private static final class SpeculativeCluster<T> {
+        final Cluster<T> cluster;
+        final Set<T> claimed;
+
+        SpeculativeCluster(Cluster<T> cluster, Set<T> claimed) {
+            this.cluster = cluster;
+            this.claimed = claimed;
+        }
+    }
+
     public List<Cluster<T>> getClusters() {
         if (progress != inputObjects.size())
             throw new IllegalStateException("Not yet clustered.");
@@ -265,4 +420,15 @@ public final class Clustering<T, S extends Sequence<S>> implements CanReportProg
                                                                                 ClusteringStrategy<T, S> strategy) {
         return new Clustering<>(inputObjects, sequenceExtractor, strategy).performClustering();
     }
+
+    /**
+     * Helper method. See {@link #performClustering(ExecutorService, int)}.
+     */
+    public static <T, S extends Sequence<S>> List<Cluster<T>> performClustering(Collection<T> inputObjects,
+                                                                                SequenceExtractor<T, S> sequenceExtractor,
+                                                                                ClusteringStrategy<T, S> strategy,
+                                                                                ExecutorService executor,
+                                                                                int parallelism) {
+        return new Clustering<>(inputObjects, sequenceExtractor, strategy).performClustering(executor, parallelism);
+    }
 }
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utility methods to work with BGZF (blocked GNU Zip format) files.
+ *
+ * <p>BGZF file is a concatenation of independent gzip members (blocks), each of them holding at most 64Kb of
+ * uncompressed data and carrying its own compressed size in the "BC" extra subfield of the gzip header. This makes it
+ * possible to locate block boundaries without decompression and to inflate blocks independently (e.g. in parallel or
+ * starting from an arbitrary block). Any BGZF file is a valid multi-member gzip file.</p>
+ */
+public final class BGZF {
+    private BGZF() {
+    }
+
+    /**
+     * Maximal size of uncompressed data in one block
+     */
+    public static final int MAX_BLOCK_DATA_SIZE = 65536;
+    /**
+     * Maximal size of the whole compressed block (header + compressed data + footer)
+     */
+    public static final int MAX_BLOCK_SIZE = 65536;
+    /**
+     * Recommended maximal amount of data to put into a single block, guarantees that compressed block will fit into
+     * {@link #MAX_BLOCK_SIZE} even for incompressible data
+     */
+    public static final int DEFAULT_BLOCK_DATA_SIZE = 0xff00;
+    /**
+     * Size of the standard BGZF block header (XLEN = 6)
+     */
+    public static final int BLOCK_HEADER_SIZE = 18;
+    /**
+     * Size of the gzip member footer (CRC32 + ISIZE)
+     */
+    public static final int BLOCK_FOOTER_SIZE = 8;
+    /**
+     * Standard empty block terminating BGZF files
+     */
+    private static final byte[] EOF_BLOCK = {
+            31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    /**
+     * Returns a copy of standard BGZF EOF marker block.
+     */
+    public static byte[] eofBlock() {
+        return EOF_BLOCK.clone();
+    }
+
+    /**
+     * Returns total size of the BGZF block (header + compressed data + footer) which header starts at the {@code
+     * offset} position of {@code buffer}, or -1 if bytes are not a BGZF block header.
+     *
+     * @param buffer buffer
+     * @param offset block header offset
+     * @param length number of valid bytes in buffer starting from offset
+     * @return total block size or -1 if bytes don't represent a BGZF block header
+     */
+    public static int blockSize(byte[] buffer, int offset, int length) {
+        if (length < 12
+                || buffer[offset] != 31 || buffer[offset + 1] != (byte) 139
+                || buffer[offset + 2] != 8 || (buffer[offset + 3] & 4) == 0)
+            return -1;
+        int xLen = readUInt16(buffer, offset + 10);
+        if (length < 12 + xLen)
+            return -1;
+        int p = offset + 12, end = p + xLen;
+        while (p + 4 <= end) {
+            int sLen = readUInt16(buffer, p + 2);
+            if (buffer[p] == 66 && buffer[p + 1] == 67 && sLen == 2 && p + 6 <= end)
+                return readUInt16(buffer, p + 4) + 1;
+            p += 4 + sLen;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns size of the block header (offset of compressed data relative to the block start).
+     */
+    static int headerSize(byte[] block, int offset) {
+        return 12 + readUInt16(block, offset + 10);
+    }
+
+    /**
+     * Returns size of uncompressed data stored in the block.
+     *
+     * @param block     buffer with block
+     * @param offset    block offset
+     * @param blockSize total size of the block
+     */
+    public static int uncompressedSize(byte[] block, int offset, int blockSize) {
+        return readInt32LE(block, offset + blockSize - 4);
+    }
+
+    /**
+     * Inflates BGZF block and checks CRC32 of the uncompressed data.
+     *
+     * @param block     buffer with block
+     * @param offset    block offset
+     * @param blockSize total size of the block (see {@link #blockSize(byte[], int, int)})
+     * @param output    output buffer (must have at least {@link #uncompressedSize(byte[], int, int)} bytes available
+     *                  starting from {@code outputOffset})
+     * @param inflater  inflater created with {@code nowrap = true}
+     * @return number of uncompressed bytes
+     */
+    public static int inflateBlock(byte[] block, int offset, int blockSize,
+                                   byte[] output, int outputOffset, Inflater inflater) throws IOException {
+        int dataOffset = headerSize(block, offset);
+        int uncompressedSize = uncompressedSize(block, offset, blockSize);
+        if (uncompressedSize == 0)
+            return 0;
+        inflater.reset();
+        inflater.setInput(block, offset + dataOffset, blockSize - dataOffset - BLOCK_FOOTER_SIZE);
+        try {
+            int inflated = 0;
+            while (inflated < uncompressedSize) {
+                int r = inflater.inflate(output, outputOffset + inflated, uncompressedSize - inflated);
+                if (r == 0)
+                    break;
+                inflated += r;
+            }
+            if (inflated != uncompressedSize)
+                throw new IOException("Malformed BGZF block: wrong uncompressed size.");
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed BGZF block.", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(output, outputOffset, uncompressedSize);
+        if ((int) crc.getValue() != readInt32LE(block, offset + blockSize - 8))
+            throw new IOException("Malformed BGZF block: CRC32 mismatch.");
+        return uncompressedSize;
+    }
+
+    /**
+     * Compresses data into a single BGZF block.
+     *
+     * @param data         uncompressed data
+     * @param offset       data offset
+     * @param length       data length (must not exceed {@link #DEFAULT_BLOCK_DATA_SIZE})
+     * @param output       output buffer (must have at least {@link #MAX_BLOCK_SIZE} bytes available starting from
+     *                     {@code outputOffset})
+     * @param outputOffset output offset
+     * @param deflater     deflater created with {@code nowrap = true}
+     * @return total size of the block
+     */
+    public static int deflateBlock(byte[] data, int offset, int length,
+                                   byte[] output, int outputOffset, Deflater deflater) {
+        if (length > DEFAULT_BLOCK_DATA_SIZE)
+            throw new IllegalArgumentException("Too much data for a single block: " + length);
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int maxCompressedSize = MAX_BLOCK_SIZE - BLOCK_HEADER_SIZE - BLOCK_FOOTER_SIZE;
+        int compressedSize = 0;
+        while (!deflater.finished() && compressedSize < maxCompressedSize)
+            compressedSize += deflater.deflate(output, outputOffset + BLOCK_HEADER_SIZE + compressedSize,
+                    maxCompressedSize - compressedSize);
+        if (!deflater.finished())
+            throw new IllegalStateException("Compressed data doesn't fit into a single block.");
+        int blockSize = BLOCK_HEADER_SIZE + compressedSize + BLOCK_FOOTER_SIZE;
+
+        // Header
+        System.arraycopy(EOF_BLOCK, 0, output, outputOffset, BLOCK_HEADER_SIZE);
+        writeUInt16(blockSize - 1, output, outputOffset + 16);
+
+        // Footer
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        writeInt32LE((int) crc.getValue(), output, outputOffset + blockSize - 8);
+        writeInt32LE(length, output, outputOffset + blockSize - 4);
+
+        return blockSize;
+    }
+
+    /**
+     * Reads header of the BGZF block starting from a given position of the channel.
+     *
+     * @param channel  file channel
+     * @param position block position
+     * @return total block size or -1 if position points to the end of file
+     * @throws IOException if data at the position is not a valid BGZF block header
+     */
+    public static int readBlockSize(FileChannel channel, long position) throws IOException {
+        byte[] header = new byte[BLOCK_HEADER_SIZE];
+        int read = readFully(channel, position, header, 0, BLOCK_HEADER_SIZE);
+        if (read == 0)
+            return -1;
+        int blockSize = blockSize(header, 0, read);
+        if (blockSize == -1)
+            throw new IOException("Not a BGZF block at position " + position + ".");
+        return blockSize;
+    }
+
+    /**
+     * Reads size of uncompressed data from the footer of the BGZF block starting from a given position of the
+     * channel.
+     *
+     * @param channel   file channel
+     * @param position  block position
+     * @param blockSize total block size (see {@link #readBlockSize(FileChannel, long)})
+     * @return size of uncompressed data stored in the block
+     */
+    public static int readUncompressedSize(FileChannel channel, long position, int blockSize) throws IOException {
+        byte[] iSize = new byte[4];
+        if (readFully(channel, position + blockSize - 4, iSize, 0, 4) != 4)
+            throw new EOFException("Truncated BGZF block at position " + position + ".");
+        return readInt32LE(iSize, 0);
+    }
+
+    /**
+     * Reads BGZF block starting from a given position of the channel into the buffer.
+     *
+     * @param channel  file channel
+     * @param position block position
+     * @param buffer   buffer with at least {@link #MAX_BLOCK_SIZE} bytes
+     * @return block size or -1 if position points to the end of file
+     * @throws IOException if data at the position is not a valid BGZF block
+     */
+    public static int readBlock(FileChannel channel, long position, byte[] buffer) throws IOException {
+        int read = readFully(channel, position, buffer, 0, BLOCK_HEADER_SIZE);
+        if (read == 0)
+            return -1;
+        int blockSize = blockSize(buffer, 0, read);
+        if (blockSize == -1)
+            throw new IOException("Not a BGZF block at position " + position + ".");
+        if (readFully(channel, position + read, buffer, read, blockSize - read) != blockSize - read)
+            throw new EOFException("Truncated BGZF block at position " + position + ".");
+        return blockSize;
+    }
+
+    /**
+     * Returns {@literal true} if the file starts with a BGZF block header.
+     */
+    public static boolean isBGZF(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return isBGZF(channel);
+        }
+    }
+
+    /**
+     * Returns {@literal true} if the channel starts with a BGZF block header.
+     */
+    public static boolean isBGZF(FileChannel channel) throws IOException {
+        byte[] header = new byte[BLOCK_HEADER_SIZE];
+        int read = readFully(channel, 0, header, 0, header.length);
+        return blockSize(header, 0, read) != -1;
+    }
+
+    static int readFully(FileChannel channel, long position, byte[] buffer, int offset, int length)
+            throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buffer, offset, length);
+        int total = 0;
+        while (bb.hasRemaining()) {
+            int r = channel.read(bb, position + total);
+            if (r == -1)
+                break;
+            total += r;
+        }
+        return total;
+    }
+
+    static int readUInt16(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    static int readInt32LE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF)
+                | (buffer[offset + 1] & 0xFF) << 8
+                | (buffer[offset + 2] & 0xFF) << 16
+                | (buffer[offset + 3] & 0xFF) << 24;
+    }
+
+    static void writeUInt16(int value, byte[] buffer, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    static void writeInt32LE(int value, byte[] buffer, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Sequentially inflates BGZF blocks starting from a given compressed offset of the file. Uses positional reads, so
+     * many such streams may be opened over the same channel simultaneously. Closing this stream does not close
+     * underlying channel.
+     */
+    public static final class BlockInputStream extends InputStream {
+        final FileChannel channel;
+        final byte[] block = new byte[MAX_BLOCK_SIZE];
+        final byte[] data = new byte[MAX_BLOCK_DATA_SIZE];
+        final Inflater inflater = new Inflater(true);
+        long position;
+        int dataSize, dataPointer;
+        boolean eof;
+
+        /**
+         * @param channel  file channel
+         * @param position compressed offset of the first block to read from
+         */
+        public BlockInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        /**
+         * Returns compressed offset of the block that will be read next (after all currently buffered data is
+         * consumed).
+         */
+        public long getNextBlockPosition() {
+            return position;
+        }
+
+        private boolean nextBlock() throws IOException {
+            while (!eof && dataPointer == dataSize) {
+                int blockSize = readBlock(channel, position, block);
+                if (blockSize == -1) {
+                    eof = true;
+                    return false;
+                }
+                position += blockSize;
+                dataSize = inflateBlock(block, 0, blockSize, data, 0, inflater);
+                dataPointer = 0;
+            }
+            return !eof;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextBlock())
+                return -1;
+            return data[dataPointer++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!nextBlock())
+                return -1;
+            int r = Math.min(len, dataSize - dataPointer);
+            System.arraycopy(data, dataPointer, b, off, r);
+            dataPointer += r;
+            return r;
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+    }
+}
@@ -19,12 +19,52 @@ import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 
 import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public enum CompressionType {
     None, GZIP, BZIP2;
 
+    /**
+     * Number of threads used by readers to decompress a single input stream, zero (default) means that data is
+     * decompressed in the reading thread. Parallel decompression is opt-in, can be turned on with
+     * "milib.decompressionThreads" system property or {@link #setDefaultDecompressionThreads(int)}.
+     */
+    private static volatile int defaultDecompressionThreads =
+            Integer.getInteger("milib.decompressionThreads", 0);
+
+    /**
+     * Returns number of threads used by readers to decompress a single input stream (see {@link
+     * #createInputStream(InputStream, int, int, ExecutorService)}), zero means sequential decompression.
+     */
+    public static int getDefaultDecompressionThreads() {
+        return defaultDecompressionThreads;
+    }
+
+    /**
+     * Sets number of threads used by readers to decompress a single input stream (see {@link
+     * #createInputStream(InputStream, int, int, ExecutorService)}), zero turns off parallel decompression.
+     */
+    public static void setDefaultDecompressionThreads(int threads) {
+        if (threads < 0)
+            throw new IllegalArgumentException();
+        defaultDecompressionThreads = threads;
+    }
+
+    /**
+     * Wraps compressed stream into decompressing one, using {@link #getDefaultDecompressionThreads()} threads of the
+     * common fork-join pool (data is decompressed in the reading thread by default).
+     *
+     * @param is     compressed stream
+     * @param buffer buffer size
+     */
+    public InputStream createDefaultInputStream(InputStream is, int buffer) throws IOException {
+        return createInputStream(is, buffer, defaultDecompressionThreads, ForkJoinPool.commonPool());
+    }
+
     public static CompressionType detectCompressionType(File file) {
         return detectCompressionType(file.getName());
     }
@@ -47,6 +87,24 @@ public enum CompressionType {
         return createInputStream(this, is, buffer);
     }
 
+    /**
+     * Wraps compressed stream into decompressing one.
+     *
+     * @param is          compressed stream
+     * @param buffer      buffer size, for parallel decompression also the size of data portion processed by a single
+     *                    task (not less than {@link ParallelDecompressingInputStream#MIN_CHUNK_SIZE})
+     * @param concurrency number of data portions decompressed concurrently, zero means that data is decompressed in
+     *                    the reading thread
+     * @param executor    executor to run decompression tasks in
+     */
+    public InputStream createInputStream(InputStream is, int buffer, int concurrency, ExecutorService executor)
+            throws IOException {
+        if (this == None || concurrency == 0)
+            return createInputStream(this, is, buffer);
+        return new ParallelDecompressingInputStream(is, this,
+                Math.max(buffer, ParallelDecompressingInputStream.MIN_CHUNK_SIZE), concurrency, executor);
+    }
+
     public OutputStream createOutputStream(OutputStream os) throws IOException {
         return createOutputStream(this, os, 2048);
     }
@@ -55,7 +113,27 @@ public enum CompressionType {
         return createOutputStream(this, os, buffer);
     }
 
-    private static InputStream createInputStream(CompressionType ct, InputStream is, int buffer) throws IOException {
+    /**
+     * Wraps stream into compressing one. If {@code concurrency} is non-zero gzip data is compressed in parallel and
+     * written in BGZF format (which is also a valid gzip format), see {@link ParallelCompressingOutputStream}. BZIP2
+     * data is always compressed in the writing thread.
+     *
+     * @param os          target stream
+     * @param buffer      buffer size, for parallel compression also the size of data block compressed by a single
+     *                    task (not less than {@link ParallelCompressingOutputStream#MIN_BLOCK_SIZE})
+     * @param concurrency maximal number of data blocks compressed concurrently, zero means that data is compressed in
+     *                    the writing thread
+     * @param executor    executor to run compression tasks in
+     */
+    public OutputStream createOutputStream(OutputStream os, int buffer, int concurrency, ExecutorService executor)
+            throws IOException {
+        if (this != GZIP || concurrency == 0)
+            return createOutputStream(this, os, buffer);
+        return new ParallelCompressingOutputStream(os, true, Deflater.DEFAULT_COMPRESSION,
+                Math.max(buffer, ParallelCompressingOutputStream.MIN_BLOCK_SIZE), executor, concurrency);
+    }
+
+    static InputStream createInputStream(CompressionType ct, InputStream is, int buffer) throws IOException {
         switch (ct) {
             case None:
                 return is;
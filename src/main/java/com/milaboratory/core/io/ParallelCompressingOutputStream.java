@@ -0,0 +1,252 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import com.milaboratory.util.LambdaLatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream that compresses data in parallel (in the manner of pigz). Data is collected into blocks of {@code
+ * blockSize} bytes, blocks are compressed concurrently using threads of the provided executor and written to the
+ * underlying stream in the original order. Each block is compressed either as a standalone gzip member (the result
+ * is a standard multi-member gzip file) or as a sequence of BGZF blocks (the result is a BGZF file, which is also a
+ * valid gzip file, that can be read in parallel, see {@link ParallelDecompressingInputStream}).
+ *
+ * <p>Number of blocks being compressed or waiting to be written is limited by {@code concurrency}. If the limit is
+ * reached, writing thread is blocked until one of the blocks is flushed to the underlying stream, so back-pressure
+ * from both slow compression and slow IO is communicated to the writer (the same way as in {@link
+ * com.milaboratory.primitivio.blocks.PrimitivOBlocks}).</p>
+ *
+ * <p>This class is not thread-safe, like most other output streams.</p>
+ */
+public final class ParallelCompressingOutputStream extends OutputStream {
+    /**
+     * Default size of data block compressed by a single task
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 19;
+    /**
+     * Minimal reasonable size of data block compressed by a single task
+     */
+    public static final int MIN_BLOCK_SIZE = 1 << 16;
+
+    final OutputStream target;
+    final boolean bgzf;
+    final int compressionLevel;
+    final ExecutorService executor;
+    /**
+     * Limits number of blocks being compressed or waiting to be written
+     */
+    final Semaphore concurrencyLimiter;
+    byte[] buffer;
+    int pointer;
+    /**
+     * Opened when all previously submitted blocks are written to the target stream
+     */
+    LambdaLatch currentWriteLatch = new LambdaLatch(true);
+    volatile Throwable exception;
+    boolean closed;
+
+    /**
+     * @param target      target stream
+     * @param bgzf        {@literal true} to produce BGZF output, {@literal false} to produce multi-member gzip
+     * @param executor    executor to compress blocks in
+     * @param concurrency maximal number of blocks being compressed or waiting to be written simultaneously
+     */
+    public ParallelCompressingOutputStream(OutputStream target, boolean bgzf,
+                                           ExecutorService executor, int concurrency) {
+        this(target, bgzf, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE, executor, concurrency);
+    }
+
+    /**
+     * @param target           target stream
+     * @param bgzf             {@literal true} to produce BGZF output, {@literal false} to produce multi-member gzip
+     * @param compressionLevel deflate compression level (see {@link Deflater})
+     * @param blockSize        size of data block compressed by a single task
+     * @param executor         executor to compress blocks in
+     * @param concurrency      maximal number of blocks being compressed or waiting to be written simultaneously
+     */
+    public ParallelCompressingOutputStream(OutputStream target, boolean bgzf, int compressionLevel, int blockSize,
+                                           ExecutorService executor, int concurrency) {
+        if (blockSize <= 0 || concurrency <= 0)
+            throw new IllegalArgumentException();
+        this.target = target;
+        this.bgzf = bgzf;
+        this.compressionLevel = compressionLevel;
+        this.executor = executor;
+        this.concurrencyLimiter = new Semaphore(concurrency);
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (pointer == buffer.length)
+            submitBlock();
+        buffer[pointer++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (pointer == buffer.length)
+                submitBlock();
+            int l = Math.min(len, buffer.length - pointer);
+            System.arraycopy(b, off, buffer, pointer, l);
+            pointer += l;
+            off += l;
+            len -= l;
+        }
+    }
+
+    private void checkException() throws IOException {
+        Throwable e = exception;
+        if (e == null)
+            return;
+        if (e instanceof IOException)
+            throw new IOException(e);
+        throw new RuntimeException(e);
+    }
+
+    /**
+     * Submits current buffer for compression. Blocks if there are too many blocks in flight.
+     */
+    private void submitBlock() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+        if (pointer == 0)
+            return;
+
+        checkException();
+        concurrencyLimiter.acquireUninterruptibly();
+        checkException();
+
+        final byte[] data = buffer;
+        final int length = pointer;
+        buffer = new byte[buffer.length];
+        pointer = 0;
+
+        // Creating latches for IO operations ordering
+        LambdaLatch previousLatch = currentWriteLatch;
+        LambdaLatch nextLatch = currentWriteLatch = new LambdaLatch();
+
+        executor.submit(() -> {
+            byte[] compressed = null;
+            try {
+                // CPU intensive operation, no IO
+                compressed = bgzf ? compressBGZF(data, length) : compressGZIP(data, length);
+            } catch (Throwable e) {
+                exception = e;
+            }
+
+            final byte[] block = compressed;
+            previousLatch.setCallback(() -> {
+                try {
+                    if (block != null && exception == null)
+                        target.write(block);
+                } catch (Throwable e) {
+                    exception = e;
+                } finally {
+                    // Releasing a permit for the next operation
+                    concurrencyLimiter.release();
+                    // Opening latch for the next IO operation
+                    nextLatch.open();
+                }
+            });
+        });
+    }
+
+    private byte[] compressGZIP(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 64);
+        try (GZIPOutputStream gos = new GZIPOutputStream(bos, 65536) {
+            {
+                def.setLevel(compressionLevel);
+            }
+        }) {
+            gos.write(data, 0, length);
+        }
+        return bos.toByteArray();
+    }
+
+    private byte[] compressBGZF(byte[] data, int length) {
+        int blocks = (length + BGZF.DEFAULT_BLOCK_DATA_SIZE - 1) / BGZF.DEFAULT_BLOCK_DATA_SIZE;
+        byte[] output = new byte[blocks * BGZF.MAX_BLOCK_SIZE];
+        int outputSize = 0;
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            for (int offset = 0; offset < length; offset += BGZF.DEFAULT_BLOCK_DATA_SIZE)
+                outputSize += BGZF.deflateBlock(data, offset, Math.min(BGZF.DEFAULT_BLOCK_DATA_SIZE, length - offset),
+                        output, outputSize, deflater);
+        } finally {
+            deflater.end();
+        }
+        byte[] result = new byte[outputSize];
+        System.arraycopy(output, 0, result, 0, outputSize);
+        return result;
+    }
+
+    /**
+     * Waits for all submitted blocks to be written to the target stream
+     */
+    private void sync() throws IOException {
+        CountDownLatch latch = new CountDownLatch(1);
+        LambdaLatch previousLatch = currentWriteLatch;
+        currentWriteLatch = new LambdaLatch();
+        LambdaLatch nextLatch = currentWriteLatch;
+        previousLatch.setCallback(() -> {
+            latch.countDown();
+            nextLatch.open();
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        checkException();
+    }
+
+    /**
+     * Compresses all buffered data, waits for it to be written to the target stream and flushes the target stream.
+     * In gzip mode each flush terminates current gzip member, so frequent flushes reduce compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        sync();
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            submitBlock();
+            sync();
+            if (bgzf)
+                target.write(BGZF.eofBlock());
+        } finally {
+            closed = true;
+            target.close();
+        }
+    }
+}
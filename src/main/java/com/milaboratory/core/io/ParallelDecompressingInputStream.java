@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream that decompresses data ahead of the consumer using threads of the provided executor.
+ *
+ * <p>Compressed data is read from the underlying stream sequentially (in executor threads, one read at a time) in
+ * portions of approximately {@code chunkSize} bytes. For BGZF input (detected automatically for {@link
+ * CompressionType#GZIP}) each portion consists of whole BGZF blocks, and portions are inflated in parallel. For all
+ * other inputs the whole decompression is performed by the sequential read-ahead stage, so the consumer thread only
+ * copies already decompressed data.</p>
+ *
+ * <p>At most {@code 2 * concurrency} portions are buffered at any moment, so memory footprint is bounded by
+ * approximately {@code 2 * concurrency * chunkSize} bytes.</p>
+ *
+ * <p>This class is not thread-safe, like most other input streams.</p>
+ */
+public final class ParallelDecompressingInputStream extends InputStream {
+    /**
+     * Default size of data portion processed by a single task
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 19;
+    /**
+     * Minimal reasonable size of data portion processed by a single task
+     */
+    public static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private static final Chunk EOF = new Chunk(new byte[0], -1);
+
+    final ExecutorService executor;
+    final int chunkSize, depth;
+    final InputStream source;
+    final CompressionType compressionType;
+    /**
+     * Decompressed data source for non-BGZF inputs, created lazily in the first read-ahead task
+     */
+    InputStream decompressed;
+    /**
+     * Decoding stage, identity for non-BGZF inputs
+     */
+    Function<Chunk, Chunk> decoder;
+    /**
+     * Last scheduled read-ahead task, all read-ahead tasks are chained to each other
+     */
+    CompletableFuture<Chunk> lastRead;
+    final ArrayDeque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+    Chunk current = new Chunk(new byte[0], 0);
+    int pointer;
+    volatile boolean closed;
+
+    /**
+     * @param source          compressed data
+     * @param compressionType compression type
+     * @param chunkSize       approximate size of data portion processed by a single task
+     * @param concurrency     number of data portions processed concurrently
+     * @param executor        executor to run decompression tasks in
+     */
+    public ParallelDecompressingInputStream(InputStream source, CompressionType compressionType,
+                                            int chunkSize, int concurrency, ExecutorService executor) {
+        if (chunkSize <= 0 || concurrency <= 0)
+            throw new IllegalArgumentException();
+        this.source = compressionType == CompressionType.GZIP
+                ? new PushbackInputStream(source, BGZF.BLOCK_HEADER_SIZE)
+                : source;
+        this.compressionType = compressionType;
+        this.chunkSize = chunkSize;
+        this.depth = 2 * concurrency;
+        this.executor = executor;
+        this.lastRead = CompletableFuture.completedFuture(current);
+        for (int i = 0; i < depth; ++i)
+            scheduleNext();
+    }
+
+    private void scheduleNext() {
+        CompletableFuture<Chunk> read = lastRead.thenApplyAsync(prev -> prev == EOF || closed ? EOF : readAhead(),
+                executor);
+        lastRead = read;
+        pending.add(read.thenApplyAsync(chunk -> chunk == EOF ? EOF : decoder.apply(chunk), executor));
+    }
+
+    private Chunk readAhead() {
+        try {
+            if (decoder == null)
+                init();
+            if (decompressed != null) {
+                byte[] data = new byte[chunkSize];
+                int read = readFully(decompressed, data, 0, chunkSize);
+                return read == 0 ? EOF : new Chunk(data, read);
+            }
+            return readBGZFBlocks();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void init() throws IOException {
+        if (compressionType == CompressionType.GZIP) {
+            PushbackInputStream pis = (PushbackInputStream) source;
+            byte[] header = new byte[BGZF.BLOCK_HEADER_SIZE];
+            int read = readFully(pis, header, 0, header.length);
+            pis.unread(header, 0, read);
+            if (BGZF.blockSize(header, 0, read) != -1) {
+                decoder = ParallelDecompressingInputStream::inflateBGZFBlocks;
+                return;
+            }
+        }
+        decompressed = CompressionType.createInputStream(compressionType, source, chunkSize);
+        decoder = Function.identity();
+    }
+
+    /**
+     * Reads whole BGZF blocks from the source until at least chunkSize bytes are collected
+     */
+    private Chunk readBGZFBlocks() throws IOException {
+        byte[] buffer = new byte[chunkSize + BGZF.MAX_BLOCK_SIZE];
+        int size = 0;
+        while (size < chunkSize) {
+            int read = readFully(source, buffer, size, 12);
+            if (read == 0)
+                break;
+            if (read != 12)
+                throw new EOFException("Truncated BGZF block.");
+            int xLen = BGZF.readUInt16(buffer, size + 10);
+            if (readFully(source, buffer, size + 12, xLen) != xLen)
+                throw new EOFException("Truncated BGZF block.");
+            int blockSize = BGZF.blockSize(buffer, size, 12 + xLen);
+            if (blockSize == -1)
+                throw new IOException("Not a BGZF block.");
+            if (readFully(source, buffer, size + 12 + xLen, blockSize - 12 - xLen) != blockSize - 12 - xLen)
+                throw new EOFException("Truncated BGZF block.");
+            size += blockSize;
+        }
+        return size == 0 ? EOF : new Chunk(buffer, size);
+    }
+
+    private static Chunk inflateBGZFBlocks(Chunk blocks) {
+        int dataSize = 0;
+        for (int p = 0; p < blocks.length; ) {
+            int blockSize = BGZF.blockSize(blocks.data, p, blocks.length - p);
+            dataSize += BGZF.uncompressedSize(blocks.data, p, blockSize);
+            p += blockSize;
+        }
+        byte[] data = new byte[dataSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            int offset = 0;
+            for (int p = 0; p < blocks.length; ) {
+                int blockSize = BGZF.blockSize(blocks.data, p, blocks.length - p);
+                offset += BGZF.inflateBlock(blocks.data, p, blockSize, data, offset, inflater);
+                p += blockSize;
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            inflater.end();
+        }
+        return new Chunk(data, dataSize);
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (current != EOF && pointer == current.length) {
+            CompletableFuture<Chunk> next = pending.poll();
+            scheduleNext();
+            try {
+                current = next.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw e;
+            }
+            pointer = 0;
+        }
+        return current != EOF;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk())
+            return -1;
+        return current.data[pointer++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!nextChunk())
+            return -1;
+        int r = Math.min(len, current.length - pointer);
+        System.arraycopy(current.data, pointer, b, off, r);
+        pointer += r;
+        return r;
+    }
+
+    @Override
+    public int available() {
+        return current == EOF ? 0 : current.length - pointer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        current = EOF;
+        // Waiting for the read-ahead task currently in progress (if any), all subsequent tasks will not touch source
+        try {
+            lastRead.join();
+        } catch (CompletionException ignored) {
+        }
+        pending.clear();
+        if (decompressed != null)
+            decompressed.close();
+        else
+            source.close();
+    }
+
+    static int readFully(InputStream is, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int r = is.read(buffer, offset + total, length - total);
+            if (r == -1)
+                break;
+            total += r;
+        }
+        return total;
+    }
+
+    static final class Chunk {
+        final byte[] data;
+        final int length;
+
+        Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.milaboratory.core.io.sequence;
 
+import com.milaboratory.util.Batch;
 import com.milaboratory.util.CanReportProgress;
 
 /**
@@ -66,6 +67,26 @@ public abstract class AbstractMultiReader<R extends SequenceRead>
         return reads;
     }
 
+    /**
+     * Takes at most {@code max} reads from each of the single readers.
+     *
+     * @return array of batches, one for each single reader, all batches have the same size (empty at the end of input)
+     */
+    protected synchronized Batch<SingleRead>[] takeReads(int max) {
+        @SuppressWarnings("unchecked")
+        Batch<SingleRead>[] batches = new Batch[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            batches[i] = readers[i].takeBatch(max);
+            if (batches[i].size() != batches[0].size())
+                throw new RuntimeException("Different number of reads in single-readers.");
+        }
+
+        // Incrementing reads counter
+        readsCounter.addAndGet(batches[0].size());
+
+        return batches;
+    }
+
     @Override
     public void close() {
         RuntimeException exception = null;
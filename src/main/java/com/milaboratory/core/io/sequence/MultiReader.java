@@ -15,6 +15,8 @@
  */
 package com.milaboratory.core.io.sequence;
 
+import com.milaboratory.util.Batch;
+
 public final class MultiReader extends AbstractMultiReader<MultiRead> {
     public MultiReader(SingleReader... readers) {
         super(readers);
@@ -29,4 +31,17 @@ public final class MultiReader extends AbstractMultiReader<MultiRead> {
 
         return new MultiRead(singleReads);
     }
+
+    @Override
+    public Batch<MultiRead> takeBatch(Batch<MultiRead> batch, int max) {
+        batch.clear();
+        Batch<SingleRead>[] singleReads = takeReads(max);
+        for (int i = 0; i < singleReads[0].size(); i++) {
+            SingleRead[] reads = new SingleRead[singleReads.length];
+            for (int j = 0; j < reads.length; j++)
+                reads[j] = singleReads[j].get(i);
+            batch.add(new MultiRead(reads));
+        }
+        return batch;
+    }
 }
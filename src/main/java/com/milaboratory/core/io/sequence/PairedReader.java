@@ -15,6 +15,8 @@
  */
 package com.milaboratory.core.io.sequence;
 
+import com.milaboratory.util.Batch;
+
 /**
  * Created by dbolotin on 23/06/14.
  */
@@ -32,4 +34,17 @@ public class PairedReader extends AbstractMultiReader<PairedRead> {
 
         return new PairedRead(singleReads);
     }
+
+    @Override
+    public Batch<PairedRead> takeBatch(Batch<PairedRead> batch, int max) {
+        batch.clear();
+        Batch<SingleRead>[] singleReads = takeReads(max);
+        for (int i = 0; i < singleReads[0].size(); i++) {
+            SingleRead[] reads = new SingleRead[singleReads.length];
+            for (int j = 0; j < reads.length; j++)
+                reads[j] = singleReads[j].get(i);
+            batch.add(new PairedRead(reads));
+        }
+        return batch;
+    }
 }
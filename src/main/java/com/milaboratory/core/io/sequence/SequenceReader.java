@@ -15,7 +15,7 @@
  */
 package com.milaboratory.core.io.sequence;
 
-import cc.redberry.pipe.OutputPort;
+import com.milaboratory.util.BatchOutputPort;
 
 /**
  * If this reader has some system resources associated with it (like opened file or network streams) implement
@@ -24,7 +24,7 @@ import cc.redberry.pipe.OutputPort;
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  */
-public interface SequenceReader<S extends SequenceRead> extends OutputPort<S> {
+public interface SequenceReader<S extends SequenceRead> extends BatchOutputPort<S> {
     /**
      * For sequential readers returns the number of reads read till this moment, after reader is exhausted returns total
      * number of reads. For random access readers returns total number of reads.
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivIState;
+import com.milaboratory.primitivio.blocks.PrimitivIBlocks;
+import com.milaboratory.primitivio.blocks.PrimitivIHybrid;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.util.Batch;
+import com.milaboratory.util.BatchUtil;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.LambdaSemaphore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Reads files written by {@link ColumnarReadsWriter}.
+ *
+ * <p>Reads are read sequentially via {@link #take()} (blocks are read ahead and decoded in parallel by {@link
+ * PrimitivIBlocks}), sequential reading can be started from any read with {@link #seek(long)}. Random access to a
+ * single read by id is provided by {@link #get(long)}, which uses block index stored in the end of the file, so only
+ * the block containing the read is decoded.</p>
+ *
+ * <p>Reads are numbered sequentially starting from zero.</p>
+ *
+ * @param <R> type of reads
+ */
+public class ColumnarReadsReader<R extends SequenceRead> implements SequenceReaderCloseable<R>, CanReportProgress {
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 4;
+
+    final PrimitivIHybrid input;
+    final int readAheadBlocks;
+    final int readsPerRecord;
+    final long[] blockFirstIds, blockPositions;
+    final long numberOfReads;
+
+    /**
+     * Sequential reading state
+     */
+    PrimitivIBlocks<ReadsBlock>.Reader blocksReader;
+    ReadsBlock currentBlock;
+    int pointer;
+    /**
+     * Id of the next read to be returned by take()
+     */
+    long nextId;
+
+    /**
+     * Last block loaded by random access method
+     */
+    ReadsBlock cachedBlock;
+    boolean closed = false;
+
+    public ColumnarReadsReader(Path file) throws IOException {
+        this(PrimitivIOBlocksUtil.defaultExecutorService(), file, ColumnarReadsWriter.DEFAULT_CONCURRENCY,
+                DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param executor        executor to read and decode blocks in
+     * @param file            input file
+     * @param concurrency     maximal number of blocks decoded simultaneously
+     * @param readAheadBlocks number of blocks to read ahead during sequential reading
+     * @throws IOException in case of IO error
+     */
+    public ColumnarReadsReader(ExecutorService executor, Path file, int concurrency, int readAheadBlocks)
+            throws IOException {
+        this(executor, file, concurrency, readAheadBlocks, -1);
+    }
+
+    ColumnarReadsReader(ExecutorService executor, Path file, int concurrency, int readAheadBlocks,
+                        int expectedReadsPerRecord) throws IOException {
+        this.readAheadBlocks = readAheadBlocks;
+        this.input = new PrimitivIHybrid(executor, file, PrimitivIState.INITIAL, new LambdaSemaphore(concurrency));
+        try {
+            try (PrimitivI i = input.beginPrimitivI()) {
+                if (!ColumnarReadsWriter.MAGIC.equals(i.readUTF()))
+                    throw new IllegalFileFormatException("Not a columnar reads file: " + file);
+            }
+
+            long indexPosition;
+            try (PrimitivI i = input.beginRandomAccessPrimitivI(Files.size(file) - 8)) {
+                indexPosition = i.readLong();
+            }
+
+            try (PrimitivI i = input.beginRandomAccessPrimitivI(indexPosition)) {
+                this.readsPerRecord = i.readVarInt();
+                int numberOfBlocks = i.readVarInt();
+                this.blockFirstIds = new long[numberOfBlocks];
+                this.blockPositions = new long[numberOfBlocks];
+                for (int b = 0; b < numberOfBlocks; ++b) {
+                    blockFirstIds[b] = i.readVarLong();
+                    blockPositions[b] = i.readVarLong();
+                }
+                this.numberOfReads = i.readVarLong();
+            }
+
+            if (expectedReadsPerRecord != -1 && readsPerRecord != 0 && readsPerRecord != expectedReadsPerRecord)
+                throw new IllegalArgumentException("File contains " + readsPerRecord + " reads per record, expected " +
+                        expectedReadsPerRecord + ".");
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns number of reads in each record (e.g. 2 for paired-end reads), or zero for empty file
+     */
+    public int getReadsPerRecord() {
+        return readsPerRecord;
+    }
+
+    /**
+     * Returns total number of reads in the file
+     */
+    public long getTotalNumberOfReads() {
+        return numberOfReads;
+    }
+
+    private int blockIndex(long id) {
+        int b = Arrays.binarySearch(blockFirstIds, id);
+        return b >= 0 ? b : -b - 2;
+    }
+
+    private ReadsBlock readBlock(int blockIndex, int readAheadBlocks) {
+        PrimitivIBlocks<ReadsBlock>.Reader reader = input.beginRandomAccessPrimitivIBlocks(ReadsBlock.class,
+                blockPositions[blockIndex], readAheadBlocks);
+        try {
+            return reader.take();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns read with the specified id. Does not affect sequential reading.
+     *
+     * @param id read id
+     * @return read with the specified id
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized R get(long id) {
+        checkNotClosed();
+        if (id < 0 || id >= numberOfReads)
+            throw new IndexOutOfBoundsException("Read id " + id + ", number of reads " + numberOfReads + ".");
+        int b = blockIndex(id);
+        if (cachedBlock == null || cachedBlock.firstId != blockFirstIds[b])
+            cachedBlock = readBlock(b, 1);
+        return (R) cachedBlock.get((int) (id - cachedBlock.firstId));
+    }
+
+    /**
+     * Sets position of sequential reading, so the next call to {@link #take()} will return read with the specified
+     * id.
+     *
+     * @param id read id
+     */
+    public synchronized void seek(long id) {
+        checkNotClosed();
+        if (id < 0 || id > numberOfReads)
+            throw new IndexOutOfBoundsException("Read id " + id + ", number of reads " + numberOfReads + ".");
+        closeBlocksReader();
+        currentBlock = null;
+        nextId = id;
+        if (id == numberOfReads)
+            return;
+        int b = blockIndex(id);
+        blocksReader = input.beginRandomAccessPrimitivIBlocks(ReadsBlock.class, blockPositions[b], readAheadBlocks);
+        currentBlock = blocksReader.take();
+        if (currentBlock == null || currentBlock.firstId != blockFirstIds[b])
+            throw new IllegalFileFormatException("Malformed columnar reads file.");
+        pointer = (int) (id - currentBlock.firstId);
+    }
+
+    private void closeBlocksReader() {
+        if (blocksReader != null) {
+            blocksReader.close();
+            blocksReader = null;
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed)
+            throw new IllegalStateException("Reader closed.");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized R take() {
+        if (closed)
+            return null;
+        while (currentBlock == null || pointer == currentBlock.size()) {
+            if (nextId == numberOfReads) {
+                closeBlocksReader();
+                return null;
+            }
+            if (blocksReader == null) {
+                seek(nextId);
+                continue;
+            }
+            currentBlock = blocksReader.take();
+            pointer = 0;
+            if (currentBlock == null || currentBlock.firstId != nextId)
+                throw new IllegalFileFormatException("Malformed columnar reads file.");
+        }
+        ++nextId;
+        return (R) currentBlock.get(pointer++);
+    }
+
+    @Override
+    public synchronized Batch<R> takeBatch(Batch<R> batch, int max) {
+        return BatchUtil.takeBatch(this, batch, max);
+    }
+
+    /**
+     * Returns id of the next read to be returned by {@link #take()} (i.e. number of reads read so far, if {@link
+     * #seek(long)} was not used)
+     */
+    @Override
+    public synchronized long getNumberOfReads() {
+        return nextId;
+    }
+
+    @Override
+    public synchronized double getProgress() {
+        return numberOfReads == 0 ? 1.0 : 1.0 * nextId / numberOfReads;
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        return closed || nextId == numberOfReads;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        closeBlocksReader();
+        cachedBlock = null;
+        try {
+            input.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceWriter;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.primitivio.blocks.PrimitivOBlocks;
+import com.milaboratory.primitivio.blocks.PrimitivOHybrid;
+import com.milaboratory.util.io.HasPosition;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Writes reads to a columnar binary file, that can be read back (both sequentially and by read id) with {@link
+ * ColumnarReadsReader}.
+ *
+ * <p>File layout:</p>
+ *
+ * <pre>
+ * [ header : magic string ]
+ * [ PrimitivIO blocks : one {@link ReadsBlock} per block ]
+ * [ index : reads per record, number of blocks, (first read id, block position) * blocks, number of reads ]
+ * [ 8 bytes : index position ]
+ * </pre>
+ *
+ * <p>Reads are grouped into blocks of {@code blockSize} records. Inside each block sequences are stored 2-bit
+ * packed (wildcards are stored separately as exceptions), qualities are run-length encoded and descriptions are
+ * stored in a separate column (see {@link IO.ReadsBlockSerializer}). Blocks are encoded and LZ4 compressed in
+ * parallel by {@link PrimitivOBlocks}.</p>
+ *
+ * <p>Read ids are not stored, reads are numbered sequentially on reading (the same way as in FASTQ readers). All
+ * records must have the same number of reads.</p>
+ *
+ * @param <R> type of reads
+ */
+public class ColumnarReadsWriter<R extends SequenceRead> implements SequenceWriter<R> {
+    static final String MAGIC = "MiLibColumnarReads.V01";
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 12;
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    final PrimitivOHybrid output;
+    final PrimitivOBlocks<ReadsBlock>.Writer blocks;
+    final int blockSize;
+    /**
+     * Block index, positions are filled by IO tasks and must be read only after blocks writer is closed
+     */
+    final TLongArrayList blockFirstIds = new TLongArrayList(), blockPositions = new TLongArrayList();
+    List<SequenceRead> buffer = new ArrayList<>();
+    int readsPerRecord = -1;
+    long numberOfRecords;
+    boolean closed = false;
+
+    public ColumnarReadsWriter(Path file) throws IOException {
+        this(PrimitivIOBlocksUtil.defaultExecutorService(), file, DEFAULT_BLOCK_SIZE, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param executor    executor to encode and write blocks in
+     * @param file        output file
+     * @param blockSize   number of records in a single block
+     * @param concurrency maximal number of blocks being encoded or written simultaneously
+     * @throws IOException in case of IO error
+     */
+    public ColumnarReadsWriter(ExecutorService executor, Path file, int blockSize, int concurrency) throws IOException {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException();
+        this.blockSize = blockSize;
+        this.output = new PrimitivOHybrid(executor, file);
+        try (PrimitivO o = output.beginPrimitivO()) {
+            o.writeUTF(MAGIC);
+        }
+        this.blocks = output.beginPrimitivOBlocks(concurrency, 1);
+    }
+
+    @Override
+    public synchronized void write(R read) {
+        if (closed)
+            throw new IllegalStateException("Writer closed.");
+        if (readsPerRecord == -1)
+            readsPerRecord = read.numberOfReads();
+        else if (readsPerRecord != read.numberOfReads())
+            throw new IllegalArgumentException("Expected " + readsPerRecord + " reads per record, got " +
+                    read.numberOfReads() + ".");
+        buffer.add(read);
+        if (buffer.size() == blockSize)
+            writeBlock();
+    }
+
+    private void writeBlock() {
+        if (buffer.isEmpty())
+            return;
+        long firstId = numberOfRecords;
+        blockFirstIds.add(firstId);
+        // Position is recorded in the IO sequence, right before the block itself is written
+        blocks.run(channel -> blockPositions.add(((HasPosition) channel).getPosition()));
+        blocks.write(new ReadsBlock(firstId, buffer.toArray(new SequenceRead[buffer.size()])));
+        numberOfRecords += buffer.size();
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * Writes all buffered reads to the file. Each flush finalizes current block, so frequent flushes increase file
+     * size.
+     */
+    @Override
+    public synchronized void flush() {
+        writeBlock();
+        blocks.sync();
+    }
+
+    /**
+     * Returns number of records written so far
+     */
+    public synchronized long getNumberOfReads() {
+        return numberOfRecords + buffer.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            writeBlock();
+            blocks.close();
+
+            long indexPosition = output.getPosition();
+            try (PrimitivO o = output.beginPrimitivO()) {
+                o.writeVarInt(Math.max(readsPerRecord, 0));
+                o.writeVarInt(blockFirstIds.size());
+                for (int i = 0; i < blockFirstIds.size(); ++i) {
+                    o.writeVarLong(blockFirstIds.get(i));
+                    o.writeVarLong(blockPositions.get(i));
+                }
+                o.writeVarLong(numberOfRecords);
+                o.writeLong(indexPosition);
+            }
+            output.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * {@link ColumnarReadsReader} for files with single-end reads.
+ */
+public final class ColumnarSingleReadsReader extends ColumnarReadsReader<SingleRead> implements SingleReader {
+    public ColumnarSingleReadsReader(Path file) throws IOException {
+        this(PrimitivIOBlocksUtil.defaultExecutorService(), file, ColumnarReadsWriter.DEFAULT_CONCURRENCY,
+                DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    public ColumnarSingleReadsReader(ExecutorService executor, Path file, int concurrency, int readAheadBlocks)
+            throws IOException {
+        super(executor, file, concurrency, readAheadBlocks, 1);
+    }
+}
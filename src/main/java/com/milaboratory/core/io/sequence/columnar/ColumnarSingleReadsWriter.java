@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleSequenceWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * {@link ColumnarReadsWriter} for single-end reads.
+ */
+public final class ColumnarSingleReadsWriter extends ColumnarReadsWriter<SingleRead> implements SingleSequenceWriter {
+    public ColumnarSingleReadsWriter(Path file) throws IOException {
+        super(file);
+    }
+
+    public ColumnarSingleReadsWriter(ExecutorService executor, Path file, int blockSize, int concurrency)
+            throws IOException {
+        super(executor, file, blockSize, concurrency);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReadUtil;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.core.sequence.SequenceQualityBuilder;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.primitivio.Serializer;
+
+import java.util.Arrays;
+
+class IO {
+    /**
+     * Block layout (all reads of all records in record-major order):
+     *
+     * <pre>
+     * [ varLong : first id ][ varInt : number of records ][ varInt : reads per record ]
+     * [ varInt * reads : read lengths ]
+     * [ (total length + 3) / 4 bytes : sequences, 2 bits per nucleotide ]
+     * [ varInt : number of wildcards ]( [ varInt : position delta ] * wildcards )( [ byte : code ] * wildcards )
+     * [ varInt : number of quality runs ]( [ byte : value ] * runs )( [ varInt : run length ] * runs )
+     * [ String * reads : descriptions ]
+     * </pre>
+     *
+     * Columns are additionally compressed by LZ4 on the PrimitivIO blocks level.
+     */
+    public static class ReadsBlockSerializer implements Serializer<ReadsBlock> {
+        @Override
+        public void write(PrimitivO output, ReadsBlock object) {
+            SequenceRead[] records = object.records;
+            int readsPerRecord = records.length == 0 ? 0 : records[0].numberOfReads();
+            output.writeVarLong(object.firstId);
+            output.writeVarInt(records.length);
+            output.writeVarInt(readsPerRecord);
+
+            // Lengths column
+            int totalLength = 0;
+            for (SequenceRead record : records)
+                for (int r = 0; r < readsPerRecord; ++r) {
+                    int length = record.getRead(r).getData().size();
+                    output.writeVarInt(length);
+                    totalLength += length;
+                }
+
+            // Sequence column
+            byte[] packed = new byte[(totalLength + 3) / 4];
+            int wildcards = 0;
+            int position = 0;
+            for (SequenceRead record : records)
+                for (int r = 0; r < readsPerRecord; ++r) {
+                    NucleotideSequence seq = record.getRead(r).getData().getSequence();
+                    for (int i = 0; i < seq.size(); ++i, ++position) {
+                        byte code = seq.codeAt(i);
+                        if (code > 3)
+                            ++wildcards;
+                        else
+                            packed[position >> 2] |= code << ((position & 3) << 1);
+                    }
+                }
+            output.write(packed);
+
+            // Wildcards column, stored as exceptions to the packed sequence
+            output.writeVarInt(wildcards);
+            if (wildcards != 0) {
+                byte[] codes = new byte[wildcards];
+                int w = 0, previous = 0;
+                position = 0;
+                for (SequenceRead record : records)
+                    for (int r = 0; r < readsPerRecord; ++r) {
+                        NucleotideSequence seq = record.getRead(r).getData().getSequence();
+                        for (int i = 0; i < seq.size(); ++i, ++position) {
+                            byte code = seq.codeAt(i);
+                            if (code > 3) {
+                                output.writeVarInt(position - previous);
+                                previous = position;
+                                codes[w++] = code;
+                            }
+                        }
+                    }
+                output.write(codes);
+            }
+
+            // Quality column, run-length encoded across read boundaries
+            byte[] values = new byte[Math.min(totalLength, 64)];
+            int[] runLengths = new int[values.length];
+            int runs = 0;
+            for (SequenceRead record : records)
+                for (int r = 0; r < readsPerRecord; ++r) {
+                    SequenceQuality quality = record.getRead(r).getData().getQuality();
+                    for (int i = 0; i < quality.size(); ++i) {
+                        byte value = quality.value(i);
+                        if (runs != 0 && values[runs - 1] == value)
+                            ++runLengths[runs - 1];
+                        else {
+                            if (runs == values.length) {
+                                values = Arrays.copyOf(values, values.length * 2);
+                                runLengths = Arrays.copyOf(runLengths, values.length);
+                            }
+                            values[runs] = value;
+                            runLengths[runs++] = 1;
+                        }
+                    }
+                }
+            output.writeVarInt(runs);
+            output.write(values, 0, runs);
+            for (int i = 0; i < runs; ++i)
+                output.writeVarInt(runLengths[i]);
+
+            // Descriptions column
+            for (SequenceRead record : records)
+                for (int r = 0; r < readsPerRecord; ++r)
+                    output.writeObject(record.getRead(r).getDescription());
+        }
+
+        @Override
+        public ReadsBlock read(PrimitivI input) {
+            long firstId = input.readVarLong();
+            int numberOfRecords = input.readVarInt();
+            int readsPerRecord = input.readVarInt();
+            int numberOfReads = numberOfRecords * readsPerRecord;
+
+            int[] lengths = new int[numberOfReads];
+            int totalLength = 0;
+            for (int i = 0; i < numberOfReads; ++i)
+                totalLength += lengths[i] = input.readVarInt();
+
+            // Unpacking sequences
+            byte[] packed = input.readBytes((totalLength + 3) / 4);
+            byte[] sequences = new byte[totalLength];
+            for (int i = 0; i < totalLength; ++i)
+                sequences[i] = (byte) ((packed[i >> 2] >>> ((i & 3) << 1)) & 3);
+            int wildcards = input.readVarInt();
+            if (wildcards != 0) {
+                int[] positions = new int[wildcards];
+                int position = 0;
+                for (int i = 0; i < wildcards; ++i)
+                    positions[i] = position += input.readVarInt();
+                byte[] codes = input.readBytes(wildcards);
+                for (int i = 0; i < wildcards; ++i)
+                    sequences[positions[i]] = codes[i];
+            }
+
+            // Decoding quality runs
+            int runs = input.readVarInt();
+            byte[] values = input.readBytes(runs);
+            byte[] qualities = new byte[totalLength];
+            int position = 0;
+            for (int i = 0; i < runs; ++i) {
+                int runLength = input.readVarInt();
+                Arrays.fill(qualities, position, position + runLength, values[i]);
+                position += runLength;
+            }
+
+            SequenceRead[] records = new SequenceRead[numberOfRecords];
+            position = 0;
+            for (int i = 0; i < numberOfRecords; ++i) {
+                long id = firstId + i;
+                SingleRead[] reads = new SingleRead[readsPerRecord];
+                for (int r = 0; r < readsPerRecord; ++r) {
+                    int length = lengths[i * readsPerRecord + r];
+                    SequenceBuilder<NucleotideSequence> sequence = NucleotideSequence.ALPHABET.createBuilder()
+                            .ensureCapacity(length);
+                    for (int k = 0; k < length; ++k)
+                        sequence.append(sequences[position + k]);
+                    SequenceQuality quality = new SequenceQualityBuilder(
+                            Arrays.copyOfRange(qualities, position, position + length), length)
+                            .createAndDestroy();
+                    position += length;
+                    reads[r] = new SingleReadImpl(id,
+                            new NSequenceWithQuality(sequence.createAndDestroy(), quality),
+                            input.readObject(String.class));
+                }
+                records[i] = SequenceReadUtil.construct(reads);
+            }
+            return new ReadsBlock(firstId, records);
+        }
+
+        @Override
+        public boolean isReference() {
+            return false;
+        }
+
+        @Override
+        public boolean handlesReference() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.primitivio.annotations.Serializable;
+
+/**
+ * Group of consecutive records of a columnar reads file. Each block is serialized as a single object of a {@link
+ * com.milaboratory.primitivio.blocks.PrimitivOBlocks} block, with sequences, qualities and descriptions of all reads
+ * stored as separate columns (see {@link IO.ReadsBlockSerializer}). Column encoding and decoding is performed in
+ * serialization threads of PrimitivIO blocks.
+ */
+@Serializable(by = IO.ReadsBlockSerializer.class)
+public final class ReadsBlock {
+    /**
+     * Id (ordinal number in file) of the first record
+     */
+    final long firstId;
+    /**
+     * Records, all with the same number of reads
+     */
+    final SequenceRead[] records;
+
+    ReadsBlock(long firstId, SequenceRead[] records) {
+        this.firstId = firstId;
+        this.records = records;
+    }
+
+    public long getFirstId() {
+        return firstId;
+    }
+
+    public int size() {
+        return records.length;
+    }
+
+    public SequenceRead get(int i) {
+        return records[i];
+    }
+}
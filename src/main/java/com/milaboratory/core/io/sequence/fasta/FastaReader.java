@@ -16,9 +16,12 @@
 package com.milaboratory.core.io.sequence.fasta;
 
 import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.core.io.CompressionType;
 import com.milaboratory.core.io.sequence.IllegalFileFormatException;
 import com.milaboratory.core.sequence.Alphabet;
 import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.Batch;
+import com.milaboratory.util.BatchOutputPort;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CountingInputStream;
 
@@ -31,7 +34,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * @param <S> sequence type
  */
 public class FastaReader<S extends Sequence<S>> implements CanReportProgress,
-        OutputPortCloseable<FastaRecord<S>>, AutoCloseable {
+        OutputPortCloseable<FastaRecord<S>>, BatchOutputPort<FastaRecord<S>>, AutoCloseable {
     /**
      * For atomic close.
      */
@@ -99,6 +102,27 @@ public class FastaReader<S extends Sequence<S>> implements CanReportProgress,
         this(new FileInputStream(file), alphabet, file.length());
     }
 
+    /**
+     * Creates FASTA reader for compressed file
+     *
+     * @param file     file
+     * @param alphabet alphabet
+     * @param ct       compression type
+     * @throws IOException
+     */
+    public FastaReader(File file, Alphabet<S> alphabet, CompressionType ct)
+            throws IOException {
+        this(new CountingInputStream(new FileInputStream(file)), ct, alphabet, file.length());
+    }
+
+    private FastaReader(CountingInputStream countingInputStream, CompressionType ct, Alphabet<S> alphabet, long size)
+            throws IOException {
+        this.size = size;
+        this.alphabet = alphabet;
+        this.countingInputStream = countingInputStream;
+        this.reader = new BufferedReader(new InputStreamReader(ct.createDefaultInputStream(countingInputStream, 65536)));
+    }
+
     @Override
     public synchronized double getProgress() {
         if (size == 0)
@@ -132,6 +156,24 @@ public class FastaReader<S extends Sequence<S>> implements CanReportProgress,
                 alphabet.parse(rawRecord.sequence));
     }
 
+    /**
+     * Takes at most {@code max} next FASTA records.
+     *
+     * <p>This method is thread-safe.</p>
+     *
+     * @param batch batch to reuse
+     * @param max   maximal number of records to take
+     * @return the same batch, empty if end of stream is reached
+     */
+    @Override
+    public synchronized Batch<FastaRecord<S>> takeBatch(Batch<FastaRecord<S>> batch, int max) {
+        batch.clear();
+        RawFastaRecord rawRecord;
+        while (batch.size() < max && (rawRecord = takeRawRecord()) != null)
+            batch.add(new FastaRecord<>(id++, rawRecord.description, alphabet.parse(rawRecord.sequence)));
+        return batch;
+    }
+
     /**
      * Return next raw FASTA record or {@literal null} if end of stream is reached.
      *
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.BGZF;
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.util.IOUtil;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent index of FASTQ file, stored in the {@code .fqidx} sidecar file next to the indexed file (see {@link
+ * #sidecarFile(File)}).
+ *
+ * <p>Index stores positions of every {@code step}-th record. For uncompressed files position is a byte offset, for
+ * BGZF-compressed files position is a BGZF virtual offset: {@code (compressed block offset << 16) | offset inside the
+ * uncompressed block data}. Index also keeps quality format, total number of records and size / modification time of
+ * the indexed file, the latter are used to detect stale sidecar files (see {@link #loadOrBuild(File, long)}).</p>
+ *
+ * <p>Index can be used to split the file into record ranges, that can be read concurrently by independent {@link
+ * FastqRangeReader}s.</p>
+ */
+public final class FastqIndex {
+    /**
+     * For serialization
+     */
+    public static final int MAGIC = 0x46514958; // "FQIX"
+    /**
+     * Serialization format version
+     */
+    public static final int VERSION = 1;
+    /**
+     * Extension of the sidecar index file
+     */
+    public static final String EXTENSION = ".fqidx";
+    /**
+     * Default step between indexed records
+     */
+    public static final long DEFAULT_STEP = 4096;
+
+    /**
+     * Step between indexed records
+     */
+    final long step;
+    /**
+     * Whether indexed file is BGZF-compressed
+     */
+    final boolean bgzf;
+    /**
+     * Quality format of the indexed file
+     */
+    final QualityFormat format;
+    /**
+     * Total number of records in the file
+     */
+    final long numberOfRecords;
+    /**
+     * Size and modification time of the indexed file
+     */
+    final long fileSize, lastModified;
+    /**
+     * Positions of records with numbers {@code 0, step, 2 * step, ...}
+     */
+    final TLongArrayList positions;
+
+    FastqIndex(long step, boolean bgzf, QualityFormat format, long numberOfRecords,
+               long fileSize, long lastModified, TLongArrayList positions) {
+        this.step = step;
+        this.bgzf = bgzf;
+        this.format = format;
+        this.numberOfRecords = numberOfRecords;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.positions = positions;
+    }
+
+    /**
+     * Returns step between indexed records
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns {@literal true} if indexed file is BGZF-compressed
+     */
+    public boolean isBGZF() {
+        return bgzf;
+    }
+
+    /**
+     * Returns quality format of the indexed file
+     */
+    public QualityFormat getQualityFormat() {
+        return format;
+    }
+
+    /**
+     * Returns total number of records in the indexed file
+     */
+    public long getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * Returns position (byte offset or BGZF virtual offset) of the indexed record, which is nearest (from the left
+     * side, i.e. smaller) to the specified record number.
+     *
+     * @param recordNumber number of record
+     * @return position of the record with number {@code recordNumber - recordNumber % step}
+     */
+    public long getNearestPosition(long recordNumber) {
+        if (recordNumber < 0 || recordNumber >= numberOfRecords)
+            throw new IndexOutOfBoundsException();
+        return positions.get((int) (recordNumber / step));
+    }
+
+    /**
+     * Returns {@literal true} if this index was built for the current version of the file (checks file size and
+     * modification time).
+     *
+     * @param file indexed file
+     */
+    public boolean isUpToDate(File file) {
+        return file.length() == fileSize && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Splits records of the file into {@code n} (or less, if there are not enough records) contiguous ranges of
+     * approximately equal size. Range boundaries are aligned to the indexed records, so each range can be opened
+     * without skipping records.
+     *
+     * @param n number of ranges
+     * @return list of {@code [from, to)} record number ranges
+     */
+    public List<long[]> split(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException();
+        List<long[]> ranges = new ArrayList<>(n);
+        long entries = positions.size();
+        long previous = 0;
+        for (int i = 1; i <= n; ++i) {
+            long to = i == n ? numberOfRecords : Math.min(numberOfRecords, step * (entries * i / n));
+            if (to > previous) {
+                ranges.add(new long[]{previous, to});
+                previous = to;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Returns sidecar index file for the FASTQ file
+     */
+    public static File sidecarFile(File file) {
+        return new File(file.getPath() + EXTENSION);
+    }
+
+    /**
+     * Reads index from the sidecar file, if it exists and is up to date, otherwise builds new index and writes it to
+     * the sidecar file.
+     *
+     * @param file FASTQ file (uncompressed or BGZF-compressed)
+     * @param step step between indexed records (used only if index is rebuilt)
+     * @return index
+     * @throws IOException in case of IO error
+     */
+    public static FastqIndex loadOrBuild(File file, long step) throws IOException {
+        File sidecar = sidecarFile(file);
+        if (sidecar.exists())
+            try {
+                FastqIndex index = read(sidecar);
+                if (index.isUpToDate(file))
+                    return index;
+            } catch (IOException ignored) {
+                // corrupted or old index, rebuilding
+            }
+        FastqIndex index = build(file, step);
+        index.write(sidecar);
+        return index;
+    }
+
+    /**
+     * Builds index of FASTQ file by sequentially reading it.
+     *
+     * @param file FASTQ file (uncompressed or BGZF-compressed)
+     * @param step step between indexed records
+     * @return index
+     * @throws IOException in case of IO error
+     */
+    public static FastqIndex build(File file, long step) throws IOException {
+        if (step < 1)
+            throw new IllegalArgumentException("step must be > 0.");
+        // Captured before reading, so modification during indexing results in a stale index
+        long fileSize = file.length(), lastModified = file.lastModified();
+
+        boolean bgzf = BGZF.isBGZF(file);
+        if (!bgzf && CompressionType.detectCompressionType(file) != CompressionType.None)
+            throw new IllegalArgumentException("Only uncompressed and BGZF-compressed files can be indexed: " + file);
+
+        // Positions in the uncompressed data
+        TLongArrayList positions = new TLongArrayList();
+        long numberOfRecords = 0, position = 0;
+        QualityFormat format;
+        try (SingleFastqReader reader = new SingleFastqReader(new FileInputStream(file),
+                SingleFastqReader.DEFAULT_QUALITY_FORMAT, bgzf ? CompressionType.GZIP : CompressionType.None,
+                true, SingleFastqReader.DEFAULT_BUFFER_SIZE, false, true)) {
+            format = reader.getQualityFormat();
+            FastqRecordsReader records = reader.recordsReader;
+            while (reader.take() != null) {
+                if (numberOfRecords % step == 0)
+                    positions.add(position);
+                ++numberOfRecords;
+                // '@' + description + sequence + '+' line + quality + line breaks
+                position += records.qualityEnd - records.descriptionBegin + 2;
+            }
+        }
+
+        if (bgzf)
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                toVirtualOffsets(channel, positions);
+            }
+
+        return new FastqIndex(step, bgzf, format, numberOfRecords, fileSize, lastModified, positions);
+    }
+
+    /**
+     * Converts sorted uncompressed data positions to BGZF virtual offsets.
+     */
+    private static void toVirtualOffsets(FileChannel channel, TLongArrayList positions) throws IOException {
+        long blockPosition = 0, blockDataStart = 0;
+        int blockSize, blockDataSize;
+        int i = 0;
+        while (i < positions.size() && (blockSize = BGZF.readBlockSize(channel, blockPosition)) != -1) {
+            blockDataSize = BGZF.readUncompressedSize(channel, blockPosition, blockSize);
+            long p;
+            while (i < positions.size() && (p = positions.get(i)) < blockDataStart + blockDataSize) {
+                positions.set(i, blockPosition << 16 | (p - blockDataStart));
+                ++i;
+            }
+            blockPosition += blockSize;
+            blockDataStart += blockDataSize;
+        }
+        if (i != positions.size())
+            throw new IOException("Unexpected end of BGZF file.");
+    }
+
+    /**
+     * Writes this index to specified file.
+     *
+     * @param file file
+     * @throws IOException in case of IO error
+     */
+    public void write(File file) throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            write(os);
+        }
+    }
+
+    /**
+     * Writes this index to specified output stream.
+     *
+     * @param stream output stream
+     * @throws IOException in case of IO error
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream raw = new DataOutputStream(stream);
+        raw.writeInt(MAGIC);
+        raw.writeInt(VERSION);
+
+        DeflaterOutputStream deflate = new DeflaterOutputStream(stream);
+        DataOutputStream data = new DataOutputStream(deflate);
+        data.writeLong(step);
+        data.writeBoolean(bgzf);
+        data.writeUTF(format.toString());
+        data.writeLong(numberOfRecords);
+        data.writeLong(fileSize);
+        data.writeLong(lastModified);
+        data.writeInt(positions.size());
+        long last = 0, v;
+        for (int i = 0; i < positions.size(); ++i) {
+            IOUtil.writeRawVarint64(data, (v = positions.get(i)) - last);
+            last = v;
+        }
+        data.flush();
+        deflate.finish();
+        stream.flush();
+    }
+
+    /**
+     * Reads index from file.
+     *
+     * @param file input file
+     * @return index
+     * @throws IOException in case of IO error or wrong file format
+     */
+    public static FastqIndex read(File file) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            return read(is);
+        }
+    }
+
+    /**
+     * Reads index from input stream.
+     *
+     * @param stream input stream
+     * @return index
+     * @throws IOException in case of IO error or wrong file format
+     */
+    public static FastqIndex read(InputStream stream) throws IOException {
+        DataInputStream raw = new DataInputStream(stream);
+        if (raw.readInt() != MAGIC)
+            throw new IOException("Wrong magic number");
+        int version = raw.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported index version: " + version);
+
+        DataInputStream data = new DataInputStream(new InflaterInputStream(stream));
+        long step = data.readLong();
+        boolean bgzf = data.readBoolean();
+        QualityFormat format = QualityFormat.fromName(data.readUTF());
+        long numberOfRecords = data.readLong();
+        long fileSize = data.readLong();
+        long lastModified = data.readLong();
+        int size = data.readInt();
+        TLongArrayList positions = new TLongArrayList(size);
+        long last = 0, val;
+        for (int i = 0; i < size; ++i) {
+            val = IOUtil.readRawVarint64(data, -1);
+            if (val == -1)
+                throw new IOException("Wrong file format");
+            last += val;
+            positions.add(last);
+        }
+        return new FastqIndex(step, bgzf, format, numberOfRecords, fileSize, lastModified, positions);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.BGZF;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.Batch;
+import com.milaboratory.util.BatchUtil;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a range of records of a FASTQ file (uncompressed or BGZF-compressed), using {@link FastqIndex} to locate the
+ * first record of the range. Each reader opens its own file channel, so readers of different ranges (see {@link
+ * #split(File, FastqIndex, int, boolean, boolean)}) can be used concurrently from different threads without any
+ * shared state.
+ *
+ * <p>Read ids are equal to the global record numbers in the file, so reads produced by this reader are equal to the
+ * reads with the same ids produced by {@link SingleFastqReader} (including wildcard replacement).</p>
+ */
+public final class FastqRangeReader implements SingleReader, CanReportProgress {
+    final FileChannel channel;
+    final InputStream stream;
+    final FastqRecordsReader recordsReader;
+    final QualityFormat format;
+    final long from, to;
+    long currentRecord;
+    volatile boolean closed = false;
+
+    /**
+     * @param file             FASTQ file
+     * @param index            index of the file
+     * @param from             number of the first record to read (inclusive)
+     * @param to               number of the last record to read (exclusive)
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to a
+     *                         minimum possible values
+     * @param lazyReads        if {@literal true}, reads will be decoded on demand
+     * @throws IOException              in case there is problem with reading from file
+     * @throws IllegalArgumentException if index was built for another version of the file
+     */
+    public FastqRangeReader(File file, FastqIndex index, long from, long to,
+                            boolean replaceWildcards, boolean lazyReads) throws IOException {
+        checkIndex(file, index);
+        if (from < 0 || to < from || to > index.getNumberOfRecords())
+            throw new IllegalArgumentException("Wrong range: [" + from + ", " + to + ")");
+        this.format = index.getQualityFormat();
+        this.from = from;
+        this.to = to;
+        this.currentRecord = from;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (from == to) {
+                this.stream = null;
+                this.recordsReader = null;
+                close();
+                return;
+            }
+
+            long position = index.getNearestPosition(from);
+            if (index.isBGZF()) {
+                BGZF.BlockInputStream bis = new BGZF.BlockInputStream(channel, position >>> 16);
+                long skip = position & 0xFFFF;
+                while (skip > 0 && bis.read() != -1)
+                    --skip;
+                this.stream = bis;
+            } else
+                this.stream = new ParallelFastqReader.ChannelInputStream(channel, position);
+
+            this.recordsReader = new FastqRecordsReader(lazyReads, stream,
+                    SingleFastqReader.DEFAULT_BUFFER_SIZE, replaceWildcards, false);
+
+            // Skipping records before the range
+            for (currentRecord = from - from % index.getStep(); currentRecord < from; ++currentRecord)
+                if (!recordsReader.nextRecord(true))
+                    throw new IOException("Unexpected end of file.");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns number of the first record of the range
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns number of the record following the last record of the range
+     */
+    public long getTo() {
+        return to;
+    }
+
+    @Override
+    public double getProgress() {
+        return from == to ? 1.0 : 1.0 * (currentRecord - from) / (to - from);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return closed;
+    }
+
+    @Override
+    public synchronized SingleRead take() {
+        if (closed)
+            return null;
+        if (currentRecord == to) {
+            close();
+            return null;
+        }
+        try {
+            if (!recordsReader.nextRecord(true))
+                throw new IOException("Unexpected end of file.");
+        } catch (IOException e) {
+            throw new RuntimeException("While reading fastq record with id=" + currentRecord, e);
+        }
+        return recordsReader.createRead(currentRecord++, format);
+    }
+
+    @Override
+    public synchronized Batch<SingleRead> takeBatch(Batch<SingleRead> batch, int max) {
+        return BatchUtil.takeBatch(this, batch, max);
+    }
+
+    /**
+     * Returns number of reads taken from this reader
+     */
+    @Override
+    public synchronized long getNumberOfReads() {
+        return currentRecord - from;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (stream != null)
+                stream.close();
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Splits file into {@code n} (or less, if there are not enough records) record ranges (see {@link
+     * FastqIndex#split(int)}) and opens independent reader for each of them.
+     *
+     * @param file             FASTQ file
+     * @param index            index of the file
+     * @param n                number of ranges
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to a
+     *                         minimum possible values
+     * @param lazyReads        if {@literal true}, reads will be decoded on demand
+     * @return readers of the ranges in the file order
+     * @throws IOException              in case there is problem with reading from file
+     * @throws IllegalArgumentException if index was built for another version of the file
+     */
+    public static List<FastqRangeReader> split(File file, FastqIndex index, int n,
+                                               boolean replaceWildcards, boolean lazyReads) throws IOException {
+        checkIndex(file, index);
+        List<FastqRangeReader> readers = new ArrayList<>();
+        try {
+            for (long[] range : index.split(n))
+                readers.add(new FastqRangeReader(file, index, range[0], range[1], replaceWildcards, lazyReads));
+        } catch (IOException | RuntimeException e) {
+            for (FastqRangeReader reader : readers)
+                reader.close();
+            throw e;
+        }
+        return readers;
+    }
+
+    private static void checkIndex(File file, FastqIndex index) {
+        if (!index.isUpToDate(file))
+            throw new IllegalArgumentException("Index is not up to date (file was modified after indexing): " + file);
+    }
+}
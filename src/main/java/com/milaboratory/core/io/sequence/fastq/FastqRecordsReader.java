@@ -87,6 +87,16 @@ public final class FastqRecordsReader implements AutoCloseable {
     }
 
     public SingleRead createRead(long id, QualityFormat format) {
+        return createRead(lazyReads, buffer, descriptionBegin, sequenceBegin, sequenceEnd, qualityBegin,
+                id, format, replaceWildcards);
+    }
+
+    /**
+     * Creates read from the record located in the buffer at given positions (see {@link #nextRecord(boolean)}).
+     */
+    static SingleRead createRead(boolean lazyReads, byte[] buffer,
+                                 int descriptionBegin, int sequenceBegin, int sequenceEnd, int qualityBegin,
+                                 long id, QualityFormat format, boolean replaceWildcards) {
         if (lazyReads)
             return SingleReadLazy.create(format,
                     id,
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.Batch;
+import com.milaboratory.util.BatchUtil;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FASTQ reader for uncompressed files, that scans records directly in the memory-mapped file, without copying data
+ * into intermediate buffers.
+ *
+ * <p>File is mapped by regions of at most {@code regionSize} bytes (any record must fit into a single region). With
+ * lazy reads enabled, only record boundaries are located in the reading thread, and sequence, quality and
+ * description are decoded from the mapped memory on first access (possibly in other threads). Reads produced by this
+ * reader are equal to the reads produced by {@link SingleFastqReader} for the same file.</p>
+ */
+public final class MappedFastqReader implements SingleReader, CanReportProgress {
+    private static final byte DELIMITER = '\n';
+    public static final int DEFAULT_REGION_SIZE = 1 << 30;
+    final FileChannel channel;
+    final long fileSize;
+    final int regionSize;
+    final QualityFormat format;
+    final boolean replaceWildcards;
+    final boolean lazyReads;
+    /**
+     * Currently mapped region
+     */
+    MappedByteBuffer region;
+    /**
+     * File offset of the current region
+     */
+    long regionOffset;
+    /**
+     * Position of the next record in the current region
+     */
+    int pointer;
+    /**
+     * Positions of the lines of the last located record (see {@link #findRecord(int, int)})
+     */
+    int descriptionBegin, sequenceBegin, sequenceEnd, qualityBegin;
+    long idCounter;
+    volatile boolean closed = false;
+
+    /**
+     * Creates reader with quality format guessing and lazy reads.
+     *
+     * @param file file with reads
+     * @throws IOException in case there is problem with reading from file
+     */
+    public MappedFastqReader(File file) throws IOException {
+        this(file, null, false, true);
+    }
+
+    /**
+     * @param file             file with reads
+     * @param format           read quality encoding format (use {@literal null} to guess format automatically)
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to a
+     *                         minimum possible values
+     * @param lazyReads        if {@literal true}, reads will be decoded from the mapped memory on demand
+     * @throws IOException in case there is problem with reading from file
+     */
+    public MappedFastqReader(File file, QualityFormat format,
+                             boolean replaceWildcards, boolean lazyReads) throws IOException {
+        this(file, format, DEFAULT_REGION_SIZE, replaceWildcards, lazyReads);
+    }
+
+    /**
+     * @param file             file with reads
+     * @param format           read quality encoding format (use {@literal null} to guess format automatically)
+     * @param regionSize       maximal size of a single mapped region, must be larger than any single record
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to a
+     *                         minimum possible values
+     * @param lazyReads        if {@literal true}, reads will be decoded from the mapped memory on demand
+     * @throws IOException in case there is problem with reading from file
+     */
+    public MappedFastqReader(File file, QualityFormat format, int regionSize,
+                             boolean replaceWildcards, boolean lazyReads) throws IOException {
+        if (regionSize < 1)
+            throw new IllegalArgumentException();
+        if (CompressionType.detectCompressionType(file) != CompressionType.None)
+            throw new IllegalArgumentException("Only uncompressed files can be memory-mapped: " + file);
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            this.regionSize = regionSize;
+            this.replaceWildcards = replaceWildcards;
+            this.lazyReads = lazyReads;
+            map(0);
+            if (format == null) {
+                format = guessFormat();
+                if (format == null)
+                    format = SingleFastqReader.DEFAULT_QUALITY_FORMAT;
+            }
+            this.format = format;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(regionSize, fileSize - offset));
+        regionOffset = offset;
+        pointer = 0;
+    }
+
+    /**
+     * Same algorithm as in {@link SingleFastqReader}, applied to the records from the first
+     * {@link SingleFastqReader#DEFAULT_BUFFER_SIZE} bytes of the file.
+     */
+    private QualityFormat guessFormat() {
+        boolean signal33 = false, signal64 = false;
+        int limit = Math.min(region.limit(), SingleFastqReader.DEFAULT_BUFFER_SIZE);
+        long record;
+        int pointer = 0, chr;
+        while ((record = findRecord(pointer, limit)) >= 0) {
+            int qualityBegin = (int) (record >>> 32), qualityEnd = (int) record;
+            for (int k = qualityBegin; k < qualityEnd; ++k) {
+                chr = region.get(k);
+                signal33 |= (chr - 64) < QualityFormat.Phred64.getMinValue();
+                signal64 |= (chr - 33) > QualityFormat.Phred33.getMaxValue();
+            }
+            pointer = qualityEnd + 1;
+        }
+        if (signal33 == signal64)
+            return null;
+        return signal33 ? QualityFormat.Phred33 : QualityFormat.Phred64;
+    }
+
+    /**
+     * Locates the record starting at {@code from} position of the current region. Positions of record lines are
+     * saved to the fields of this object.
+     *
+     * @return {@code (qualityBegin << 32) | qualityEnd}, or -1 if the record is not completely contained in the
+     * {@code [from, limit)} range of the region
+     */
+    private long findRecord(int from, int limit) {
+        int pointer = from;
+        if (pointer >= limit)
+            return -1;
+        if (region.get(pointer) != '@') // fastq specification
+            throw new IllegalFileFormatException("No '@' character found in the beginning of fastq description line.");
+        descriptionBegin = ++pointer;
+        pointer = nextLine(pointer, limit);
+        if (pointer >= limit)
+            return -1;
+        sequenceBegin = ++pointer;
+        pointer = nextLine(pointer, limit);
+        if (pointer + 1 >= limit)
+            return -1;
+        sequenceEnd = pointer++;
+        if (region.get(pointer) != '+') // fastq specification
+            throw new IllegalFileFormatException("No '+' character found in the beginning of the third line of the " +
+                    "fastq record.");
+        pointer = nextLine(pointer, limit);
+        if (pointer >= limit)
+            return -1;
+        qualityBegin = ++pointer;
+        pointer = nextLine(pointer, limit);
+        // Last record of the file may be not terminated with line break
+        if (pointer == limit && regionOffset + limit != fileSize)
+            return -1;
+        if (pointer - qualityBegin != sequenceEnd - sequenceBegin)
+            throw new IllegalFileFormatException("Quality and sequence have different sizes.");
+        return ((long) qualityBegin) << 32 | pointer;
+    }
+
+    private int nextLine(int pointer, int limit) {
+        while (pointer < limit && region.get(pointer) != DELIMITER)
+            ++pointer;
+        return pointer;
+    }
+
+    public QualityFormat getQualityFormat() {
+        return format;
+    }
+
+    @Override
+    public double getProgress() {
+        return fileSize == 0 ? 1.0 : (1.0 * (regionOffset + pointer) / fileSize);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return closed;
+    }
+
+    @Override
+    public synchronized SingleRead take() {
+        if (closed)
+            return null;
+
+        try {
+            long record;
+            while ((record = findRecord(pointer, region.limit())) == -1) {
+                long position = regionOffset + pointer;
+                if (position == fileSize) {
+                    close();
+                    return null;
+                }
+                if (regionOffset + region.limit() == fileSize)
+                    throw new IllegalFileFormatException("Unexpected end of file.");
+                if (pointer == 0)
+                    throw new IllegalFileFormatException("Too small region size.");
+                // Record crosses region boundary, mapping next region starting from the record
+                map(position);
+            }
+
+            int qualityEnd = (int) record;
+            long id = idCounter++;
+            SingleRead read;
+            if (lazyReads)
+                read = new SingleReadMapped(id, region, descriptionBegin, sequenceBegin, qualityBegin,
+                        qualityEnd - qualityBegin, replaceWildcards, format.getOffset());
+            else
+                read = new SingleReadImpl(id,
+                        SingleReadMapped.createNSequenceWithQuality(region, sequenceBegin, qualityBegin,
+                                qualityEnd - qualityBegin, format.getOffset(), id, replaceWildcards),
+                        SingleReadMapped.createDescription(region, descriptionBegin, sequenceBegin - 1));
+            pointer = Math.min(qualityEnd + 1, region.limit());
+            return read;
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("While reading fastq record with id=" + idCounter, e);
+        }
+    }
+
+    @Override
+    public synchronized Batch<SingleRead> takeBatch(Batch<SingleRead> batch, int max) {
+        return BatchUtil.takeBatch(this, batch, max);
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return idCounter;
+    }
+
+    /**
+     * Closes the output port. Mapped memory is released when all lazy reads produced by this reader are garbage
+     * collected.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
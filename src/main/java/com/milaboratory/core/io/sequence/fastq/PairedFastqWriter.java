@@ -22,6 +22,7 @@ import com.milaboratory.core.io.sequence.PairedSequenceWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 public final class PairedFastqWriter implements PairedSequenceWriter {
     SingleFastqWriter[] writers;
@@ -39,6 +40,24 @@ public final class PairedFastqWriter implements PairedSequenceWriter {
                 new SingleFastqWriter(new FileOutputStream(file2), qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE));
     }
 
+    /**
+     * Creates writer compressing output in parallel (for GZIP compression type output will be written in BGZF
+     * format, see {@link com.milaboratory.core.io.ParallelCompressingOutputStream})
+     *
+     * @param file1         output file for R1
+     * @param file2         output file for R2
+     * @param qualityFormat quality format
+     * @param ct            compression type
+     * @param concurrency   maximal number of data blocks compressed concurrently for each of the files
+     */
+    public PairedFastqWriter(File file1, File file2, QualityFormat qualityFormat, CompressionType ct,
+                             int concurrency) throws IOException {
+        this(new SingleFastqWriter(file1, qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE,
+                        concurrency, ForkJoinPool.commonPool()),
+                new SingleFastqWriter(file2, qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE,
+                        concurrency, ForkJoinPool.commonPool()));
+    }
+
     public PairedFastqWriter(SingleFastqWriter writer1, SingleFastqWriter writer2) {
         this.writers = new SingleFastqWriter[]{writer1, writer2};
     }
@@ -0,0 +1,516 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.BGZF;
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.Batch;
+import com.milaboratory.util.BatchUtil;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * FASTQ reader that splits the file into byte chunks and parses them concurrently.
+ *
+ * <p>Supports uncompressed and BGZF-compressed files (BGZF chunks always consist of whole BGZF blocks). Each chunk is
+ * resynchronized to the first record starting inside it, and owns all records starting inside its byte range (the last
+ * record may extend beyond the chunk end). Chunks are parsed on worker threads, while reads are emitted strictly in the
+ * file order with the same sequential ids (and the same wildcard replacement) as produced by {@link
+ * SingleFastqReader}.</p>
+ *
+ * <p>Plain (non-blocked) gzip and bzip2 streams can't be split and are not supported by this reader, use {@link
+ * SingleFastqReader} for them.</p>
+ */
+public final class ParallelFastqReader implements SingleReader, CanReportProgress {
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    final FileChannel channel;
+    final boolean bgzf;
+    final long fileSize;
+    final QualityFormat format;
+    final ExecutorService executor;
+    final int concurrency;
+    final int chunkSize;
+    final int bufferSize;
+    final boolean replaceWildcards;
+    final boolean lazyReads;
+    /**
+     * Chunks being processed, in the file order
+     */
+    final ArrayDeque<PendingChunk> pending = new ArrayDeque<>();
+    /**
+     * Resolves to the id of the first read of the next scheduled chunk
+     */
+    CompletableFuture<Long> nextFirstId = CompletableFuture.completedFuture(0L);
+    /**
+     * Position (compressed position for BGZF) where the next chunk starts
+     */
+    long nextChunkPosition = 0;
+    /**
+     * For BGZF: position and uncompressed size of the last non-empty block of the previously scheduled chunks
+     */
+    long lastBlockPosition = -1;
+    int lastBlockDataSize;
+    /**
+     * Position where the last taken chunk ends
+     */
+    volatile long processedPosition = 0;
+    SingleRead[] current;
+    int pointer;
+    long idCounter;
+    volatile boolean closed = false;
+
+    /**
+     * Creates reader with default parameters, number of concurrently processed chunks equals to the number of
+     * available processors.
+     *
+     * @param file file with reads
+     * @throws IOException in case there is problem with reading from file
+     */
+    public ParallelFastqReader(String file) throws IOException {
+        this(new File(file));
+    }
+
+    /**
+     * Creates reader with default parameters, number of concurrently processed chunks equals to the number of
+     * available processors.
+     *
+     * @param file file with reads
+     * @throws IOException in case there is problem with reading from file
+     */
+    public ParallelFastqReader(File file) throws IOException {
+        this(file, null, Runtime.getRuntime().availableProcessors(), false, false);
+    }
+
+    /**
+     * @param file             file with reads
+     * @param format           read quality encoding format (use {@literal null} to guess format automatically)
+     * @param concurrency      maximal number of chunks processed simultaneously
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to a
+     *                         minimum possible values
+     * @param lazyReads        if {@literal true}, worker threads only locate records and reads are decoded on demand
+     *                         in the consumer threads
+     * @throws IOException in case there is problem with reading from file
+     */
+    public ParallelFastqReader(File file, QualityFormat format, int concurrency,
+                               boolean replaceWildcards, boolean lazyReads) throws IOException {
+        this(file, format, ForkJoinPool.commonPool(), concurrency, DEFAULT_CHUNK_SIZE,
+                SingleFastqReader.DEFAULT_BUFFER_SIZE, replaceWildcards, lazyReads);
+    }
+
+    /**
+     * @param file             file with reads
+     * @param format           read quality encoding format (use {@literal null} to guess format automatically)
+     * @param executor         executor to parse chunks in
+     * @param concurrency      maximal number of chunks processed simultaneously
+     * @param chunkSize        size of chunk in bytes (compressed bytes for BGZF input)
+     * @param bufferSize       size of parsing buffer, must be larger than any single record
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to a
+     *                         minimum possible values
+     * @param lazyReads        if {@literal true}, worker threads only locate records and reads are decoded on demand
+     *                         in the consumer threads
+     * @throws IOException in case there is problem with reading from file
+     */
+    public ParallelFastqReader(File file, QualityFormat format, ExecutorService executor,
+                               int concurrency, int chunkSize, int bufferSize,
+                               boolean replaceWildcards, boolean lazyReads) throws IOException {
+        if (concurrency < 1 || chunkSize < 1)
+            throw new IllegalArgumentException();
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.bgzf = BGZF.isBGZF(channel);
+            if (!bgzf && CompressionType.detectCompressionType(file) != CompressionType.None)
+                throw new IllegalArgumentException("Only uncompressed and BGZF-compressed files can be read in " +
+                        "parallel: " + file);
+            this.fileSize = channel.size();
+
+            if (format == null)
+                try (SingleFastqReader reader = new SingleFastqReader(new FileInputStream(file),
+                        SingleFastqReader.DEFAULT_QUALITY_FORMAT, bgzf ? CompressionType.GZIP : CompressionType.None,
+                        true, bufferSize, false, true)) {
+                    format = reader.getQualityFormat();
+                }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.format = format;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.chunkSize = chunkSize;
+        this.bufferSize = bufferSize;
+        this.replaceWildcards = replaceWildcards;
+        this.lazyReads = lazyReads;
+
+        for (int i = 0; i < concurrency; ++i)
+            scheduleNextChunk();
+    }
+
+    public QualityFormat getQualityFormat() {
+        return format;
+    }
+
+    /**
+     * Plans the next chunk and submits its processing.
+     */
+    private void scheduleNextChunk() throws IOException {
+        if (nextChunkPosition >= fileSize)
+            return;
+
+        final Chunk chunk;
+        if (bgzf) {
+            long begin = nextChunkPosition, position = begin, blockPosition = -1;
+            long dataSize = 0;
+            int blockSize, blockDataSize, lastDataSize = 0;
+            while (position - begin < chunkSize
+                    && (blockSize = BGZF.readBlockSize(channel, position)) != -1) {
+                blockDataSize = BGZF.readUncompressedSize(channel, position, blockSize);
+                dataSize += blockDataSize;
+                if (blockDataSize != 0) {
+                    // Tracking last non-empty block
+                    blockPosition = position;
+                    lastDataSize = blockDataSize;
+                }
+                position += blockSize;
+            }
+            if (lastBlockPosition == -1)
+                chunk = new Chunk(begin, 0, dataSize, position);
+            else
+                // Last block of the previous chunk is decoded to detect line start
+                chunk = new Chunk(lastBlockPosition, lastBlockDataSize, lastBlockDataSize + dataSize, position);
+            if (blockPosition != -1) {
+                lastBlockPosition = blockPosition;
+                lastBlockDataSize = lastDataSize;
+            }
+            nextChunkPosition = position == begin ? fileSize : position;
+        } else {
+            long begin = nextChunkPosition;
+            long end = Math.min(fileSize, begin + chunkSize);
+            if (begin == 0)
+                chunk = new Chunk(0, 0, end, end);
+            else
+                // One previous byte is needed to detect line start
+                chunk = new Chunk(begin - 1, 1, 1 + end - begin, end);
+            nextChunkPosition = end;
+        }
+
+        CompletableFuture<ChunkRecords> records = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scan(chunk);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        CompletableFuture<Long> firstId = nextFirstId;
+        nextFirstId = firstId.thenCombine(records, (id, r) -> id + r.size);
+        pending.add(new PendingChunk(chunk.endPosition,
+                records.thenCombineAsync(firstId, ChunkRecords::createReads, executor)));
+    }
+
+    /**
+     * Opens decompressed data stream starting at the chunk stream position
+     */
+    private InputStream openStream(Chunk chunk) {
+        if (bgzf)
+            return new BGZF.BlockInputStream(channel, chunk.streamPosition);
+        else
+            return new ChannelInputStream(channel, chunk.streamPosition);
+    }
+
+    /**
+     * Locates all records starting inside the chunk (CPU + IO intensive part, executed in the worker thread).
+     */
+    private ChunkRecords scan(Chunk chunk) throws IOException {
+        ChunkRecords result = new ChunkRecords();
+        if (closed)
+            return result;
+
+        try (InputStream stream = openStream(chunk)) {
+            Window window = new Window(stream);
+
+            // Searching for the first record starting inside the chunk
+            int recordStart;
+            if (chunk.from == 0)
+                recordStart = 0;
+            else {
+                int from = (int) chunk.from;
+                if (!window.ensure(from - 1))
+                    return result;
+                int line = window.data[from - 1] == '\n' ? from : window.nextLine(from);
+                while (true) {
+                    if (line == -1 || line >= chunk.to || !window.ensure(line))
+                        return result;
+                    if (window.data[line] == '@') {
+                        // Header candidate: third line of the record must start with '+'
+                        // (sequence line can't start with '+', so quality line starting with '@' is never
+                        // mistaken for a header)
+                        int third = window.nextLine(line);
+                        if (third != -1)
+                            third = window.nextLine(third);
+                        if (third == -1 || !window.ensure(third))
+                            return result;
+                        if (window.data[third] == '+') {
+                            recordStart = line;
+                            break;
+                        }
+                    }
+                    line = window.nextLine(line);
+                }
+            }
+
+            InputStream recordsStream = new SequenceInputStream(
+                    new ByteArrayInputStream(window.data, recordStart, window.size - recordStart),
+                    stream);
+            FastqRecordsReader reader = new FastqRecordsReader(true, recordsStream,
+                    bufferSize, replaceWildcards, false);
+            long position = recordStart;
+            while (position < chunk.to && !closed) {
+                if (!reader.nextRecord(true))
+                    break;
+                result.add(reader);
+                position += reader.qualityEnd - reader.descriptionBegin + 2;
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public double getProgress() {
+        return fileSize == 0 ? 1.0 : (1.0 * processedPosition / fileSize);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return closed;
+    }
+
+    @Override
+    public synchronized SingleRead take() {
+        while (current == null || pointer == current.length) {
+            if (closed)
+                return null;
+
+            PendingChunk chunk = pending.poll();
+            if (chunk == null) {
+                close();
+                return null;
+            }
+
+            try {
+                scheduleNextChunk();
+                current = chunk.reads.join();
+            } catch (IOException | CompletionException e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new RuntimeException("While reading fastq record with id=" + idCounter, cause);
+            }
+            pointer = 0;
+            processedPosition = chunk.endPosition;
+        }
+        ++idCounter;
+        return current[pointer++];
+    }
+
+    @Override
+    public synchronized Batch<SingleRead> takeBatch(Batch<SingleRead> batch, int max) {
+        return BatchUtil.takeBatch(this, batch, max);
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return idCounter;
+    }
+
+    /**
+     * Closes the output port
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            synchronized (this) {
+                for (PendingChunk chunk : pending)
+                    chunk.reads.cancel(false);
+                pending.clear();
+                current = null;
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Chunk of the decompressed data stream.
+     */
+    private static final class Chunk {
+        /**
+         * Position in the file (compressed position for BGZF) to start reading the data from
+         */
+        final long streamPosition;
+        /**
+         * Range of the data owned by this chunk, relative to the start of the stream
+         */
+        final long from, to;
+        /**
+         * Position in the file this chunk ends at (used for progress reporting)
+         */
+        final long endPosition;
+
+        Chunk(long streamPosition, long from, long to, long endPosition) {
+            this.streamPosition = streamPosition;
+            this.from = from;
+            this.to = to;
+            this.endPosition = endPosition;
+        }
+    }
+
+    private static final class PendingChunk {
+        final long endPosition;
+        final CompletableFuture<SingleRead[]> reads;
+
+        PendingChunk(long endPosition, CompletableFuture<SingleRead[]> reads) {
+            this.endPosition = endPosition;
+            this.reads = reads;
+        }
+    }
+
+    /**
+     * Positions of records found in a chunk
+     */
+    private final class ChunkRecords {
+        final List<byte[]> buffers = new ArrayList<>();
+        int[] descriptionBegin = new int[16], sequenceBegin = new int[16],
+                sequenceEnd = new int[16], qualityBegin = new int[16];
+        int size = 0;
+
+        void add(FastqRecordsReader reader) {
+            if (size == descriptionBegin.length) {
+                int newLength = size * 2;
+                descriptionBegin = Arrays.copyOf(descriptionBegin, newLength);
+                sequenceBegin = Arrays.copyOf(sequenceBegin, newLength);
+                sequenceEnd = Arrays.copyOf(sequenceEnd, newLength);
+                qualityBegin = Arrays.copyOf(qualityBegin, newLength);
+            }
+            // Lazy records reader allocates new buffer on each refill, so buffer content is never overwritten
+            buffers.add(reader.buffer);
+            descriptionBegin[size] = reader.descriptionBegin;
+            sequenceBegin[size] = reader.sequenceBegin;
+            sequenceEnd[size] = reader.sequenceEnd;
+            qualityBegin[size] = reader.qualityBegin;
+            ++size;
+        }
+
+        /**
+         * Creates reads with final ids (parsing of sequences is performed here in non-lazy mode)
+         */
+        SingleRead[] createReads(long firstId) {
+            SingleRead[] reads = new SingleRead[size];
+            for (int i = 0; i < size; ++i)
+                reads[i] = FastqRecordsReader.createRead(lazyReads, buffers.get(i),
+                        descriptionBegin[i], sequenceBegin[i], sequenceEnd[i], qualityBegin[i],
+                        firstId + i, format, replaceWildcards);
+            return reads;
+        }
+    }
+
+    /**
+     * Growing buffer with the beginning of the chunk data
+     */
+    private static final class Window {
+        final InputStream stream;
+        byte[] data = new byte[65536];
+        int size = 0;
+
+        Window(InputStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Loads data up to the given position, returns false if stream ended before the position
+         */
+        boolean ensure(int position) throws IOException {
+            while (position >= size) {
+                if (size == data.length)
+                    data = Arrays.copyOf(data, data.length * 2);
+                int r = stream.read(data, size, data.length - size);
+                if (r == -1)
+                    return false;
+                size += r;
+            }
+            return true;
+        }
+
+        /**
+         * Returns position of the line following the line containing {@code position}, or -1 if there is no line
+         * break after the position
+         */
+        int nextLine(int position) throws IOException {
+            for (; ensure(position); ++position)
+                if (data[position] == '\n')
+                    return position + 1;
+            return -1;
+        }
+    }
+
+    /**
+     * Input stream performing positional reads from a channel, so many such streams may be used simultaneously.
+     * Closing this stream does not close underlying channel.
+     */
+    static final class ChannelInputStream extends InputStream {
+        final FileChannel channel;
+        long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            int r = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (r > 0)
+                position += r;
+            return r;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.milaboratory.core.io.CompressionType;
 import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
 import com.milaboratory.core.io.sequence.SingleRead;
 import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.Batch;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CountingInputStream;
 
@@ -248,7 +249,7 @@ public final class SingleFastqReader implements SingleReader, CanReportProgress,
         countingInputStream = new CountingInputStream(stream);
         //Initialization
         //Wrapping stream if un-compression needed
-        stream = ct.createInputStream(countingInputStream, Math.max(bufferSize / 2, 2048));
+        stream = ct.createDefaultInputStream(countingInputStream, Math.max(bufferSize / 2, 2048));
         this.recordsReader = new FastqRecordsReader(lazyReads, stream, bufferSize, replaceWildcards, true);
 
         //Guessing quality format
@@ -306,6 +307,23 @@ public final class SingleFastqReader implements SingleReader, CanReportProgress,
         return recordsReader.createRead(idCounter++, format);
     }
 
+    @Override
+    public synchronized Batch<SingleRead> takeBatch(Batch<SingleRead> batch, int max) {
+        batch.clear();
+        if (recordsReader.closed.get())
+            return batch;
+
+        try {
+            while (batch.size() < max && recordsReader.nextRecord(true))
+                batch.add(recordsReader.createRead(idCounter++, format));
+        } catch (IOException e) {
+            throw new RuntimeException("While reading fastq record with id=" + idCounter +
+                    " (line number = " + (idCounter * 4) + ")",
+                    e);
+        }
+        return batch;
+    }
+
     @Override
     public synchronized long getNumberOfReads() {
         return idCounter;
@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
 
 public final class SingleFastqWriter implements SingleSequenceWriter {
     public static final int DEFAULT_BUFFER_SIZE = 131072;
@@ -59,7 +60,43 @@ public final class SingleFastqWriter implements SingleSequenceWriter {
     }
 
     public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct, int bufferSize) throws IOException {
-        this.outputStream = ct.createOutputStream(outputStream, bufferSize / 2);
+        this(ct.createOutputStream(outputStream, bufferSize / 2), qualityFormat, bufferSize);
+    }
+
+    /**
+     * Creates writer compressing output in parallel (for GZIP compression type output will be written in BGZF
+     * format, see {@link com.milaboratory.core.io.ParallelCompressingOutputStream})
+     *
+     * @param file          output file
+     * @param qualityFormat quality format
+     * @param ct            compression type
+     * @param bufferSize    size of buffer
+     * @param concurrency   maximal number of data blocks compressed concurrently
+     * @param executor      executor to compress data in
+     */
+    public SingleFastqWriter(File file, QualityFormat qualityFormat, CompressionType ct, int bufferSize,
+                             int concurrency, ExecutorService executor) throws IOException {
+        this(new FileOutputStream(file), qualityFormat, ct, bufferSize, concurrency, executor);
+    }
+
+    /**
+     * Creates writer compressing output in parallel (for GZIP compression type output will be written in BGZF
+     * format, see {@link com.milaboratory.core.io.ParallelCompressingOutputStream})
+     *
+     * @param outputStream  output stream
+     * @param qualityFormat quality format
+     * @param ct            compression type
+     * @param bufferSize    size of buffer
+     * @param concurrency   maximal number of data blocks compressed concurrently
+     * @param executor      executor to compress data in
+     */
+    public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct, int bufferSize,
+                             int concurrency, ExecutorService executor) throws IOException {
+        this(ct.createOutputStream(outputStream, bufferSize / 2, concurrency, executor), qualityFormat, bufferSize);
+    }
+
+    private SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, int bufferSize) {
+        this.outputStream = outputStream;
         this.qualityFormat = qualityFormat;
         this.buffer = new byte[bufferSize];
     }
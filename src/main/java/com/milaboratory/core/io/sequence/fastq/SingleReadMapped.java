@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.util.SingleIterator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+/**
+ * Lazy read referencing FASTQ record inside a memory-mapped region of the file (see {@link MappedFastqReader}).
+ * Sequence, quality and description are decoded directly from the mapped memory on first access.
+ */
+final class SingleReadMapped implements SingleRead {
+    final long id;
+    final ByteBuffer region;
+    final int descriptionBegin, sequenceBegin, qualityBegin, length;
+    final boolean replaceWildcards;
+    final byte phredQualityOffset;
+    NSequenceWithQuality sequenceWithQuality;
+    String description;
+
+    SingleReadMapped(long id, ByteBuffer region,
+                     int descriptionBegin, int sequenceBegin, int qualityBegin, int length,
+                     boolean replaceWildcards, byte phredQualityOffset) {
+        this.id = id;
+        this.region = region;
+        this.descriptionBegin = descriptionBegin;
+        this.sequenceBegin = sequenceBegin;
+        this.qualityBegin = qualityBegin;
+        this.length = length;
+        this.replaceWildcards = replaceWildcards;
+        this.phredQualityOffset = phredQualityOffset;
+    }
+
+    @Override
+    public String getDescription() {
+        if (description == null)
+            description = createDescription(region, descriptionBegin, sequenceBegin - 1);
+        return description;
+    }
+
+    @Override
+    public NSequenceWithQuality getData() {
+        if (sequenceWithQuality == null)
+            sequenceWithQuality = createNSequenceWithQuality(region, sequenceBegin, qualityBegin, length,
+                    phredQualityOffset, id, replaceWildcards);
+        return sequenceWithQuality;
+    }
+
+    static String createDescription(ByteBuffer region, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; ++i)
+            bytes[i] = region.get(from + i);
+        return new String(bytes, Charset.defaultCharset());
+    }
+
+    static NSequenceWithQuality createNSequenceWithQuality(ByteBuffer region, int sequenceBegin, int qualityBegin,
+                                                           int length, byte phredQualityOffset, long id,
+                                                           boolean replaceWildcards) {
+        try {
+            return UnsafeFactory.fastqParse(region, sequenceBegin, qualityBegin, length, phredQualityOffset,
+                    id, replaceWildcards);
+        } catch (Exception e) {
+            throw new RuntimeException("Error while parsing read:\n" +
+                    createDescription(region, sequenceBegin, qualityBegin + length), e);
+        }
+    }
+
+    @Override
+    public int numberOfReads() {
+        return 1;
+    }
+
+    @Override
+    public SingleRead getRead(int i) {
+        if (i != 0)
+            throw new IndexOutOfBoundsException();
+        return this;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public Iterator<SingleRead> iterator() {
+        return new SingleIterator<>((SingleRead) this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SingleRead))
+            return false;
+        SingleRead oth = (SingleRead) o;
+        return getId() == oth.getId()
+                && getData().equals(oth.getData())
+                && getDescription().equals(oth.getDescription());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + getData().hashCode();
+        result = 31 * result + getDescription().hashCode();
+        return result;
+    }
+}
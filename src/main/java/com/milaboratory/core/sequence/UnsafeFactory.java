@@ -17,6 +17,8 @@ package com.milaboratory.core.sequence;
 
 import com.milaboratory.util.HashFunctions;
 
+import java.nio.ByteBuffer;
+
 /**
  * Don't use this class.
  *
@@ -74,4 +76,56 @@ public final class UnsafeFactory {
         return new NSequenceWithQuality(sequence.createAndDestroy(),
                 quality.createAndDestroy());
     }
+
+    /**
+     * Same as {@link #fastqParse(byte[], int, int, int, byte, long, boolean)}, but reads data directly from the byte
+     * buffer (e.g. memory-mapped file) using absolute positions, so buffer position and limit are not affected.
+     */
+    public static NSequenceWithQuality fastqParse(
+            ByteBuffer buffer,
+            int fromSequence,
+            int fromQuality,
+            int length,
+            byte qualityValueOffset,
+            long id,
+            boolean replaceWildcards) {
+        // Seed for random generator of letters substituting wildcards
+        long seed = id;
+
+        // Creating builders for sequence and quality
+        SequenceBuilder<NucleotideSequence> sequence = NucleotideSequence.ALPHABET.createBuilder().ensureCapacity(length);
+        SequenceQualityBuilder quality = new SequenceQualityBuilder().ensureCapacity(length);
+
+        byte qual, code, symbol;
+
+        // Parsing quality and sequence
+        for (int i = 0; i < length; ++i) {
+            qual = (byte) (buffer.get(fromQuality + i) - qualityValueOffset);
+
+            symbol = buffer.get(fromSequence + i);
+            code = NucleotideAlphabet.byteSymbolToCode(symbol);
+
+            if (code == -1) {
+                if (symbol == '.')
+                    code = NucleotideAlphabet.N;
+                else
+                    throw new IllegalArgumentException("Unknown letter \"" + symbol + "\"" +
+                            (symbol == 13 ? ". FASTQ reader does not support Windows-style line breaks " +
+                                    "(CR+LF), please convert file to standard FASTQ (with Unix-like LF line breaks)." : ""));
+            }
+
+            if (replaceWildcards && NucleotideSequence.ALPHABET.isWildcard(code)) {
+                seed = HashFunctions.JenkinWang64shift(seed + i);
+                code = NucleotideSequence.ALPHABET.codeToWildcard(code).getUniformlyDistributedBasicCode(seed);
+                qual = 0;
+            }
+
+            sequence.append(code);
+            quality.append(qual);
+        }
+
+        // Returning result
+        return new NSequenceWithQuality(sequence.createAndDestroy(),
+                quality.createAndDestroy());
+    }
 }
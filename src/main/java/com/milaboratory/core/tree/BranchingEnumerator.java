@@ -19,11 +19,15 @@ import com.milaboratory.core.sequence.Sequence;
 
 /**
  * Created by dbolotin on 25/06/14.
+ *
+ * @param <S> sequence type
+ * @param <N> type of tree nodes (see {@link TreeNavigator})
  */
-final class BranchingEnumerator<S extends Sequence<S>, O> {
+final class BranchingEnumerator<S extends Sequence<S>, N> {
     //reference sequence
-    final S reference;
+    S reference;
     final MutationGuide guide;
+    final TreeNavigator<N, ?> navigator;
 
     //Setup parameters
     byte mode;
@@ -32,11 +36,12 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
     //Runtime fields
     byte code;
     int position;
-    SequenceTreeMap.Node<O> node;
+    N node;
 
-    BranchingEnumerator(S reference, MutationGuide guide) {
+    BranchingEnumerator(S reference, MutationGuide guide, TreeNavigator<N, ?> navigator) {
         this.reference = reference;
         this.guide = guide;
+        this.navigator = navigator;
     }
 
     /**
@@ -49,7 +54,7 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
         this.node = null;
     }
 
-    public void reset(int position, SequenceTreeMap.Node<O> node) {
+    public void reset(int position, N node) {
         this.position = position;
         this.node = node;
         this.code = -1;
@@ -73,7 +78,7 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
             return;
         }
 
-        node = node.links[reference.codeAt(position++)];
+        node = navigator.child(node, reference.codeAt(position++));
     }
 
     public void checkIterationEnd() {
@@ -95,7 +100,7 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
         throw new IllegalStateException();
     }
 
-    public SequenceTreeMap.Node<O> next() {
+    public N next() {
         if (node == null)
             return null;
 
@@ -109,7 +114,7 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
                             return node = null;
 
                         code = 0;
-                        node = node.links[reference.codeAt(position++)];
+                        node = navigator.child(node, reference.codeAt(position++));
 
                         if (node == null)
                             return null;
@@ -118,9 +123,10 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
                     if (code == reference.codeAt(position))
                         continue;
 
-                    if (node.links[code] != null &&
+                    N child = navigator.child(node, code);
+                    if (child != null &&
                             (guide == null || guide.allowMutation(reference, position, (byte) 0, code)))
-                        return node.links[code];
+                        return child;
                 }
             case 1:
                 do {
@@ -129,7 +135,7 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
                         return node = null;
 
                     if (code != -1) {
-                        node = node.links[reference.codeAt(position++)];
+                        node = navigator.child(node, reference.codeAt(position++));
                     } else
                         code = 0;
 
@@ -145,15 +151,16 @@ final class BranchingEnumerator<S extends Sequence<S>, O> {
                             return node = null;
 
                         code = 0;
-                        node = node.links[reference.codeAt(position++)];
+                        node = navigator.child(node, reference.codeAt(position++));
                     }
 
                     if (node == null)
                         return null;
 
-                    if (node.links[code] != null &&
+                    N child = navigator.child(node, code);
+                    if (child != null &&
                             (guide == null || guide.allowMutation(reference, position, (byte) 2, code)))
-                        return node.links[code];
+                        return child;
                 }
         }
 
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.Factory;
+
+import java.util.Arrays;
+
+import static java.lang.Integer.bitCount;
+
+/**
+ * Memory efficient alternative to {@link SequenceTreeMap} with the same search capabilities.
+ *
+ * <p>Instead of a separate object with an alphabet-sized array of links for every node, nodes are stored in primitive
+ * arrays and addressed by integer indices. Each node keeps a bitmap of letters it has children for and an offset of
+ * its children block in a shared pool, where children are stored contiguously in the order of letter codes (so child
+ * for a letter is found with a single popcount). Children blocks have power-of-two capacities, released blocks are
+ * reused for subsequently growing nodes. Values are stored in a side array indexed by node. For nucleotide trees this
+ * takes ~20 bytes per node instead of ~100 bytes for {@link SequenceTreeMap}.</p>
+ *
+ * <p>{@link #remove(Sequence)} only clears the value, the nodes are kept in the tree.</p>
+ *
+ * <p>This class is not thread-safe for modifications, several threads may concurrently search in the map if there is
+ * no concurrent modifications.</p>
+ *
+ * @param <S> - key type (must be a sequence)
+ * @param <O> - value type
+ * @see NeighborhoodIterator
+ */
+public final class CompactSequenceTreeMap<S extends Sequence<S>, O> implements java.io.Serializable {
+    /**
+     * Index used to denote absence of a node
+     */
+    public static final int NO_NODE = -1;
+    static final int ROOT = 0;
+
+    public final Alphabet<S> alphabet;
+    /**
+     * Bit i is set if node has a child for the letter with code i
+     */
+    int[] childMasks;
+    /**
+     * Position of the children block of the node in {@link #children}
+     */
+    int[] childOffsets;
+    /**
+     * Values of nodes
+     */
+    Object[] values;
+    /**
+     * Number of nodes
+     */
+    int nodes;
+    /**
+     * Children pool
+     */
+    int[] children;
+    /**
+     * Used part of the children pool
+     */
+    int childrenSize;
+    /**
+     * Heads of lists of released children blocks, by capacity class (block of class c has 2^c slots), first slot of
+     * each released block stores position of the next block in the list
+     */
+    final int[] freeBlocks = new int[32];
+    /**
+     * Number of non-null values
+     */
+    int size;
+
+    /**
+     * Creates a tree map for specified {@link com.milaboratory.core.sequence.Alphabet}.
+     *
+     * @param alphabet alphabet
+     */
+    public CompactSequenceTreeMap(Alphabet<S> alphabet) {
+        this(alphabet, 16);
+    }
+
+    /**
+     * Creates a tree map for specified {@link com.milaboratory.core.sequence.Alphabet}.
+     *
+     * @param alphabet        alphabet
+     * @param initialCapacity expected number of nodes
+     */
+    public CompactSequenceTreeMap(Alphabet<S> alphabet, int initialCapacity) {
+        if (alphabet.size() > 32)
+            throw new IllegalArgumentException("Alphabets with more than 32 letters are not supported.");
+        this.alphabet = alphabet;
+        initialCapacity = Math.max(initialCapacity, 1);
+        this.childMasks = new int[initialCapacity];
+        this.childOffsets = new int[initialCapacity];
+        this.values = new Object[initialCapacity];
+        this.children = new int[initialCapacity];
+        Arrays.fill(freeBlocks, NO_NODE);
+        // Root node
+        this.nodes = 1;
+    }
+
+    /**
+     * Returns child of the node for the letter, or {@link #NO_NODE}
+     */
+    int child(int node, int code) {
+        final int mask = childMasks[node];
+        if ((mask & (1 << code)) == 0)
+            return NO_NODE;
+        return children[childOffsets[node] + bitCount(mask & ((1 << code) - 1))];
+    }
+
+    /**
+     * Returns child of the node for the letter, creating it if it is absent
+     */
+    private int getOrCreate(int node, int code) {
+        final int mask = childMasks[node];
+        final int position = bitCount(mask & ((1 << code) - 1));
+        if ((mask & (1 << code)) != 0)
+            return children[childOffsets[node] + position];
+
+        final int child = newNode();
+        final int count = bitCount(mask), offset = childOffsets[node];
+        if (count == capacity(count)) {
+            // Block is full, moving children to a larger block
+            int newOffset = allocateBlock(capacity(count + 1));
+            System.arraycopy(children, offset, children, newOffset, position);
+            System.arraycopy(children, offset + position, children, newOffset + position + 1, count - position);
+            if (count != 0)
+                releaseBlock(offset, count);
+            childOffsets[node] = newOffset;
+            children[newOffset + position] = child;
+        } else {
+            System.arraycopy(children, offset + position, children, offset + position + 1, count - position);
+            children[offset + position] = child;
+        }
+        childMasks[node] = mask | (1 << code);
+        return child;
+    }
+
+    private int newNode() {
+        if (nodes == childMasks.length) {
+            int newLength = nodes + (nodes >> 1) + 1;
+            childMasks = Arrays.copyOf(childMasks, newLength);
+            childOffsets = Arrays.copyOf(childOffsets, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+        return nodes++;
+    }
+
+    /**
+     * Capacity of children block for the node with specified number of children
+     */
+    private static int capacity(int count) {
+        return count <= 1 ? count : Integer.highestOneBit(count - 1) << 1;
+    }
+
+    private int allocateBlock(int capacity) {
+        final int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        int offset = freeBlocks[sizeClass];
+        if (offset != NO_NODE) {
+            freeBlocks[sizeClass] = children[offset];
+            return offset;
+        }
+        if (childrenSize + capacity > children.length)
+            children = Arrays.copyOf(children, Math.max(childrenSize + capacity,
+                    children.length + (children.length >> 1)));
+        offset = childrenSize;
+        childrenSize += capacity;
+        return offset;
+    }
+
+    private void releaseBlock(int offset, int capacity) {
+        final int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        children[offset] = freeBlocks[sizeClass];
+        freeBlocks[sizeClass] = offset;
+    }
+
+    private int getOrCreateNode(S sequence) {
+        final int size = sequence.size();
+        int node = ROOT;
+        for (int i = 0; i < size; ++i)
+            node = getOrCreate(node, sequence.codeAt(i));
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    public O createIfAbsent(S sequence, Factory<O> factory) {
+        final int node = getOrCreateNode(sequence);
+        if (values[node] == null) {
+            values[node] = factory.create();
+            ++size;
+        }
+        return (O) values[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    public O put(S sequence, O object) {
+        final int node = getOrCreateNode(sequence);
+        O prev = (O) values[node];
+        values[node] = object;
+        if (prev == null && object != null)
+            ++size;
+        else if (prev != null && object == null)
+            --size;
+        return prev;
+    }
+
+    /**
+     * Returns index of the node corresponding to the sequence, or {@link #NO_NODE} if there is no such node
+     */
+    public int getNode(S sequence) {
+        final int size = sequence.size();
+        int node = ROOT;
+        for (int i = 0; i < size; ++i)
+            if ((node = child(node, sequence.codeAt(i))) == NO_NODE)
+                break;
+        return node;
+    }
+
+    public O get(S sequence) {
+        int node = getNode(sequence);
+        if (node == NO_NODE)
+            return null;
+        return getObject(node);
+    }
+
+    /**
+     * Removes value associated with the sequence (nodes are not removed from the tree).
+     */
+    public O remove(S sequence) {
+        int node = getNode(sequence);
+        if (node == NO_NODE)
+            return null;
+        O prev = getObject(node);
+        if (prev != null) {
+            values[node] = null;
+            --size;
+        }
+        return prev;
+    }
+
+    /**
+     * Returns value of the node
+     *
+     * @param node node index
+     */
+    @SuppressWarnings("unchecked")
+    public O getObject(int node) {
+        return (O) values[node];
+    }
+
+    /**
+     * Sets value of the node
+     *
+     * @param node   node index
+     * @param object new value
+     */
+    public void setObject(int node, O object) {
+        if (values[node] == null && object != null)
+            ++size;
+        else if (values[node] != null && object == null)
+            --size;
+        values[node] = object;
+    }
+
+    /**
+     * Returns number of non-null values in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns number of nodes in the tree
+     */
+    public int getNumberOfNodes() {
+        return nodes;
+    }
+
+    public NeighborhoodIterator<S, O> getNeighborhoodIterator(S reference, int mismatches, int deletions,
+                                                              int insertions, int totalErrors) {
+        return getNeighborhoodIterator(reference,
+                new TreeSearchParameters(mismatches, deletions, insertions, totalErrors));
+    }
+
+    public NeighborhoodIterator<S, O> getNeighborhoodIterator(S reference, int mismatches, int deletions,
+                                                              int insertions) {
+        return getNeighborhoodIterator(reference,
+                new TreeSearchParameters(mismatches, deletions, insertions));
+    }
+
+    public NeighborhoodIterator<S, O> getNeighborhoodIterator(S reference, TreeSearchParameters parameters) {
+        return getNeighborhoodIterator(reference, parameters, null);
+    }
+
+    public NeighborhoodIterator<S, O> getNeighborhoodIterator(S reference, TreeSearchParameters parameters,
+                                                              MutationGuide<S> guide) {
+        return new NeighborhoodIterator<>(reference, parameters, guide, new Navigator(), ROOT);
+    }
+
+    /**
+     * Navigator addressing nodes of this map by their indices
+     */
+    private final class Navigator implements TreeNavigator<Integer, O> {
+        @Override
+        public Integer child(Integer node, byte code) {
+            int child = CompactSequenceTreeMap.this.child(node, code);
+            return child == NO_NODE ? null : child;
+        }
+
+        @Override
+        public O value(Integer node) {
+            return getObject(node);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.Factory;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link SequenceTreeMap} that supports concurrent modification from several threads.
+ *
+ * <p>Existing links are traversed without locking. New child node is created under the monitor of its parent node,
+ * and value of a node is accessed under the monitor of the node itself, so writers inserting different sequences
+ * contend only if they create children of the same node (in practice only near the root, and only until these nodes
+ * are created). Nodes are never removed from the tree, {@link #remove(Sequence)} only clears the value, so readers
+ * traversing the tree concurrently with writers always see a consistent tree.</p>
+ *
+ * <p>{@link NeighborhoodIterator} searches can be performed concurrently with modifications, such search is safe but
+ * may miss or include values being inserted at the moment. After writers quiesce (and their completion is observed by
+ * the searching thread, e.g. by joining executor tasks) searches give exactly the same results as for a {@link
+ * SequenceTreeMap} with the same content.</p>
+ *
+ * @param <S> - key type (must be a sequence)
+ * @param <O> - value type
+ */
+public final class ConcurrentSequenceTreeMap<S extends Sequence<S>, O> extends SequenceTreeMap<S, O> {
+    /**
+     * Creates a tree map for specified {@link com.milaboratory.core.sequence.Alphabet}.
+     *
+     * @param alphabet alphabet
+     */
+    public ConcurrentSequenceTreeMap(Alphabet<S> alphabet) {
+        super(alphabet);
+    }
+
+    private static <O> Node<O> getOrCreate(Node<O> node, byte code) {
+        Node<O> child = node.links[code];
+        if (child != null)
+            return child;
+        synchronized (node) {
+            if ((child = node.links[code]) == null)
+                child = node.links[code] = new Node<>(node.links.length);
+            return child;
+        }
+    }
+
+    private Node<O> getOrCreateNode(S sequence) {
+        final int size = sequence.size();
+        Node<O> node = root;
+        for (int i = 0; i < size; ++i)
+            node = getOrCreate(node, sequence.codeAt(i));
+        return node;
+    }
+
+    @Override
+    public O createIfAbsent(S sequence, Factory<O> factory) {
+        final Node<O> node = getOrCreateNode(sequence);
+        synchronized (node) {
+            if (node.object == null)
+                node.object = factory.create();
+            return node.object;
+        }
+    }
+
+    @Override
+    public O put(S sequence, O object) {
+        final Node<O> node = getOrCreateNode(sequence);
+        synchronized (node) {
+            O prev = node.object;
+            node.object = object;
+            return prev;
+        }
+    }
+
+    /**
+     * Atomically replaces value associated with the sequence with the result of the function.
+     *
+     * @param sequence sequence
+     * @param function function, that accepts current value (or {@literal null}) and returns new value
+     * @return new value
+     */
+    public O update(S sequence, UnaryOperator<O> function) {
+        final Node<O> node = getOrCreateNode(sequence);
+        synchronized (node) {
+            return node.object = function.apply(node.object);
+        }
+    }
+
+    @Override
+    public O get(S sequence) {
+        final Node<O> node = getNode(sequence);
+        if (node == null)
+            return null;
+        synchronized (node) {
+            return node.object;
+        }
+    }
+
+    /**
+     * Removes value associated with the sequence (nodes are not removed from the tree).
+     */
+    @Override
+    public O remove(S sequence) {
+        final Node<O> node = getNode(sequence);
+        if (node == null)
+            return null;
+        synchronized (node) {
+            O prev = node.object;
+            node.object = null;
+            return prev;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.util.ExecutorUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Batch neighborhood search of many queries against a single tree.
+ *
+ * <p>Queries are sorted, so equal queries are searched only once and queries with common prefixes are processed one
+ * after another (and traverse the same, already cached, nodes of the tree). Sorted distinct queries are split into
+ * chunks processed in parallel, each chunk reuses a single {@link NeighborhoodIterator} (see {@link
+ * NeighborhoodIterator#reset(Sequence)}) and collects hits into flat primitive arrays.</p>
+ */
+final class NeighborhoodBatchSearch {
+    private NeighborhoodBatchSearch() {
+    }
+
+    static <S extends Sequence<S>, O> NeighborhoodSearchResult<O> search(
+            final SequenceTreeMap.Node<O> root, final List<S> queries, final TreeSearchParameters parameters,
+            final MutationGuide<S> guide, final int maxHits, ExecutorService executor) {
+        if (maxHits < 0)
+            throw new IllegalArgumentException("maxHits < 0");
+        final int size = queries.size();
+
+        // Sorting queries, grouping equal ones
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; ++i)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> queries.get(a).compareTo(queries.get(b)));
+        // Index of distinct query for each query, and representative query for each distinct query
+        final int[] distinctIndex = new int[size];
+        final int[] distinct = new int[size];
+        int numberOfDistinct = 0;
+        for (int i = 0; i < size; ++i) {
+            if (i == 0 || !queries.get(order[i]).equals(queries.get(distinct[numberOfDistinct - 1])))
+                distinct[numberOfDistinct++] = order[i];
+            distinctIndex[order[i]] = numberOfDistinct - 1;
+        }
+
+        final int numberOfChunks = executor == null
+                ? Math.min(numberOfDistinct, 1)
+                : Math.min(numberOfDistinct, 4 * Runtime.getRuntime().availableProcessors());
+        List<Callable<Chunk>> tasks = new ArrayList<>(numberOfChunks);
+        for (int c = 0; c < numberOfChunks; ++c) {
+            final int from = (int) ((long) numberOfDistinct * c / numberOfChunks),
+                    to = (int) ((long) numberOfDistinct * (c + 1) / numberOfChunks);
+            tasks.add(() -> {
+                Chunk chunk = new Chunk(to - from);
+                NeighborhoodIterator<S, O> iterator = null;
+                for (int d = from; d < to; ++d) {
+                    S query = queries.get(distinct[d]);
+                    if (iterator == null)
+                        iterator = new NeighborhoodIterator<>(query, parameters, guide, root);
+                    else
+                        iterator.reset(query);
+                    O value;
+                    for (int hits = 0; hits < maxHits && (value = iterator.next()) != null; ++hits)
+                        chunk.add(value, iterator.getPenalty());
+                    chunk.offsets[d - from + 1] = chunk.size;
+                }
+                return chunk;
+            });
+        }
+
+        List<Chunk> chunks = ExecutorUtil.invokeAll(executor, tasks);
+
+        // Merging hits of all chunks
+        int totalHits = 0;
+        for (Chunk chunk : chunks)
+            totalHits += chunk.size;
+        final Object[] values = new Object[totalHits];
+        final double[] penalties = new double[totalHits];
+        final int[] distinctFrom = new int[numberOfDistinct + 1];
+        int d = 0, offset = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.values, 0, values, offset, chunk.size);
+            System.arraycopy(chunk.penalties, 0, penalties, offset, chunk.size);
+            for (int i = 1; i < chunk.offsets.length; ++i)
+                distinctFrom[++d] = offset + chunk.offsets[i];
+            offset += chunk.size;
+        }
+
+        final int[] hitsFrom = new int[size], hitsCount = new int[size];
+        for (int i = 0; i < size; ++i) {
+            hitsFrom[i] = distinctFrom[distinctIndex[i]];
+            hitsCount[i] = distinctFrom[distinctIndex[i] + 1] - hitsFrom[i];
+        }
+        return new NeighborhoodSearchResult<>(hitsFrom, hitsCount, values, penalties);
+    }
+
+    /**
+     * Hits of a range of distinct queries
+     */
+    private static final class Chunk {
+        /**
+         * Offsets of the hits of each query in the chunk (relative to the first query of the chunk)
+         */
+        final int[] offsets;
+        Object[] values = new Object[16];
+        double[] penalties = new double[16];
+        int size;
+
+        Chunk(int queries) {
+            this.offsets = new int[queries + 1];
+        }
+
+        void add(Object value, double penalty) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                penalties = Arrays.copyOf(penalties, size * 2);
+            }
+            values[size] = value;
+            penalties[size++] = penalty;
+        }
+    }
+}
@@ -29,20 +29,27 @@ import java.util.List;
 
 /**
  * Created by dbolotin on 25/06/14.
+ *
+ * <p>Iterates over values in the neighbourhood of a reference sequence in {@link SequenceTreeMap} or {@link
+ * CompactSequenceTreeMap}; search logic is the same for both tree implementations, which are accessed via {@link
+ * TreeNavigator}.</p>
  */
 public final class NeighborhoodIterator<S extends Sequence<S>, O> {
     //Reference sequence
-    final S reference;
+    S reference;
 
     //Penalty & other restrictions
     final TreeSearchParameters parameters;
     final byte[][] branchingSequences;
     final MutationGuide guide;
 
+    //Tree
+    final TreeNavigator<Object, O> navigator;
+    final Object root;
+
     //Runtime data
     int branchingSequenceIndex = 0, lastEnumerator;
-    SequenceTreeMap.Node<O> root;
-    BranchingEnumerator<S, O>[] branchingEnumerators = new BranchingEnumerator[1];
+    BranchingEnumerator<S, Object>[] branchingEnumerators = new BranchingEnumerator[1];
 
     /**
      * Constrictor for root NeighborhoodIterator iterator.
@@ -52,12 +59,41 @@ public final class NeighborhoodIterator<S extends Sequence<S>, O> {
      */
     public NeighborhoodIterator(S reference, TreeSearchParameters parameters,
                                 MutationGuide guide, SequenceTreeMap.Node<O> root) {
+        this(reference, parameters, guide, SequenceTreeMap.<O>nodeNavigator(), root);
+    }
+
+    /**
+     * Constrictor for root NeighborhoodIterator iterator for arbitrary tree implementation.
+     *
+     * @param reference reference sequence
+     * @param navigator tree navigator
+     * @param root      root node of the tree
+     */
+    @SuppressWarnings("unchecked")
+    <N> NeighborhoodIterator(S reference, TreeSearchParameters parameters,
+                             MutationGuide guide, TreeNavigator<N, O> navigator, N root) {
         this.parameters = parameters;
         this.guide = guide;
         this.reference = reference;
+        this.navigator = (TreeNavigator<Object, O>) navigator;
         this.root = root;
         this.branchingSequences = parameters.getDifferencesCombination();
-        this.branchingEnumerators[0] = new BranchingEnumerator<>(reference, guide);
+        this.branchingEnumerators[0] = new BranchingEnumerator<>(reference, guide, this.navigator);
+
+        setupBranchingEnumerators();
+    }
+
+    /**
+     * Restarts iteration for a new reference sequence. Allows to reuse the same iterator (and its internal state) for
+     * a series of searches with the same parameters.
+     *
+     * @param reference new reference sequence
+     */
+    public void reset(S reference) {
+        this.reference = reference;
+        for (BranchingEnumerator<S, Object> enumerator : branchingEnumerators)
+            enumerator.reference = reference;
+        this.branchingSequenceIndex = 0;
 
         setupBranchingEnumerators();
     }
@@ -72,7 +108,7 @@ public final class NeighborhoodIterator<S extends Sequence<S>, O> {
         if ((oldSize = branchingEnumerators.length) < newSize) {
             branchingEnumerators = Arrays.copyOfRange(branchingEnumerators, 0, newSize);
             for (int i = oldSize; i < newSize; ++i)
-                branchingEnumerators[i] = new BranchingEnumerator<>(reference, guide);
+                branchingEnumerators[i] = new BranchingEnumerator<>(reference, guide, navigator);
         }
     }
 
@@ -111,21 +147,32 @@ public final class NeighborhoodIterator<S extends Sequence<S>, O> {
     }
 
     public O next() {
-        SequenceTreeMap.Node<O> n = nextNode();
-        return n == null ? null : n.object;
+        Object n = advance();
+        return n == null ? null : navigator.value(n);
     }
 
+    /**
+     * Returns next node with non-null value, or {@literal null} if there are no more nodes. Only available for
+     * iterators over {@link SequenceTreeMap}, use {@link #next()} for other tree implementations.
+     */
+    @SuppressWarnings("unchecked")
     public SequenceTreeMap.Node<O> nextNode() {
+        if (!(root instanceof SequenceTreeMap.Node))
+            throw new UnsupportedOperationException("Nodes are only available for SequenceTreeMap.");
+        return (SequenceTreeMap.Node<O>) advance();
+    }
+
+    private Object advance() {
         if (branchingSequenceIndex == branchingSequences.length)
             return null;
 
-        SequenceTreeMap.Node<O> n;
+        Object n;
 
         while (true) {
 
             if (lastEnumerator == -1) {
                 --lastEnumerator;
-                if ((n = traverseToTheEnd(root, 0)) != null && n.object != null)
+                if ((n = traverse(navigator, root, 0)) != null && navigator.value(n) != null)
                     return n;
             }
 
@@ -144,7 +191,8 @@ public final class NeighborhoodIterator<S extends Sequence<S>, O> {
                 assert i == lastEnumerator;
 
                 if ((n = branchingEnumerators[i].next()) != null)
-                    if ((n = traverseToTheEnd(n, branchingEnumerators[i].getNextPositionAfterBranching())) != null && n.object != null)
+                    if ((n = traverse(navigator, n, branchingEnumerators[i].getNextPositionAfterBranching())) != null
+                            && navigator.value(n) != null)
                         return n;
                     else
                         continue;
@@ -162,8 +210,12 @@ public final class NeighborhoodIterator<S extends Sequence<S>, O> {
     }
 
     public SequenceTreeMap.Node<O> traverseToTheEnd(SequenceTreeMap.Node<O> node, int position) {
+        return traverse(SequenceTreeMap.<O>nodeNavigator(), node, position);
+    }
+
+    private <N> N traverse(TreeNavigator<N, ?> navigator, N node, int position) {
         while (position < reference.size())
-            if ((node = node.links[reference.codeAt(position++)]) == null)
+            if ((node = navigator.child(node, reference.codeAt(position++))) == null)
                 break;
 
         return node;
@@ -189,7 +241,7 @@ public final class NeighborhoodIterator<S extends Sequence<S>, O> {
                 .ensureCapacity(lastEnumerator + 1));
 
         for (int i = 0; i <= lastEnumerator; ++i) {
-            BranchingEnumerator<S, O> currentBE = branchingEnumerators[i];
+            BranchingEnumerator<S, Object> currentBE = branchingEnumerators[i];
             int position = currentBE.getPosition();
             switch (getCurrentBranchingSequence()[i]) {
                 case 0:
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Result of the batch neighborhood search. For each query stores values found in its neighbourhood and penalties of
+ * corresponding differences. Order of hits depends on the producer of the result:
+ *
+ * <ul>
+ * <li>{@link SequenceTreeMap#searchNeighborhoods(List, TreeSearchParameters)} returns hits in the order they are
+ * returned by {@link NeighborhoodIterator#next()} (so the same value may be found several times, with different
+ * sets of differences)</li>
+ * <li>{@link SymmetricDeletionIndex#search(List)} returns each value once, with the minimal penalty, hits are sorted
+ * by penalty</li>
+ * </ul>
+ *
+ * <p>Hits of all queries are stored in flat arrays, queries equal to each other may share the same range of
+ * hits.</p>
+ *
+ * @param <O> value type
+ */
+public final class NeighborhoodSearchResult<O> {
+    /**
+     * Index of the first hit and number of hits for each query
+     */
+    final int[] hitsFrom, hitsCount;
+    final Object[] values;
+    final double[] penalties;
+
+    NeighborhoodSearchResult(int[] hitsFrom, int[] hitsCount, Object[] values, double[] penalties) {
+        this.hitsFrom = hitsFrom;
+        this.hitsCount = hitsCount;
+        this.values = values;
+        this.penalties = penalties;
+    }
+
+    /**
+     * Returns number of queries
+     */
+    public int size() {
+        return hitsFrom.length;
+    }
+
+    /**
+     * Returns number of hits found for the query
+     *
+     * @param query index of query in the list of queries
+     */
+    public int getNumberOfHits(int query) {
+        return hitsCount[query];
+    }
+
+    private int index(int query, int hit) {
+        if (hit < 0 || hit >= hitsCount[query])
+            throw new IndexOutOfBoundsException("Hit: " + hit + ", number of hits: " + hitsCount[query]);
+        return hitsFrom[query] + hit;
+    }
+
+    /**
+     * Returns value of the hit
+     *
+     * @param query index of query in the list of queries
+     * @param hit   index of hit
+     */
+    @SuppressWarnings("unchecked")
+    public O getValue(int query, int hit) {
+        return (O) values[index(query, hit)];
+    }
+
+    /**
+     * Returns penalty of the hit (see {@link NeighborhoodIterator#getPenalty()})
+     *
+     * @param query index of query in the list of queries
+     * @param hit   index of hit
+     */
+    public double getPenalty(int query, int hit) {
+        return penalties[index(query, hit)];
+    }
+
+    /**
+     * Returns values of all hits of the query
+     *
+     * @param query index of query in the list of queries
+     */
+    public List<O> getValues(int query) {
+        final int from = hitsFrom[query], count = hitsCount[query];
+        return new AbstractList<O>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public O get(int index) {
+                if (index < 0 || index >= count)
+                    throw new IndexOutOfBoundsException();
+                return (O) values[from + index];
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+}
@@ -24,7 +24,10 @@ import com.milaboratory.util.Factory;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Sequence tree map, with fast neighbours search. <p/> <p>Types of mutations: <br/> 0 = mismatch, <br/> 1 = deletion
@@ -195,6 +198,59 @@ public class SequenceTreeMap<S extends Sequence<S>, O>
         return new NeighborhoodIterator<>(reference, parameters, guide, root);
     }
 
+    /**
+     * Searches neighbourhoods of many query sequences at once, in parallel using common fork-join pool. Same as
+     * iterating over {@link #getNeighborhoodIterator(Sequence, TreeSearchParameters)} for each query, but much more
+     * efficient for large number of queries (especially if many of them are equal or have common prefixes).
+     *
+     * @param queries    query sequences
+     * @param parameters search parameters
+     * @return values found in the neighbourhood of each query
+     */
+    public NeighborhoodSearchResult<O> searchNeighborhoods(List<S> queries, TreeSearchParameters parameters) {
+        return searchNeighborhoods(queries, parameters, null, Integer.MAX_VALUE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Searches neighbourhoods of many query sequences at once. Same as iterating over {@link
+     * #getNeighborhoodIterator(Sequence, TreeSearchParameters, MutationGuide)} for each query, but much more efficient
+     * for large number of queries (especially if many of them are equal or have common prefixes).
+     *
+     * @param queries    query sequences
+     * @param parameters search parameters
+     * @param guide      mutation guide (may be {@literal null})
+     * @param maxHits    maximal number of hits collected for each query (first hits returned by the iterator are
+     *                   retained)
+     * @param executor   executor to run search tasks in, if {@literal null} search is performed in the calling thread
+     * @return values found in the neighbourhood of each query
+     */
+    public NeighborhoodSearchResult<O> searchNeighborhoods(List<S> queries, TreeSearchParameters parameters,
+                                                           MutationGuide<S> guide, int maxHits,
+                                                           ExecutorService executor) {
+        return NeighborhoodBatchSearch.search(root, queries, parameters, guide, maxHits, executor);
+    }
+
+    /**
+     * Navigator for trees built of {@link Node} objects
+     */
+    private static final TreeNavigator<Node<Object>, Object> NODE_NAVIGATOR =
+            new TreeNavigator<Node<Object>, Object>() {
+                @Override
+                public Node<Object> child(Node<Object> node, byte code) {
+                    return node.links[code];
+                }
+
+                @Override
+                public Object value(Node<Object> node) {
+                    return node.object;
+                }
+            };
+
+    @SuppressWarnings("unchecked")
+    static <O> TreeNavigator<Node<O>, O> nodeNavigator() {
+        return (TreeNavigator) NODE_NAVIGATOR;
+    }
+
     public static final class Node<O> implements java.io.Serializable {
         final Node<O>[] links;
         O object;
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.ShortSequenceSet;
+import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index for error-tolerant search of short nucleotide sequences (e.g. barcodes), an alternative to the {@link
+ * NeighborhoodIterator} search in {@link SequenceTreeMap} for small numbers of errors.
+ *
+ * <p>Uses symmetric deletion approach (as in SymSpell): all sequences obtained from the keys by deletion of up to
+ * {@code k} letters are stored in a hash map, so candidates for a query are found by a hash lookup of each sequence
+ * obtained from the query by deletion of up to {@code q} letters ({@code k} and {@code q} are derived from the search
+ * parameters). Each candidate is then verified by a banded alignment, that computes only the diagonals reachable
+ * with the allowed numbers of insertions and deletions (i.e. {@code O(n * (maxInsertions + maxDeletions + 1))} cells
+ * for a query of length {@code n}). Verification takes into account maximal number of errors of each type and
+ * penalties from {@link TreeSearchParameters}, so the set of found keys is the same as for the {@link
+ * SequenceTreeMap} search with the same parameters (in non-greedy mode). Unlike {@link NeighborhoodIterator} each key
+ * is reported once, with the minimal penalty among all possible sets of differences.</p>
+ *
+ * <p>Sequences are encoded into longs (see {@link ShortSequenceSet#toLong(NucleotideSequence)}), so keys and queries
+ * must be shorter than 30 nucleotides and contain no wildcards.</p>
+ *
+ * <p>Search methods can be invoked concurrently from several threads (if the index is not modified at the same
+ * time).</p>
+ *
+ * @param <O> value type
+ */
+public final class SymmetricDeletionIndex<O> {
+    private static final long LENGTH_MASK = 0x3FFFFFFFFFFFFFFL;
+
+    final TreeSearchParameters parameters;
+    /**
+     * Maximal number of deletions applied to keys and to queries
+     */
+    final int keyDeletions, queryDeletions;
+    /**
+     * Parameters of verification (see {@link #penaltyIndex(long, long, long[])})
+     */
+    final int maxSubstitutions, maxDeletions, maxInsertions;
+    final long substitutionAllowed, deletionAllowed;
+    final long[] deletionsAtMost;
+    /**
+     * Distinct penalties of allowed combinations of errors, in ascending order
+     */
+    final double[] penalties;
+    /**
+     * Index in {@link #penalties} for each combination of numbers of substitutions, deletions and insertions (see
+     * {@link #combination(int, int, int)}), or -1 if the combination is not allowed
+     */
+    final int[] penaltyIndices;
+
+    /**
+     * Encoded key -> key id
+     */
+    final TLongIntHashMap keyIds = new TLongIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR,
+            -1, -1);
+    final TLongArrayList keys = new TLongArrayList();
+    final List<O> values = new ArrayList<>();
+    /**
+     * Encoded deletion variant -> index of the last posting for this variant
+     */
+    final TLongIntHashMap heads = new TLongIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR,
+            -1, -1);
+    /**
+     * Postings (key id and index of the previous posting for the same variant)
+     */
+    final TIntArrayList postingKeys = new TIntArrayList(), postingNext = new TIntArrayList();
+
+    /**
+     * @param parameters search parameters
+     */
+    public SymmetricDeletionIndex(TreeSearchParameters parameters) {
+        this.parameters = parameters;
+        this.maxSubstitutions = parameters.getMaxSubstitutions();
+        this.maxDeletions = parameters.getMaxDeletions();
+        this.maxInsertions = parameters.getMaxInsertions();
+        if ((maxSubstitutions + 1) * (maxDeletions + 1) > 64)
+            throw new IllegalArgumentException("Too many errors allowed.");
+
+        // Substitution requires deletion both from the key and the query, insertion - from the key,
+        // deletion - from the query
+        int keyDeletions = 0, queryDeletions = 0;
+        for (int s = 0; s <= maxSubstitutions; ++s)
+            for (int d = 0; d <= maxDeletions; ++d)
+                for (int i = 0; i <= maxInsertions; ++i)
+                    if (penalty(s, d, i) <= parameters.getMaxPenalty()) {
+                        keyDeletions = Math.max(keyDeletions, s + i);
+                        queryDeletions = Math.max(queryDeletions, s + d);
+                    }
+        this.keyDeletions = keyDeletions;
+        this.queryDeletions = queryDeletions;
+
+        // Bit (s * (maxDeletions + 1) + d) of alignment state is set if the cell is reachable with
+        // s substitutions and d deletions
+        long substitutionAllowed = 0, deletionAllowed = 0;
+        this.deletionsAtMost = new long[maxDeletions + 1];
+        for (int s = 0; s <= maxSubstitutions; ++s)
+            for (int d = 0; d <= maxDeletions; ++d) {
+                long bit = 1L << (s * (maxDeletions + 1) + d);
+                if (s < maxSubstitutions)
+                    substitutionAllowed |= bit;
+                if (d < maxDeletions)
+                    deletionAllowed |= bit;
+                for (int l = d; l <= maxDeletions; ++l)
+                    deletionsAtMost[l] |= bit;
+            }
+        this.substitutionAllowed = substitutionAllowed;
+        this.deletionAllowed = deletionAllowed;
+
+        // Hits are ranked by index of penalty, so they can be sorted as primitive values
+        this.penaltyIndices = new int[(maxSubstitutions + 1) * (maxDeletions + 1) * (maxInsertions + 1)];
+        TDoubleArrayList penalties = new TDoubleArrayList();
+        for (int s = 0; s <= maxSubstitutions; ++s)
+            for (int d = 0; d <= maxDeletions; ++d)
+                for (int i = 0; i <= maxInsertions; ++i) {
+                    double penalty = penalty(s, d, i);
+                    if (penalty <= parameters.getMaxPenalty() && !penalties.contains(penalty))
+                        penalties.add(penalty);
+                }
+        penalties.sort();
+        this.penalties = penalties.toArray();
+        for (int s = 0; s <= maxSubstitutions; ++s)
+            for (int d = 0; d <= maxDeletions; ++d)
+                for (int i = 0; i <= maxInsertions; ++i) {
+                    // Not found (negative index) for combinations exceeding maximal penalty
+                    int index = penalties.binarySearch(penalty(s, d, i));
+                    penaltyIndices[combination(s, d, i)] = index >= 0 ? index : -1;
+                }
+    }
+
+    private int combination(int substitutions, int deletions, int insertions) {
+        return (substitutions * (maxDeletions + 1) + deletions) * (maxInsertions + 1) + insertions;
+    }
+
+    private double penalty(int substitutions, int deletions, int insertions) {
+        return substitutions * parameters.getSubstitutionPenalty() + deletions * parameters.getDeletionPenalty()
+                + insertions * parameters.getInsertionPenalty();
+    }
+
+    public TreeSearchParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns number of keys in the index
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Associates value with the key.
+     *
+     * @param key   key
+     * @param value value
+     * @return previous value associated with the key, or {@literal null} if there was no such value
+     */
+    public O put(NucleotideSequence key, O value) {
+        long encoded = ShortSequenceSet.toLong(key);
+        int id = keyIds.get(encoded);
+        if (id != -1)
+            return values.set(id, value);
+
+        id = keys.size();
+        keyIds.put(encoded, id);
+        keys.add(encoded);
+        values.add(value);
+        addVariants(id, encoded & LENGTH_MASK, key.size(), 0, keyDeletions);
+        return null;
+    }
+
+    /**
+     * Returns value associated with the key, or {@literal null} if there is no such value.
+     *
+     * @param key key
+     */
+    public O get(NucleotideSequence key) {
+        int id = keyIds.get(ShortSequenceSet.toLong(key));
+        return id == -1 ? null : values.get(id);
+    }
+
+    /**
+     * Deletes letters in positions starting from {@code from}, so each set of deleted positions is enumerated once
+     */
+    private void addVariants(int id, long sequence, int length, int from, int deletions) {
+        long variant = sequence | ((long) length) << 58;
+        int head = heads.get(variant);
+        // Deletions in homopolymers produce equal variants, posting is added only once
+        if (head == -1 || postingKeys.get(head) != id) {
+            heads.put(variant, postingKeys.size());
+            postingKeys.add(id);
+            postingNext.add(head);
+        }
+        if (deletions == 0)
+            return;
+        for (int position = from; position < length; ++position)
+            addVariants(id, delete(sequence, length, position), length - 1, position, deletions - 1);
+    }
+
+    private void collectCandidates(TIntArrayList candidates, long sequence, int length, int from, int deletions) {
+        for (int posting = heads.get(sequence | ((long) length) << 58); posting != -1;
+             posting = postingNext.get(posting))
+            candidates.add(postingKeys.get(posting));
+        if (deletions == 0)
+            return;
+        for (int position = from; position < length; ++position)
+            collectCandidates(candidates, delete(sequence, length, position), length - 1, position, deletions - 1);
+    }
+
+    /**
+     * Removes letter at the position from 2-bit encoded sequence (without length bits)
+     */
+    private static long delete(long sequence, int length, int position) {
+        int lowBits = 2 * (length - 1 - position);
+        long low = sequence & ((1L << lowBits) - 1);
+        return ((sequence >>> (lowBits + 2)) << lowBits) | low;
+    }
+
+    /**
+     * Searches for keys in the neighbourhood of the query.
+     *
+     * @param query query sequence
+     * @return values associated with the found keys, sorted by penalty
+     */
+    public List<O> search(NucleotideSequence query) {
+        List<O> foundValues = new ArrayList<>();
+        search(query, new SearchBuffers(), foundValues, null);
+        return foundValues;
+    }
+
+    /**
+     * Searches for keys in the neighbourhood of each query.
+     *
+     * @param queries query sequences
+     * @return values associated with the keys found for each query, sorted by penalty
+     */
+    public NeighborhoodSearchResult<O> search(List<NucleotideSequence> queries) {
+        SearchBuffers buffers = new SearchBuffers();
+        List<O> foundValues = new ArrayList<>();
+        TDoubleArrayList foundPenalties = new TDoubleArrayList();
+        int[] hitsFrom = new int[queries.size()], hitsCount = new int[queries.size()];
+        for (int i = 0; i < queries.size(); ++i) {
+            hitsFrom[i] = foundValues.size();
+            search(queries.get(i), buffers, foundValues, foundPenalties);
+            hitsCount[i] = foundValues.size() - hitsFrom[i];
+        }
+        return new NeighborhoodSearchResult<>(hitsFrom, hitsCount, foundValues.toArray(),
+                foundPenalties.toArray());
+    }
+
+    private void search(NucleotideSequence query, SearchBuffers buffers,
+                        List<O> foundValues, TDoubleArrayList foundPenalties) {
+        long encoded = ShortSequenceSet.toLong(query);
+        TIntArrayList candidates = buffers.candidates;
+        candidates.resetQuick();
+        collectCandidates(candidates, encoded & LENGTH_MASK, query.size(), 0, queryDeletions);
+        candidates.sort();
+
+        // Keys longer than query.size() + maxInsertions are rejected before alignment
+        long[] alignment = buffers.alignment((query.size() + 1) * (query.size() + maxInsertions + 1));
+        // Verified hits, encoded as (index of penalty, key id) pairs, so sorting orders them by penalty, then by id
+        long[] hits = buffers.hits(candidates.size());
+        int count = 0;
+        for (int i = 0; i < candidates.size(); ++i) {
+            int id = candidates.getQuick(i);
+            if (i > 0 && candidates.getQuick(i - 1) == id)
+                continue;
+            int penaltyIndex = penaltyIndex(encoded, keys.get(id), alignment);
+            if (penaltyIndex >= 0)
+                hits[count++] = ((long) penaltyIndex << 32) | id;
+        }
+        Arrays.sort(hits, 0, count);
+
+        for (int i = 0; i < count; ++i) {
+            foundValues.add(values.get((int) hits[i]));
+            if (foundPenalties != null)
+                foundPenalties.add(penalties[(int) (hits[i] >>> 32)]);
+        }
+    }
+
+    /**
+     * Calculates minimal penalty of differences between query and key, taking into account maximal number of errors
+     * of each type.
+     *
+     * @param query     encoded query
+     * @param key       encoded key
+     * @param alignment buffer for alignment states
+     * @return index of the penalty in {@link #penalties}, or -1 if key is not in the neighbourhood of the query
+     */
+    int penaltyIndex(long query, long key, long[] alignment) {
+        final int n = (int) (query >>> 58), m = (int) (key >>> 58);
+        if (n - m > maxDeletions || m - n > maxInsertions)
+            return -1;
+        final int width = m + 1;
+        // Cell (x, y) is reachable only with y - x = insertions - deletions, so only cells with
+        // -maxDeletions <= y - x <= maxInsertions are visited (and have to be cleared)
+        for (int x = 0; x <= n; ++x)
+            Arrays.fill(alignment, x * width + Math.max(0, x - maxDeletions),
+                    x * width + Math.min(m, x + maxInsertions) + 1, 0);
+        alignment[0] = 1;
+        for (int x = 0; x <= n; ++x)
+            for (int y = Math.max(0, x - maxDeletions), to = Math.min(m, x + maxInsertions); y <= to; ++y) {
+                long state = alignment[x * width + y];
+                if (state == 0)
+                    continue;
+                if (x < n && y < m) {
+                    if (codeAt(query, n, x) == codeAt(key, m, y))
+                        alignment[(x + 1) * width + y + 1] |= state;
+                    else
+                        alignment[(x + 1) * width + y + 1] |= (state & substitutionAllowed) << (maxDeletions + 1);
+                }
+                if (x < n)
+                    alignment[(x + 1) * width + y] |= (state & deletionAllowed) << 1;
+                // Number of insertions is (d - x + y), so d <= maxInsertions + x - y - 1 is required
+                int maxD = Math.min(maxDeletions, maxInsertions + x - y - 1);
+                if (y < m && maxD >= 0)
+                    alignment[x * width + y + 1] |= state & deletionsAtMost[maxD];
+            }
+
+        long state = alignment[n * width + m];
+        int result = -1;
+        for (int s = 0; s <= maxSubstitutions; ++s)
+            for (int d = 0; d <= maxDeletions; ++d)
+                if ((state & (1L << (s * (maxDeletions + 1) + d))) != 0) {
+                    // Number of insertions is d - n + m
+                    int index = penaltyIndices[combination(s, d, d - n + m)];
+                    if (index >= 0 && (result < 0 || index < result))
+                        result = index;
+                }
+        return result;
+    }
+
+    private static int codeAt(long sequence, int length, int position) {
+        return (int) (sequence >>> (2 * (length - 1 - position))) & 3;
+    }
+
+    /**
+     * Buffers reused for searches of several queries
+     */
+    private static final class SearchBuffers {
+        final TIntArrayList candidates = new TIntArrayList();
+        long[] hits = new long[16];
+        long[] alignment = new long[0];
+
+        long[] hits(int size) {
+            if (hits.length < size)
+                hits = new long[Math.max(size, hits.length * 2)];
+            return hits;
+        }
+
+        long[] alignment(int size) {
+            if (alignment.length < size)
+                alignment = new long[size];
+            return alignment;
+        }
+    }
+}
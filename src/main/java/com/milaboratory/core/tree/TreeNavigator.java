@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+/**
+ * Navigation in a tree of sequences, allows {@link NeighborhoodIterator} and {@link BranchingEnumerator} to search in
+ * different tree implementations ({@link SequenceTreeMap}, {@link CompactSequenceTreeMap}).
+ *
+ * @param <N> type of node handles
+ * @param <O> type of values
+ */
+interface TreeNavigator<N, O> {
+    /**
+     * Returns child of the node for the letter, or {@literal null} if there is no such child
+     *
+     * @param node node
+     * @param code letter code
+     */
+    N child(N node, byte code);
+
+    /**
+     * Returns value of the node ({@literal null} if node has no value)
+     *
+     * @param node node
+     */
+    O value(N node);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Growable container for a batch of objects taken from an output port (see {@link BatchOutputPort}). Instances may be
+ * reused between calls to {@link BatchOutputPort#takeBatch(Batch, int)} to avoid allocations.
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @param <T> type of objects
+ */
+public final class Batch<T> implements Iterable<T> {
+    Object[] data;
+    int size;
+
+    public Batch() {
+        this(16);
+    }
+
+    public Batch(int capacity) {
+        this.data = new Object[Math.max(capacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException();
+        return (T) data[i];
+    }
+
+    public void add(T object) {
+        if (size == data.length)
+            data = Arrays.copyOf(data, data.length * 2);
+        data[size++] = object;
+    }
+
+    /**
+     * Removes all objects from the batch, retaining allocated storage.
+     */
+    public void clear() {
+        Arrays.fill(data, 0, size, null);
+        size = 0;
+    }
+
+    public Object[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            int pointer = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pointer < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (pointer >= size)
+                    throw new NoSuchElementException();
+                return (T) data[pointer++];
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.OutputPort;
+
+/**
+ * Output port able to return several objects per call, which allows implementations to acquire locks, perform checks,
+ * etc. once per batch instead of once per object.
+ *
+ * @param <T> type of objects
+ */
+public interface BatchOutputPort<T> extends OutputPort<T> {
+    /**
+     * Clears the batch and fills it with at most {@code max} next objects from this port. Returned batch is empty if
+     * the port is exhausted. Implementations must be thread-safe if {@link #take()} is thread-safe; all objects of a
+     * batch are guaranteed to be consecutive in the port.
+     *
+     * @param batch batch to reuse
+     * @param max   maximal number of objects to take
+     * @return the same batch
+     */
+    default Batch<T> takeBatch(Batch<T> batch, int max) {
+        return BatchUtil.takeBatch(this, batch, max);
+    }
+
+    /**
+     * Returns new batch with at most {@code max} next objects from this port, or empty batch if the port is exhausted.
+     *
+     * @param max maximal number of objects to take
+     * @return new batch
+     */
+    default Batch<T> takeBatch(int max) {
+        return takeBatch(new Batch<>(max), max);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.blocks.ParallelProcessor;
+
+/**
+ * Helper methods to process output ports batch-by-batch (see {@link BatchOutputPort}).
+ */
+public final class BatchUtil {
+    /**
+     * Default number of objects in a batch for parallel processing
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private BatchUtil() {
+    }
+
+    /**
+     * Takes at most {@code max} objects from arbitrary port by invoking {@link OutputPort#take()} sequentially. Batch
+     * is not guaranteed to contain consecutive objects if the port is used from several threads, so implementations
+     * of {@link BatchOutputPort} that delegate to this method should hold the same lock as their {@code take()}.
+     *
+     * @param port  port
+     * @param batch batch to reuse
+     * @param max   maximal number of objects to take
+     * @return the same batch
+     */
+    public static <T> Batch<T> takeBatch(OutputPort<T> port, Batch<T> batch, int max) {
+        batch.clear();
+        T object;
+        while (batch.size() < max && (object = port.take()) != null)
+            batch.add(object);
+        return batch;
+    }
+
+    /**
+     * Returns port of batches, each containing at most {@code batchSize} objects. Returned port returns
+     * {@literal null} after the underlying port is exhausted.
+     */
+    public static <T> OutputPortCloseable<Batch<T>> batched(final OutputPort<T> port, final int batchSize) {
+        return new OutputPortCloseable<Batch<T>>() {
+            @Override
+            public Batch<T> take() {
+                Batch<T> batch = port instanceof BatchOutputPort
+                        ? ((BatchOutputPort<T>) port).takeBatch(batchSize)
+                        : takeBatch(port, new Batch<>(batchSize), batchSize);
+                return batch.isEmpty() ? null : batch;
+            }
+
+            @Override
+            public void close() {
+                if (port instanceof OutputPortCloseable)
+                    ((OutputPortCloseable<T>) port).close();
+            }
+        };
+    }
+
+    /**
+     * Flattens port of batches into a port of objects.
+     */
+    public static <T> OutputPortCloseable<T> unbatched(final OutputPort<Batch<T>> port) {
+        return new OutputPortCloseable<T>() {
+            Batch<T> current;
+            int pointer;
+
+            @Override
+            public synchronized T take() {
+                while (current == null || pointer == current.size()) {
+                    current = port.take();
+                    pointer = 0;
+                    if (current == null)
+                        return null;
+                }
+                return current.get(pointer++);
+            }
+
+            @Override
+            public void close() {
+                if (port instanceof OutputPortCloseable)
+                    ((OutputPortCloseable<Batch<T>>) port).close();
+            }
+        };
+    }
+
+    /**
+     * Converts processor of single objects into processor of batches.
+     */
+    public static <I, O> Processor<Batch<I>, Batch<O>> batchProcessor(final Processor<I, O> processor) {
+        return new Processor<Batch<I>, Batch<O>>() {
+            @Override
+            public Batch<O> process(Batch<I> input) {
+                Batch<O> result = new Batch<>(input.size());
+                for (I object : input)
+                    result.add(processor.process(object));
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Processes objects from the input port using several threads, transferring objects between threads in batches,
+     * so synchronization overhead is paid once per batch. Like {@link ParallelProcessor}, does not preserve order of
+     * objects (though objects of each batch are kept together).
+     *
+     * @param input     input port
+     * @param processor processor
+     * @param threads   number of threads, 1 means processing in the thread calling {@code take()}
+     * @param batchSize number of objects in a batch
+     */
+    public static <I, O> OutputPort<O> processInParallel(OutputPort<I> input, Processor<I, O> processor,
+                                                         int threads, int batchSize) {
+        if (threads == 1)
+            return CUtils.wrap(input, processor);
+        return unbatched(new ParallelProcessor<>(batched(input, batchSize), batchProcessor(processor), threads));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helper methods to run groups of tasks in executors.
+ */
+public final class ExecutorUtil {
+    private ExecutorUtil() {
+    }
+
+    /**
+     * Executes all the tasks and waits for them to complete. Runtime exceptions thrown by the tasks are rethrown as
+     * is, checked exceptions are wrapped into {@link RuntimeException}. If the calling thread is interrupted while
+     * waiting, its interrupted status is restored before the wrapping {@link RuntimeException} is thrown.
+     *
+     * @param executor executor to run tasks in, if {@literal null} tasks are executed sequentially in the calling
+     *                 thread
+     * @param tasks    tasks
+     * @return results of the tasks in the same order as tasks
+     */
+    public static <R> List<R> invokeAll(ExecutorService executor, List<? extends Callable<R>> tasks) {
+        List<R> result = new ArrayList<>(tasks.size());
+        if (executor == null) {
+            for (Callable<R> task : tasks)
+                try {
+                    result.add(task.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            return result;
+        }
+
+        try {
+            for (Future<R> future : executor.invokeAll(tasks))
+                result.add(future.get());
+            return result;
+        } catch (InterruptedException e) {
+            // Preserve interruption status for the caller
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
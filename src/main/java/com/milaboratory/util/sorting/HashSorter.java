@@ -38,12 +38,14 @@ import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-// TODO implement minimal budget in-memory analysis (don't use hdd if whole analysis can be done in memory)
-
 /**
  * Implements HDD-offloading sorter, that sorts objects by a defined hash code (more specifically it's unsigned value)
  * first, and by a defined comparator if objects has the same hash code.
  *
+ * <p>Objects are first buffered in memory. If the whole input fits into the memory budget (estimated using object
+ * size initial guess), objects are sorted in memory in parallel and no files are created. Otherwise, buffered objects
+ * followed by the rest of the input are collated into HDD-based hash buckets.</p>
+ *
  * @param <T> type of objects to sort
  */
 public class HashSorter<T> {
@@ -85,6 +87,7 @@ public class HashSorter<T> {
     // Stats
 
     private final CopyOnWriteArrayList<CollationNodeInfo> nodeInfos = new CopyOnWriteArrayList<>();
+    private volatile boolean inMemory = false;
 
     private final AtomicLongArray timeOnLevel = new AtomicLongArray(32);
     private final AtomicLong
@@ -95,6 +98,7 @@ public class HashSorter<T> {
             timeInFinalSorting1 = new AtomicLong(),
             timeInFinalSorting2 = new AtomicLong(),
             timeInFinalSorting3 = new AtomicLong(),
+            timeInMemorySorting = new AtomicLong(),
             totalFilesUsed = new AtomicLong(),
             maxDepth = new AtomicLong();
 
@@ -146,14 +150,73 @@ public class HashSorter<T> {
     }
 
     public OutputPortCloseable<T> port(OutputPort<T> input) {
+        inMemory = false;
+
+        // Buffering objects in memory until memory budget is exceeded
+        ArrayList<T> buffer = new ArrayList<>();
+        long maxObjectsInMemory = Math.max(1, memoryBudget / Math.max(1, objectSizeInitialGuess));
+        T obj;
+        while ((obj = input.take()) != null) {
+            buffer.add(obj);
+            if (buffer.size() >= maxObjectsInMemory)
+                break;
+        }
+
+        if (obj == null) {
+            // <- whole input fits into memory budget
+            long start = System.nanoTime();
+            @SuppressWarnings("unchecked")
+            T[] array = buffer.toArray((T[]) new Object[buffer.size()]);
+            buffer = null; // for GC
+            Arrays.parallelSort(array, effectiveComparator);
+            timeInMemorySorting.addAndGet(System.nanoTime() - start);
+            inMemory = true;
+            OutputPort<T> op = CUtils.asOutputPort(Arrays.asList(array));
+            return new OutputPortCloseable<T>() {
+                @Override
+                public void close() {
+                    // noop
+                }
+
+                @Override
+                public T take() {
+                    return op.take();
+                }
+            };
+        }
+
+        // <- memory budget exceeded, buffered objects are collated first, followed by the rest of the input
+        final ArrayList<T> buffered = buffer;
+        OutputPort<T> source = new OutputPort<T>() {
+            int pointer = 0;
+
+            @Override
+            public T take() {
+                if (pointer < buffered.size()) {
+                    T o = buffered.get(pointer);
+                    buffered.set(pointer++, null); // for GC
+                    return o;
+                }
+                return input.take();
+            }
+        };
+
         Collator c = new Collator(CollatorAddress.ROOT,
-                input, filePrefix,
+                source, filePrefix,
                 bitsPerStep, 32 - bitsPerStep,
                 objectSizeInitialGuess, new Object[0]);
         c.run();
         return c.port();
     }
 
+    /**
+     * Returns true if the last {@link #port(OutputPort)} invocation was processed completely in memory, without
+     * creating any temporary files.
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
     /**
      * After successful collation this method returns number of hash-sorting nodes (external files) utilized in the process.
      */
@@ -173,6 +236,7 @@ public class HashSorter<T> {
         System.out.println("timeInFinalSorting1: " + FormatUtils.nanoTimeToString(timeInFinalSorting1.get()));
         System.out.println("timeInFinalSorting2: " + FormatUtils.nanoTimeToString(timeInFinalSorting2.get()));
         System.out.println("timeInFinalSorting3: " + FormatUtils.nanoTimeToString(timeInFinalSorting3.get()));
+        System.out.println("timeInMemorySorting: " + FormatUtils.nanoTimeToString(timeInMemorySorting.get()));
         if (withNodeStat)
             for (CollationNodeInfo nodeInfo : nodeInfos)
                 System.out.println(nodeInfo);
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util.sorting;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges several sorted output ports into a single sorted output port using a loser tree (tournament tree), so each
+ * output object requires exactly ceil(log2(k)) comparisons for k sources.
+ *
+ * Equal objects (in terms of provided comparator) are outputted in the same order the originating output ports were
+ * provided to the constructor of this instance (same as in {@link MergingOutputPort}).
+ *
+ * This class is not thread-safe, synchronization should be performed externally if required.
+ */
+public final class LoserTreeMergingPort<T> implements OutputPortCloseable<T> {
+    private final Comparator<T> comparator;
+    private final OutputPort<T>[] sources;
+    /** Current head object of each source, null for drained sources */
+    private final Object[] heads;
+    /**
+     * tree[n] for n in [1, k) - index of the source that lost the match in the n-th internal node;
+     * tree[0] - index of the overall winner
+     */
+    private final int[] tree;
+    private boolean closed = false;
+
+    @SuppressWarnings("unchecked")
+    public LoserTreeMergingPort(Comparator<T> comparator, List<? extends OutputPort<T>> sources) {
+        if (sources.isEmpty())
+            throw new IllegalArgumentException("No sources.");
+        this.comparator = comparator;
+        this.sources = sources.toArray(new OutputPort[0]);
+        int k = this.sources.length;
+        this.heads = new Object[k];
+        for (int i = 0; i < k; i++)
+            heads[i] = this.sources[i].take();
+
+        // Initial tournament, leaves are located at positions [k, 2k) of the implicit complete binary tree
+        this.tree = new int[k];
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++)
+            winners[k + i] = i;
+        for (int n = k - 1; n >= 1; n--) {
+            int a = winners[2 * n], b = winners[2 * n + 1];
+            if (less(a, b)) {
+                winners[n] = a;
+                tree[n] = b;
+            } else {
+                winners[n] = b;
+                tree[n] = a;
+            }
+        }
+        tree[0] = k == 1 ? 0 : winners[1];
+    }
+
+    /** Drained sources are greater than any object, ties are resolved by source index */
+    @SuppressWarnings("unchecked")
+    private boolean less(int a, int b) {
+        Object ha = heads[a], hb = heads[b];
+        if (ha == null)
+            return false;
+        if (hb == null)
+            return true;
+        int c = comparator.compare((T) ha, (T) hb);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T take() {
+        if (closed)
+            return null;
+        int winner = tree[0];
+        T result = (T) heads[winner];
+        if (result == null)
+            return null;
+        heads[winner] = sources[winner].take();
+
+        // Replaying matches on the path from the winner's leaf to the root
+        int k = sources.length;
+        for (int n = (winner + k) >>> 1; n >= 1; n >>>= 1)
+            if (less(tree[n], winner)) {
+                int t = tree[n];
+                tree[n] = winner;
+                winner = t;
+            }
+        tree[0] = winner;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (OutputPort<T> source : sources)
+            if (source instanceof OutputPortCloseable)
+                ((OutputPortCloseable<T>) source).close();
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util.sorting;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.primitivio.PrimitivIState;
+import com.milaboratory.primitivio.PrimitivOState;
+import com.milaboratory.primitivio.blocks.PrimitivIBlocks;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.primitivio.blocks.PrimitivOBlocks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * External merge sorter for objects supporting PrimitivIO serialization (alternative to {@link Sorter}).
+ *
+ * <p>Input is split into chunks of {@code chunkSize} objects, each chunk is sorted in parallel and written as a
+ * separate sorted run with {@link PrimitivOBlocks} (LZ4 compressed blocks, serialized in parallel). Writing of a run
+ * is overlapped with collecting of the next chunk. Runs are distributed round-robin across the provided spill
+ * directories, so several disks can be used simultaneously.</p>
+ *
+ * <p>Runs are merged with {@link LoserTreeMergingPort}, each run is read ahead asynchronously by {@link
+ * PrimitivIBlocks}. If number of runs exceeds {@code mergeFanIn}, intermediate merge passes are performed: runs are
+ * split into groups of at most {@code mergeFanIn} runs, and groups are merged into new runs in parallel. So the
+ * number of intermediate passes is bounded by {@code ceil(log(numberOfRuns) / log(mergeFanIn)) - 1}.</p>
+ *
+ * <p>Sorting is stable: equal objects are outputted in the order they were taken from the input.</p>
+ *
+ * @param <T> type of objects to sort
+ */
+public final class ParallelSorter<T> {
+    public static final int DEFAULT_MERGE_FAN_IN = 64;
+    /** Number of objects in a single PrimitivIO block */
+    private static final int BLOCK_SIZE = 1 << 11;
+    /** Number of blocks to read ahead for each run during merge */
+    private static final int READ_AHEAD_BLOCKS = 2;
+
+    /** Object class, used in deserialization */
+    private final Class<T> clazz;
+    private final Comparator<T> comparator;
+    private final int chunkSize;
+    /** Directories for temporary files */
+    private final List<Path> spillDirs;
+    /** Serialization concurrency for each file and maximal number of concurrent merges */
+    private final int concurrency;
+    private final int mergeFanIn;
+    private final PrimitivOState oState;
+    private final PrimitivIState iState;
+
+    private final AtomicInteger runCounter = new AtomicInteger();
+
+    // Stats
+    private volatile int numberOfRuns = 0, numberOfMergePasses = 0;
+
+    /**
+     * @param clazz       object class
+     * @param comparator  target comparator
+     * @param chunkSize   number of objects in a single sorted run (determines memory consumption)
+     * @param spillDirs   directories for temporary files
+     * @param concurrency serialization / IO concurrency for each file, and maximal number of concurrent merges
+     * @param mergeFanIn  maximal number of runs merged at once
+     * @param oState      oState for serialization
+     * @param iState      iState for deserialization
+     */
+    public ParallelSorter(Class<T> clazz, Comparator<T> comparator, int chunkSize,
+                          List<Path> spillDirs, int concurrency, int mergeFanIn,
+                          PrimitivOState oState, PrimitivIState iState) {
+        if (chunkSize <= 0 || concurrency <= 0 || mergeFanIn < 2 || spillDirs.isEmpty())
+            throw new IllegalArgumentException();
+        this.clazz = clazz;
+        this.comparator = comparator;
+        this.chunkSize = chunkSize;
+        this.spillDirs = new ArrayList<>(spillDirs);
+        this.concurrency = concurrency;
+        this.mergeFanIn = mergeFanIn;
+        this.oState = oState;
+        this.iState = iState;
+    }
+
+    /**
+     * Sort objects supporting PrimitivIO serialization using a single temporary directory.
+     */
+    public static <T> OutputPortCloseable<T> sort(OutputPort<T> input, Comparator<T> comparator, int chunkSize,
+                                                  Class<T> clazz, Path tempDir) {
+        return new ParallelSorter<>(clazz, comparator, chunkSize, Collections.singletonList(tempDir),
+                Math.max(1, Runtime.getRuntime().availableProcessors()), DEFAULT_MERGE_FAN_IN,
+                PrimitivOState.INITIAL, PrimitivIState.INITIAL).port(input);
+    }
+
+    /** Number of initial sorted runs created by the last {@link #port(OutputPort)} invocation */
+    public int getNumberOfRuns() {
+        return numberOfRuns;
+    }
+
+    /** Number of intermediate merge passes performed by the last {@link #port(OutputPort)} invocation */
+    public int getNumberOfMergePasses() {
+        return numberOfMergePasses;
+    }
+
+    /**
+     * Sorts all objects from the input. Method returns after all objects are taken from the input, and all
+     * intermediate merge passes are performed. Temporary files are removed when resulting port is drained or closed,
+     * or immediately if sorting fails.
+     */
+    public OutputPortCloseable<T> port(OutputPort<T> input) {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "parallel-sorter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // All run files created by this invocation, removed if sorting fails
+        List<Path> created = new ArrayList<>();
+        boolean success = false;
+        try {
+            List<Path> runs = writeRuns(input, executor, created);
+            numberOfRuns = runs.size();
+            int passes = 0;
+            while (runs.size() > mergeFanIn) {
+                runs = mergePass(runs, executor, created);
+                ++passes;
+            }
+            numberOfMergePasses = passes;
+
+            if (runs.isEmpty()) {
+                success = true;
+                return new OutputPortCloseable<T>() {
+                    @Override
+                    public void close() {
+                    }
+
+                    @Override
+                    public T take() {
+                        return null;
+                    }
+                };
+            }
+
+            LoserTreeMergingPort<T> merger = openMerger(runs);
+            success = true;
+            return new OutputPortCloseable<T>() {
+                @Override
+                public synchronized T take() {
+                    T obj = merger.take();
+                    if (obj == null)
+                        merger.close();
+                    return obj;
+                }
+
+                @Override
+                public synchronized void close() {
+                    merger.close();
+                }
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        } finally {
+            executor.shutdown();
+            if (!success)
+                deleteRuns(created);
+        }
+    }
+
+    private Path newRunFile(List<Path> created) throws IOException {
+        Path dir = spillDirs.get(Math.floorMod(runCounter.getAndIncrement(), spillDirs.size()));
+        Path file = Files.createTempFile(dir, "sort", ".run");
+        created.add(file);
+        return file;
+    }
+
+    private static void deleteRuns(List<Path> runs) {
+        for (Path run : runs)
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ignored) {
+                // best effort, original exception is more important
+            }
+    }
+
+    /**
+     * Waits for all the tasks to finish (ignoring their exceptions), so files are not deleted while still in use
+     */
+    private static void awaitQuietly(List<CompletableFuture<Void>> tasks) {
+        for (CompletableFuture<Void> task : tasks)
+            try {
+                task.join();
+            } catch (RuntimeException ignored) {
+            }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Path> writeRuns(OutputPort<T> input, ExecutorService executor, List<Path> created)
+            throws IOException {
+        List<Path> runs = new ArrayList<>();
+        CompletableFuture<Void> previousWrite = CompletableFuture.completedFuture(null);
+        Object[] chunk = new Object[chunkSize];
+        int size = 0;
+        T obj;
+        try {
+            do {
+                obj = input.take();
+                if (obj != null)
+                    chunk[size++] = obj;
+                if (size == chunkSize || (obj == null && size != 0)) {
+                    Object[] data = size == chunkSize ? chunk : Arrays.copyOf(chunk, size);
+                    // Stable parallel sort
+                    Arrays.parallelSort(data, (Comparator<Object>) comparator);
+
+                    // Waiting for the previous run to be written, so at most two chunks are kept in memory
+                    previousWrite.join();
+                    Path run = newRunFile(created);
+                    runs.add(run);
+                    previousWrite = CompletableFuture.runAsync(() -> {
+                        try (PrimitivOBlocks<T>.Writer writer = newWriter(run)) {
+                            for (Object o : data)
+                                writer.write((T) o);
+                        }
+                    }, executor);
+
+                    chunk = new Object[chunkSize];
+                    size = 0;
+                }
+            } while (obj != null);
+            previousWrite.join();
+        } catch (RuntimeException | IOException e) {
+            // Partially written run may still be in use
+            awaitQuietly(Collections.singletonList(previousWrite));
+            throw e;
+        }
+        return runs;
+    }
+
+    private PrimitivOBlocks<T>.Writer newWriter(Path file) {
+        try {
+            return new PrimitivOBlocks<T>(concurrency, oState, BLOCK_SIZE, PrimitivIOBlocksUtil.fastLZ4Compressor())
+                    .newWriter(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns reader, that deletes the file after it is closed
+     */
+    private OutputPortCloseable<T> openRun(Path file) {
+        try {
+            PrimitivIBlocks<T>.Reader reader = new PrimitivIBlocks<>(clazz, concurrency, iState)
+                    .newReader(file, READ_AHEAD_BLOCKS);
+            return new OutputPortCloseable<T>() {
+                boolean closed = false;
+
+                @Override
+                public T take() {
+                    return closed ? null : reader.take();
+                }
+
+                @Override
+                public void close() {
+                    if (closed)
+                        return;
+                    closed = true;
+                    reader.close();
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private LoserTreeMergingPort<T> openMerger(List<Path> runs) {
+        List<OutputPortCloseable<T>> ports = new ArrayList<>(runs.size());
+        for (Path run : runs)
+            ports.add(openRun(run));
+        return new LoserTreeMergingPort<>(comparator, ports);
+    }
+
+    /**
+     * Merges groups of at most mergeFanIn consecutive runs in parallel, order of runs is preserved to keep sorting
+     * stable
+     */
+    private List<Path> mergePass(List<Path> runs, ExecutorService executor, List<Path> created)
+            throws IOException {
+        List<Path> result = new ArrayList<>();
+        List<CompletableFuture<Void>> merges = new ArrayList<>();
+        try {
+            for (int from = 0; from < runs.size(); from += mergeFanIn) {
+                List<Path> group = runs.subList(from, Math.min(runs.size(), from + mergeFanIn));
+                Path output = newRunFile(created);
+                result.add(output);
+                merges.add(CompletableFuture.runAsync(() -> {
+                    try (LoserTreeMergingPort<T> merger = openMerger(group);
+                         PrimitivOBlocks<T>.Writer writer = newWriter(output)) {
+                        T obj;
+                        while ((obj = merger.take()) != null)
+                            writer.write(obj);
+                    }
+                }, executor));
+            }
+        } catch (RuntimeException | IOException e) {
+            awaitQuietly(merges);
+            throw e;
+        }
+        // Completes after all the merges are finished, even if some of them fail
+        CompletableFuture.allOf(merges.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util.sorting;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.primitivio.PrimitivIState;
+import com.milaboratory.primitivio.PrimitivOState;
+import com.milaboratory.primitivio.blocks.PrimitivIBlocks;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.primitivio.blocks.PrimitivOBlocks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sorter for objects with a primitive sort key. Objects are sorted by the natural (signed) order of the key (use
+ * {@code key ^ Long.MIN_VALUE} or {@code key & 0xFFFFFFFFL} to sort by unsigned long or int keys). Sorting is stable:
+ * objects with equal keys are outputted in the order they were taken from the input.
+ *
+ * <p>In memory, objects are sorted with parallel LSD radix sort of the {@code long[]} key array with an accompanying
+ * index permutation (digit passes over key bits, which are the same for all objects, are skipped).</p>
+ *
+ * <p>If input doesn't fit into the memory budget, objects are partitioned by the highest varying bits of the key
+ * into HDD-based buckets (MSD radix step, similar to the collation procedure of {@link HashSorter}), buckets that don't
+ * fit into the budget are partitioned recursively by the next bits. Buckets, where all objects have the same key, are
+ * outputted as is without sorting.</p>
+ *
+ * @param <T> type of objects to sort
+ */
+public final class RadixSorter<T> {
+    /** Radix sort digit size for in-memory sorting */
+    private static final int DIGIT_BITS = 8;
+    /** Arrays smaller than this value are sorted in a single thread */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Object class, used in deserialization. */
+    private final Class<T> clazz;
+    /** Sort key */
+    private final ToLongFunction<T> key;
+    /** Key bits per partitioning step; number of buckets on each step = 2 ^ bitsPerStep + 2 */
+    private final int bitsPerStep;
+    /** Path prefix for temporary files */
+    private final Path filePrefix;
+    /** Maximal concurrency for IO operations */
+    private final int readerConcurrency, writerConcurrency;
+    /** OState for serialization */
+    private final PrimitivOState oState;
+    /** IState for deserialization */
+    private final PrimitivIState iState;
+    /** Maximal memory usage */
+    private final long memoryBudget;
+    /** Single object size estimate */
+    private final long objectSize;
+
+    // Stats
+    private final AtomicInteger numberOfNodes = new AtomicInteger();
+
+    /**
+     * Creates radix sorter. Actual sorting starts on {@link #port(OutputPort)} invocation.
+     *
+     * @param clazz             object class
+     * @param key               sort key
+     * @param bitsPerStep       number of key bits to use in each partitioning step
+     * @param filePrefix        path prefix for temporary files
+     * @param readerConcurrency read / deserialization concurrency
+     * @param writerConcurrency write / serialization concurrency
+     * @param oState            oState for serialization
+     * @param iState            iState for deserialization
+     * @param memoryBudget      maximal allowed memory consumption
+     * @param objectSize        estimate for single object size in memory
+     */
+    public RadixSorter(Class<T> clazz, ToLongFunction<T> key,
+                       int bitsPerStep, Path filePrefix,
+                       int readerConcurrency, int writerConcurrency,
+                       PrimitivOState oState, PrimitivIState iState,
+                       long memoryBudget, long objectSize) {
+        if (bitsPerStep < 1 || bitsPerStep > 16)
+            throw new IllegalArgumentException();
+        if (Files.isDirectory(filePrefix))
+            filePrefix = filePrefix.resolve("r");
+        this.clazz = clazz;
+        this.key = key;
+        this.bitsPerStep = bitsPerStep;
+        this.filePrefix = filePrefix;
+        this.readerConcurrency = readerConcurrency;
+        this.writerConcurrency = writerConcurrency;
+        this.oState = oState;
+        this.iState = iState;
+        this.memoryBudget = memoryBudget;
+        this.objectSize = Math.max(1, objectSize);
+    }
+
+    /**
+     * After successful sorting this method returns number of partitioning nodes (external files) utilized in the
+     * process.
+     */
+    public int getNumberOfNodes() {
+        return numberOfNodes.get();
+    }
+
+    /** Maximal number of objects to be kept in memory */
+    private long maxObjectsInMemory() {
+        return Math.max(1, memoryBudget / objectSize);
+    }
+
+    /** Maps key to unsigned value with the same order */
+    private long uKey(T obj) {
+        return key.applyAsLong(obj) ^ Long.MIN_VALUE;
+    }
+
+    public OutputPortCloseable<T> port(OutputPort<T> input) {
+        ArrayList<T> buffer = new ArrayList<>();
+        long maxObjects = maxObjectsInMemory();
+        T obj;
+        while ((obj = input.take()) != null) {
+            buffer.add(obj);
+            if (buffer.size() >= maxObjects)
+                break;
+        }
+
+        if (obj == null)
+            // <- whole input fits into memory budget
+            return sortInMemory(buffer);
+
+        // <- memory budget exceeded, partitioning by the key bits varying in the buffered objects,
+        //    other objects will fall into the overflow buckets if required
+        long min = -1, max = 0;
+        for (T t : buffer) {
+            long u = uKey(t);
+            if (Long.compareUnsigned(u, min) < 0)
+                min = u;
+            if (Long.compareUnsigned(u, max) > 0)
+                max = u;
+        }
+        if (min == max) // required to define partitioning bits
+            max = min ^ 1;
+
+        final ArrayList<T> buffered = buffer;
+        OutputPort<T> source = new OutputPort<T>() {
+            int pointer = 0;
+
+            @Override
+            public T take() {
+                if (pointer < buffered.size()) {
+                    T o = buffered.get(pointer);
+                    buffered.set(pointer++, null); // for GC
+                    return o;
+                }
+                return input.take();
+            }
+        };
+
+        Partition partition = new Partition(filePrefix, min, max);
+        partition.run(source);
+        return partition.port();
+    }
+
+    private OutputPortCloseable<T> sortInMemory(ArrayList<T> list) {
+        @SuppressWarnings("unchecked")
+        T[] array = list.toArray((T[]) new Object[list.size()]);
+        list.clear();
+        sort(array, key);
+        OutputPort<T> op = CUtils.asOutputPort(Arrays.asList(array));
+        return new OutputPortCloseable<T>() {
+            @Override
+            public void close() {
+                // noop
+            }
+
+            @Override
+            public T take() {
+                return op.take();
+            }
+        };
+    }
+
+    /**
+     * MSD radix partitioning step.
+     *
+     * Bucket structure (h - highest bit that differs between min and max keys):
+     * <pre>
+     * | B0 (keys with [63..h+1] bits less than in min) | B1 ... B[2 ^ bits] ([h..shift] bits) | B[2 ^ bits + 1] (greater) |
+     * </pre>
+     * Overflow buckets are always empty for nested partitions, where min and max keys are known exactly.
+     */
+    private final class Partition {
+        final Path prefix;
+        /** Highest differing bit, number of bits used for partitioning and shift of these bits */
+        final int highBit, bits, shift, numberOfBuckets;
+        /** Value of [63..h+1] bits common for all keys in the non-overflow buckets */
+        final long commonPrefix;
+        final long[] bucketObjectCounts, bucketMin, bucketMax;
+
+        Partition(Path prefix, long min, long max) {
+            this.prefix = prefix;
+            this.highBit = 63 - Long.numberOfLeadingZeros(min ^ max);
+            this.bits = Math.min(bitsPerStep, highBit + 1);
+            this.shift = highBit + 1 - bits;
+            this.commonPrefix = highBit == 63 ? 0 : min >>> (highBit + 1);
+            this.numberOfBuckets = (1 << bits) + 2;
+            this.bucketObjectCounts = new long[numberOfBuckets];
+            this.bucketMin = new long[numberOfBuckets];
+            this.bucketMax = new long[numberOfBuckets];
+            Arrays.fill(bucketMin, -1);
+        }
+
+        int getBucketId(long u) {
+            int c = highBit == 63 ? 0 : Long.compareUnsigned(u >>> (highBit + 1), commonPrefix);
+            if (c < 0)
+                return 0;
+            if (c > 0)
+                return numberOfBuckets - 1;
+            return 1 + (int) ((u >>> shift) & ((1 << bits) - 1));
+        }
+
+        Path getBucketPath(int i) {
+            return prefix.resolveSibling(prefix.getFileName() + "." + i);
+        }
+
+        @SuppressWarnings("unchecked")
+        void run(OutputPort<T> source) {
+            try {
+                PrimitivOBlocks<T> o = new PrimitivOBlocks<>(writerConcurrency, oState, 1, // block size not used
+                        PrimitivIOBlocksUtil.fastLZ4Compressor());
+                PrimitivOBlocks<T>.Writer[] os = new PrimitivOBlocks.Writer[numberOfBuckets];
+                ArrayList<T>[] blocks = new ArrayList[numberOfBuckets];
+                // Buffers of all buckets together with blocks being serialized fit into the memory budget
+                long blockSize = Math.max(1,
+                        maxObjectsInMemory() / (numberOfBuckets + readerConcurrency + writerConcurrency));
+                for (int i = 0; i < numberOfBuckets; i++)
+                    blocks[i] = new ArrayList<>();
+
+                T obj;
+                while ((obj = source.take()) != null) {
+                    long u = uKey(obj);
+                    int bucketId = getBucketId(u);
+                    if (Long.compareUnsigned(u, bucketMin[bucketId]) < 0)
+                        bucketMin[bucketId] = u;
+                    if (Long.compareUnsigned(u, bucketMax[bucketId]) > 0)
+                        bucketMax[bucketId] = u;
+                    ++bucketObjectCounts[bucketId];
+
+                    blocks[bucketId].add(obj);
+                    if (blocks[bucketId].size() >= blockSize) {
+                        if (os[bucketId] == null)
+                            os[bucketId] = o.newWriter(getBucketPath(bucketId));
+                        os[bucketId].writeBlock(blocks[bucketId]);
+                        blocks[bucketId] = new ArrayList<>();
+                    }
+                }
+
+                for (int i = 0; i < numberOfBuckets; i++) {
+                    if (!blocks[i].isEmpty()) {
+                        if (os[i] == null)
+                            os[i] = o.newWriter(getBucketPath(i));
+                        os[i].writeBlock(blocks[i]);
+                    }
+                    blocks[i] = null; // for GC
+                }
+
+                for (int i = 0; i < numberOfBuckets; i++)
+                    if (os[i] != null) {
+                        os[i].close();
+                        numberOfNodes.incrementAndGet();
+                    }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        OutputPortCloseable<T> getBucketRawPort(int i) {
+            try {
+                Path bucketPath = getBucketPath(i);
+                PrimitivIBlocks<T>.Reader reader = new PrimitivIBlocks<>(clazz, readerConcurrency, iState)
+                        .newReader(bucketPath, readerConcurrency);
+                return new OutputPortCloseable<T>() {
+                    boolean closed = false;
+
+                    @Override
+                    public T take() {
+                        if (closed)
+                            return null;
+                        T obj = reader.take();
+                        if (obj == null)
+                            close();
+                        return obj;
+                    }
+
+                    @Override
+                    public void close() {
+                        if (closed)
+                            return;
+                        closed = true;
+                        try {
+                            reader.close();
+                            Files.delete(bucketPath);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        OutputPortCloseable<T> getPortForBucket(int i) {
+            if (bucketObjectCounts[i] == 0)
+                return null;
+
+            if (bucketMin[i] == bucketMax[i])
+                // All objects have the same key
+                return getBucketRawPort(i);
+
+            if (bucketObjectCounts[i] > maxObjectsInMemory()) {
+                // Partitioning by the next key bits
+                Partition p = new Partition(getBucketPath(i), bucketMin[i], bucketMax[i]);
+                p.run(getBucketRawPort(i));
+                return p.port();
+            }
+
+            ArrayList<T> list = new ArrayList<>((int) bucketObjectCounts[i]);
+            for (T t : CUtils.it(getBucketRawPort(i)))
+                list.add(t);
+            return sortInMemory(list);
+        }
+
+        OutputPortCloseable<T> port() {
+            return new OutputPortCloseable<T>() {
+                int nextBucket = 0;
+                OutputPortCloseable<T> currentPort = null;
+
+                @Override
+                public synchronized T take() {
+                    while (true) {
+                        if (currentPort != null) {
+                            T obj = currentPort.take();
+                            if (obj != null)
+                                return obj;
+                            currentPort = null;
+                        }
+                        if (nextBucket == numberOfBuckets)
+                            return null;
+                        currentPort = getPortForBucket(nextBucket++);
+                    }
+                }
+
+                @Override
+                public synchronized void close() {
+                    if (currentPort != null)
+                        currentPort.close();
+                    currentPort = null;
+                    // Removing files of the buckets that were not read
+                    for (; nextBucket < numberOfBuckets; nextBucket++)
+                        if (bucketObjectCounts[nextBucket] != 0)
+                            try {
+                                Files.deleteIfExists(getBucketPath(nextBucket));
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                }
+            };
+        }
+    }
+
+    /**
+     * Sorts array of objects in place by the natural (signed) order of their keys. Sorting is stable.
+     *
+     * @param objects objects to sort
+     * @param key     sort key
+     */
+    public static <T> void sort(T[] objects, ToLongFunction<T> key) {
+        long[] keys = new long[objects.length];
+        for (int i = 0; i < objects.length; i++)
+            keys[i] = key.applyAsLong(objects[i]);
+        int[] permutation = sortWithPermutation(keys);
+        Object[] copy = objects.clone();
+        for (int i = 0; i < objects.length; i++)
+            //noinspection unchecked
+            objects[i] = (T) copy[permutation[i]];
+    }
+
+    /**
+     * Sorts keys in place in natural (signed) order with stable radix sort, and returns index permutation:
+     * i-th element of the sorted array was located at permutation[i] position in the original array.
+     *
+     * @param keys keys to sort
+     * @return index permutation
+     */
+    public static int[] sortWithPermutation(long[] keys) {
+        int n = keys.length;
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++)
+            index[i] = i;
+        if (n < 2)
+            return index;
+
+        // Bits that are different in at least two keys
+        long varyingBits = 0;
+        for (int i = 1; i < n; i++)
+            varyingBits |= keys[i] ^ keys[0];
+
+        int segments = n < PARALLEL_THRESHOLD
+                ? 1
+                : Math.min(n / (PARALLEL_THRESHOLD / 4), 4 * ForkJoinPool.getCommonPoolParallelism());
+        int segmentSize = (n + segments - 1) / segments;
+        int radix = 1 << DIGIT_BITS;
+
+        long[] srcKeys = keys, dstKeys = new long[n];
+        int[] srcIndex = index, dstIndex = new int[n];
+        int[][] offsets = new int[segments][radix];
+        for (int shift = 0; shift < 64; shift += DIGIT_BITS) {
+            if (((varyingBits >>> shift) & (radix - 1)) == 0)
+                continue; // all keys have the same digit
+
+            // Sign bit is inverted, so negative keys go first
+            final long signFlip = shift + DIGIT_BITS >= 64 ? Long.MIN_VALUE : 0;
+            final int s = shift;
+            final long[] sk = srcKeys, dk = dstKeys;
+            final int[] si = srcIndex, di = dstIndex;
+
+            // Digit histogram for each segment
+            forEachSegment(segments, segment -> {
+                int[] counts = offsets[segment];
+                Arrays.fill(counts, 0);
+                for (int i = segment * segmentSize, to = Math.min(n, i + segmentSize); i < to; i++)
+                    ++counts[(int) (((sk[i] ^ signFlip) >>> s) & (radix - 1))];
+            });
+
+            // Converting counts into scatter offsets (digit-major, segment-minor order keeps sort stable)
+            int offset = 0;
+            for (int d = 0; d < radix; d++)
+                for (int segment = 0; segment < segments; segment++) {
+                    int c = offsets[segment][d];
+                    offsets[segment][d] = offset;
+                    offset += c;
+                }
+
+            forEachSegment(segments, segment -> {
+                int[] off = offsets[segment];
+                for (int i = segment * segmentSize, to = Math.min(n, i + segmentSize); i < to; i++) {
+                    int p = off[(int) (((sk[i] ^ signFlip) >>> s) & (radix - 1))]++;
+                    dk[p] = sk[i];
+                    di[p] = si[i];
+                }
+            });
+
+            srcKeys = dk;
+            dstKeys = sk;
+            srcIndex = di;
+            dstIndex = si;
+        }
+
+        if (srcKeys != keys)
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+        return srcIndex;
+    }
+
+    private static void forEachSegment(int segments, IntConsumer action) {
+        if (segments == 1)
+            action.accept(0);
+        else
+            IntStream.range(0, segments).parallel().forEach(action);
+    }
+}
@@ -35,6 +35,8 @@ import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by poslavsky on 28/02/2017.
+ *
+ * @see ParallelSorter sorter with parallel run serialization, several spill directories and multi-pass merging
  */
 public final class Sorter<T> {
     private final ExecutorService executor;
@@ -581,4 +581,39 @@ public class AlignerTest {
 //
 //        //Assert.assertEquals("No real mutations lost", m5.length, m6.length);
 //    }
+
+    @Test
+    public void testScoreOnly() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c());
+        CachedIntArray cache = new CachedIntArray();
+        AlignmentScoring[] scorings = {
+                LinearGapAlignmentScoring.getNucleotideBLASTScoring(),
+                AffineGapAlignmentScoring.getNucleotideBLASTScoring(),
+                AffineGapAlignmentScoring.getNucleotideBLASTScoring(-2, -5)
+        };
+        int its = its(1000, 100000);
+        for (int i = 0; i < its; ++i) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 0, 50);
+            NucleotideSequence seq2 = random.nextInt(0, 1) == 0
+                    ? randomSequence(NucleotideSequence.ALPHABET, random, 0, 50)
+                    : seq1.getRange(random.nextInt(0, seq1.size()), seq1.size())
+                    .concatenate(randomSequence(NucleotideSequence.ALPHABET, random, 0, 10));
+            for (AlignmentScoring<NucleotideSequence> scoring : scorings) {
+                assertEquals(Aligner.alignGlobal(scoring, seq1, seq2).getScore(),
+                        Aligner.scoreGlobal(scoring, seq1, seq2), 0.0);
+                assertEquals(Aligner.alignGlobal(scoring, seq1, seq2).getScore(),
+                        Aligner.scoreGlobal(scoring, seq1, seq2, cache), 0.0);
+
+                Alignment<NucleotideSequence> local = Aligner.alignLocal(scoring, seq1, seq2);
+                BandedSemiLocalResult result = Aligner.scoreLocal(scoring, seq1, seq2);
+                if (local == null) {
+                    Assert.assertNull(result);
+                    continue;
+                }
+                assertEquals(local.getScore(), result.score, 0.0);
+                assertEquals(local.getSequence1Range().getTo() - 1, result.sequence1Stop);
+                assertEquals(local.getSequence2Range().getTo() - 1, result.sequence2Stop);
+            }
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+
+public class AlignmentWorkspaceTest {
+    /**
+     * Empties the pool of the current thread, so tests do not depend on workspaces left there by other tests
+     */
+    @Before
+    public void drainPool() {
+        for (int i = 0; i < AlignmentWorkspace.getMaxPooledWorkspaces(); ++i)
+            AlignmentWorkspace.acquire();
+    }
+
+    @Test
+    public void testPooling() {
+        AlignmentWorkspace workspace = AlignmentWorkspace.acquire();
+        workspace.getArray().get(100);
+        workspace.close();
+
+        long reused = AlignmentWorkspace.getReuseCount(),
+                reallocated = AlignmentWorkspace.getReallocationCount();
+        try (AlignmentWorkspace w = AlignmentWorkspace.acquire()) {
+            Assert.assertSame(workspace, w);
+            w.getArray().get(50);
+            // Nested acquisition
+            try (AlignmentWorkspace nested = AlignmentWorkspace.acquire()) {
+                Assert.assertNotSame(w, nested);
+            }
+        }
+        // Both outer and nested (nothing allocated) acquisitions
+        Assert.assertEquals(reused + 2, AlignmentWorkspace.getReuseCount());
+        Assert.assertEquals(reallocated, AlignmentWorkspace.getReallocationCount());
+
+        try (AlignmentWorkspace w = AlignmentWorkspace.acquire()) {
+            w.getArray().get(200);
+        }
+        Assert.assertEquals(reallocated + 1, AlignmentWorkspace.getReallocationCount());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testAlignmentCacheDelegates() {
+        CachedIntArray array = AlignmentCache.get();
+        CachedIntArray nested = AlignmentCache.get();
+        Assert.assertNotSame(array, nested);
+        AlignmentCache.release();
+        AlignmentCache.release();
+        try (AlignmentWorkspace w = AlignmentWorkspace.acquire()) {
+            Assert.assertSame(array, w.getArray());
+        }
+        try {
+            AlignmentCache.release();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testRetainedSizeLimit() {
+        int maxSize = AlignmentWorkspace.getMaxRetainedArraySize();
+        AlignmentWorkspace.setMaxRetainedArraySize(1000);
+        try {
+            try (AlignmentWorkspace w = AlignmentWorkspace.acquire()) {
+                w.getArray().get(2000);
+                Assert.assertEquals(2000, w.getArray().capacity());
+                w.close();
+                Assert.assertEquals(0, w.getArray().capacity());
+                // Returning the same workspace twice is an error
+                w.close();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            AlignmentWorkspace.setMaxRetainedArraySize(maxSize);
+        }
+    }
+
+    @Test
+    public void testAlignerWithWorkspace() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(123));
+        AlignmentScoring<NucleotideSequence>[] scorings = new AlignmentScoring[]{
+                LinearGapAlignmentScoring.getNucleotideBLASTScoring(),
+                AffineGapAlignmentScoring.getNucleotideBLASTScoring()
+        };
+        int its = its(1000, 10000);
+        // Same workspace is reused for all alignments, so matrices contain values from previous alignments
+        try (AlignmentWorkspace workspace = AlignmentWorkspace.acquire()) {
+            for (int i = 0; i < its; ++i) {
+                NucleotideSequence seq1 = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, 60),
+                        seq2 = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, 60);
+                for (AlignmentScoring<NucleotideSequence> scoring : scorings) {
+                    Assert.assertEquals(Aligner.alignGlobal(scoring, seq1, seq2),
+                            Aligner.alignGlobal(scoring, seq1, seq2, workspace));
+                    Assert.assertEquals(Aligner.alignLocal(scoring, seq1, seq2),
+                            Aligner.alignLocal(scoring, seq1, seq2, workspace));
+                }
+            }
+        }
+    }
+}
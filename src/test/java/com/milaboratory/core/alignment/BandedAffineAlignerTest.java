@@ -396,4 +396,40 @@ public class BandedAffineAlignerTest {
             }
         }
     }
+
+    @Test
+    public void testScoreOnlySemiLocal() throws Exception {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        int its = its(1000, 100000);
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c());
+        for (int i = 0; i < its; ++i) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 0, 60);
+            NucleotideSequence seq2 = random.nextInt(0, 1) == 0
+                    ? randomSequence(NucleotideSequence.ALPHABET, random, 0, 60)
+                    : seq1.getRange(random.nextInt(0, seq1.size()), seq1.size())
+                    .concatenate(randomSequence(NucleotideSequence.ALPHABET, random, 0, 10));
+            int offset1 = random.nextInt(0, seq1.size()), offset2 = random.nextInt(0, seq2.size());
+            int length1 = seq1.size() - offset1, length2 = seq2.size() - offset2;
+            int width = random.nextInt(0, 10);
+
+            BandedSemiLocalResult expected = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width,
+                    new MutationsBuilder<>(NucleotideSequence.ALPHABET), new BandedAffineAligner.MatrixCache());
+            BandedSemiLocalResult actual = BandedAffineAligner.scoreSemiLocalRight0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, cache);
+            assertEquals(expected.score, actual.score);
+            assertEquals(expected.sequence1Stop, actual.sequence1Stop);
+            assertEquals(expected.sequence2Stop, actual.sequence2Stop);
+
+            expected = BandedAffineAligner.semiLocalLeft0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width,
+                    new MutationsBuilder<>(NucleotideSequence.ALPHABET), new BandedAffineAligner.MatrixCache());
+            actual = BandedAffineAligner.scoreSemiLocalLeft0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, cache);
+            assertEquals(expected.score, actual.score);
+            assertEquals(expected.sequence1Stop, actual.sequence1Stop);
+            assertEquals(expected.sequence2Stop, actual.sequence2Stop);
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package com.milaboratory.core.alignment;
 
 import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well19937c;
@@ -304,4 +305,56 @@ public class BandedLinearAlignerTest {
             AlignmentTestUtils.assertAlignment(la, seq2);
         }
     }
+
+    @Test
+    public void testScoreOnlySemiLocal() throws Exception {
+        LinearGapAlignmentScoring<NucleotideSequence> scoring = LinearGapAlignmentScoring.getNucleotideBLASTScoring();
+        CachedIntArray cache = new CachedIntArray();
+        int its = its(1000, 100000);
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c());
+        for (int i = 0; i < its; ++i) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 0, 60);
+            NucleotideSequence seq2 = random.nextInt(0, 1) == 0
+                    ? randomSequence(NucleotideSequence.ALPHABET, random, 0, 60)
+                    : seq1.getRange(random.nextInt(0, seq1.size()), seq1.size())
+                    .concatenate(randomSequence(NucleotideSequence.ALPHABET, random, 0, 10));
+            int offset1 = random.nextInt(0, seq1.size()), offset2 = random.nextInt(0, seq2.size());
+            int length1 = seq1.size() - offset1, length2 = seq2.size() - offset2;
+            int width = random.nextInt(0, 10);
+            int stopPenalty = -random.nextInt(1, 30);
+
+            BandedSemiLocalResult expected = BandedLinearAligner.alignSemiLocalLeft0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, stopPenalty,
+                    new MutationsBuilder<>(NucleotideSequence.ALPHABET), new CachedIntArray());
+            BandedSemiLocalResult actual = BandedLinearAligner.scoreSemiLocalLeft0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, stopPenalty, cache);
+            assertEquals(expected.score, actual.score);
+            assertEquals(expected.sequence1Stop, actual.sequence1Stop);
+            assertEquals(expected.sequence2Stop, actual.sequence2Stop);
+
+            expected = BandedLinearAligner.alignSemiLocalRight0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, stopPenalty,
+                    new MutationsBuilder<>(NucleotideSequence.ALPHABET), new CachedIntArray());
+            actual = BandedLinearAligner.scoreSemiLocalRight0(scoring, seq1, seq2,
+                    offset1, length1, offset2, length2, width, stopPenalty, cache);
+            assertEquals(expected.score, actual.score);
+            assertEquals(expected.sequence1Stop, actual.sequence1Stop);
+            assertEquals(expected.sequence2Stop, actual.sequence2Stop);
+
+            Alignment<NucleotideSequence> alignment = BandedLinearAligner.alignSemiLocalLeft(scoring, seq1, seq2,
+                    width, stopPenalty);
+            actual = BandedLinearAligner.scoreSemiLocalLeft(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), width, stopPenalty);
+            assertEquals(alignment.getScore(), actual.score, 0.0);
+            assertEquals(alignment.getSequence1Range().getTo() - 1, actual.sequence1Stop);
+            assertEquals(alignment.getSequence2Range().getTo() - 1, actual.sequence2Stop);
+
+            alignment = BandedLinearAligner.alignSemiLocalRight(scoring, seq1, seq2, width, stopPenalty);
+            actual = BandedLinearAligner.scoreSemiLocalRight(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), width, stopPenalty);
+            assertEquals(alignment.getScore(), actual.score, 0.0);
+            assertEquals(alignment.getSequence1Range().getFrom(), actual.sequence1Stop);
+            assertEquals(alignment.getSequence2Range().getFrom(), actual.sequence2Stop);
+        }
+    }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+
+public class BitParallelAlignerTest {
+    @Test
+    public void testSimple() {
+        NucleotideSequence seq1 = new NucleotideSequence("ATTAGACAGACAGTTTTTGAG"),
+                seq2 = new NucleotideSequence("ATTAGACAGTCAGTTTTGAG");
+        Assert.assertEquals(2, BitParallelAligner.distanceGlobal(seq1, seq2, 10));
+        Assert.assertEquals(-1, BitParallelAligner.distanceGlobal(seq1, seq2, 1));
+        Assert.assertEquals(0, BitParallelAligner.distanceSemiGlobal(seq1, new NucleotideSequence("CAGACAG"), 0));
+        Assert.assertEquals(1, BitParallelAligner.distanceSemiGlobal(seq1, new NucleotideSequence("CAGAACAG"), 3));
+
+        Alignment<NucleotideSequence> alignment = BitParallelAligner.alignSemiGlobal(seq1,
+                new NucleotideSequence("CAGAACAG"), 3);
+        Assert.assertEquals(-1.0f, alignment.getScore(), 0.0f);
+        Assert.assertEquals(6, alignment.getSequence1Range().getFrom());
+        Assert.assertEquals(13, alignment.getSequence1Range().getTo());
+        Assert.assertNull(BitParallelAligner.alignGlobal(seq1, seq2, 1));
+    }
+
+    @Test
+    public void testEmpty() {
+        NucleotideSequence seq = new NucleotideSequence("ATTAGACA");
+        Assert.assertEquals(8, BitParallelAligner.distanceGlobal(seq, NucleotideSequence.EMPTY, 8));
+        Assert.assertEquals(8, BitParallelAligner.distanceGlobal(NucleotideSequence.EMPTY, seq, 8));
+        Assert.assertEquals(-1, BitParallelAligner.distanceGlobal(NucleotideSequence.EMPTY, seq, 7));
+        Assert.assertEquals(0, BitParallelAligner.distanceSemiGlobal(seq, NucleotideSequence.EMPTY, 0));
+        Assert.assertEquals(-1, BitParallelAligner.distanceSemiGlobal(NucleotideSequence.EMPTY, seq, 7));
+        Assert.assertEquals(0, BitParallelAligner.alignSemiGlobal(seq, NucleotideSequence.EMPTY, 0)
+                .getSequence1Range().length());
+    }
+
+    @Test
+    public void testRandomGlobal() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(123));
+        int its = its(3000, 100000);
+        for (int i = 0; i < its; ++i) {
+            NucleotideSequence seq1 = randomSequence(rg, i),
+                    seq2 = rg.nextInt(0, 3) == 0 ? randomSequence(rg, i) : mutate(rg, seq1);
+            BitParallelAligner.Pattern pattern = BitParallelAligner.createPattern(seq2);
+            int expected = globalDistance(seq1, seq2),
+                    maxDistance = rg.nextInt(0, 1) == 0 ? Integer.MAX_VALUE : rg.nextInt(0, expected + 3);
+            int actual = pattern.distanceGlobal(seq1, maxDistance);
+            Assert.assertEquals(seq1 + " " + seq2 + " " + maxDistance, expected <= maxDistance ? expected : -1, actual);
+            if (actual != -1)
+                assertAlignment(seq1, seq2, actual, pattern.alignGlobal(seq1, maxDistance));
+        }
+    }
+
+    @Test
+    public void testRandomSemiGlobal() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(1234));
+        int its = its(3000, 100000);
+        for (int i = 0; i < its; ++i) {
+            NucleotideSequence seq1 = randomSequence(rg, i), seq2;
+            if (rg.nextInt(0, 3) == 0 || seq1.size() == 0)
+                seq2 = randomSequence(rg, i);
+            else {
+                int from = rg.nextInt(0, seq1.size() - 1);
+                seq2 = mutate(rg, seq1.getRange(from, rg.nextInt(from, seq1.size())));
+            }
+            BitParallelAligner.Pattern pattern = BitParallelAligner.createPattern(seq2);
+            int expected = semiGlobalDistance(seq1, seq2),
+                    maxDistance = rg.nextInt(0, 1) == 0 ? Integer.MAX_VALUE : rg.nextInt(0, expected + 3);
+            int actual = pattern.distanceSemiGlobal(seq1, maxDistance);
+            Assert.assertEquals(seq1 + " " + seq2 + " " + maxDistance, expected <= maxDistance ? expected : -1, actual);
+            if (actual != -1)
+                assertAlignment(seq1, seq2, actual, pattern.alignSemiGlobal(seq1, maxDistance));
+        }
+    }
+
+    private static void assertAlignment(NucleotideSequence seq1, NucleotideSequence seq2, int distance,
+                                        Alignment<NucleotideSequence> alignment) {
+        Assert.assertEquals(-distance, alignment.getScore(), 0.0f);
+        Assert.assertEquals(seq2.size(), alignment.getSequence2Range().length());
+        Assert.assertEquals(seq2, alignment.getRelativeMutations()
+                .mutate(seq1.getRange(alignment.getSequence1Range())));
+        Assert.assertEquals(distance, alignment.getAbsoluteMutations().size());
+    }
+
+    private static NucleotideSequence randomSequence(RandomDataGenerator rg, int i) {
+        // Both single-word and multi-word patterns
+        return TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, i % 2 == 0 ? 64 : 300);
+    }
+
+    private static NucleotideSequence mutate(RandomDataGenerator rg, NucleotideSequence seq) {
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder();
+        int rate = rg.nextInt(2, 30);
+        for (int i = 0; i < seq.size(); ++i) {
+            if (rg.nextInt(0, rate) != 0) {
+                builder.append(seq.codeAt(i));
+                continue;
+            }
+            switch (rg.nextInt(0, 2)) {
+                case 0:
+                    builder.append((byte) rg.nextInt(0, 3));
+                    break;
+                case 1:
+                    builder.append(seq.codeAt(i)).append((byte) rg.nextInt(0, 3));
+                    break;
+            }
+        }
+        return builder.createAndDestroy();
+    }
+
+    private static int globalDistance(NucleotideSequence seq1, NucleotideSequence seq2) {
+        return distance(seq1, seq2, false);
+    }
+
+    private static int semiGlobalDistance(NucleotideSequence seq1, NucleotideSequence seq2) {
+        return distance(seq1, seq2, true);
+    }
+
+    private static int distance(NucleotideSequence seq1, NucleotideSequence seq2, boolean semiGlobal) {
+        int[] row = new int[seq1.size() + 1];
+        for (int j = 0; j <= seq1.size(); ++j)
+            row[j] = semiGlobal ? 0 : j;
+        for (int i = 1; i <= seq2.size(); ++i) {
+            int diagonal = row[0];
+            row[0] = i;
+            for (int j = 1; j <= seq1.size(); ++j) {
+                int value = Math.min(diagonal + (seq1.codeAt(j - 1) == seq2.codeAt(i - 1) ? 0 : 1),
+                        Math.min(row[j], row[j - 1]) + 1);
+                diagonal = row[j];
+                row[j] = value;
+            }
+        }
+        if (!semiGlobal)
+            return row[seq1.size()];
+        int min = Integer.MAX_VALUE;
+        for (int value : row)
+            min = Math.min(min, value);
+        return min;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LinearSpaceAlignerTest {
+    static final List<LinearGapAlignmentScoring<NucleotideSequence>> LINEAR = new ArrayList<>();
+    static final List<AffineGapAlignmentScoring<NucleotideSequence>> AFFINE = new ArrayList<>();
+
+    static {
+        LINEAR.add(LinearGapAlignmentScoring.getNucleotideBLASTScoring());
+        LINEAR.add(new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -1, -1));
+        LINEAR.add(new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 2, -3, -2));
+        AFFINE.add(AffineGapAlignmentScoring.getNucleotideBLASTScoring());
+        AFFINE.add(new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -1, -2, -1));
+        AFFINE.add(new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 2, -1, -4, -3));
+        AFFINE.add(new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -1, -1, -1));
+    }
+
+    @Test
+    public void testRandom() {
+        RandomGenerator rg = new Well19937c(12345);
+        for (int i = 0; i < 300; i++) {
+            NucleotideSequence seq1 = randomSequence(rg, i % 3 == 0 ? "AC" : "ACGTN", 0, 120),
+                    seq2 = i % 2 == 0
+                            ? randomSequence(rg, i % 3 == 0 ? "AC" : "ACGT", 0, 120)
+                            : mutate(rg, seq1);
+            assertSameAlignments(seq1, seq2);
+        }
+    }
+
+    @Test
+    public void testSkewedSizes() {
+        RandomGenerator rg = new Well19937c(54321);
+        for (int i = 0; i < 30; i++) {
+            NucleotideSequence seq1 = randomSequence(rg, "ACGT", 200, 300),
+                    seq2 = seq1.getRange(rg.nextInt(50), 50 + rg.nextInt(50));
+            assertSameAlignments(seq1, seq2);
+            assertSameAlignments(seq2, seq1);
+        }
+    }
+
+    @Test
+    public void testAminoAcid() {
+        RandomGenerator rg = new Well19937c(777);
+        LinearGapAlignmentScoring<AminoAcidSequence> linear =
+                LinearGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62);
+        AffineGapAlignmentScoring<AminoAcidSequence> affine =
+                AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62);
+        for (int i = 0; i < 50; i++) {
+            AminoAcidSequence seq1 = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, rg, 10, 100),
+                    seq2 = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, rg, 10, 100);
+            for (int baseCells : new int[]{1, 64}) {
+                Assert.assertEquals(Aligner.alignGlobalLinear(linear, seq1, seq2),
+                        LinearSpaceAligner.alignGlobalLinear(linear, seq1, seq2, baseCells));
+                Assert.assertEquals(Aligner.alignLocalLinear(linear, seq1, seq2),
+                        LinearSpaceAligner.alignLocalLinear(linear, seq1, seq2, baseCells));
+                Assert.assertEquals(Aligner.alignGlobalAffine(affine, seq1, seq2),
+                        LinearSpaceAligner.alignGlobalAffine(affine, seq1, seq2, baseCells));
+                Assert.assertEquals(Aligner.alignLocalAffine(affine, seq1, seq2),
+                        LinearSpaceAligner.alignLocalAffine(affine, seq1, seq2, baseCells));
+            }
+        }
+    }
+
+    @Test
+    public void testThreshold() {
+        RandomGenerator rg = new Well19937c(1);
+        NucleotideSequence seq1 = randomSequence(rg, "ACGT", 2100, 2100),
+                seq2 = mutate(rg, seq1);
+        Assert.assertTrue((long) (seq1.size() + 1) * (seq2.size() + 1) > Aligner.LINEAR_SPACE_THRESHOLD);
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        Alignment<NucleotideSequence> alignment = Aligner.alignGlobal(scoring, seq1, seq2);
+        Assert.assertEquals(seq2, alignment.getRelativeMutations().mutate(seq1));
+        Assert.assertEquals(alignment, LinearSpaceAligner.alignGlobalAffine(scoring, seq1, seq2, 1 << 10));
+    }
+
+    static void assertSameAlignments(NucleotideSequence seq1, NucleotideSequence seq2) {
+        for (int baseCells : new int[]{1, 16, 200}) {
+            for (LinearGapAlignmentScoring<NucleotideSequence> scoring : LINEAR) {
+                Assert.assertEquals(Aligner.alignGlobalLinear(scoring, seq1, seq2),
+                        LinearSpaceAligner.alignGlobalLinear(scoring, seq1, seq2, baseCells));
+                Assert.assertEquals(Aligner.alignLocalLinear(scoring, seq1, seq2),
+                        LinearSpaceAligner.alignLocalLinear(scoring, seq1, seq2, baseCells));
+            }
+            for (AffineGapAlignmentScoring<NucleotideSequence> scoring : AFFINE) {
+                Assert.assertEquals(Aligner.alignGlobalAffine(scoring, seq1, seq2),
+                        LinearSpaceAligner.alignGlobalAffine(scoring, seq1, seq2, baseCells));
+                Assert.assertEquals(Aligner.alignLocalAffine(scoring, seq1, seq2),
+                        LinearSpaceAligner.alignLocalAffine(scoring, seq1, seq2, baseCells));
+            }
+        }
+    }
+
+    static NucleotideSequence randomSequence(RandomGenerator rg, String letters, int minLength, int maxLength) {
+        int length = minLength + rg.nextInt(maxLength - minLength + 1);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = letters.charAt(rg.nextInt(letters.length()));
+        return new NucleotideSequence(new String(chars));
+    }
+
+    static NucleotideSequence mutate(RandomGenerator rg, NucleotideSequence seq) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < seq.size(); i++) {
+            int r = rg.nextInt(20);
+            if (r == 0)
+                continue; // deletion
+            if (r == 1)
+                sb.append("ACGT".charAt(rg.nextInt(4))); // insertion
+            sb.append(r == 2 ? "ACGT".charAt(rg.nextInt(4)) : seq.symbolAt(i));
+        }
+        return new NucleotideSequence(sb.toString());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.util.IntArrayList;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+public class SeedIndexTest {
+    @Test
+    public void testCreate() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c(123));
+        int[][] records = new int[100][];
+        int[] lengths = new int[100];
+        for (int kMer = 0; kMer < records.length; ++kMer) {
+            if (random.nextInt(0, 3) == 0)
+                continue;
+            records[kMer] = new int[random.nextInt(1, 20)];
+            lengths[kMer] = random.nextInt(0, records[kMer].length);
+            for (int i = 0; i < records[kMer].length; ++i)
+                records[kMer][i] = random.getRandomGenerator().nextInt();
+        }
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            SeedIndex index = SeedIndex.create(records.length, records, lengths, offHeap);
+            Assert.assertEquals(offHeap, index.isOffHeap());
+            assertIndex(records, lengths, index);
+            assertIndex(records, lengths, serializeAndDeserialize(index));
+        }
+    }
+
+    @Test
+    public void testCreateWide() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c(321));
+        long[][] records = new long[50][];
+        for (int kMer = 0; kMer < records.length; ++kMer) {
+            if (random.nextInt(0, 3) == 0)
+                continue;
+            records[kMer] = new long[random.nextInt(1, 20)];
+            for (int i = 0; i < records[kMer].length; ++i)
+                records[kMer][i] = random.getRandomGenerator().nextLong();
+        }
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            SeedIndex index = SeedIndex.createWide(records.length, records, null, offHeap);
+            Assert.assertEquals(2, index.getRecordSize());
+            for (int kMer = 0; kMer < records.length; ++kMer) {
+                int length = records[kMer] == null ? 0 : records[kMer].length;
+                Assert.assertEquals(length, index.size(kMer));
+                for (int i = 0; i < length; ++i)
+                    Assert.assertEquals(records[kMer][i], index.getWide(index.begin(kMer) + 2 * i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        SeedIndex index = SeedIndex.create(16, null, null, false);
+        Assert.assertEquals(16, index.getNumberOfKMers());
+        Assert.assertEquals(0, index.getNumberOfRecords());
+        for (int kMer = 0; kMer < 16; ++kMer)
+            Assert.assertEquals(0, index.size(kMer));
+    }
+
+    static void assertIndex(int[][] records, int[] lengths, SeedIndex index) {
+        int total = 0;
+        IntArrayList list = new IntArrayList();
+        for (int kMer = 0; kMer < records.length; ++kMer) {
+            int length = records[kMer] == null ? 0 : lengths[kMer];
+            total += length;
+            Assert.assertEquals(length, index.size(kMer));
+            list.clear();
+            index.addRecords(kMer, list);
+            Assert.assertEquals(length, list.size());
+            int[] copy = index.getRecords(kMer);
+            for (int i = 0; i < length; ++i) {
+                Assert.assertEquals(records[kMer][i], index.get(index.begin(kMer) + i));
+                Assert.assertEquals(records[kMer][i], list.get(i));
+                Assert.assertEquals(records[kMer][i], copy[i]);
+            }
+        }
+        Assert.assertEquals(total, index.getNumberOfRecords());
+    }
+
+    static SeedIndex serializeAndDeserialize(SeedIndex index) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(index);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            SeedIndex result = (SeedIndex) ois.readObject();
+            Assert.assertEquals(index.isOffHeap(), result.isOffHeap());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+
+public class StripedAlignerTest {
+    @Test
+    public void testLaneOperations() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(123));
+        for (int laneBits : new int[]{8, 16}) {
+            int lanes = 64 / laneBits;
+            long high = 0;
+            for (int lane = 0; lane < lanes; ++lane)
+                high |= 1L << (lane * laneBits + laneBits - 1);
+            for (int t = 0; t < 10000; ++t) {
+                int[] a = new int[lanes], b = new int[lanes];
+                long wa = 0, wb = 0;
+                for (int lane = 0; lane < lanes; ++lane) {
+                    a[lane] = rg.nextInt(0, StripedAligner.maxLaneValue(laneBits));
+                    b[lane] = rg.nextInt(0, 3) == 0 ? a[lane] : rg.nextInt(0, StripedAligner.maxLaneValue(laneBits));
+                    wa |= ((long) a[lane]) << (lane * laneBits);
+                    wb |= ((long) b[lane]) << (lane * laneBits);
+                }
+                long sub = StripedAligner.subSaturated(wa, wb, high, laneBits),
+                        max = StripedAligner.max(wa, wb, high, laneBits);
+                for (int lane = 0; lane < lanes; ++lane) {
+                    Assert.assertEquals(Math.max(0, a[lane] - b[lane]), lane(sub, lane, laneBits));
+                    Assert.assertEquals(Math.max(a[lane], b[lane]), lane(max, lane, laneBits));
+                }
+            }
+        }
+    }
+
+    private static int lane(long word, int lane, int laneBits) {
+        return (int) (word >>> (lane * laneBits)) & ((1 << laneBits) - 1);
+    }
+
+    @Test
+    public void testRandomNucleotide() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(12));
+        AlignmentScoring<NucleotideSequence>[] scorings = new AlignmentScoring[]{
+                LinearGapAlignmentScoring.getNucleotideBLASTScoring(),
+                AffineGapAlignmentScoring.getNucleotideBLASTScoring(),
+                AffineGapAlignmentScoring.getNucleotideBLASTScoring(-1, -3),
+                new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -1, -1)
+        };
+        int its = its(1000, 50000);
+        for (int i = 0; i < its; ++i) {
+            NucleotideSequence seq1 = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, 100),
+                    seq2 = rg.nextInt(0, 1) == 0
+                            ? TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, 100)
+                            : seq1.getRange(rg.nextInt(0, seq1.size()), seq1.size());
+            for (AlignmentScoring<NucleotideSequence> scoring : scorings)
+                assertSameResult(scoring, seq1, seq2);
+        }
+    }
+
+    @Test
+    public void testRandomAminoAcid() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(13));
+        AlignmentScoring<AminoAcidSequence>[] scorings = new AlignmentScoring[]{
+                LinearGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62),
+                AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62)
+        };
+        int its = its(300, 10000);
+        for (int i = 0; i < its; ++i) {
+            AminoAcidSequence seq1 = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, rg, 1, 100),
+                    seq2 = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, rg, 1, 100);
+            for (AlignmentScoring<AminoAcidSequence> scoring : scorings)
+                assertSameResult(scoring, seq1, seq2);
+        }
+    }
+
+    @Test
+    public void testProfileReuse() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(14));
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence query = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 50, 150);
+        StripedAligner.Profile<NucleotideSequence> profile = StripedAligner.createProfile(scoring, query);
+        for (int i = 0; i < 300; ++i) {
+            NucleotideSequence seq1 = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 0, 300);
+            assertEquals(Aligner.scoreLocal(scoring, seq1, query), profile.scoreLocal(seq1));
+        }
+    }
+
+    @Test
+    public void testOverflow() {
+        RandomDataGenerator rg = new RandomDataGenerator(new Well19937c(15));
+        LinearGapAlignmentScoring<NucleotideSequence> scoring =
+                new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 20, -10, -30);
+        NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 3000, 3000);
+        // Score of identical sequences exceeds capacity of both 8-bit and 16-bit lanes
+        BandedSemiLocalResult result = StripedAligner.scoreLocal(scoring, seq, seq);
+        Assert.assertEquals(20 * 3000, result.score);
+        assertEquals(Aligner.scoreLocal(scoring, seq, seq), result);
+    }
+
+    static <S extends Sequence<S>> void assertSameResult(AlignmentScoring<S> scoring, S seq1, S seq2) {
+        assertEquals(Aligner.scoreLocal(scoring, seq1, seq2), StripedAligner.scoreLocal(scoring, seq1, seq2));
+    }
+
+    static void assertEquals(BandedSemiLocalResult expected, BandedSemiLocalResult actual) {
+        if (expected == null) {
+            Assert.assertNull(actual);
+            return;
+        }
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.score, actual.score);
+        Assert.assertEquals(expected.sequence1Stop, actual.sequence1Stop);
+        Assert.assertEquals(expected.sequence2Stop, actual.sequence2Stop);
+    }
+}
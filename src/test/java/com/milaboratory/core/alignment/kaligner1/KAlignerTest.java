@@ -21,12 +21,16 @@ import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.mutations.generator.MutationModels;
 import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.RandomUtil;
+import com.milaboratory.util.TempFileManager;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -125,6 +129,36 @@ public class KAlignerTest extends AbstractAlignmentTest {
         Assert.assertEquals(4, hit.getAlignment().getSequence1Range().getFrom());
     }
 
+    @Test
+    public void testSaveLoad() throws Exception {
+        KAlignerParameters parameters = KAlignerParameters.getByName("default");
+        KAligner<String> aligner = new KAligner<>(parameters);
+        aligner.addReference(new NucleotideSequence("ATTAGACACAATATATCTATGATCCTCTATTAGCTACGTACGGCTGATGCTAGTGTCGAT"), "A");
+        aligner.addReference(new NucleotideSequence("ACTAGCTGAGCTGTGTAGCTAGTATCTCGATATGCTACATCGTGGGTCGATTAGCTACGT"), "B");
+        aligner.addReference(new NucleotideSequence("CACAGCTGTCGGCCTAGGCGCGATCGAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGA"), "C");
+
+        File file = TempFileManager.getTempFile();
+        aligner.save(file);
+        KAligner<String> loaded = KAligner.load(file, String.class);
+        Assert.assertEquals(aligner.parameters, loaded.parameters);
+
+        NucleotideSequence target = new NucleotideSequence("CTACATCGTGGGTCGATTAGCTACGTAGTAGAGCATGGCTAGAGTACGTCGGCGATACG");
+        for (KAligner<String> al : Arrays.asList(aligner, loaded)) {
+            RandomUtil.reseedThreadLocal(123);
+            KAlignmentResult<String> result = al.align(target);
+            result.calculateAllAlignments();
+            Assert.assertEquals("B", result.getBestHit().getRecordPayload());
+            Assert.assertEquals(new Range(0, 26), result.getBestHit().getAlignment().getSequence2Range());
+        }
+
+        // Loaded aligner can be extended
+        NucleotideSequence d = new NucleotideSequence("GGCATCGATTACGACTAGCGAGCATTAGACGCGATCAGAGACTAGCATACGCATACGAC");
+        loaded.addReference(d, "D");
+        KAlignmentResult<String> result = loaded.align(d);
+        result.calculateAllAlignments();
+        Assert.assertEquals("D", result.getBestHit().getRecordPayload());
+    }
+
     @Test
     public void test4() throws Exception {
         KAlignerParameters parameters = KAlignerParameters.getByName("default");
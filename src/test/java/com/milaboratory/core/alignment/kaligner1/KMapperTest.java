@@ -21,6 +21,7 @@ import com.milaboratory.core.mutations.generator.MutationModels;
 import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.RandomUtil;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
@@ -98,6 +99,57 @@ public class KMapperTest extends AbstractAlignmentTest {
         assertEquals(2, result.hits.get(0).id);
     }
 
+    @Test
+    public void testAddReferenceAfterAlign() throws Exception {
+        KMapper aligner = KMapper.createFromParameters(gParams);
+        aligner.setOffHeapIndex(true);
+        aligner.addReference(new NucleotideSequence("ATTAGACACAATATATCTATGATCCTCTATTAGCTACGTACGGCTGATGCTAGTGTCGAT"));
+        aligner.addReference(new NucleotideSequence("ACTAGCTGAGCTGTGTAGCTAGTATCTCGATATGCTACATCGTGGGTCGATTAGCTACGT"));
+
+        NucleotideSequence query = new NucleotideSequence("GACATTATATACAGACATATAATAAATACGGATACGCTGTCGGCCTAGGCGCGTCGAACGCGC");
+        assertEquals(0, aligner.align(query).hits.size());
+
+        aligner.addReference(new NucleotideSequence("GCTGTCGGCCTAGGCGCGATCGAACGCGCTGCGCGATGATATATCGCGATAATTCTCTGA"));
+        KMappingResult result = aligner.align(query);
+
+        assertEquals(1, result.hits.size());
+        assertEquals(2, result.hits.get(0).id);
+    }
+
+    @Test
+    public void testAddReferencesSameResult() throws Exception {
+        RandomDataGenerator rdi = new RandomDataGenerator(new Well19937c(2345L));
+        int baseSize = its(500, 2000);
+        List<NucleotideSequence> ncs = new ArrayList<>(baseSize);
+        for (int i = 0; i < baseSize; ++i)
+            ncs.add(randomSequence(NucleotideSequence.ALPHABET, rdi, 40, 60));
+
+        KMapper sequential = KMapper.createFromParameters(gParams),
+                bulk = KMapper.createFromParameters(gParams);
+        for (NucleotideSequence seq : ncs)
+            sequential.addReference(seq);
+        assertEquals(0, bulk.addReferences(ncs.subList(0, baseSize / 2)));
+        assertEquals(baseSize / 2, bulk.addReferences(ncs.subList(baseSize / 2, baseSize)));
+
+        for (int i = 0; i < its(300, 3000); ++i) {
+            NucleotideSequence seq = ncs.get(rdi.nextInt(0, baseSize - 1));
+            NucleotideSequence target = randomSequence(NucleotideSequence.ALPHABET, rdi, 10, 20)
+                    .concatenate(seq.getRange(rdi.nextInt(0, 10), seq.size()));
+            long seed = rdi.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult expected = sequential.align(target);
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult actual = bulk.align(target);
+
+            assertEquals(expected.seeds, actual.seeds);
+            assertEquals(expected.hits.size(), actual.hits.size());
+            for (int j = 0; j < expected.hits.size(); ++j) {
+                assertEquals(expected.hits.get(j).id, actual.hits.get(j).id);
+                Assert.assertArrayEquals(expected.hits.get(j).seedOffsets, actual.hits.get(j).seedOffsets);
+            }
+        }
+    }
+
     @Test
     public void testRandom1() throws Exception {
         RandomDataGenerator rdi = new RandomDataGenerator(new Well19937c(127368647891L));
@@ -12,11 +12,18 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.test.TestUtil;
 import com.milaboratory.util.GlobalObjectMappers;
 import com.milaboratory.util.RandomUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.milaboratory.core.alignment.AffineGapAlignmentScoring.IGBLAST_NUCLEOTIDE_SCORING;
 import static com.milaboratory.core.alignment.AffineGapAlignmentScoring.IGBLAST_NUCLEOTIDE_SCORING_THRESHOLD;
 import static com.milaboratory.core.alignment.benchmark.ChallengeProvider.getParamsOneCluster;
@@ -64,6 +71,85 @@ public class KAligner2Test {
         //System.out.println(val);
     }
 
+    @Test
+    public void testSaveLoad() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c(1234));
+        KAligner2<Integer> aligner = new KAligner2<>(gParams);
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            references.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 100, 300));
+            aligner.addReference(references.get(i), i);
+        }
+
+        File file = TempFileManager.getTempFile();
+        aligner.save(file);
+        KAligner2<Integer> loaded = KAligner2.load(file, Integer.class);
+        Assert.assertEquals(gParams, loaded.parameters);
+
+        for (int i = 0; i < its(100, 1000); ++i) {
+            NucleotideSequence ref = references.get(random.nextInt(0, references.size() - 1));
+            NucleotideSequence query = ref.getRange(random.nextInt(0, 20), ref.size() - random.nextInt(0, 20));
+            long seed = random.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            KAlignmentResult2<Integer> expected = aligner.align(query);
+            RandomUtil.reseedThreadLocal(seed);
+            KAlignmentResult2<Integer> actual = loaded.align(query);
+
+            Assert.assertEquals(expected.getHits().size(), actual.getHits().size());
+            for (int j = 0; j < expected.getHits().size(); ++j) {
+                Assert.assertEquals(expected.getHits().get(j).getAlignment(), actual.getHits().get(j).getAlignment());
+                Assert.assertEquals(expected.getHits().get(j).getRecordPayload(),
+                        actual.getHits().get(j).getRecordPayload());
+            }
+        }
+
+        try {
+            KMapper2.load(file);
+            Assert.fail();
+        } catch (IOException e) {
+            // expected: wrong file type
+        }
+    }
+
+    @Test
+    public void testAlignBatch() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c(4321));
+        KAligner2Statistics stat = new KAligner2Statistics();
+        KAligner2<Integer> aligner = new KAligner2<>(gParams, stat);
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+            references.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 100, 300));
+        aligner.addReferences(references, null);
+
+        for (int b = 0; b < its(10, 100); ++b) {
+            List<NucleotideSequence> queries = new ArrayList<>();
+            for (int i = 0; i < 20; ++i) {
+                NucleotideSequence ref = references.get(random.nextInt(0, references.size() - 1));
+                queries.add(i == 0
+                        ? ref.getRange(0, 5) // shorter than nValue
+                        : ref.getRange(random.nextInt(0, 20), ref.size() - random.nextInt(0, 20)));
+            }
+
+            long seed = random.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            List<KAlignmentResult2<Integer>> expected = new ArrayList<>();
+            for (NucleotideSequence query : queries)
+                expected.add(aligner.align(query));
+            RandomUtil.reseedThreadLocal(seed);
+            List<KAlignmentResult2<Integer>> actual = aligner.alignBatch(queries);
+
+            Assert.assertEquals(queries.size(), actual.size());
+            for (int i = 0; i < queries.size(); ++i) {
+                Assert.assertEquals(expected.get(i).getHits().size(), actual.get(i).getHits().size());
+                for (int j = 0; j < expected.get(i).getHits().size(); ++j)
+                    Assert.assertEquals(expected.get(i).getHits().get(j).getAlignment(),
+                            actual.get(i).getHits().get(j).getAlignment());
+            }
+        }
+        Assert.assertEquals(its(10, 100), stat.inputBatches.get());
+        Assert.assertEquals(2 * 20 * its(10, 100), stat.inputQueries.get());
+    }
+
     @Test
     public void testSimpleRandomTest() throws Exception {
         RandomUtil.reseedThreadLocal(12342345L);
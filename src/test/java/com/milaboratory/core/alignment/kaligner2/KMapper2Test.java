@@ -13,9 +13,11 @@ import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well1024a;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -276,6 +278,204 @@ public class KMapper2Test {
         }
     }
 
+    @Test
+    public void testWideRecordsSameResult() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well1024a(12345));
+        NucleotideSequence[] db = generateDB(random, DEFAULT);
+        KMapper2 narrow = KMapper2.createFromParameters(gParams),
+                wide = KMapper2.createFromParameters(gParams);
+        wide.forceWideRecords();
+        for (NucleotideSequence ref : db) {
+            narrow.addReference(ref);
+            wide.addReference(ref);
+        }
+
+        for (int i = 0; i < TestUtil.its(300, 3000); ++i) {
+            Challenge challenge = createChallenge(DEFAULT, random, db);
+            long seed = random.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult2 expected = narrow.align(challenge.query);
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult2 actual = wide.align(challenge.query);
+
+            Assert.assertEquals(expected.getHits().size(), actual.getHits().size());
+            for (int j = 0; j < expected.getHits().size(); ++j) {
+                KMappingHit2 e = expected.getHits().get(j), a = actual.getHits().get(j);
+                Assert.assertEquals(e.id, a.id);
+                Assert.assertEquals(e.score, a.score);
+                Assert.assertArrayEquals(e.seedRecords, a.seedRecords);
+                Assert.assertArrayEquals(e.boundaries, a.boundaries);
+            }
+        }
+    }
+
+    @Test
+    public void testOffHeapIndexSameResult() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well1024a(4321));
+        NucleotideSequence[] db = generateDB(random, DEFAULT);
+        KMapper2 heap = KMapper2.createFromParameters(gParams),
+                offHeap = KMapper2.createFromParameters(gParams);
+        offHeap.setOffHeapIndex(true);
+        for (NucleotideSequence ref : db) {
+            heap.addReference(ref);
+            offHeap.addReference(ref);
+        }
+        Assert.assertEquals(heap.getRecordSizeSummaryStatistics().getSum(),
+                offHeap.getRecordSizeSummaryStatistics().getSum(), 0.0);
+
+        for (int i = 0; i < TestUtil.its(300, 3000); ++i) {
+            Challenge challenge = createChallenge(DEFAULT, random, db);
+            long seed = random.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult2 expected = heap.align(challenge.query);
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult2 actual = offHeap.align(challenge.query);
+
+            Assert.assertEquals(expected.getHits().size(), actual.getHits().size());
+            for (int j = 0; j < expected.getHits().size(); ++j) {
+                Assert.assertEquals(expected.getHits().get(j).id, actual.getHits().get(j).id);
+                Assert.assertArrayEquals(expected.getHits().get(j).seedRecords, actual.getHits().get(j).seedRecords);
+            }
+        }
+    }
+
+    @Test
+    public void testAddReferencesSameResult() throws Exception {
+        testAddReferencesSameResult(false);
+        testAddReferencesSameResult(true);
+    }
+
+    private static void testAddReferencesSameResult(boolean wideRecords) throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well1024a(5432));
+        NucleotideSequence[] db = generateDB(random, DEFAULT);
+        KMapper2 sequential = KMapper2.createFromParameters(gParams),
+                bulk = KMapper2.createFromParameters(gParams);
+        if (wideRecords) {
+            sequential.forceWideRecords();
+            bulk.forceWideRecords();
+        }
+        for (NucleotideSequence ref : db)
+            sequential.addReference(ref);
+        List<NucleotideSequence> refs = Arrays.asList(db);
+        Assert.assertEquals(0, bulk.addReferences(refs.subList(0, db.length / 2)));
+        Assert.assertEquals(db.length / 2, bulk.addReferences(refs.subList(db.length / 2, db.length)));
+        Assert.assertEquals(sequential.getRecordSizeSummaryStatistics().getSum(),
+                bulk.getRecordSizeSummaryStatistics().getSum(), 0.0);
+
+        for (int i = 0; i < TestUtil.its(300, 3000); ++i) {
+            Challenge challenge = createChallenge(DEFAULT, random, db);
+            long seed = random.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult2 expected = sequential.align(challenge.query);
+            RandomUtil.reseedThreadLocal(seed);
+            KMappingResult2 actual = bulk.align(challenge.query);
+
+            Assert.assertEquals(expected.getHits().size(), actual.getHits().size());
+            for (int j = 0; j < expected.getHits().size(); ++j) {
+                KMappingHit2 e = expected.getHits().get(j), a = actual.getHits().get(j);
+                Assert.assertEquals(e.id, a.id);
+                Assert.assertEquals(e.score, a.score);
+                Assert.assertArrayEquals(e.seedRecords, a.seedRecords);
+            }
+        }
+    }
+
+    @Test
+    public void testAlignBatchSameResult() throws Exception {
+        testAlignBatchSameResult(false);
+        testAlignBatchSameResult(true);
+    }
+
+    private static void testAlignBatchSameResult(boolean wideRecords) throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well1024a(6543));
+        NucleotideSequence[] db = generateDB(random, DEFAULT);
+        KMapper2 mapper = KMapper2.createFromParameters(gParams);
+        if (wideRecords)
+            mapper.forceWideRecords();
+        mapper.addReferences(Arrays.asList(db));
+
+        for (int b = 0; b < TestUtil.its(10, 100); ++b) {
+            List<NucleotideSequence> queries = new ArrayList<>();
+            for (int i = 0; i < 30; ++i)
+                queries.add(createChallenge(DEFAULT, random, db).query);
+
+            long seed = random.getRandomGenerator().nextLong();
+            RandomUtil.reseedThreadLocal(seed);
+            List<KMappingResult2> expected = new ArrayList<>();
+            for (NucleotideSequence query : queries)
+                expected.add(mapper.align(query));
+            RandomUtil.reseedThreadLocal(seed);
+            List<KMappingResult2> actual = mapper.alignBatch(queries);
+
+            for (int i = 0; i < queries.size(); ++i) {
+                Assert.assertEquals(expected.get(i).getHits().size(), actual.get(i).getHits().size());
+                for (int j = 0; j < expected.get(i).getHits().size(); ++j) {
+                    KMappingHit2 e = expected.get(i).getHits().get(j), a = actual.get(i).getHits().get(j);
+                    Assert.assertEquals(e.id, a.id);
+                    Assert.assertEquals(e.score, a.score);
+                    Assert.assertArrayEquals(e.seedRecords, a.seedRecords);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLargeBase() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well1024a(54321));
+        KMapper2 mapper = KMapper2.createFromParameters(gParams);
+        NucleotideSequence[] db = new NucleotideSequence[TestUtil.its(10000, 30000)];
+        for (int i = 0; i < db.length; i++) {
+            db[i] = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 80, 120);
+            mapper.addReference(db[i]);
+        }
+
+        int wrongTopHit = 0;
+        for (int i = 0; i < 1000; ++i) {
+            int id = random.nextInt(0, db.length - 1);
+            int from = random.nextInt(0, 20);
+            NucleotideSequence query = db[id].getRange(from, db[id].size() - random.nextInt(0, 20));
+            KMappingResult2 result = mapper.align(query);
+            Assert.assertFalse(result.getHits().isEmpty());
+            if (result.getHits().get(0).id != id)
+                ++wrongTopHit;
+            else
+                Assert.assertEquals(from, KMapper2.offset(result.getHits().get(0).seedRecords[0]));
+        }
+        Assert.assertTrue(wrongTopHit < 10);
+    }
+
+    @Test
+    @Ignore
+    public void testWideRecordsBenchmark() throws Exception {
+        RandomDataGenerator random = new RandomDataGenerator(new Well1024a(1));
+        NucleotideSequence[] db = generateDB(random, DEFAULT);
+        KMapper2 narrow = KMapper2.createFromParameters(gParams),
+                wide = KMapper2.createFromParameters(gParams);
+        wide.forceWideRecords();
+        for (NucleotideSequence ref : db) {
+            narrow.addReference(ref);
+            wide.addReference(ref);
+        }
+
+        List<NucleotideSequence> queries = new ArrayList<>();
+        for (int i = 0; i < TestUtil.its(1000, 100000); ++i)
+            queries.add(createChallenge(DEFAULT, random, db).query);
+
+        for (int k = 0; k < 3; ++k) {
+            long narrowTime = 0, wideTime = 0, start;
+            for (NucleotideSequence query : queries) {
+                start = System.nanoTime();
+                narrow.align(query);
+                narrowTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                wide.align(query);
+                wideTime += System.nanoTime() - start;
+            }
+            System.out.println("Narrow records: " + narrowTime / queries.size() + "ns/query; " +
+                    "wide records: " + wideTime / queries.size() + "ns/query");
+        }
+    }
+
     public static NucleotideSequence[] generateDB(RandomDataGenerator generator, ChallengeParameters params) {
         NucleotideSequence[] db = new NucleotideSequence[params.dbSize];
         for (int i = 0; i < params.dbSize; i++)
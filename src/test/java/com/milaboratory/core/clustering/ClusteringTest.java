@@ -20,6 +20,8 @@ import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
 import com.milaboratory.core.mutations.Mutation;
 import com.milaboratory.core.mutations.MutationType;
 import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.tree.NeighborhoodIterator;
 import com.milaboratory.core.tree.TreeSearchParameters;
@@ -30,6 +32,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.milaboratory.core.mutations.generator.MutationsGenerator.generateMutations;
 
 /**
  * @author Dmitry Bolotin
@@ -300,6 +305,41 @@ public class ClusteringTest {
         }
     }
 
+    @Test
+    public void testParallelSameResult() throws Exception {
+        Well19937a rand = new Well19937a(1234);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int x = 0; x < TestUtil.its(5, 30); ++x) {
+                // Many similar sequences, so clusters built concurrently frequently conflict
+                List<NucleotideSequence> roots = new ArrayList<>();
+                for (int i = 0; i < 5; ++i)
+                    roots.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, rand, 20, 25));
+                NucleotideMutationModel model = MutationModels.getEmpiricalNucleotideMutationModel()
+                        .multiplyProbabilities(5.0);
+                model.reseed(rand.nextLong());
+                List<TestObject> input = new ArrayList<>();
+                for (int i = 0; i < TestUtil.its(300, 3000); ++i) {
+                    NucleotideSequence root = roots.get(rand.nextInt(roots.size()));
+                    NucleotideSequence seq = generateMutations(root, model).mutate(root);
+                    input.add(new TestObject(1 + rand.nextInt(100), seq, rand.nextInt(2)));
+                }
+
+                for (int depth = 1; depth <= 3; ++depth) {
+                    TestStrategy strategy = new TestStrategy(depth, new TreeSearchParameters(1, 1, 1, 2));
+                    List<Cluster<TestObject>> expected = Clustering.performClustering(input, EXTRACTOR, strategy);
+                    for (int parallelism : new int[]{1, 4}) {
+                        List<Cluster<TestObject>> actual = Clustering.performClustering(input, EXTRACTOR, strategy,
+                                pool, parallelism);
+                        Assert.assertEquals(expected, actual);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     private static class DummyStrategy
             implements ClusteringStrategy<TestObject, NucleotideSequence> {
         final int depth;
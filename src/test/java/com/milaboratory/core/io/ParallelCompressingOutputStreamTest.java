@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static com.milaboratory.core.io.ParallelDecompressingInputStreamTest.randomData;
+import static com.milaboratory.core.io.ParallelDecompressingInputStreamTest.readAll;
+import static org.junit.Assert.*;
+
+public class ParallelCompressingOutputStreamTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = randomData(1, 1000000);
+        for (boolean bgzf : new boolean[]{false, true})
+            for (int blockSize : new int[]{1000, 77777, ParallelCompressingOutputStream.DEFAULT_BLOCK_SIZE})
+                for (int concurrency : new int[]{1, 4}) {
+                    byte[] compressed = compress(data, bgzf, blockSize, concurrency);
+                    assertEquals(bgzf, BGZF.blockSize(compressed, 0, compressed.length) != -1);
+                    try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                        assertArrayEquals(data, readAll(is));
+                    }
+                    try (InputStream is = new ParallelDecompressingInputStream(new ByteArrayInputStream(compressed),
+                            CompressionType.GZIP, 10000, 3, ForkJoinPool.commonPool())) {
+                        assertArrayEquals(data, readAll(is));
+                    }
+                }
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        byte[] data = randomData(2, 100000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new ParallelCompressingOutputStream(bos, false, ForkJoinPool.commonPool(), 2)) {
+            os.write(data, 0, 50000);
+            os.flush();
+            assertArrayEquals(Arrays.copyOf(data, 50000), readAll(
+                    new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+            os.write(data, 50000, 50000);
+        }
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testIOError() throws Exception {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException();
+            }
+        };
+        try (OutputStream os = new ParallelCompressingOutputStream(failing, true, Deflater.DEFAULT_COMPRESSION, 1000,
+                ForkJoinPool.commonPool(), 2)) {
+            os.write(randomData(3, 100000));
+        }
+    }
+
+    static byte[] compress(byte[] data, boolean bgzf, int blockSize, int concurrency) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new ParallelCompressingOutputStream(bos, bgzf, Deflater.DEFAULT_COMPRESSION, blockSize,
+                ForkJoinPool.commonPool(), concurrency)) {
+            for (int offset = 0; offset < data.length; offset += 1234)
+                os.write(data, offset, Math.min(1234, data.length - offset));
+        }
+        return bos.toByteArray();
+    }
+}
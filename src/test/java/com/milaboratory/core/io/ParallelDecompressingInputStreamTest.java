@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ParallelDecompressingInputStreamTest {
+    @Test
+    public void testGZIP() throws Exception {
+        byte[] data = randomData(1, 1000000);
+        assertDecompressed(data, compress(CompressionType.GZIP, data), CompressionType.GZIP);
+    }
+
+    @Test
+    public void testMultiMemberGZIP() throws Exception {
+        byte[] data = randomData(2, 300000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int offset = 0; offset < data.length; offset += 77777)
+            bos.write(compress(CompressionType.GZIP,
+                    Arrays.copyOfRange(data, offset, Math.min(data.length, offset + 77777))));
+        assertDecompressed(data, bos.toByteArray(), CompressionType.GZIP);
+    }
+
+    @Test
+    public void testSequentialByDefault() throws Exception {
+        byte[] compressed = compress(CompressionType.GZIP, randomData(5, 1000));
+        assertFalse(CompressionType.GZIP.createInputStream(new ByteArrayInputStream(compressed))
+                instanceof ParallelDecompressingInputStream);
+        assertFalse(CompressionType.GZIP.createInputStream(new ByteArrayInputStream(compressed), 2048)
+                instanceof ParallelDecompressingInputStream);
+        assertFalse(CompressionType.GZIP.createDefaultInputStream(new ByteArrayInputStream(compressed), 2048)
+                instanceof ParallelDecompressingInputStream);
+    }
+
+    @Test
+    public void testBZIP2() throws Exception {
+        byte[] data = randomData(3, 300000);
+        assertDecompressed(data, compress(CompressionType.BZIP2, data), CompressionType.BZIP2);
+    }
+
+    @Test
+    public void testBGZF() throws Exception {
+        byte[] data = randomData(4, 1000000);
+        for (int blockDataSize : new int[]{1000, BGZF.DEFAULT_BLOCK_DATA_SIZE}) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            byte[] block = new byte[BGZF.MAX_BLOCK_SIZE];
+            for (int offset = 0; offset < data.length; offset += blockDataSize)
+                bos.write(block, 0, BGZF.deflateBlock(data, offset, Math.min(blockDataSize, data.length - offset),
+                        block, 0, deflater));
+            bos.write(BGZF.eofBlock());
+            assertDecompressed(data, bos.toByteArray(), CompressionType.GZIP);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        byte[] compressed = compress(CompressionType.GZIP, randomData(5, 100000));
+        try (InputStream is = new ParallelDecompressingInputStream(
+                new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)),
+                CompressionType.GZIP, 1000, 2, ForkJoinPool.commonPool())) {
+            readAll(is);
+        }
+    }
+
+    static void assertDecompressed(byte[] expected, byte[] compressed, CompressionType ct) throws IOException {
+        for (int chunkSize : new int[]{100, 10000, ParallelDecompressingInputStream.DEFAULT_CHUNK_SIZE})
+            for (int concurrency : new int[]{1, 4})
+                try (InputStream is = new ParallelDecompressingInputStream(new ByteArrayInputStream(compressed), ct,
+                        chunkSize, concurrency, ForkJoinPool.commonPool())) {
+                    assertArrayEquals(expected, readAll(is));
+                }
+        try (InputStream is = ct.createInputStream(new ByteArrayInputStream(compressed), 2048, 0, null)) {
+            assertArrayEquals(expected, readAll(is));
+        }
+    }
+
+    static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1234];
+        int r;
+        while ((r = is.read(buffer)) != -1)
+            bos.write(buffer, 0, r);
+        return bos.toByteArray();
+    }
+
+    static byte[] compress(CompressionType ct, byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = ct.createOutputStream(bos)) {
+            os.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    static byte[] randomData(long seed, int size) {
+        RandomGenerator random = new Well19937c(seed);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i)
+            data[i] = (byte) ("ACGT\n".charAt(random.nextInt(5)));
+        return data;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.columnar;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+import static org.junit.Assert.*;
+
+public class ColumnarReadsTest {
+    @Test
+    public void testSequentialAndRandomAccess() throws Exception {
+        RandomGenerator random = new Well19937c(123);
+        List<SingleRead> reads = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random,
+                    0, 200, random.nextInt(10) != 0);
+            byte[] quality = new byte[sequence.size()];
+            for (int j = 0; j < quality.length; ++j)
+                quality[j] = (byte) (random.nextInt(4) != 0 ? 30 : random.nextInt(42));
+            reads.add(new SingleReadImpl(i, new NSequenceWithQuality(sequence, new SequenceQuality(quality)),
+                    "read" + i));
+        }
+
+        for (int blockSize : new int[]{1, 17, ColumnarReadsWriter.DEFAULT_BLOCK_SIZE}) {
+            Path file = TempFileManager.getTempFile(".reads").toPath();
+            try (ColumnarSingleReadsWriter writer = new ColumnarSingleReadsWriter(
+                    PrimitivIOBlocksUtil.defaultExecutorService(), file, blockSize, 2)) {
+                for (int i = 0; i < reads.size(); ++i) {
+                    writer.write(reads.get(i));
+                    if (i == 100)
+                        writer.flush();
+                }
+            }
+
+            try (ColumnarSingleReadsReader reader = new ColumnarSingleReadsReader(file)) {
+                assertEquals(1, reader.getReadsPerRecord());
+                assertEquals(reads.size(), reader.getTotalNumberOfReads());
+                for (SingleRead read : reads)
+                    assertEquals(read, reader.take());
+                assertNull(reader.take());
+                assertEquals(reads.size(), reader.getNumberOfReads());
+                assertTrue(reader.isFinished());
+
+                for (int i = 0; i < 100; ++i) {
+                    int id = random.nextInt(reads.size());
+                    assertEquals(reads.get(id), reader.get(id));
+                }
+
+                reader.seek(2021);
+                assertEquals(reads.get(2021), reader.take());
+                assertEquals(reads.get(2022), reader.take());
+                reader.seek(reads.size());
+                assertNull(reader.take());
+            }
+        }
+    }
+
+    @Test
+    public void testPaired() throws Exception {
+        List<PairedRead> reads = new ArrayList<>();
+        try (PairedFastqReader reader = new PairedFastqReader(getTestFile("sequences/sample_r1.fastq"),
+                getTestFile("sequences/sample_r2.fastq"))) {
+            for (PairedRead read : CUtils.it(reader))
+                reads.add(read);
+        }
+
+        Path file = TempFileManager.getTempFile(".reads").toPath();
+        try (ColumnarPairedReadsWriter writer = new ColumnarPairedReadsWriter(file)) {
+            for (PairedRead read : reads)
+                writer.write(read);
+        }
+
+        try (ColumnarReadsReader<PairedRead> reader = new ColumnarReadsReader<>(file)) {
+            assertEquals(2, reader.getReadsPerRecord());
+            for (PairedRead read : reads)
+                assertEquals(read, reader.take());
+            assertNull(reader.take());
+        }
+
+        try (ColumnarSingleReadsReader reader = new ColumnarSingleReadsReader(file)) {
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEmptyAndNullDescription() throws Exception {
+        Path file = TempFileManager.getTempFile(".reads").toPath();
+        new ColumnarSingleReadsWriter(file).close();
+        try (ColumnarSingleReadsReader reader = new ColumnarSingleReadsReader(file)) {
+            assertEquals(0, reader.getTotalNumberOfReads());
+            assertNull(reader.take());
+        }
+
+        SingleRead read = new SingleReadImpl(0, new NSequenceWithQuality("ANGTRC", "AAAA+A"), null);
+        try (ColumnarSingleReadsWriter writer = new ColumnarSingleReadsWriter(file)) {
+            writer.write(read);
+        }
+        try (ColumnarSingleReadsReader reader = new ColumnarSingleReadsReader(file)) {
+            SingleRead actual = reader.take();
+            assertEquals(read.getData(), actual.getData());
+            assertNull(actual.getDescription());
+        }
+    }
+}
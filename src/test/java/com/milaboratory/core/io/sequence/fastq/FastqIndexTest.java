@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.sequence.SingleRead;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.milaboratory.core.io.sequence.fastq.ParallelFastqReaderTest.*;
+import static com.milaboratory.core.io.sequence.fastq.SingleFastqWriterTest.assertReadsEquals;
+import static org.junit.Assert.*;
+
+public class FastqIndexTest {
+    @Test
+    public void testPlain() throws Exception {
+        File file = createRandomFastq(123, 1000);
+        List<SingleRead> expected = readAll(new SingleFastqReader(file, true, false));
+        for (long step : new long[]{1, 7, 100, 5000})
+            assertRanges(file, FastqIndex.build(file, step), expected);
+    }
+
+    @Test
+    public void testBGZF() throws Exception {
+        File file = createRandomFastq(321, 1000);
+        List<SingleRead> expected = readAll(new SingleFastqReader(file, true, false));
+        for (int blockDataSize : new int[]{100, 7777}) {
+            File bgzf = toBGZF(file, blockDataSize);
+            for (long step : new long[]{1, 13, 5000}) {
+                FastqIndex index = FastqIndex.build(bgzf, step);
+                assertTrue(index.isBGZF());
+                assertRanges(bgzf, index, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        File file = toBGZF(createRandomFastq(111, 300), 1000);
+        FastqIndex index = FastqIndex.build(file, 10);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        index.write(bos);
+        FastqIndex read = FastqIndex.read(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(index.getStep(), read.getStep());
+        assertEquals(index.isBGZF(), read.isBGZF());
+        assertEquals(index.getQualityFormat(), read.getQualityFormat());
+        assertEquals(index.getNumberOfRecords(), read.getNumberOfRecords());
+        assertEquals(index.positions, read.positions);
+        assertTrue(read.isUpToDate(file));
+    }
+
+    @Test
+    public void testSidecar() throws Exception {
+        File file = createRandomFastq(222, 100);
+        File sidecar = FastqIndex.sidecarFile(file);
+        sidecar.deleteOnExit();
+        assertFalse(sidecar.exists());
+        FastqIndex index = FastqIndex.loadOrBuild(file, 10);
+        assertTrue(sidecar.exists());
+        assertEquals(100, index.getNumberOfRecords());
+        assertEquals(10, FastqIndex.loadOrBuild(file, 20).getStep());
+
+        // Stale index is rebuilt
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertEquals(20, FastqIndex.loadOrBuild(file, 20).getStep());
+    }
+
+    @Test
+    public void testStaleIndexRejected() throws Exception {
+        File file = createRandomFastq(333, 100);
+        FastqIndex index = FastqIndex.build(file, 10);
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        try {
+            new FastqRangeReader(file, index, 0, 10, true, false);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            FastqRangeReader.split(file, index, 2, true, false);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    static void assertRanges(File file, FastqIndex index, List<SingleRead> expected) throws Exception {
+        assertEquals(expected.size(), index.getNumberOfRecords());
+
+        // Arbitrary range
+        try (FastqRangeReader reader = new FastqRangeReader(file, index, 17, 555, true, false)) {
+            for (int i = 17; i < 555; i++)
+                assertReadsEquals(expected.get(i), reader.take());
+            assertNull(reader.take());
+            assertEquals(555 - 17, reader.getNumberOfReads());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int n : new int[]{1, 3, 8}) {
+                List<FastqRangeReader> readers = FastqRangeReader.split(file, index, n, true, true);
+                assertTrue(readers.size() <= n);
+                List<Future<List<SingleRead>>> futures = new ArrayList<>();
+                for (FastqRangeReader reader : readers)
+                    futures.add(executor.submit(() -> readAll(reader)));
+                List<SingleRead> actual = new ArrayList<>();
+                for (Future<List<SingleRead>> future : futures)
+                    actual.addAll(future.get());
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++)
+                    assertReadsEquals(expected.get(i), actual.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.util.TempFileManager;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.milaboratory.core.io.sequence.fastq.ParallelFastqReaderTest.*;
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+import static org.junit.Assert.assertEquals;
+
+public class MappedFastqReaderTest {
+    @Test
+    public void testRandom() throws Exception {
+        File file = createRandomFastq(1234, 2000);
+        for (boolean replaceWildcards : new boolean[]{false, true}) {
+            List<SingleRead> expected = readAll(new SingleFastqReader(file, replaceWildcards, false));
+            for (int regionSize : new int[]{1000, 65536, MappedFastqReader.DEFAULT_REGION_SIZE})
+                for (boolean lazy : new boolean[]{false, true})
+                    assertSameReads(expected, new MappedFastqReader(file, QualityFormat.Phred33, regionSize,
+                            replaceWildcards, lazy));
+        }
+    }
+
+    @Test
+    public void testSamples() throws Exception {
+        for (String sample : new String[]{"sample_r1.fastq", "sample_r2.fastq"}) {
+            File file = getTestFile("sequences/" + sample);
+            try (MappedFastqReader reader = new MappedFastqReader(file);
+                 SingleFastqReader expected = new SingleFastqReader(file)) {
+                assertEquals(expected.getQualityFormat(), reader.getQualityFormat());
+            }
+            assertSameReads(readAll(new SingleFastqReader(file)), new MappedFastqReader(file));
+        }
+    }
+
+    @Test
+    public void testNoTrailingLineBreak() throws Exception {
+        File file = createRandomFastq(4321, 10);
+        byte[] data = Files.readAllBytes(file.toPath());
+        File truncated = TempFileManager.getTempFile(".fastq");
+        Files.write(truncated.toPath(), Arrays.copyOf(data, data.length - 1));
+        List<SingleRead> expected = readAll(new SingleFastqReader(file));
+        assertSameReads(expected, new MappedFastqReader(truncated, QualityFormat.Phred33, 1000, false, true));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        File file = TempFileManager.getTempFile(".fastq");
+        Files.write(file.toPath(), new byte[0]);
+        assertSameReads(Collections.emptyList(), new MappedFastqReader(file));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.BGZF;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import static com.milaboratory.core.io.sequence.fastq.SingleFastqWriterTest.assertReadsEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ParallelFastqReaderTest {
+    @Test
+    public void testPlain() throws Exception {
+        File file = createRandomFastq(12345, 1000);
+        for (boolean replaceWildcards : new boolean[]{false, true}) {
+            List<SingleRead> expected = readAll(new SingleFastqReader(file, replaceWildcards, false));
+            for (int chunkSize : new int[]{37, 1000, 65536, 1 << 24})
+                for (boolean lazy : new boolean[]{false, true})
+                    assertSameReads(expected, new ParallelFastqReader(file, QualityFormat.Phred33,
+                            ForkJoinPool.commonPool(), 4, chunkSize, 4096, replaceWildcards, lazy));
+        }
+    }
+
+    @Test
+    public void testBGZF() throws Exception {
+        File file = createRandomFastq(54321, 3000);
+        for (int blockDataSize : new int[]{100, 7777, BGZF.DEFAULT_BLOCK_DATA_SIZE}) {
+            File bgzf = toBGZF(file, blockDataSize);
+            List<SingleRead> expected = readAll(new SingleFastqReader(file, true, false));
+            // Checking that gzip reader is able to read produced file
+            assertSameReads(expected, new SingleFastqReader(bgzf, true, false));
+            for (int chunkSize : new int[]{1, 1000, 100000, 1 << 24})
+                assertSameReads(expected, new ParallelFastqReader(bgzf, QualityFormat.Phred33,
+                        ForkJoinPool.commonPool(), 3, chunkSize, 4096, true, false));
+        }
+    }
+
+    @Test
+    public void testFormatGuess() throws Exception {
+        File file = createRandomFastq(777, 100);
+        try (ParallelFastqReader reader = new ParallelFastqReader(file)) {
+            assertEquals(QualityFormat.Phred33, reader.getQualityFormat());
+        }
+    }
+
+    static List<SingleRead> readAll(SingleReader reader) {
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleReader r = reader) {
+            for (SingleRead read : CUtils.it(r))
+                reads.add(read);
+        }
+        return reads;
+    }
+
+    static void assertSameReads(List<SingleRead> expected, SingleReader reader) {
+        try (SingleReader r = reader) {
+            for (SingleRead read : expected)
+                assertReadsEquals(read, r.take());
+            assertNull(r.take());
+            assertEquals(expected.size(), r.getNumberOfReads());
+        }
+    }
+
+    static File toBGZF(File file, int blockDataSize) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        File result = TempFileManager.getTempFile(".fastq.gz");
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] block = new byte[BGZF.MAX_BLOCK_SIZE];
+        try (FileOutputStream os = new FileOutputStream(result)) {
+            for (int offset = 0; offset < data.length; offset += blockDataSize) {
+                int blockSize = BGZF.deflateBlock(data, offset, Math.min(blockDataSize, data.length - offset),
+                        block, 0, deflater);
+                os.write(block, 0, blockSize);
+            }
+            os.write(BGZF.eofBlock());
+        }
+        return result;
+    }
+
+    static File createRandomFastq(long seed, int count) throws IOException {
+        RandomGenerator random = new Well19937c(seed);
+        File file = TempFileManager.getTempFile(".fastq");
+        try (SingleFastqWriter writer = new SingleFastqWriter(file)) {
+            for (int i = 0; i < count; ++i) {
+                NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random,
+                        0, 300, random.nextInt(10) != 0);
+                byte[] quality = new byte[sequence.size()];
+                for (int j = 0; j < quality.length; ++j)
+                    // Phred33 '@' (31) is frequently generated, including first quality character
+                    quality[j] = (byte) (random.nextBoolean() ? 31 : random.nextInt(42));
+                writer.write(new SingleReadImpl(i, new NSequenceWithQuality(sequence, new SequenceQuality(quality)),
+                        "read" + i + (random.nextBoolean() ? " @description+" : "")));
+            }
+        }
+        return file;
+    }
+}
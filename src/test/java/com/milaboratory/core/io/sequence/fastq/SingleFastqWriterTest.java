@@ -16,16 +16,20 @@
 package com.milaboratory.core.io.sequence.fastq;
 
 import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.BGZF;
 import com.milaboratory.core.io.CompressionType;
 import com.milaboratory.core.io.sequence.SingleRead;
 import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
 import static org.junit.Assert.*;
@@ -84,6 +88,24 @@ public class SingleFastqWriterTest {
         }
     }
 
+    @Test
+    public void testParallelGZIP() throws Exception {
+        File file = ParallelFastqReaderTest.createRandomFastq(4321, 3000);
+        List<SingleRead> reads = ParallelFastqReaderTest.readAll(new SingleFastqReader(file, false));
+
+        File gz = TempFileManager.getTempFile(".fastq.gz");
+        try (SingleFastqWriter writer = new SingleFastqWriter(new FileOutputStream(gz),
+                QualityFormat.Phred33, CompressionType.GZIP, 10000, 3, ForkJoinPool.commonPool())) {
+            for (SingleRead read : reads)
+                writer.write(read);
+        }
+
+        assertTrue(BGZF.isBGZF(gz));
+        ParallelFastqReaderTest.assertSameReads(reads, new SingleFastqReader(gz, false));
+        ParallelFastqReaderTest.assertSameReads(reads, new ParallelFastqReader(gz, QualityFormat.Phred33,
+                ForkJoinPool.commonPool(), 2, 10000, 4096, false, false));
+    }
+
     public static void assertReadsEquals(SingleRead r1, SingleRead r2) {
         assertEquals(r1.getId(), r2.getId());
         assertEquals(r1.getData(), r2.getData());
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.milaboratory.core.mutations.generator.UniformMutationsGenerator.createUniformMutationAsObject;
+import static com.milaboratory.core.tree.TreeSearchParameters.TWO_MISMATCHES_OR_INDELS;
+import static com.milaboratory.test.TestUtil.its;
+
+public class CompactSequenceTreeMapTest {
+    @Test
+    public void testPutGetRemove() throws Exception {
+        CompactSequenceTreeMap<NucleotideSequence, Integer> map = new CompactSequenceTreeMap<>(NucleotideSequence.ALPHABET);
+        Assert.assertNull(map.put(new NucleotideSequence("ATTAGACA"), 1));
+        Assert.assertNull(map.put(new NucleotideSequence("ATTAG"), 2));
+        Assert.assertNull(map.put(new NucleotideSequence("ACNAG"), 3));
+        Assert.assertEquals((Integer) 1, map.put(new NucleotideSequence("ATTAGACA"), 4));
+        Assert.assertEquals(3, map.size());
+
+        Assert.assertEquals((Integer) 4, map.get(new NucleotideSequence("ATTAGACA")));
+        Assert.assertEquals((Integer) 2, map.get(new NucleotideSequence("ATTAG")));
+        Assert.assertEquals((Integer) 3, map.get(new NucleotideSequence("ACNAG")));
+        Assert.assertNull(map.get(new NucleotideSequence("ATTA")));
+        Assert.assertNull(map.get(new NucleotideSequence("ATTAGACAT")));
+        Assert.assertEquals((Integer) 5, map.createIfAbsent(new NucleotideSequence("GATTACA"), () -> 5));
+        Assert.assertEquals((Integer) 5, map.createIfAbsent(new NucleotideSequence("GATTACA"), () -> 6));
+
+        Assert.assertEquals((Integer) 2, map.remove(new NucleotideSequence("ATTAG")));
+        Assert.assertNull(map.get(new NucleotideSequence("ATTAG")));
+        Assert.assertEquals((Integer) 4, map.get(new NucleotideSequence("ATTAGACA")));
+        Assert.assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testRandomNucleotide() throws Exception {
+        RandomGenerator random = new Well19937a(1234);
+        for (int i = 0; i < its(10, 100); ++i)
+            assertSameAsSequenceTreeMap(random, NucleotideSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+    }
+
+    @Test
+    public void testRandomAminoAcid() throws Exception {
+        RandomGenerator random = new Well19937a(4321);
+        for (int i = 0; i < its(10, 100); ++i)
+            assertSameAsSequenceTreeMap(random, AminoAcidSequence.ALPHABET.getEmptySequence(), its(100, 1000));
+    }
+
+    private static <S extends Sequence<S>> void assertSameAsSequenceTreeMap(RandomGenerator random, S empty,
+                                                                            int count) {
+        SequenceTreeMap<S, Integer> expected = new SequenceTreeMap<>(empty.getAlphabet());
+        CompactSequenceTreeMap<S, Integer> actual = new CompactSequenceTreeMap<>(empty.getAlphabet());
+
+        // Similar sequences, to get branching trees
+        List<S> sequences = new ArrayList<>();
+        S root = TestUtil.randomSequence(empty.getAlphabet(), random, 10, 15);
+        for (int i = 0; i < count; ++i) {
+            S seq = root;
+            for (int j = random.nextInt(4); j > 0; --j)
+                seq = createUniformMutationAsObject(seq, random).mutate(seq);
+            sequences.add(seq);
+            Assert.assertEquals(expected.put(seq, i), actual.put(seq, i));
+        }
+
+        for (S seq : sequences)
+            Assert.assertEquals(expected.get(seq), actual.get(seq));
+
+        for (TreeSearchParameters parameters : new TreeSearchParameters[]{
+                new TreeSearchParameters(1, 1, 1, 2), TWO_MISMATCHES_OR_INDELS, new TreeSearchParameters(2, 0, 0)})
+            for (int i = 0; i < 10; ++i) {
+                S reference = sequences.get(random.nextInt(sequences.size()));
+                NeighborhoodIterator<S, Integer> e = expected.getNeighborhoodIterator(reference, parameters);
+                NeighborhoodIterator<S, Integer> a = actual.getNeighborhoodIterator(reference, parameters);
+                Integer value;
+                while ((value = e.next()) != null) {
+                    Assert.assertEquals(value, a.next());
+                    Assert.assertEquals(e.getCurrentMutations(), a.getCurrentMutations());
+                    Assert.assertEquals(e.getPenalty(), a.getPenalty(), 0.0);
+                }
+                Assert.assertNull(a.next());
+            }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.milaboratory.core.mutations.generator.MutationsGenerator.generateMutations;
+import static com.milaboratory.core.tree.TreeSearchParameters.TWO_MISMATCHES_OR_INDELS;
+import static com.milaboratory.test.TestUtil.its;
+
+public class ConcurrentSequenceTreeMapTest {
+    @Test
+    public void testPutGetRemove() throws Exception {
+        ConcurrentSequenceTreeMap<NucleotideSequence, Integer> map =
+                new ConcurrentSequenceTreeMap<>(NucleotideSequence.ALPHABET);
+        Assert.assertNull(map.put(new NucleotideSequence("ATTAGACA"), 1));
+        Assert.assertNull(map.put(new NucleotideSequence("ATTAG"), 2));
+        Assert.assertEquals((Integer) 1, map.put(new NucleotideSequence("ATTAGACA"), 4));
+        Assert.assertEquals((Integer) 4, map.get(new NucleotideSequence("ATTAGACA")));
+        Assert.assertNull(map.get(new NucleotideSequence("ATTA")));
+        Assert.assertEquals((Integer) 5, map.createIfAbsent(new NucleotideSequence("GATTACA"), () -> 5));
+        Assert.assertEquals((Integer) 5, map.createIfAbsent(new NucleotideSequence("GATTACA"), () -> 6));
+        Assert.assertEquals((Integer) 7, map.update(new NucleotideSequence("GATTACA"), v -> v + 2));
+        Assert.assertEquals((Integer) 2, map.remove(new NucleotideSequence("ATTAG")));
+        Assert.assertNull(map.get(new NucleotideSequence("ATTAG")));
+        Assert.assertEquals((Integer) 4, map.get(new NucleotideSequence("ATTAGACA")));
+    }
+
+    @Test
+    public void testConcurrentInsertion() throws Exception {
+        RandomGenerator random = new Well19937a(1234);
+        NucleotideMutationModel model = MutationModels.getEmpiricalNucleotideMutationModel()
+                .multiplyProbabilities(10.0);
+        model.reseed(random.nextLong());
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            for (int it = 0; it < its(5, 50); ++it) {
+                // Similar sequences with repeats, to get contention on the same nodes
+                List<NucleotideSequence> sequences = new ArrayList<>();
+                NucleotideSequence root = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 10, 15);
+                for (int i = 0; i < its(3000, 30000); ++i)
+                    sequences.add(generateMutations(root, model).mutate(root));
+
+                SequenceTreeMap<NucleotideSequence, Integer> expected =
+                        new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
+                for (NucleotideSequence seq : sequences)
+                    expected.put(seq, expected.get(seq) == null ? 1 : expected.get(seq) + 1);
+
+                ConcurrentSequenceTreeMap<NucleotideSequence, Integer> actual =
+                        new ConcurrentSequenceTreeMap<>(NucleotideSequence.ALPHABET);
+                ConcurrentSequenceTreeMap<NucleotideSequence, AtomicInteger> counters =
+                        new ConcurrentSequenceTreeMap<>(NucleotideSequence.ALPHABET);
+                List<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < threads; ++t) {
+                    int thread = t;
+                    writers.add(executor.submit(() -> {
+                        for (int i = thread; i < sequences.size(); i += threads) {
+                            actual.update(sequences.get(i), v -> v == null ? 1 : v + 1);
+                            counters.createIfAbsent(sequences.get(i), AtomicInteger::new).incrementAndGet();
+                        }
+                    }));
+                }
+                // Searching concurrently with writers
+                NucleotideSequence reference = sequences.get(0);
+                Future<?> reader = executor.submit(() -> {
+                    for (int i = 0; i < 10; ++i) {
+                        NeighborhoodIterator<NucleotideSequence, Integer> ni =
+                                actual.getNeighborhoodIterator(reference, TWO_MISMATCHES_OR_INDELS);
+                        while (ni.next() != null) ;
+                    }
+                });
+                for (Future<?> writer : writers)
+                    writer.get();
+                reader.get();
+
+                for (NucleotideSequence seq : sequences) {
+                    Assert.assertEquals(expected.get(seq), actual.get(seq));
+                    Assert.assertEquals((int) expected.get(seq), counters.get(seq).get());
+                }
+
+                for (int i = 0; i < 10; ++i) {
+                    NucleotideSequence ref = sequences.get(random.nextInt(sequences.size()));
+                    NeighborhoodIterator<NucleotideSequence, Integer>
+                            e = expected.getNeighborhoodIterator(ref, TWO_MISMATCHES_OR_INDELS),
+                            a = actual.getNeighborhoodIterator(ref, TWO_MISMATCHES_OR_INDELS);
+                    Integer value;
+                    while ((value = e.next()) != null) {
+                        Assert.assertEquals(value, a.next());
+                        Assert.assertEquals(e.getCurrentMutations(), a.getCurrentMutations());
+                    }
+                    Assert.assertNull(a.next());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
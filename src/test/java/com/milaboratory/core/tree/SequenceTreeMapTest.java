@@ -17,6 +17,8 @@ package com.milaboratory.core.tree;
 
 import com.milaboratory.core.alignment.*;
 import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.*;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -25,7 +27,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
+import static com.milaboratory.core.mutations.generator.MutationsGenerator.generateMutations;
 import static com.milaboratory.core.sequence.SequencesUtils.concatenate;
 import static com.milaboratory.core.tree.TreeSearchParameters.TWO_MISMATCHES_OR_INDELS;
 import static com.milaboratory.test.TestUtil.its;
@@ -146,8 +150,8 @@ public class SequenceTreeMapTest {
 
         for (byte mode = 0; mode < 3; ++mode) {
 
-            BranchingEnumerator<NucleotideSequence, Integer> e =
-                    new BranchingEnumerator<>(reference, null);
+            BranchingEnumerator<NucleotideSequence, SequenceTreeMap.Node<Integer>> e =
+                    new BranchingEnumerator<>(reference, null, SequenceTreeMap.<Integer>nodeNavigator());
             e.setup(mode, false);
             e.reset(0, map.root);
             SequenceTreeMap.Node<Integer> n;
@@ -1115,4 +1119,78 @@ public class SequenceTreeMapTest {
 
         Assert.assertTrue(i > 0);
     }
+
+    @Test
+    public void testIteratorReset() throws Exception {
+        SequenceTreeMap<NucleotideSequence, Integer> map = new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
+        map.put(new NucleotideSequence("ATTAGACA"), 1);
+        map.put(new NucleotideSequence("ATTAGTCA"), 2);
+        map.put(new NucleotideSequence("GATTACA"), 3);
+        map.put(new NucleotideSequence("GATTAC"), 4);
+
+        NeighborhoodIterator<NucleotideSequence, Integer> reused =
+                map.getNeighborhoodIterator(new NucleotideSequence("ATTAGACA"), TWO_MISMATCHES_OR_INDELS);
+        while (reused.next() != null) ;
+        for (String reference : new String[]{"ATTAGTCA", "GATTACA", "A", "", "GATTACAGATTACA"}) {
+            NeighborhoodIterator<NucleotideSequence, Integer> expected =
+                    map.getNeighborhoodIterator(new NucleotideSequence(reference), TWO_MISMATCHES_OR_INDELS);
+            reused.reset(new NucleotideSequence(reference));
+            Integer value;
+            while ((value = expected.next()) != null) {
+                assertEquals(value, reused.next());
+                assertEquals(expected.getCurrentMutations(), reused.getCurrentMutations());
+            }
+            assertNull(reused.next());
+        }
+    }
+
+    @Test
+    public void testSearchNeighborhoods() throws Exception {
+        RandomGenerator random = new Well19937a(123);
+        NucleotideMutationModel model = MutationModels.getEmpiricalNucleotideMutationModel()
+                .multiplyProbabilities(10.0);
+        model.reseed(random.nextLong());
+        for (int it = 0; it < its(5, 30); ++it) {
+            SequenceTreeMap<NucleotideSequence, Integer> map = new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
+            NucleotideSequence root = randomSequence(NucleotideSequence.ALPHABET, random, 8, 12);
+            List<NucleotideSequence> queries = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                NucleotideSequence seq = generateMutations(root, model).mutate(root);
+                if (i % 2 == 0)
+                    map.put(seq, i);
+                else
+                    queries.add(seq);
+            }
+            // Repeated queries
+            for (int i = 0; i < 100; ++i)
+                queries.add(queries.get(random.nextInt(queries.size())));
+
+            int maxHits = it % 2 == 0 ? Integer.MAX_VALUE : 3;
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                for (NeighborhoodSearchResult<Integer> result : Arrays.asList(
+                        map.searchNeighborhoods(queries, TWO_MISMATCHES_OR_INDELS, null, maxHits, null),
+                        map.searchNeighborhoods(queries, TWO_MISMATCHES_OR_INDELS, null, maxHits, pool))) {
+                    assertEquals(queries.size(), result.size());
+                    for (int q = 0; q < queries.size(); ++q) {
+                        NeighborhoodIterator<NucleotideSequence, Integer> expected =
+                                map.getNeighborhoodIterator(queries.get(q), TWO_MISMATCHES_OR_INDELS);
+                        List<Integer> values = result.getValues(q);
+                        int hit = 0;
+                        Integer value;
+                        while (hit < maxHits && (value = expected.next()) != null) {
+                            assertEquals(value, result.getValue(q, hit));
+                            assertEquals(value, values.get(hit));
+                            assertEquals(expected.getPenalty(), result.getPenalty(q, hit), 0.0);
+                            ++hit;
+                        }
+                        assertEquals(hit, result.getNumberOfHits(q));
+                        assertEquals(hit, values.size());
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.tree;
+
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.milaboratory.core.mutations.generator.MutationsGenerator.generateMutations;
+import static com.milaboratory.test.TestUtil.its;
+
+public class SymmetricDeletionIndexTest {
+    @Test
+    public void testPutGet() throws Exception {
+        SymmetricDeletionIndex<Integer> index = new SymmetricDeletionIndex<>(TreeSearchParameters.ONE_MISMATCH);
+        Assert.assertNull(index.put(new NucleotideSequence("ATTAGACA"), 1));
+        Assert.assertNull(index.put(new NucleotideSequence("ATTAG"), 2));
+        Assert.assertEquals((Integer) 1, index.put(new NucleotideSequence("ATTAGACA"), 3));
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals((Integer) 3, index.get(new NucleotideSequence("ATTAGACA")));
+        Assert.assertNull(index.get(new NucleotideSequence("ATTA")));
+
+        Assert.assertEquals(Collections.singletonList(3), index.search(new NucleotideSequence("ATTAGACA")));
+        Assert.assertEquals(Collections.singletonList(3), index.search(new NucleotideSequence("ATTCGACA")));
+        Assert.assertEquals(Collections.emptyList(), index.search(new NucleotideSequence("ATTCGACC")));
+        Assert.assertEquals(Collections.singletonList(2), index.search(new NucleotideSequence("TTTAG")));
+        Assert.assertEquals(Collections.emptyList(), index.search(new NucleotideSequence("ATTA")));
+    }
+
+    @Test
+    public void testSameAsSequenceTreeMap() throws Exception {
+        RandomGenerator random = new Well19937a(1234);
+        for (TreeSearchParameters parameters : new TreeSearchParameters[]{
+                TreeSearchParameters.ONE_MISMATCH,
+                TreeSearchParameters.TWO_MISMATCHES,
+                TreeSearchParameters.ONE_INDEL,
+                TreeSearchParameters.ONE_MISMATCH_OR_INDEL,
+                TreeSearchParameters.TWO_MISMATCHES_OR_INDELS,
+                new TreeSearchParameters(2, 1, 1, false),
+                new TreeSearchParameters(1, 2, 0, 0.3, 0.5, 0.5, 1.1, false),
+                new TreeSearchParameters(2, 1, 2, 0.3, 0.7, 0.6, 1.35, false)})
+            for (int it = 0; it < its(3, 20); ++it)
+                assertSameAsSequenceTreeMap(random, parameters);
+    }
+
+    private static void assertSameAsSequenceTreeMap(RandomGenerator random, TreeSearchParameters parameters) {
+        SequenceTreeMap<NucleotideSequence, Integer> map = new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
+        SymmetricDeletionIndex<Integer> index = new SymmetricDeletionIndex<>(parameters);
+        int length = 6 + random.nextInt(6);
+        List<NucleotideSequence> keys = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            NucleotideSequence key = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, length, length + 1);
+            if (map.get(key) != null)
+                continue;
+            keys.add(key);
+            map.put(key, keys.size() - 1);
+            index.put(key, keys.size() - 1);
+        }
+
+        NucleotideMutationModel model = MutationModels.getEmpiricalNucleotideMutationModel()
+                .multiplyProbabilities(15.0);
+        model.reseed(random.nextLong());
+        List<NucleotideSequence> queries = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            NucleotideSequence key = keys.get(random.nextInt(keys.size()));
+            queries.add(generateMutations(key, model).mutate(key));
+        }
+
+        NeighborhoodSearchResult<Integer> result = index.search(queries);
+        for (int q = 0; q < queries.size(); ++q) {
+            // Minimal penalty for each found key
+            Map<Integer, Double> expected = new HashMap<>();
+            NeighborhoodIterator<NucleotideSequence, Integer> iterator =
+                    map.getNeighborhoodIterator(queries.get(q), parameters);
+            Integer value;
+            while ((value = iterator.next()) != null)
+                expected.merge(value, iterator.getPenalty(), Math::min);
+
+            Map<Integer, Double> actual = new HashMap<>();
+            for (int hit = 0; hit < result.getNumberOfHits(q); ++hit) {
+                Assert.assertNull(actual.put(result.getValue(q, hit), result.getPenalty(q, hit)));
+                if (hit > 0)
+                    Assert.assertTrue(result.getPenalty(q, hit - 1) <= result.getPenalty(q, hit));
+            }
+            Assert.assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<Integer, Double> e : expected.entrySet())
+                Assert.assertEquals(e.getValue(), actual.get(e.getKey()), 1E-9);
+            Assert.assertEquals(result.getValues(q), index.search(queries.get(q)));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fasta.FastaReader;
+import com.milaboratory.core.io.sequence.fasta.FastaRecord;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+import static org.junit.Assert.*;
+
+public class BatchUtilTest {
+    @Test
+    public void testSingleFastq() throws Exception {
+        List<SingleRead> expected = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(getTestFile("sequences/sample_r1.fastq"))) {
+            for (SingleRead read : CUtils.it(reader))
+                expected.add(read);
+        }
+        try (SingleFastqReader reader = new SingleFastqReader(getTestFile("sequences/sample_r1.fastq"))) {
+            assertEquals(expected, takeAllInBatches(reader, 7));
+            assertEquals(expected.size(), reader.getNumberOfReads());
+        }
+    }
+
+    @Test
+    public void testPairedFastq() throws Exception {
+        List<PairedRead> expected = new ArrayList<>();
+        try (PairedFastqReader reader = new PairedFastqReader(getTestFile("sequences/sample_r1.fastq"),
+                getTestFile("sequences/sample_r2.fastq"))) {
+            for (PairedRead read : CUtils.it(reader))
+                expected.add(read);
+        }
+        try (PairedFastqReader reader = new PairedFastqReader(getTestFile("sequences/sample_r1.fastq"),
+                getTestFile("sequences/sample_r2.fastq"))) {
+            List<PairedRead> actual = takeAllInBatches(reader, 3);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getR1(), actual.get(i).getR1());
+                assertEquals(expected.get(i).getR2(), actual.get(i).getR2());
+            }
+            assertEquals(expected.size(), reader.getNumberOfReads());
+        }
+    }
+
+    @Test
+    public void testFasta() throws Exception {
+        List<FastaRecord<NucleotideSequence>> expected = new ArrayList<>();
+        try (FastaReader<NucleotideSequence> reader = new FastaReader<>(getTestFile("sequences/some_fasta.fasta"),
+                NucleotideSequence.ALPHABET)) {
+            for (FastaRecord<NucleotideSequence> record : CUtils.it(reader))
+                expected.add(record);
+        }
+        try (FastaReader<NucleotideSequence> reader = new FastaReader<>(getTestFile("sequences/some_fasta.fasta"),
+                NucleotideSequence.ALPHABET)) {
+            assertEquals(expected, takeAllInBatches(reader, 2));
+        }
+    }
+
+    @Test
+    public void testDefaultTakeBatch() {
+        Integer[] input = new Integer[100];
+        for (int i = 0; i < input.length; i++)
+            input[i] = i;
+        OutputPort<Integer> source = CUtils.asOutputPort(input);
+        BatchOutputPort<Integer> port = source::take;
+        List<Integer> actual = takeAllInBatches(port, 7);
+        assertEquals(input.length, actual.size());
+        for (int i = 0; i < input.length; i++)
+            assertEquals(input[i], actual.get(i));
+    }
+
+    @Test
+    public void testProcessInParallel() {
+        Integer[] input = new Integer[10000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = i;
+        for (int threads : new int[]{1, 4}) {
+            OutputPort<Integer> result = BatchUtil.processInParallel(CUtils.asOutputPort(input), i -> i * 2,
+                    threads, 33);
+            Set<Integer> set = new HashSet<>();
+            for (Integer i : CUtils.it(result))
+                assertTrue(set.add(i));
+            assertEquals(input.length, set.size());
+            for (int i = 0; i < input.length; i++)
+                assertTrue(set.contains(2 * i));
+        }
+    }
+
+    static <T> List<T> takeAllInBatches(BatchOutputPort<T> port, int batchSize) {
+        List<T> result = new ArrayList<>();
+        Batch<T> batch = new Batch<>();
+        while (!port.takeBatch(batch, batchSize).isEmpty()) {
+            assertTrue(batch.size() <= batchSize);
+            for (T t : batch)
+                result.add(t);
+        }
+        return result;
+    }
+}
@@ -31,6 +31,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
@@ -271,4 +272,64 @@ public class HashSorterTest {
             Assert.assertEquals(1, c.getNumberOfNodes());
         }
     }
+
+    @Test
+    public void testSpillAfterInMemory() {
+        RandomGenerator rg = new Well19937c(1234);
+        List<NucleotideSequence> seqsList = new ArrayList<>();
+        for (int i = 0; i < 20000; i++)
+            seqsList.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 5, 50, true));
+
+        HashSorter<NucleotideSequence> c = new HashSorter<>(
+                NucleotideSequence.class,
+                Objects::hashCode, Comparator.naturalOrder(),
+                5, TempFileManager.getTempDir().toPath(), 4, 6,
+                PrimitivOState.INITIAL, PrimitivIState.INITIAL,
+                1 << 18, 128);
+
+        // Small input fits into memory budget, the whole input doesn't
+        for (List<NucleotideSequence> input : Arrays.asList(seqsList.subList(0, 100), seqsList)) {
+            List<NucleotideSequence> expected = new ArrayList<>(input);
+            expected.sort(c.getEffectiveComparator());
+
+            List<NucleotideSequence> actual = new ArrayList<>();
+            try (OutputPortCloseable<NucleotideSequence> port = c.port(CUtils.asOutputPort(input))) {
+                for (NucleotideSequence ns : CUtils.it(port))
+                    actual.add(ns);
+            }
+
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(input.size() == 100, c.isInMemory());
+        }
+    }
+
+    @Test
+    public void testInMemory() {
+        RandomGenerator rg = new Well19937c(4321);
+        List<NucleotideSequence> seqsList = new ArrayList<>();
+        for (int i = 0; i < 20000; i++)
+            seqsList.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 5, 50, true));
+
+        for (long memoryBudget : new long[]{1 << 23, 1 << 18}) {
+            HashSorter<NucleotideSequence> c = new HashSorter<>(
+                    NucleotideSequence.class,
+                    Objects::hashCode, Comparator.naturalOrder(),
+                    5, TempFileManager.getTempDir().toPath(), 4, 6,
+                    PrimitivOState.INITIAL, PrimitivIState.INITIAL,
+                    memoryBudget, 128);
+
+            List<NucleotideSequence> expected = new ArrayList<>(seqsList);
+            expected.sort(c.getEffectiveComparator());
+
+            List<NucleotideSequence> actual = new ArrayList<>();
+            try (OutputPortCloseable<NucleotideSequence> port = c.port(CUtils.asOutputPort(seqsList))) {
+                for (NucleotideSequence ns : CUtils.it(port))
+                    actual.add(ns);
+            }
+
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(memoryBudget == 1 << 23, c.isInMemory());
+            Assert.assertEquals(memoryBudget == 1 << 23, c.getNumberOfNodes() == 0);
+        }
+    }
 }
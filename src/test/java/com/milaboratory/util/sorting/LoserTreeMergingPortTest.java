@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util.sorting;
+
+import cc.redberry.pipe.CUtils;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class LoserTreeMergingPortTest {
+    @Test
+    public void test1() {
+        RandomGenerator rg = new Well19937c(123);
+        for (int k : new int[]{1, 2, 3, 7, 30, 64}) {
+            ArrayList<ArrayList<Integer>> ints = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                ArrayList<Integer> array = new ArrayList<>();
+                int n = rg.nextInt(50);
+                for (int j = 0; j < n; j++)
+                    array.add(rg.nextInt(50) << 8 | i);
+                array.sort(Comparator.naturalOrder());
+                ints.add(array);
+            }
+
+            // Comparing only high bits, low bits encode source index to check stability
+            LoserTreeMergingPort<Integer> port = new LoserTreeMergingPort<>(
+                    Comparator.comparing(i -> i >>> 8),
+                    ints.stream()
+                            .map(CUtils::asOutputPort)
+                            .collect(Collectors.toList()));
+
+            List<Integer> result = new ArrayList<>();
+            Integer i;
+            while ((i = port.take()) != null)
+                result.add(i);
+
+            List<Integer> expected = ints.stream()
+                    .flatMap(Collection::stream)
+                    .sorted(Comparator.naturalOrder())
+                    .collect(Collectors.toList());
+
+            Assert.assertEquals(expected, result);
+            Assert.assertNull(port.take());
+        }
+    }
+}
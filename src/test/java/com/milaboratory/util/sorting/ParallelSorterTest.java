@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util.sorting;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.primitivio.PrimitivIState;
+import com.milaboratory.primitivio.PrimitivOState;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelSorterTest {
+    @Test
+    public void test1() {
+        RandomGenerator rg = new Well19937c(1234);
+        List<Path> dirs = Arrays.asList(TempFileManager.getTempDir().toPath(), TempFileManager.getTempDir().toPath());
+
+        for (int nElements : new int[]{0, 1, 10_000, 100_132}) {
+            List<Long> source = new ArrayList<>();
+            for (int i = 0; i < nElements; i++)
+                // High bits are compared, low bits encode position in the input to check stability
+                source.add(((long) rg.nextInt(1000)) << 32 | i);
+
+            List<Long> expected = new ArrayList<>(source);
+            expected.sort(Comparator.naturalOrder());
+
+            for (int chunkSize : new int[]{nElements / 100 + 1, nElements / 10 + 1, nElements + 1})
+                for (int mergeFanIn : new int[]{3, ParallelSorter.DEFAULT_MERGE_FAN_IN}) {
+                    ParallelSorter<Long> sorter = new ParallelSorter<>(Long.class,
+                            Comparator.comparing(l -> l >>> 32), chunkSize, dirs, 2, mergeFanIn,
+                            PrimitivOState.INITIAL, PrimitivIState.INITIAL);
+
+                    List<Long> actual = new ArrayList<>();
+                    try (OutputPortCloseable<Long> port = sorter.port(CUtils.asOutputPort(source))) {
+                        for (Long l : CUtils.it(port))
+                            actual.add(l);
+                    }
+                    Assert.assertEquals(expected, actual);
+
+                    int runs = sorter.getNumberOfRuns();
+                    Assert.assertEquals((nElements + chunkSize - 1) / chunkSize, runs);
+                    if (runs > mergeFanIn)
+                        Assert.assertTrue(sorter.getNumberOfMergePasses() > 0);
+                }
+
+            // All temporary files are removed
+            for (Path dir : dirs)
+                Assert.assertEquals(0, Objects.requireNonNull(dir.toFile().listFiles()).length);
+        }
+    }
+
+    @Test
+    public void testTemporaryFilesRemovedOnFailure() {
+        List<Path> dirs = Arrays.asList(TempFileManager.getTempDir().toPath(), TempFileManager.getTempDir().toPath());
+        List<Long> source = new ArrayList<>();
+        for (long i = 0; i < 10_000; i++)
+            source.add((i * 7919) % 10_000);
+
+        // Input fails after several runs are written
+        ParallelSorter<Long> sorter = new ParallelSorter<>(Long.class, Comparator.naturalOrder(), 1000, dirs, 2, 3,
+                PrimitivOState.INITIAL, PrimitivIState.INITIAL);
+        OutputPort<Long> input = CUtils.asOutputPort(source);
+        AtomicInteger taken = new AtomicInteger();
+        try {
+            sorter.port(() -> {
+                if (taken.incrementAndGet() > 5500)
+                    throw new IllegalStateException("input");
+                return input.take();
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("input", e.getMessage());
+        }
+        for (Path dir : dirs)
+            Assert.assertEquals(0, Objects.requireNonNull(dir.toFile().listFiles()).length);
+
+        // Comparator fails in intermediate merge pass (merges are performed in sorter threads)
+        sorter = new ParallelSorter<>(Long.class, (a, b) -> {
+            if (Thread.currentThread().getName().equals("parallel-sorter"))
+                throw new IllegalStateException("comparator");
+            return Long.compare(a, b);
+        }, 1000, dirs, 2, 3, PrimitivOState.INITIAL, PrimitivIState.INITIAL);
+        try {
+            sorter.port(CUtils.asOutputPort(source));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("comparator", e.getMessage());
+        }
+        for (Path dir : dirs)
+            Assert.assertEquals(0, Objects.requireNonNull(dir.toFile().listFiles()).length);
+    }
+}
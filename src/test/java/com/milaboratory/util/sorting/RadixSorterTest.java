@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util.sorting;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPortCloseable;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivIState;
+import com.milaboratory.primitivio.PrimitivOState;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+public class RadixSorterTest {
+    @Test
+    public void testSortWithPermutation() {
+        RandomGenerator rg = new Well19937c(1234);
+        for (int n : new int[]{0, 1, 17, 1000, 300000}) {
+            for (long mask : new long[]{-1L, 0xFFFFL, 0xFF00FF0000L}) {
+                long[] keys = new long[n];
+                for (int i = 0; i < n; i++)
+                    keys[i] = rg.nextLong() & mask;
+                long[] original = keys.clone();
+                long[] expected = keys.clone();
+                Arrays.sort(expected);
+
+                int[] permutation = RadixSorter.sortWithPermutation(keys);
+
+                Assert.assertArrayEquals(expected, keys);
+                for (int i = 0; i < n; i++) {
+                    Assert.assertEquals(keys[i], original[permutation[i]]);
+                    // Stability
+                    if (i > 0 && keys[i] == keys[i - 1])
+                        Assert.assertTrue(permutation[i - 1] < permutation[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInMemory() {
+        List<NucleotideSequence> seqs = randomSequences(20000);
+        assertSorted(seqs, NucleotideSequence::size, 1 << 23, 8, true);
+        assertSorted(seqs, s -> s.hashCode(), 1 << 23, 8, true);
+    }
+
+    @Test
+    public void testExternal() {
+        List<NucleotideSequence> seqs = randomSequences(50000);
+        // Many equal keys
+        assertSorted(seqs, NucleotideSequence::size, 1 << 18, 4, false);
+        // Negative and positive keys
+        assertSorted(seqs, s -> s.hashCode(), 1 << 18, 4, false);
+        assertSorted(seqs, s -> ((long) s.hashCode()) << 32, 1 << 18, 8, false);
+        // Skewed keys, most of them fall into the overflow buckets of the root partition
+        assertSorted(seqs, s -> s.hashCode() & 0xFFF, 1 << 16, 2, false);
+    }
+
+    @Test
+    public void testSingleton() {
+        NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 100, 200);
+        List<NucleotideSequence> seqs = new ArrayList<>();
+        for (int i = 0; i < 50000; i++)
+            seqs.add(seq);
+        RadixSorter<NucleotideSequence> sorter = assertSorted(seqs, s -> 42, 1 << 16, 8, false);
+        Assert.assertEquals(1, sorter.getNumberOfNodes());
+    }
+
+    static List<NucleotideSequence> randomSequences(int n) {
+        RandomGenerator rg = new Well19937c(4321);
+        List<NucleotideSequence> seqs = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            seqs.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, 5, 50, true));
+        return seqs;
+    }
+
+    static RadixSorter<NucleotideSequence> assertSorted(List<NucleotideSequence> seqs,
+                                                       ToLongFunction<NucleotideSequence> key,
+                                                       long memoryBudget, int bitsPerStep, boolean inMemory) {
+        RadixSorter<NucleotideSequence> sorter = new RadixSorter<>(
+                NucleotideSequence.class, key, bitsPerStep,
+                TempFileManager.getTempDir().toPath(), 2, 2,
+                PrimitivOState.INITIAL, PrimitivIState.INITIAL,
+                memoryBudget, 128);
+
+        // Stable sort
+        List<NucleotideSequence> expected = new ArrayList<>(seqs);
+        expected.sort(Comparator.comparingLong(key));
+
+        List<NucleotideSequence> actual = new ArrayList<>();
+        try (OutputPortCloseable<NucleotideSequence> port = sorter.port(CUtils.asOutputPort(seqs))) {
+            for (NucleotideSequence ns : CUtils.it(port))
+                actual.add(ns);
+        }
+
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(inMemory, sorter.getNumberOfNodes() == 0);
+        return sorter;
+    }
+}